@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.data.adselection;
+
+import android.adservices.common.AdTechIdentifier;
+import android.adservices.common.FrequencyCapFilters;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+
+import com.google.auto.value.AutoValue;
+
+import java.time.Instant;
+
+/**
+ * A DB value class representing a single histogram event joined with its {@link
+ * DBHistogramIdentifier}, used to build the in-memory {@link FrequencyCapHistogramIndex}.
+ */
+@AutoValue
+public abstract class DBHistogramIndexEntry {
+    /** Creates and returns a new {@link DBHistogramIndexEntry} object. */
+    @NonNull
+    public static DBHistogramIndexEntry create(
+            @NonNull String adCounterKey,
+            @NonNull AdTechIdentifier buyer,
+            @Nullable String customAudienceOwner,
+            @Nullable String customAudienceName,
+            @FrequencyCapFilters.AdEventType int adEventType,
+            @NonNull Instant timestamp) {
+        return new AutoValue_DBHistogramIndexEntry(
+                adCounterKey,
+                buyer,
+                customAudienceOwner,
+                customAudienceName,
+                adEventType,
+                timestamp);
+    }
+
+    /**
+     * Returns the arbitrary String representing a grouping that a buyer adtech has assigned to an
+     * ad or histogram.
+     */
+    @AutoValue.CopyAnnotations
+    @ColumnInfo(name = "ad_counter_key")
+    @NonNull
+    public abstract String getAdCounterKey();
+
+    /** Returns the histogram's buyer adtech's {@link AdTechIdentifier}. */
+    @AutoValue.CopyAnnotations
+    @ColumnInfo(name = "buyer")
+    @NonNull
+    public abstract AdTechIdentifier getBuyer();
+
+    /** Returns the owner package name of the custom audience the histogram is associated with. */
+    @AutoValue.CopyAnnotations
+    @ColumnInfo(name = "custom_audience_owner")
+    @Nullable
+    public abstract String getCustomAudienceOwner();
+
+    /** Returns the name of the custom audience the histogram is associated with. */
+    @AutoValue.CopyAnnotations
+    @ColumnInfo(name = "custom_audience_name")
+    @Nullable
+    public abstract String getCustomAudienceName();
+
+    /** Returns the enumerated type of the ad event. */
+    @AutoValue.CopyAnnotations
+    @ColumnInfo(name = "ad_event_type")
+    @FrequencyCapFilters.AdEventType
+    public abstract int getAdEventType();
+
+    /** Returns the timestamp for the event. */
+    @AutoValue.CopyAnnotations
+    @ColumnInfo(name = "timestamp")
+    @NonNull
+    public abstract Instant getTimestamp();
+}
@@ -32,7 +32,11 @@ import com.android.adservices.service.adselection.HistogramEvent;
 import com.google.common.base.Preconditions;
 
 import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * DAO used to access ad counter histogram data used in frequency cap filtering during ad selection.
@@ -41,6 +45,16 @@ import java.util.Objects;
  */
 @Dao
 public abstract class FrequencyCapDao {
+    private static final int UNKNOWN_HISTOGRAM_EVENT_COUNT = -1;
+
+    private final FrequencyCapHistogramIndex mHistogramIndex = new FrequencyCapHistogramIndex();
+
+    // Mirrors COUNT(*) of the event data table so that inserts do not need to scan the table. It is
+    // only updated inside write transactions, which are serialized by the database, and is reset to
+    // unknown whenever a transaction fails so that the table is counted again.
+    private final AtomicInteger mHistogramEventCount =
+            new AtomicInteger(UNKNOWN_HISTOGRAM_EVENT_COUNT);
+
     /**
      * Attempts to persist a new {@link DBHistogramIdentifier} to the identifier table.
      *
@@ -108,9 +122,12 @@ public abstract class FrequencyCapDao {
      * absoluteMaxHistogramEventCount}, then the oldest events in the table will be evicted so that
      * the count of events is the given {@code lowerMaxHistogramEventCount}.
      *
+     * <p>The number of events in the table is tracked by the DAO instead of being counted on every
+     * insert. Regular trimming is expected to happen in the background through {@link
+     * #evictOldestHistogramEventsInBatches(int, int)}, so the eviction here is only a hard cap.
+     *
      * @throws IllegalStateException if an error was encountered adding the event
      */
-    @Transaction
     public void insertHistogramEvent(
             @NonNull HistogramEvent event,
             int absoluteMaxHistogramEventCount,
@@ -121,13 +138,33 @@ public abstract class FrequencyCapDao {
         Preconditions.checkArgument(lowerMaxHistogramEventCount > 0);
         Preconditions.checkArgument(absoluteMaxHistogramEventCount > lowerMaxHistogramEventCount);
 
+        try {
+            insertHistogramEventInTransaction(
+                    event, absoluteMaxHistogramEventCount, lowerMaxHistogramEventCount);
+        } catch (RuntimeException exception) {
+            onHistogramTransactionFailed();
+            throw exception;
+        }
+    }
+
+    /**
+     * Inserts a {@link HistogramEvent} into the histogram tables in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #insertHistogramEvent(HistogramEvent, int, int)} instead.
+     */
+    @Transaction
+    protected void insertHistogramEventInTransaction(
+            @NonNull HistogramEvent event,
+            int absoluteMaxHistogramEventCount,
+            int lowerMaxHistogramEventCount) {
         // TODO(b/275581841): Collect and send telemetry on frequency cap eviction
         // Check the table size first and evict older events if necessary
-        int currentHistogramEventCount = getTotalNumHistogramEvents();
+        int currentHistogramEventCount = getCachedHistogramEventCount();
         if (currentHistogramEventCount >= absoluteMaxHistogramEventCount) {
-            int numEventsToDelete = currentHistogramEventCount - lowerMaxHistogramEventCount;
-            deleteOldestHistogramEventData(numEventsToDelete);
-            deleteUnpairedHistogramIdentifiers();
+            currentHistogramEventCount -=
+                    evictOldestHistogramEvents(
+                            currentHistogramEventCount - lowerMaxHistogramEventCount);
         }
 
         // Converting to DBHistogramIdentifier drops custom audience fields if the type is WIN
@@ -153,6 +190,9 @@ public abstract class FrequencyCapDao {
         } catch (Exception exception) {
             throw new IllegalStateException("Error inserting histogram event data", exception);
         }
+
+        mHistogramEventCount.set(currentHistogramEventCount + 1);
+        mHistogramIndex.addEvent(identifier, event.getAdEventType(), event.getTimestamp());
     }
 
     /**
@@ -199,6 +239,161 @@ public abstract class FrequencyCapDao {
             @FrequencyCapFilters.AdEventType int adEventType,
             @NonNull Instant startTime);
 
+    /**
+     * Returns every histogram event joined with its identifier.
+     *
+     * <p>This method is not intended to be called on its own. It should only be used to load the
+     * in-memory {@link FrequencyCapHistogramIndex}.
+     */
+    @Query(
+            "SELECT ids.ad_counter_key, ids.buyer, ids.custom_audience_owner, "
+                    + "ids.custom_audience_name, data.ad_event_type, data.timestamp "
+                    + "FROM fcap_histogram_data AS data "
+                    + "INNER JOIN fcap_histogram_ids AS ids "
+                    + "ON data.foreign_key_id = ids.foreign_key_id")
+    protected abstract List<DBHistogramIndexEntry> getAllHistogramIndexEntries();
+
+    /**
+     * Returns the oldest N histogram events joined with their identifiers, where N is at most
+     * {@code numEvents}, in the same order as {@link #deleteOldestHistogramEventData(int)} deletes
+     * them.
+     *
+     * <p>This method is not intended to be called on its own. It should only be used to evict
+     * events from the in-memory {@link FrequencyCapHistogramIndex}.
+     */
+    @Query(
+            "SELECT ids.ad_counter_key, ids.buyer, ids.custom_audience_owner, "
+                    + "ids.custom_audience_name, data.ad_event_type, data.timestamp "
+                    + "FROM fcap_histogram_data AS data "
+                    + "INNER JOIN fcap_histogram_ids AS ids "
+                    + "ON data.foreign_key_id = ids.foreign_key_id "
+                    + "ORDER BY data.timestamp ASC, data.row_id ASC "
+                    + "LIMIT :numEvents")
+    protected abstract List<DBHistogramIndexEntry> getOldestHistogramIndexEntries(int numEvents);
+
+    /**
+     * Loads the in-memory histogram index from the database if it has not been loaded yet.
+     *
+     * <p>The index is loaded in a transaction so that it cannot interleave with any concurrent
+     * histogram update.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #getNumEventsForBuyerAfterTimeFromIndex(String, AdTechIdentifier, int, Instant)} or {@link
+     * #getNumEventsForCustomAudienceAfterTimeFromIndex(String, AdTechIdentifier, String, String,
+     * int, Instant)} instead.
+     */
+    @Transaction
+    protected void loadHistogramIndexIfNeeded() {
+        if (!mHistogramIndex.isLoaded()) {
+            mHistogramIndex.load(getAllHistogramIndexEntries());
+        }
+    }
+
+    /**
+     * Reloads the in-memory histogram index from the database in a transaction.
+     *
+     * <p>This method is not intended to be called on its own. It is only used to discard index
+     * changes made by a transaction which was rolled back.
+     */
+    @Transaction
+    protected void reloadHistogramIndex() {
+        mHistogramIndex.load(getAllHistogramIndexEntries());
+    }
+
+    /**
+     * Returns the same count as {@link #getNumEventsForBuyerAfterTime(String, AdTechIdentifier,
+     * int, Instant)}, computed from the in-memory histogram index instead of the database.
+     *
+     * <p>The index is loaded from the database on the first call and is kept up to date by all
+     * following histogram updates made through this DAO.
+     *
+     * @return the number of found events that match the criteria
+     */
+    public int getNumEventsForBuyerAfterTimeFromIndex(
+            @NonNull String adCounterKey,
+            @NonNull AdTechIdentifier buyer,
+            @FrequencyCapFilters.AdEventType int adEventType,
+            @NonNull Instant startTime) {
+        if (!mHistogramIndex.isLoaded()) {
+            loadHistogramIndexIfNeeded();
+        }
+        return mHistogramIndex.getNumEventsForBuyerAfterTime(
+                adCounterKey, buyer, adEventType, startTime);
+    }
+
+    /**
+     * Returns the same count as {@link #getNumEventsForCustomAudienceAfterTime(String,
+     * AdTechIdentifier, String, String, int, Instant)}, computed from the in-memory histogram index
+     * instead of the database.
+     *
+     * <p>The index is loaded from the database on the first call and is kept up to date by all
+     * following histogram updates made through this DAO.
+     *
+     * @return the number of found events that match the criteria
+     */
+    public int getNumEventsForCustomAudienceAfterTimeFromIndex(
+            @NonNull String adCounterKey,
+            @NonNull AdTechIdentifier buyer,
+            @NonNull String customAudienceOwner,
+            @NonNull String customAudienceName,
+            @FrequencyCapFilters.AdEventType int adEventType,
+            @NonNull Instant startTime) {
+        if (!mHistogramIndex.isLoaded()) {
+            loadHistogramIndexIfNeeded();
+        }
+        return mHistogramIndex.getNumEventsForCustomAudienceAfterTime(
+                adCounterKey,
+                buyer,
+                customAudienceOwner,
+                customAudienceName,
+                adEventType,
+                startTime);
+    }
+
+    /**
+     * Returns the histogram events for the given buyers which have been registered since the given
+     * timestamp, joined with their identifiers.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #getHistogramSnapshotForBuyersAfterTime(Set, Instant)} instead.
+     */
+    @Query(
+            "SELECT ids.ad_counter_key, ids.buyer, ids.custom_audience_owner, "
+                    + "ids.custom_audience_name, data.ad_event_type, data.timestamp "
+                    + "FROM fcap_histogram_data AS data "
+                    + "INNER JOIN fcap_histogram_ids AS ids "
+                    + "ON data.foreign_key_id = ids.foreign_key_id "
+                    + "WHERE ids.buyer IN (:buyers) "
+                    + "AND data.timestamp >= :startTime")
+    protected abstract List<DBHistogramIndexEntry> getHistogramIndexEntriesForBuyersAfterTime(
+            @NonNull Set<AdTechIdentifier> buyers, @NonNull Instant startTime);
+
+    /**
+     * Reads every histogram event for the given buyers which has been registered since the given
+     * timestamp in a single read transaction, and returns them as a read-only {@link
+     * FrequencyCapHistogramIndex}.
+     *
+     * <p>The returned snapshot answers the same counts as {@link
+     * #getNumEventsForBuyerAfterTime(String, AdTechIdentifier, int, Instant)} and {@link
+     * #getNumEventsForCustomAudienceAfterTime(String, AdTechIdentifier, String, String, int,
+     * Instant)} for any start time at or after the given {@code startTime}, so that all frequency
+     * cap filters in an auction can be evaluated with a single query.
+     */
+    @Transaction
+    @NonNull
+    public FrequencyCapHistogramIndex getHistogramSnapshotForBuyersAfterTime(
+            @NonNull Set<AdTechIdentifier> buyers, @NonNull Instant startTime) {
+        Objects.requireNonNull(buyers);
+        Objects.requireNonNull(startTime);
+
+        FrequencyCapHistogramIndex snapshot = new FrequencyCapHistogramIndex();
+        snapshot.load(
+                buyers.isEmpty()
+                        ? Collections.emptyList()
+                        : getHistogramIndexEntriesForBuyersAfterTime(buyers, startTime));
+        return snapshot;
+    }
+
     /**
      * Deletes all histogram event data older than the given {@code expiryTime}.
      *
@@ -215,13 +410,13 @@ public abstract class FrequencyCapDao {
      * returns the number of entries deleted.
      *
      * <p>This method is not meant to be called on its own. Please use {@link
-     * #insertHistogramEvent(HistogramEvent, int, int)} to evict data when the table is full.
+     * #evictOldestHistogramEventsInBatches(int, int)} to evict data when the table is full.
      */
     @Query(
             "DELETE FROM fcap_histogram_data "
                     + "WHERE row_id IN "
                     + "(SELECT row_id FROM fcap_histogram_data "
-                    + "ORDER BY timestamp ASC "
+                    + "ORDER BY timestamp ASC, row_id ASC "
                     + "LIMIT :numEventsToDelete)")
     protected abstract int deleteOldestHistogramEventData(int numEventsToDelete);
 
@@ -246,19 +441,140 @@ public abstract class FrequencyCapDao {
      * transaction.
      *
      * <p>Also cleans up any histogram identifiers which are no longer associated with any event
-     * data.
+     * data, and trims the same events from the in-memory histogram index.
      *
      * @return the number of deleted events
      */
-    @Transaction
     public int deleteAllExpiredHistogramData(@NonNull Instant expiryTime) {
         Objects.requireNonNull(expiryTime);
 
+        try {
+            return deleteAllExpiredHistogramDataInTransaction(expiryTime);
+        } catch (RuntimeException exception) {
+            onHistogramTransactionFailed();
+            throw exception;
+        }
+    }
+
+    /**
+     * Deletes all histogram data older than the given {@code expiryTime} in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #deleteAllExpiredHistogramData(Instant)} instead.
+     */
+    @Transaction
+    protected int deleteAllExpiredHistogramDataInTransaction(@NonNull Instant expiryTime) {
         int numDeletedEvents = deleteHistogramEventDataBeforeTime(expiryTime);
         deleteUnpairedHistogramIdentifiers();
+        mHistogramEventCount.updateAndGet(
+                count ->
+                        count == UNKNOWN_HISTOGRAM_EVENT_COUNT ? count : count - numDeletedEvents);
+        mHistogramIndex.removeEventsBeforeTime(expiryTime);
         return numDeletedEvents;
     }
 
+    /**
+     * Evicts the oldest histogram events until at most {@code lowerMaxHistogramEventCount} events
+     * remain, deleting at most {@code batchSize} events per database transaction.
+     *
+     * <p>Each batch is committed separately so that concurrent histogram updates and frequency cap
+     * queries are never blocked for longer than a single batch. This is intended to be run from a
+     * background maintenance job so that {@link #insertHistogramEvent(HistogramEvent, int, int)}
+     * rarely needs to evict events itself.
+     *
+     * @return the total number of evicted events
+     */
+    public int evictOldestHistogramEventsInBatches(int lowerMaxHistogramEventCount, int batchSize) {
+        Preconditions.checkArgument(lowerMaxHistogramEventCount > 0);
+        Preconditions.checkArgument(batchSize > 0);
+
+        int totalNumEvictedEvents = 0;
+        int numEvictedEvents;
+        do {
+            try {
+                numEvictedEvents =
+                        evictOldestHistogramEventBatch(lowerMaxHistogramEventCount, batchSize);
+            } catch (RuntimeException exception) {
+                onHistogramTransactionFailed();
+                throw exception;
+            }
+            totalNumEvictedEvents += numEvictedEvents;
+        } while (numEvictedEvents > 0);
+        return totalNumEvictedEvents;
+    }
+
+    /**
+     * Evicts a single batch of at most {@code batchSize} of the oldest histogram events, without
+     * evicting below {@code lowerMaxHistogramEventCount} events, in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #evictOldestHistogramEventsInBatches(int, int)} instead.
+     *
+     * @return the number of evicted events
+     */
+    @Transaction
+    protected int evictOldestHistogramEventBatch(int lowerMaxHistogramEventCount, int batchSize) {
+        int currentHistogramEventCount = getCachedHistogramEventCount();
+        int numEventsToDelete =
+                Math.min(batchSize, currentHistogramEventCount - lowerMaxHistogramEventCount);
+        if (numEventsToDelete <= 0) {
+            return 0;
+        }
+
+        int numDeletedEvents = evictOldestHistogramEvents(numEventsToDelete);
+        mHistogramEventCount.set(currentHistogramEventCount - numDeletedEvents);
+        return numDeletedEvents;
+    }
+
+    /**
+     * Deletes the oldest N histogram events, where N is at most {@code numEventsToDelete}, along
+     * with their unpaired identifiers, and removes the same events from the in-memory histogram
+     * index.
+     *
+     * <p>This method must only be called inside a write transaction.
+     *
+     * @return the number of deleted events
+     */
+    private int evictOldestHistogramEvents(int numEventsToDelete) {
+        List<DBHistogramIndexEntry> evictedEntries =
+                mHistogramIndex.isLoaded()
+                        ? getOldestHistogramIndexEntries(numEventsToDelete)
+                        : Collections.emptyList();
+        int numDeletedEvents = deleteOldestHistogramEventData(numEventsToDelete);
+        deleteUnpairedHistogramIdentifiers();
+        mHistogramIndex.removeOldestEvents(evictedEntries);
+        return numDeletedEvents;
+    }
+
+    /** Resets the state mirrored from the tables after a transaction failed and was rolled back. */
+    private void onHistogramTransactionFailed() {
+        mHistogramEventCount.set(UNKNOWN_HISTOGRAM_EVENT_COUNT);
+
+        // The index may hold changes which were rolled back, so read it again from the tables
+        if (mHistogramIndex.isLoaded()) {
+            try {
+                reloadHistogramIndex();
+            } catch (RuntimeException exception) {
+                mHistogramIndex.unload();
+            }
+        }
+    }
+
+    /**
+     * Returns the tracked number of events in the data table, counting the table only if the
+     * number is not known yet.
+     *
+     * <p>This method must only be called inside a write transaction.
+     */
+    private int getCachedHistogramEventCount() {
+        int count = mHistogramEventCount.get();
+        if (count == UNKNOWN_HISTOGRAM_EVENT_COUNT) {
+            count = getTotalNumHistogramEvents();
+            mHistogramEventCount.set(count);
+        }
+        return count;
+    }
+
     /** Returns the current total number of histogram events in the data table. */
     @Query("SELECT COUNT(DISTINCT row_id) FROM fcap_histogram_data")
     public abstract int getTotalNumHistogramEvents();
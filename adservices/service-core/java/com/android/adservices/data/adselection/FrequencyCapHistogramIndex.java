@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.data.adselection;
+
+import android.adservices.common.AdTechIdentifier;
+import android.adservices.common.FrequencyCapFilters;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * In-memory index of the frequency cap histogram tables, mirroring the data persisted by {@link
+ * FrequencyCapDao}.
+ *
+ * <p>Events are grouped by buyer, ad counter key, and event type (and additionally by custom
+ * audience for events which are scoped to a custom audience), and each group keeps its event
+ * timestamps in a sorted array so that counting the events registered since a given time is a
+ * binary search instead of a database query.
+ *
+ * <p>The index kept by {@link FrequencyCapDao} is loaded lazily from the database on first use and
+ * is then kept up to date by the DAO. All mutations happen inside the same database transaction as
+ * the matching table update, and the DAO reloads the index whenever such a transaction fails, so
+ * that changes which were rolled back are discarded.
+ *
+ * <p>Read-only snapshots of a subset of the histograms are also returned by {@link
+ * FrequencyCapDao#getHistogramSnapshotForBuyersAfterTime(java.util.Set, Instant)}.
+ */
+public final class FrequencyCapHistogramIndex {
+    private static final int INITIAL_TIMESTAMP_CAPACITY = 4;
+
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private boolean mIsLoaded = false;
+
+    @GuardedBy("mLock")
+    private final Map<HistogramKey, SortedTimestamps> mBuyerHistograms = new HashMap<>();
+
+    @GuardedBy("mLock")
+    private final Map<HistogramKey, SortedTimestamps> mCustomAudienceHistograms = new HashMap<>();
+
+    /** Returns {@code true} if the index has been loaded from the database. */
+    boolean isLoaded() {
+        synchronized (mLock) {
+            return mIsLoaded;
+        }
+    }
+
+    /**
+     * Replaces the contents of the index with the given entries read from the database and marks
+     * the index as loaded.
+     */
+    void load(@NonNull List<DBHistogramIndexEntry> entries) {
+        Objects.requireNonNull(entries);
+
+        synchronized (mLock) {
+            mBuyerHistograms.clear();
+            mCustomAudienceHistograms.clear();
+            for (DBHistogramIndexEntry entry : entries) {
+                addEventLocked(
+                        entry.getAdCounterKey(),
+                        entry.getBuyer(),
+                        entry.getCustomAudienceOwner(),
+                        entry.getCustomAudienceName(),
+                        entry.getAdEventType(),
+                        entry.getTimestamp());
+            }
+            mIsLoaded = true;
+        }
+    }
+
+    /**
+     * Clears the index and marks it as not loaded, so that it is read again from the database on
+     * next use.
+     */
+    void unload() {
+        synchronized (mLock) {
+            mBuyerHistograms.clear();
+            mCustomAudienceHistograms.clear();
+            mIsLoaded = false;
+        }
+    }
+
+    /**
+     * Adds a single persisted event to the index.
+     *
+     * <p>This is a no-op if the index has not been loaded yet, since the event will be read from
+     * the database when the index is eventually loaded.
+     */
+    void addEvent(
+            @NonNull DBHistogramIdentifier identifier,
+            @FrequencyCapFilters.AdEventType int adEventType,
+            @NonNull Instant timestamp) {
+        Objects.requireNonNull(identifier);
+        Objects.requireNonNull(timestamp);
+
+        synchronized (mLock) {
+            if (!mIsLoaded) {
+                return;
+            }
+            addEventLocked(
+                    identifier.getAdCounterKey(),
+                    identifier.getBuyer(),
+                    identifier.getCustomAudienceOwner(),
+                    identifier.getCustomAudienceName(),
+                    adEventType,
+                    timestamp);
+        }
+    }
+
+    /** Removes all indexed events with timestamps strictly before the given {@code expiryTime}. */
+    void removeEventsBeforeTime(@NonNull Instant expiryTime) {
+        Objects.requireNonNull(expiryTime);
+
+        synchronized (mLock) {
+            if (!mIsLoaded) {
+                return;
+            }
+            long expiryTimeMillis = expiryTime.toEpochMilli();
+            removeEventsBeforeTimeLocked(mBuyerHistograms, expiryTimeMillis);
+            removeEventsBeforeTimeLocked(mCustomAudienceHistograms, expiryTimeMillis);
+        }
+    }
+
+    /**
+     * Removes the given events, which must be the oldest persisted events, from the index.
+     *
+     * <p>The oldest events overall are also the oldest events of each histogram, so only the number
+     * of events to remove from each histogram is needed.
+     */
+    void removeOldestEvents(@NonNull List<DBHistogramIndexEntry> entries) {
+        Objects.requireNonNull(entries);
+
+        synchronized (mLock) {
+            if (!mIsLoaded || entries.isEmpty()) {
+                return;
+            }
+            Map<HistogramKey, Integer> numBuyerEvents = new HashMap<>();
+            Map<HistogramKey, Integer> numCustomAudienceEvents = new HashMap<>();
+            for (DBHistogramIndexEntry entry : entries) {
+                numBuyerEvents.merge(
+                        new HistogramKey(
+                                entry.getAdCounterKey(),
+                                entry.getBuyer(),
+                                null,
+                                null,
+                                entry.getAdEventType()),
+                        1,
+                        Integer::sum);
+                if (entry.getCustomAudienceOwner() != null
+                        && entry.getCustomAudienceName() != null) {
+                    numCustomAudienceEvents.merge(
+                            new HistogramKey(
+                                    entry.getAdCounterKey(),
+                                    entry.getBuyer(),
+                                    entry.getCustomAudienceOwner(),
+                                    entry.getCustomAudienceName(),
+                                    entry.getAdEventType()),
+                            1,
+                            Integer::sum);
+                }
+            }
+            removeOldestEventsLocked(mBuyerHistograms, numBuyerEvents);
+            removeOldestEventsLocked(mCustomAudienceHistograms, numCustomAudienceEvents);
+        }
+    }
+
+    /**
+     * Returns the number of indexed events in the buyer's histogram for the given ad counter key
+     * and event type which were registered at or after the given {@code startTime}.
+     *
+     * @throws IllegalStateException if the index has not been loaded
+     */
+    public int getNumEventsForBuyerAfterTime(
+            @NonNull String adCounterKey,
+            @NonNull AdTechIdentifier buyer,
+            @FrequencyCapFilters.AdEventType int adEventType,
+            @NonNull Instant startTime) {
+        Objects.requireNonNull(adCounterKey);
+        Objects.requireNonNull(buyer);
+        Objects.requireNonNull(startTime);
+
+        synchronized (mLock) {
+            return countLocked(
+                    mBuyerHistograms,
+                    new HistogramKey(adCounterKey, buyer, null, null, adEventType),
+                    startTime);
+        }
+    }
+
+    /**
+     * Returns the number of indexed events in the custom audience's histogram for the given ad
+     * counter key and event type which were registered at or after the given {@code startTime}.
+     *
+     * @throws IllegalStateException if the index has not been loaded
+     */
+    public int getNumEventsForCustomAudienceAfterTime(
+            @NonNull String adCounterKey,
+            @NonNull AdTechIdentifier buyer,
+            @NonNull String customAudienceOwner,
+            @NonNull String customAudienceName,
+            @FrequencyCapFilters.AdEventType int adEventType,
+            @NonNull Instant startTime) {
+        Objects.requireNonNull(adCounterKey);
+        Objects.requireNonNull(buyer);
+        Objects.requireNonNull(customAudienceOwner);
+        Objects.requireNonNull(customAudienceName);
+        Objects.requireNonNull(startTime);
+
+        synchronized (mLock) {
+            return countLocked(
+                    mCustomAudienceHistograms,
+                    new HistogramKey(
+                            adCounterKey,
+                            buyer,
+                            customAudienceOwner,
+                            customAudienceName,
+                            adEventType),
+                    startTime);
+        }
+    }
+
+    @GuardedBy("mLock")
+    private int countLocked(
+            Map<HistogramKey, SortedTimestamps> histograms, HistogramKey key, Instant startTime) {
+        if (!mIsLoaded) {
+            throw new IllegalStateException("Frequency cap histogram index has not been loaded");
+        }
+
+        SortedTimestamps timestamps = histograms.get(key);
+        if (timestamps == null) {
+            return 0;
+        }
+        return timestamps.countAtOrAfter(startTime.toEpochMilli());
+    }
+
+    @GuardedBy("mLock")
+    private void addEventLocked(
+            String adCounterKey,
+            AdTechIdentifier buyer,
+            @Nullable String customAudienceOwner,
+            @Nullable String customAudienceName,
+            int adEventType,
+            Instant timestamp) {
+        long timestampMillis = timestamp.toEpochMilli();
+
+        // Buyer-scoped counts include every event for the buyer, regardless of custom audience
+        mBuyerHistograms
+                .computeIfAbsent(
+                        new HistogramKey(adCounterKey, buyer, null, null, adEventType),
+                        unused -> new SortedTimestamps())
+                .add(timestampMillis);
+
+        if (customAudienceOwner != null && customAudienceName != null) {
+            mCustomAudienceHistograms
+                    .computeIfAbsent(
+                            new HistogramKey(
+                                    adCounterKey,
+                                    buyer,
+                                    customAudienceOwner,
+                                    customAudienceName,
+                                    adEventType),
+                            unused -> new SortedTimestamps())
+                    .add(timestampMillis);
+        }
+    }
+
+    @GuardedBy("mLock")
+    private static void removeEventsBeforeTimeLocked(
+            Map<HistogramKey, SortedTimestamps> histograms, long expiryTimeMillis) {
+        Iterator<SortedTimestamps> iterator = histograms.values().iterator();
+        while (iterator.hasNext()) {
+            SortedTimestamps timestamps = iterator.next();
+            timestamps.removeBefore(expiryTimeMillis);
+            if (timestamps.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @GuardedBy("mLock")
+    private static void removeOldestEventsLocked(
+            Map<HistogramKey, SortedTimestamps> histograms, Map<HistogramKey, Integer> numEvents) {
+        for (Map.Entry<HistogramKey, Integer> histogramNumEvents : numEvents.entrySet()) {
+            SortedTimestamps timestamps = histograms.get(histogramNumEvents.getKey());
+            if (timestamps == null) {
+                continue;
+            }
+            timestamps.removeFirst(histogramNumEvents.getValue());
+            if (timestamps.isEmpty()) {
+                histograms.remove(histogramNumEvents.getKey());
+            }
+        }
+    }
+
+    /** Key identifying a single histogram in the index. */
+    private static final class HistogramKey {
+        @NonNull private final String mAdCounterKey;
+        @NonNull private final AdTechIdentifier mBuyer;
+        @Nullable private final String mCustomAudienceOwner;
+        @Nullable private final String mCustomAudienceName;
+        private final int mAdEventType;
+        private final int mHashCode;
+
+        HistogramKey(
+                @NonNull String adCounterKey,
+                @NonNull AdTechIdentifier buyer,
+                @Nullable String customAudienceOwner,
+                @Nullable String customAudienceName,
+                int adEventType) {
+            mAdCounterKey = adCounterKey;
+            mBuyer = buyer;
+            mCustomAudienceOwner = customAudienceOwner;
+            mCustomAudienceName = customAudienceName;
+            mAdEventType = adEventType;
+            mHashCode =
+                    Objects.hash(
+                            adCounterKey,
+                            buyer,
+                            customAudienceOwner,
+                            customAudienceName,
+                            adEventType);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HistogramKey)) {
+                return false;
+            }
+            HistogramKey that = (HistogramKey) o;
+            return mAdEventType == that.mAdEventType
+                    && mAdCounterKey.equals(that.mAdCounterKey)
+                    && mBuyer.equals(that.mBuyer)
+                    && Objects.equals(mCustomAudienceOwner, that.mCustomAudienceOwner)
+                    && Objects.equals(mCustomAudienceName, that.mCustomAudienceName);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /** Growable array of epoch millisecond timestamps kept in ascending order. */
+    private static final class SortedTimestamps {
+        private long[] mTimestamps = new long[INITIAL_TIMESTAMP_CAPACITY];
+        private int mSize = 0;
+
+        void add(long timestampMillis) {
+            if (mSize == mTimestamps.length) {
+                mTimestamps = Arrays.copyOf(mTimestamps, mSize * 2);
+            }
+
+            // Events are almost always registered in increasing time order, so this is usually an
+            // append
+            int insertionIndex = mSize;
+            while (insertionIndex > 0 && mTimestamps[insertionIndex - 1] > timestampMillis) {
+                insertionIndex--;
+            }
+            System.arraycopy(
+                    mTimestamps,
+                    insertionIndex,
+                    mTimestamps,
+                    insertionIndex + 1,
+                    mSize - insertionIndex);
+            mTimestamps[insertionIndex] = timestampMillis;
+            mSize++;
+        }
+
+        int countAtOrAfter(long startTimeMillis) {
+            return mSize - lowerBound(startTimeMillis);
+        }
+
+        void removeBefore(long expiryTimeMillis) {
+            removeFirst(lowerBound(expiryTimeMillis));
+        }
+
+        void removeFirst(int numTimestamps) {
+            int numRemoved = Math.min(numTimestamps, mSize);
+            if (numRemoved == 0) {
+                return;
+            }
+            System.arraycopy(mTimestamps, numRemoved, mTimestamps, 0, mSize - numRemoved);
+            mSize -= numRemoved;
+        }
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        /** Returns the index of the first timestamp which is not less than the given value. */
+        private int lowerBound(long timestampMillis) {
+            int low = 0;
+            int high = mSize;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mTimestamps[mid] < timestampMillis) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -30,10 +30,14 @@ import com.android.internal.util.Preconditions;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -53,6 +57,12 @@ import java.util.stream.Collectors;
  * different instances pointing to the same file, transactions may be lost.
  *
  * <p>Keys must be non-null, non-empty strings, and values must be booleans.
+ *
+ * <p>With the journal enabled, each write is appended to a journal file next to the datastore file
+ * instead of rewriting the whole datastore file. The journal is replayed on initialization, and
+ * compacted into the datastore file once it holds as many records as the datastore has entries.
+ * Builds that predate the journal ignore it, so it must only be enabled once the module can no
+ * longer roll back to one of them.
  */
 public class BooleanFileDatastore {
     public static final String VERSION_KEY = "com.android.adservices.data.common.VERSION";
@@ -62,18 +72,45 @@ public class BooleanFileDatastore {
     private final Lock mReadLock = mReadWriteLock.readLock();
     private final Lock mWriteLock = mReadWriteLock.writeLock();
 
+    @VisibleForTesting static final String JOURNAL_FILE_SUFFIX = ".journal";
+    // The journal is compacted once it holds at least this many records.
+    @VisibleForTesting static final int MIN_JOURNAL_RECORDS_BEFORE_COMPACTION = 64;
+
+    private static final byte JOURNAL_PUT_FALSE = 0;
+    private static final byte JOURNAL_PUT_TRUE = 1;
+    private static final byte JOURNAL_REMOVE = 2;
+    private static final byte JOURNAL_REMOVE_BY_PREFIX = 3;
+    private static final byte JOURNAL_CLEAR = 4;
+    private static final byte JOURNAL_CLEAR_ALL_TRUE = 5;
+    private static final byte JOURNAL_CLEAR_ALL_FALSE = 6;
+
     private final AtomicFile mAtomicFile;
+    private final File mJournalFile;
+    private final boolean mJournalEnabled;
     private final Map<String, Boolean> mLocalMap = new HashMap<>();
 
+    @GuardedBy("mWriteLock")
+    private int mJournalRecords;
+
     public BooleanFileDatastore(
             @NonNull Context adServicesContext, @NonNull String filename, int datastoreVersion) {
+        this(adServicesContext, filename, datastoreVersion, /* journalEnabled= */ false);
+    }
+
+    public BooleanFileDatastore(
+            @NonNull Context adServicesContext,
+            @NonNull String filename,
+            int datastoreVersion,
+            boolean journalEnabled) {
         Objects.requireNonNull(adServicesContext);
         Objects.requireNonNull(filename);
         Preconditions.checkStringNotEmpty(filename, "Filename must not be empty");
         Preconditions.checkArgumentPositive(datastoreVersion, "Version must be positive");
 
         mAtomicFile = new AtomicFile(new File(adServicesContext.getFilesDir(), filename));
+        mJournalFile = new File(adServicesContext.getFilesDir(), filename + JOURNAL_FILE_SUFFIX);
         mDatastoreVersion = datastoreVersion;
+        mJournalEnabled = journalEnabled;
     }
 
     /**
@@ -90,6 +127,15 @@ public class BooleanFileDatastore {
             mReadLock.unlock();
         }
 
+        // The journal is replayed even if it is disabled, so that no write is lost when it gets
+        // disabled.
+        mWriteLock.lock();
+        try {
+            replayJournal();
+        } finally {
+            mWriteLock.unlock();
+        }
+
         // In the future, this could be a good place for upgrade/rollback for schemas
     }
 
@@ -119,6 +165,114 @@ public class BooleanFileDatastore {
             LogUtil.e(e, "Write to file failed");
             throw e;
         }
+
+        // The datastore file now holds every journaled write
+        if (mJournalRecords > 0 || mJournalFile.exists()) {
+            mJournalFile.delete();
+            mJournalRecords = 0;
+        }
+    }
+
+    // Commits a write already applied to the local map, either by appending it to the journal or
+    // by writing the whole map to file.
+    @GuardedBy("mWriteLock")
+    private void commit(byte operation, @Nullable String key) throws IOException {
+        if (!mJournalEnabled) {
+            writeToFile();
+            return;
+        }
+
+        final ByteArrayOutputStream record = new ByteArrayOutputStream();
+        final DataOutputStream recordStream = new DataOutputStream(record);
+        recordStream.writeByte(operation);
+        if (key != null) {
+            recordStream.writeUTF(key);
+        }
+        recordStream.flush();
+
+        try (FileOutputStream out = new FileOutputStream(mJournalFile, /* append= */ true)) {
+            out.write(record.toByteArray());
+            out.getFD().sync();
+        } catch (IOException e) {
+            LogUtil.e(e, "Write to journal failed");
+            throw e;
+        }
+        mJournalRecords++;
+
+        if (mJournalRecords
+                >= Math.max(MIN_JOURNAL_RECORDS_BEFORE_COMPACTION, mLocalMap.size())) {
+            writeToFile();
+        }
+    }
+
+    // Applies the journaled writes to the local map. A journal cut short by a process death ends
+    // with a truncated record, which is dropped. The journal is then compacted if needed.
+    @GuardedBy("mWriteLock")
+    private void replayJournal() throws IOException {
+        mJournalRecords = 0;
+        if (!mJournalFile.exists()) {
+            return;
+        }
+
+        boolean truncated = false;
+        try (DataInputStream in =
+                new DataInputStream(
+                        new ByteArrayInputStream(Files.readAllBytes(mJournalFile.toPath())))) {
+            while (in.available() > 0) {
+                byte operation = in.readByte();
+                if (!applyJournalRecord(operation, in)) {
+                    truncated = true;
+                    break;
+                }
+                mJournalRecords++;
+            }
+        } catch (EOFException e) {
+            truncated = true;
+        } catch (IOException e) {
+            LogUtil.e(e, "Read from journal failed");
+            throw e;
+        }
+
+        if (truncated) {
+            LogUtil.w("Dropping truncated record from journal %s", mJournalFile);
+        }
+        if (truncated
+                || !mJournalEnabled
+                || mJournalRecords
+                        >= Math.max(MIN_JOURNAL_RECORDS_BEFORE_COMPACTION, mLocalMap.size())) {
+            writeToFile();
+        }
+    }
+
+    // Returns false if the operation is unknown.
+    @GuardedBy("mWriteLock")
+    private boolean applyJournalRecord(byte operation, DataInputStream in) throws IOException {
+        switch (operation) {
+            case JOURNAL_PUT_FALSE:
+                mLocalMap.put(in.readUTF(), false);
+                return true;
+            case JOURNAL_PUT_TRUE:
+                mLocalMap.put(in.readUTF(), true);
+                return true;
+            case JOURNAL_REMOVE:
+                mLocalMap.remove(in.readUTF());
+                return true;
+            case JOURNAL_REMOVE_BY_PREFIX:
+                String prefix = in.readUTF();
+                mLocalMap.keySet().removeIf(key -> key.startsWith(prefix));
+                return true;
+            case JOURNAL_CLEAR:
+                mLocalMap.clear();
+                return true;
+            case JOURNAL_CLEAR_ALL_TRUE:
+                mLocalMap.values().removeIf(value -> value);
+                return true;
+            case JOURNAL_CLEAR_ALL_FALSE:
+                mLocalMap.values().removeIf(value -> !value);
+                return true;
+            default:
+                return false;
+        }
     }
 
     // Note that this completely replaces the loaded datastore with the file's data, instead of
@@ -164,7 +318,7 @@ public class BooleanFileDatastore {
         mWriteLock.lock();
         try {
             mLocalMap.put(key, value);
-            writeToFile();
+            commit(value ? JOURNAL_PUT_TRUE : JOURNAL_PUT_FALSE, key);
         } finally {
             mWriteLock.unlock();
         }
@@ -205,7 +359,7 @@ public class BooleanFileDatastore {
                 return valueInLocalMap;
             } else {
                 mLocalMap.put(key, value);
-                writeToFile();
+                commit(value ? JOURNAL_PUT_TRUE : JOURNAL_PUT_FALSE, key);
                 return value;
             }
         } finally {
@@ -296,7 +450,7 @@ public class BooleanFileDatastore {
         mWriteLock.lock();
         try {
             mLocalMap.clear();
-            writeToFile();
+            commit(JOURNAL_CLEAR, /* key= */ null);
         } finally {
             mWriteLock.unlock();
         }
@@ -306,7 +460,7 @@ public class BooleanFileDatastore {
         mWriteLock.lock();
         try {
             mLocalMap.entrySet().removeIf(entry -> entry.getValue().equals(filter));
-            writeToFile();
+            commit(filter ? JOURNAL_CLEAR_ALL_TRUE : JOURNAL_CLEAR_ALL_FALSE, /* key= */ null);
         } finally {
             mWriteLock.unlock();
         }
@@ -353,7 +507,7 @@ public class BooleanFileDatastore {
         mWriteLock.lock();
         try {
             mLocalMap.remove(key);
-            writeToFile();
+            commit(JOURNAL_REMOVE, key);
         } finally {
             mWriteLock.unlock();
         }
@@ -379,7 +533,7 @@ public class BooleanFileDatastore {
             Set<String> keysToDelete =
                     allKeys.stream().filter(s -> s.startsWith(prefix)).collect(Collectors.toSet());
             allKeys.removeAll(keysToDelete); // Modifying the keySet updates the underlying map
-            writeToFile();
+            commit(JOURNAL_REMOVE_BY_PREFIX, prefix);
         } finally {
             mWriteLock.unlock();
         }
@@ -396,6 +550,8 @@ public class BooleanFileDatastore {
         try {
             mLocalMap.clear();
             mAtomicFile.delete();
+            mJournalFile.delete();
+            mJournalRecords = 0;
         } finally {
             mWriteLock.unlock();
         }
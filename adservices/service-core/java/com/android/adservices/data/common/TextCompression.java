@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.data.common;
+
+import android.util.Base64;
+
+import androidx.annotation.Nullable;
+
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses large text values persisted in the FLEDGE databases.
+ *
+ * <p>Values of at least {@link #MIN_COMPRESSED_LENGTH} characters are stored DEFLATE-compressed
+ * and Base64-encoded after {@link #COMPRESSED_PREFIX}, if that makes them shorter. Other values are
+ * stored as they are, except that values starting with {@link #PREFIX_MARKER} are escaped with
+ * {@link #RAW_PREFIX}. Values stored before compression was introduced are read as they are.
+ */
+public final class TextCompression {
+    @VisibleForTesting static final int MIN_COMPRESSED_LENGTH = 1024;
+    @VisibleForTesting static final char PREFIX_MARKER = '~';
+    @VisibleForTesting static final String COMPRESSED_PREFIX = PREFIX_MARKER + "z";
+    @VisibleForTesting static final String RAW_PREFIX = PREFIX_MARKER + "r";
+    private static final int BUFFER_SIZE = 4096;
+
+    private TextCompression() {}
+
+    /** Returns the value to persist for the given text. */
+    @Nullable
+    public static String compress(@Nullable String text) {
+        if (text == null) {
+            return null;
+        }
+        if (text.length() >= MIN_COMPRESSED_LENGTH) {
+            String compressed =
+                    COMPRESSED_PREFIX
+                            + Base64.encodeToString(
+                                    deflate(text.getBytes(StandardCharsets.UTF_8)),
+                                    Base64.NO_WRAP);
+            if (compressed.length() < text.length()) {
+                return compressed;
+            }
+        }
+        if (!text.isEmpty() && text.charAt(0) == PREFIX_MARKER) {
+            return RAW_PREFIX + text;
+        }
+        return text;
+    }
+
+    /**
+     * Returns the text of a persisted value.
+     *
+     * @throws IllegalArgumentException if the value is not a valid compressed value
+     */
+    @Nullable
+    public static String decompress(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.startsWith(COMPRESSED_PREFIX)) {
+            byte[] compressed = Base64.decode(value.substring(COMPRESSED_PREFIX.length()), 0);
+            return new String(inflate(compressed), StandardCharsets.UTF_8);
+        }
+        if (value.startsWith(RAW_PREFIX)) {
+            return value.substring(RAW_PREFIX.length());
+        }
+        return value;
+    }
+
+    /** Returns whether the persisted value is compressed. */
+    public static boolean isCompressed(@Nullable String value) {
+        return value != null && value.startsWith(COMPRESSED_PREFIX);
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed value");
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -23,6 +23,8 @@ import androidx.annotation.NonNull;
 
 import com.android.adservices.LogUtil;
 import com.android.adservices.data.common.BooleanFileDatastore;
+import com.android.adservices.service.Flags;
+import com.android.adservices.service.FlagsFactory;
 import com.android.adservices.service.common.compat.PackageManagerCompatUtils;
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
@@ -31,8 +33,10 @@ import com.google.common.base.Preconditions;
 
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -63,15 +67,34 @@ public class AppConsentDao {
 
     private final PackageManager mPackageManager;
 
+    private final boolean mPackageUidIndexEnabled;
+
+    /**
+     * UIDs of the installed packages already looked up, so that app consent checks do not need a
+     * {@link PackageManager} call. An entry is dropped when its package is installed or
+     * uninstalled, as the UID may change.
+     */
+    private final Map<String, Integer> mPackageUids = new ConcurrentHashMap<>();
+
     /** Constructs the {@link AppConsentDao}. */
     @VisibleForTesting
     public AppConsentDao(
             @NonNull BooleanFileDatastore datastore, @NonNull PackageManager packageManager) {
+        this(datastore, packageManager, /* packageUidIndexEnabled= */ false);
+    }
+
+    /** Constructs the {@link AppConsentDao}. */
+    @VisibleForTesting
+    public AppConsentDao(
+            @NonNull BooleanFileDatastore datastore,
+            @NonNull PackageManager packageManager,
+            boolean packageUidIndexEnabled) {
         Objects.requireNonNull(datastore);
         Objects.requireNonNull(packageManager);
 
         mDatastore = datastore;
         mPackageManager = packageManager;
+        mPackageUidIndexEnabled = packageUidIndexEnabled;
     }
 
     /** @return the singleton instance of the {@link AppConsentDao} */
@@ -81,10 +104,19 @@ public class AppConsentDao {
         if (sAppConsentDao == null) {
             synchronized (SINGLETON_LOCK) {
                 if (sAppConsentDao == null) {
+                    Flags flags = FlagsFactory.getFlags();
                     BooleanFileDatastore datastore =
-                            new BooleanFileDatastore(context, DATASTORE_NAME, DATASTORE_VERSION);
+                            new BooleanFileDatastore(
+                                    context,
+                                    DATASTORE_NAME,
+                                    DATASTORE_VERSION,
+                                    flags.getEnableConsentDatastoreJournal());
                     PackageManager packageManager = context.getPackageManager();
-                    sAppConsentDao = new AppConsentDao(datastore, packageManager);
+                    sAppConsentDao =
+                            new AppConsentDao(
+                                    datastore,
+                                    packageManager,
+                                    flags.getConsentManagerEnableAppUidIndex());
                 }
             }
         }
@@ -226,6 +258,7 @@ public class AppConsentDao {
     public void clearConsentForUninstalledApp(@NonNull String packageName, int packageUid)
             throws IllegalArgumentException, IOException {
         initializeDatastoreIfNeeded();
+        clearPackageUid(packageName);
         // Do not check whether the application has been uninstalled; in an edge case where the app
         // may have been reinstalled, data that should have been cleared might then be persisted
         mDatastore.remove(toDatastoreKey(packageName, packageUid));
@@ -247,6 +280,7 @@ public class AppConsentDao {
         Preconditions.checkArgument(!packageName.isEmpty(), "Invalid package name");
 
         initializeDatastoreIfNeeded();
+        clearPackageUid(packageName);
 
         // It's not possible to use the toDatastoreKey method to look up the key because the
         // package has been uninstalled. Instead, ask the datastore to clear data for all entries
@@ -317,14 +351,36 @@ public class AppConsentDao {
     public int getUidForInstalledPackageName(@NonNull String packageName) {
         Objects.requireNonNull(packageName);
 
+        if (mPackageUidIndexEnabled) {
+            Integer packageUid = mPackageUids.get(packageName);
+            if (packageUid != null) {
+                return packageUid;
+            }
+        }
+
         try {
-            return PackageManagerCompatUtils.getPackageUid(mPackageManager, packageName, 0);
+            int packageUid =
+                    PackageManagerCompatUtils.getPackageUid(mPackageManager, packageName, 0);
+            if (mPackageUidIndexEnabled) {
+                mPackageUids.put(packageName, packageUid);
+            }
+            return packageUid;
         } catch (PackageManager.NameNotFoundException exception) {
             LogUtil.e(exception, "Package name not found");
             throw new IllegalArgumentException(exception);
         }
     }
 
+    /**
+     * Drops the UID of the given package from the in-memory index. Must be called when the package
+     * is installed or uninstalled.
+     */
+    public void clearPackageUid(@NonNull String packageName) {
+        Objects.requireNonNull(packageName);
+
+        mPackageUids.remove(packageName);
+    }
+
     /** Returns the list of packages installed on the device of the user. */
     @NonNull
     public Set<String> getInstalledPackages() {
@@ -53,6 +53,9 @@ import java.util.Set;
 @Dao
 public abstract class CustomAudienceDao {
     private static final LoggerFactory.Logger sLogger = LoggerFactory.getFledgeLogger();
+
+    private final CustomAudienceSnapshotCache mSnapshotCache = new CustomAudienceSnapshotCache();
+
     /**
      * Add user to a new custom audience. As designed, will override existing one.
      *
@@ -126,6 +129,7 @@ public abstract class CustomAudienceDao {
                         .build();
 
         insertOrOverwriteCustomAudienceAndBackgroundFetchData(customAudience, fetchData);
+        mSnapshotCache.invalidate();
     }
 
     /**
@@ -135,13 +139,27 @@ public abstract class CustomAudienceDao {
      * <p>If no custom audience is found corresponding to the given {@link
      * DBCustomAudienceBackgroundFetchData}, no action is taken.
      */
-    @Transaction
     public void updateCustomAudienceAndBackgroundFetchData(
             @NonNull DBCustomAudienceBackgroundFetchData fetchData,
             @NonNull CustomAudienceUpdatableData updatableData) {
         Objects.requireNonNull(fetchData);
         Objects.requireNonNull(updatableData);
 
+        updateCustomAudienceAndBackgroundFetchDataInternal(fetchData, updatableData);
+        mSnapshotCache.invalidate();
+    }
+
+    /**
+     * Updates a custom audience and its background fetch data in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #updateCustomAudienceAndBackgroundFetchData(DBCustomAudienceBackgroundFetchData,
+     * CustomAudienceUpdatableData)} instead.
+     */
+    @Transaction
+    protected void updateCustomAudienceAndBackgroundFetchDataInternal(
+            @NonNull DBCustomAudienceBackgroundFetchData fetchData,
+            @NonNull CustomAudienceUpdatableData updatableData) {
         DBCustomAudience customAudience =
                 getCustomAudienceByPrimaryKey(
                         fetchData.getOwner(), fetchData.getBuyer(), fetchData.getName());
@@ -321,9 +339,22 @@ public abstract class CustomAudienceDao {
      * Delete all custom audience data corresponding to the given {@code owner}, {@code buyer}, and
      * {@code name} in a single transaction.
      */
-    @Transaction
     public void deleteAllCustomAudienceDataByPrimaryKey(
             @NonNull String owner, @NonNull AdTechIdentifier buyer, @NonNull String name) {
+        deleteAllCustomAudienceDataByPrimaryKeyInternal(owner, buyer, name);
+        mSnapshotCache.invalidate();
+    }
+
+    /**
+     * Delete all custom audience data corresponding to the given {@code owner}, {@code buyer}, and
+     * {@code name} in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #deleteAllCustomAudienceDataByPrimaryKey(String, AdTechIdentifier, String)} instead.
+     */
+    @Transaction
+    protected void deleteAllCustomAudienceDataByPrimaryKeyInternal(
+            @NonNull String owner, @NonNull AdTechIdentifier buyer, @NonNull String name) {
         deleteCustomAudienceByPrimaryKey(owner, buyer, name);
         deleteCustomAudienceBackgroundFetchDataByPrimaryKey(owner, buyer, name);
     }
@@ -362,8 +393,22 @@ public abstract class CustomAudienceDao {
      *
      * @return the number of deleted custom audiences
      */
-    @Transaction
     public int deleteAllExpiredCustomAudienceData(@NonNull Instant expiryTime) {
+        int numDeletedCustomAudiences = deleteAllExpiredCustomAudienceDataInternal(expiryTime);
+        mSnapshotCache.invalidate();
+        return numDeletedCustomAudiences;
+    }
+
+    /**
+     * Deletes all expired custom audience data in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #deleteAllExpiredCustomAudienceData(Instant)} instead.
+     *
+     * @return the number of deleted custom audiences
+     */
+    @Transaction
+    protected int deleteAllExpiredCustomAudienceDataInternal(@NonNull Instant expiryTime) {
         deleteAllExpiredCustomAudienceBackgroundFetchData(expiryTime);
         return deleteAllExpiredCustomAudiences(expiryTime);
     }
@@ -402,12 +447,28 @@ public abstract class CustomAudienceDao {
      * @return a {@link CustomAudienceStats} object containing only the number of deleted custom
      *     audiences and the number of disallowed owner apps found
      */
-    @Transaction
     @NonNull
     public CustomAudienceStats deleteAllDisallowedOwnerCustomAudienceData(
             @NonNull PackageManager packageManager, @NonNull Flags flags) {
         Objects.requireNonNull(packageManager);
         Objects.requireNonNull(flags);
+
+        CustomAudienceStats stats =
+                deleteAllDisallowedOwnerCustomAudienceDataInternal(packageManager, flags);
+        mSnapshotCache.invalidate();
+        return stats;
+    }
+
+    /**
+     * Deletes all custom audience data belonging to disallowed owner apps in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #deleteAllDisallowedOwnerCustomAudienceData(PackageManager, Flags)} instead.
+     */
+    @Transaction
+    @NonNull
+    protected CustomAudienceStats deleteAllDisallowedOwnerCustomAudienceDataInternal(
+            @NonNull PackageManager packageManager, @NonNull Flags flags) {
         List<String> ownersToRemove = getAllCustomAudienceOwners();
 
         CleanupUtils.removeAllowedPackages(ownersToRemove, packageManager, flags);
@@ -461,13 +522,30 @@ public abstract class CustomAudienceDao {
      * @return a {@link CustomAudienceStats} object containing only the number of deleted custom
      *     audiences and the number of disallowed owner apps found
      */
-    @Transaction
     @NonNull
     public CustomAudienceStats deleteAllDisallowedBuyerCustomAudienceData(
             @NonNull EnrollmentDao enrollmentDao, @NonNull Flags flags) {
         Objects.requireNonNull(enrollmentDao);
         Objects.requireNonNull(flags);
 
+        CustomAudienceStats stats =
+                deleteAllDisallowedBuyerCustomAudienceDataInternal(enrollmentDao, flags);
+        mSnapshotCache.invalidate();
+        return stats;
+    }
+
+    /**
+     * Deletes all custom audience data belonging to disallowed buyer ad techs in a single
+     * transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #deleteAllDisallowedBuyerCustomAudienceData(EnrollmentDao, Flags)} instead.
+     */
+    @Transaction
+    @NonNull
+    protected CustomAudienceStats deleteAllDisallowedBuyerCustomAudienceDataInternal(
+            @NonNull EnrollmentDao enrollmentDao, @NonNull Flags flags) {
+
         if (flags.getDisableFledgeEnrollmentCheck()) {
             sLogger.d("FLEDGE enrollment check disabled; skipping enrolled buyer cleanup");
             return CustomAudienceStats.builder()
@@ -524,8 +602,19 @@ public abstract class CustomAudienceDao {
     protected abstract void deleteAllCustomAudienceOverrides();
 
     /** Deletes ALL custom audience data from the database in a single transaction. */
-    @Transaction
     public void deleteAllCustomAudienceData() {
+        deleteAllCustomAudienceDataInternal();
+        mSnapshotCache.invalidate();
+    }
+
+    /**
+     * Deletes ALL custom audience data from the database in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #deleteAllCustomAudienceData()} instead.
+     */
+    @Transaction
+    protected void deleteAllCustomAudienceDataInternal() {
         deleteAllCustomAudiences();
         deleteAllCustomAudienceBackgroundFetchData();
         deleteAllCustomAudienceOverrides();
@@ -564,8 +653,20 @@ public abstract class CustomAudienceDao {
      * Deletes all custom audience data belonging to the {@code owner} application from the database
      * in a single transaction.
      */
-    @Transaction
     public void deleteCustomAudienceDataByOwner(@NonNull String owner) {
+        deleteCustomAudienceDataByOwnerInternal(owner);
+        mSnapshotCache.invalidate();
+    }
+
+    /**
+     * Deletes all custom audience data belonging to the {@code owner} application from the database
+     * in a single transaction.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #deleteCustomAudienceDataByOwner(String)} instead.
+     */
+    @Transaction
+    protected void deleteCustomAudienceDataByOwnerInternal(@NonNull String owner) {
         deleteCustomAudiencesByOwner(owner);
         deleteCustomAudienceBackgroundFetchDataByOwner(owner);
         deleteCustomAudienceOverridesByOwner(owner);
@@ -602,6 +703,40 @@ public abstract class CustomAudienceDao {
     public abstract List<DBCustomAudience> getActiveCustomAudienceByBuyers(
             List<AdTechIdentifier> buyers, Instant currentTime, long activeWindowTimeMs);
 
+    /**
+     * Fetch all the active Custom Audience corresponding to the buyers, like {@link
+     * #getActiveCustomAudienceByBuyers(List, Instant, long)}, from in-memory per-buyer snapshots.
+     *
+     * <p>The snapshot of a buyer is read from the database the first time it is needed, and all
+     * snapshots are dropped whenever custom audiences are added, updated or removed through this
+     * DAO.
+     *
+     * @param buyers associated with the Custom Audience
+     * @param currentTime to compare against CA time values and find an active CA
+     * @return All the active Custom Audience that represent given buyers
+     */
+    @NonNull
+    public List<DBCustomAudience> getActiveCustomAudienceByBuyersFromSnapshots(
+            @NonNull List<AdTechIdentifier> buyers,
+            @NonNull Instant currentTime,
+            long activeWindowTimeMs) {
+        return mSnapshotCache.getActiveCustomAudiences(
+                buyers, currentTime, activeWindowTimeMs, this::getCompleteCustomAudienceByBuyers);
+    }
+
+    /**
+     * Fetch all the Custom Audience corresponding to the buyers which have all the data needed to
+     * take part in ad selection, whatever their activation, expiration and update times.
+     *
+     * <p>This method is not intended to be called on its own. Please use {@link
+     * #getActiveCustomAudienceByBuyersFromSnapshots(List, Instant, long)} instead.
+     */
+    @Query(
+            "SELECT * FROM custom_audience WHERE buyer in (:buyers) AND user_bidding_signals IS"
+                    + " NOT NULL AND trusted_bidding_data_uri IS NOT NULL AND ads IS NOT NULL")
+    protected abstract List<DBCustomAudience> getCompleteCustomAudienceByBuyers(
+            List<AdTechIdentifier> buyers);
+
     /**
      * Gets up to {@code maxRowsReturned} rows of {@link DBCustomAudienceBackgroundFetchData} which
      * correspond to custom audiences that are active, not expired, and eligible for update.
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.data.customaudience;
+
+import android.adservices.common.AdTechIdentifier;
+
+import androidx.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+
+import com.google.common.collect.ImmutableList;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Caches an immutable snapshot of the custom audiences of each buyer which may take part in ad
+ * selection, so that auctions do not read and decode them from the database every time.
+ *
+ * <p>A snapshot holds the custom audiences of the buyer with complete bidding data, whatever their
+ * activation, expiration and update times, which are checked in memory when the snapshot is read.
+ * The snapshots must be invalidated once a change to the custom audiences is committed. Snapshots
+ * loaded while a change is committed are not cached.
+ */
+final class CustomAudienceSnapshotCache {
+    /** Loads the custom audiences with complete bidding data of the given buyers. */
+    interface Loader {
+        List<DBCustomAudience> load(List<AdTechIdentifier> buyers);
+    }
+
+    private final Object mLock = new Object();
+
+    @GuardedBy("mLock")
+    private final Map<AdTechIdentifier, List<DBCustomAudience>> mSnapshots = new HashMap<>();
+
+    @GuardedBy("mLock")
+    private long mGeneration;
+
+    /**
+     * Returns the active custom audiences of the given buyers, loading the missing snapshots with
+     * {@code loader}.
+     *
+     * @param currentTime to compare against custom audience time values and find active ones
+     * @param activeWindowTimeMs how long after its last update a custom audience stays active
+     */
+    @NonNull
+    List<DBCustomAudience> getActiveCustomAudiences(
+            @NonNull List<AdTechIdentifier> buyers,
+            @NonNull Instant currentTime,
+            long activeWindowTimeMs,
+            @NonNull Loader loader) {
+        Objects.requireNonNull(buyers);
+        Objects.requireNonNull(currentTime);
+        Objects.requireNonNull(loader);
+
+        Set<AdTechIdentifier> uniqueBuyers = new LinkedHashSet<>(buyers);
+        Map<AdTechIdentifier, List<DBCustomAudience>> snapshots = new HashMap<>();
+        List<AdTechIdentifier> missingBuyers = new ArrayList<>();
+        long generation;
+        synchronized (mLock) {
+            generation = mGeneration;
+            for (AdTechIdentifier buyer : uniqueBuyers) {
+                List<DBCustomAudience> snapshot = mSnapshots.get(buyer);
+                if (snapshot != null) {
+                    snapshots.put(buyer, snapshot);
+                } else {
+                    missingBuyers.add(buyer);
+                }
+            }
+        }
+
+        if (!missingBuyers.isEmpty()) {
+            Map<AdTechIdentifier, List<DBCustomAudience>> loadedSnapshots =
+                    loadSnapshots(missingBuyers, loader);
+            snapshots.putAll(loadedSnapshots);
+            synchronized (mLock) {
+                if (generation == mGeneration) {
+                    mSnapshots.putAll(loadedSnapshots);
+                }
+            }
+        }
+
+        // Times are persisted with millisecond precision
+        Instant now = Instant.ofEpochMilli(currentTime.toEpochMilli());
+        List<DBCustomAudience> activeCustomAudiences = new ArrayList<>();
+        for (AdTechIdentifier buyer : uniqueBuyers) {
+            for (DBCustomAudience customAudience : snapshots.get(buyer)) {
+                if (isActive(customAudience, now, activeWindowTimeMs)) {
+                    activeCustomAudiences.add(customAudience);
+                }
+            }
+        }
+        return activeCustomAudiences;
+    }
+
+    /** Drops all snapshots. Must be called once a change to the custom audiences is committed. */
+    void invalidate() {
+        synchronized (mLock) {
+            mGeneration++;
+            mSnapshots.clear();
+        }
+    }
+
+    private static Map<AdTechIdentifier, List<DBCustomAudience>> loadSnapshots(
+            List<AdTechIdentifier> buyers, Loader loader) {
+        Map<AdTechIdentifier, ImmutableList.Builder<DBCustomAudience>> builders = new HashMap<>();
+        for (AdTechIdentifier buyer : buyers) {
+            builders.put(buyer, ImmutableList.builder());
+        }
+        List<DBCustomAudience> customAudiences = loader.load(buyers);
+        if (customAudiences != null) {
+            for (DBCustomAudience customAudience : customAudiences) {
+                ImmutableList.Builder<DBCustomAudience> builder =
+                        builders.get(customAudience.getBuyer());
+                if (builder != null) {
+                    builder.add(customAudience);
+                }
+            }
+        }
+
+        Map<AdTechIdentifier, List<DBCustomAudience>> snapshots = new HashMap<>();
+        builders.forEach((buyer, builder) -> snapshots.put(buyer, builder.build()));
+        return snapshots;
+    }
+
+    private static boolean isActive(
+            DBCustomAudience customAudience, Instant now, long activeWindowTimeMs) {
+        return !customAudience.getActivationTime().isAfter(now)
+                && now.isBefore(customAudience.getExpirationTime())
+                && !customAudience
+                        .getLastAdsAndBiddingDataUpdatedTime()
+                        .plusMillis(activeWindowTimeMs)
+                        .isBefore(now);
+    }
+}
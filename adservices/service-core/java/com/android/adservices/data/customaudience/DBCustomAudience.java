@@ -31,16 +31,21 @@ import androidx.room.TypeConverter;
 import androidx.room.TypeConverters;
 
 import com.android.adservices.data.common.DBAdData;
+import com.android.adservices.data.common.TextCompression;
 import com.android.adservices.service.Flags;
 import com.android.adservices.service.customaudience.CustomAudienceUpdatableData;
 import com.android.internal.util.Preconditions;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -549,10 +554,21 @@ public class DBCustomAudience {
     public static class Converters {
 
         private final AdDataConversionStrategy mAdDataConversionStrategy;
+        private final boolean mCompressionEnabled;
 
         public Converters(boolean filteringEnabled) {
+            this(filteringEnabled, /* compressionEnabled= */ false);
+        }
+
+        /**
+         * @param filteringEnabled whether the ad filtering data is persisted
+         * @param compressionEnabled whether large ad lists are persisted compressed, see {@link
+         *     TextCompression}. Compressed ad lists are read whatever the value.
+         */
+        public Converters(boolean filteringEnabled, boolean compressionEnabled) {
             mAdDataConversionStrategy =
                     AdDataConversionStrategyFactory.getAdDataConversionStrategy(filteringEnabled);
+            mCompressionEnabled = compressionEnabled;
         }
 
         /** Serialize {@link List<DBAdData>} to Json. */
@@ -568,20 +584,32 @@ public class DBCustomAudience {
                 for (DBAdData adData : adDataList) {
                     jsonArray.put(mAdDataConversionStrategy.toJson(adData));
                 }
-                return jsonArray.toString();
+                return mCompressionEnabled
+                        ? TextCompression.compress(jsonArray.toString())
+                        : jsonArray.toString();
             } catch (JSONException jsonException) {
                 throw new RuntimeException("Error serialize List<AdData>.", jsonException);
             }
         }
 
-        /** Deserialize {@link List<DBAdData>} from Json. */
+        /**
+         * Deserialize {@link List<DBAdData>} from Json.
+         *
+         * <p>Compressed ad lists are only decompressed and parsed when the list is first accessed.
+         */
         @TypeConverter
         @Nullable
         public List<DBAdData> fromJson(String json) {
             if (json == null) {
                 return null;
             }
+            if (TextCompression.isCompressed(json)) {
+                return new LazyAdDataList(() -> parseAdDataList(TextCompression.decompress(json)));
+            }
+            return parseAdDataList(json);
+        }
 
+        private List<DBAdData> parseAdDataList(String json) {
             try {
                 JSONArray array = new JSONArray(json);
                 List<DBAdData> result = new ArrayList<>();
@@ -594,5 +622,24 @@ public class DBCustomAudience {
                 throw new RuntimeException("Error deserialize List<AdData>.", jsonException);
             }
         }
+
+        /** An ad list which is decompressed and parsed when it is first accessed. */
+        private static final class LazyAdDataList extends AbstractList<DBAdData> {
+            private final Supplier<List<DBAdData>> mAdDataList;
+
+            LazyAdDataList(Supplier<List<DBAdData>> adDataList) {
+                mAdDataList = Suppliers.memoize(adDataList);
+            }
+
+            @Override
+            public DBAdData get(int index) {
+                return mAdDataList.get().get(index);
+            }
+
+            @Override
+            public int size() {
+                return mAdDataList.get().size();
+            }
+        }
     }
 }
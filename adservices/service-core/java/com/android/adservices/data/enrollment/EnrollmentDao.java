@@ -35,11 +35,15 @@ import com.android.adservices.service.Flags;
 import com.android.adservices.service.FlagsFactory;
 import com.android.adservices.service.enrollment.EnrollmentData;
 import com.android.adservices.service.measurement.util.Web;
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -54,6 +58,17 @@ public class EnrollmentDao implements IEnrollmentDao {
     @VisibleForTesting static final String ENROLLMENT_SHARED_PREF = "adservices_enrollment";
     @VisibleForTesting static final String IS_SEEDED = "is_seeded";
 
+    private final Object mMeasurementUrlIndexLock = new Object();
+
+    /**
+     * Enrollments by the site and by the origin of their source and trigger registration URLs, so
+     * that measurement URLs are matched without scanning the table. Built on first use and dropped
+     * whenever the table changes.
+     */
+    @GuardedBy("mMeasurementUrlIndexLock")
+    @Nullable
+    private MeasurementUrlIndex mMeasurementUrlIndex;
+
     @VisibleForTesting
     public EnrollmentDao(Context context, SharedDbHelper dbHelper, Flags flags) {
         this(context, dbHelper, flags, flags.isEnableEnrollmentTestSeed());
@@ -167,6 +182,15 @@ public class EnrollmentDao implements IEnrollmentDao {
             return null;
         }
 
+        if (mFlags.getEnrollmentMeasurementUrlIndexEnabled()) {
+            EnrollmentData data =
+                    getMeasurementUrlIndex(db).get(registrationBaseUri.get(), originMatch);
+            if (data == null) {
+                LogUtil.d("Failed to match enrollment for url \"%s\"", url);
+            }
+            return data;
+        }
+
         String selectionQuery =
                 getAttributionUrlSelection(
                                 EnrollmentTables.EnrollmentDataContract
@@ -212,6 +236,37 @@ public class EnrollmentDao implements IEnrollmentDao {
         }
     }
 
+    private MeasurementUrlIndex getMeasurementUrlIndex(SQLiteDatabase db) {
+        synchronized (mMeasurementUrlIndexLock) {
+            if (mMeasurementUrlIndex == null) {
+                MeasurementUrlIndex index = new MeasurementUrlIndex();
+                try (Cursor cursor =
+                        db.query(
+                                EnrollmentTables.EnrollmentDataContract.TABLE,
+                                /*columns=*/ null,
+                                /*selection=*/ null,
+                                /*selectionArgs=*/ null,
+                                /*groupBy=*/ null,
+                                /*having=*/ null,
+                                /*orderBy=*/ null,
+                                /*limit=*/ null)) {
+                    while (cursor != null && cursor.moveToNext()) {
+                        index.add(SqliteObjectMapper.constructEnrollmentDataFromCursor(cursor));
+                    }
+                }
+                mMeasurementUrlIndex = index;
+            }
+            return mMeasurementUrlIndex;
+        }
+    }
+
+    /** Drops the measurement URL index. Must be called after any change to the table. */
+    private void invalidateMeasurementUrlIndex() {
+        synchronized (mMeasurementUrlIndexLock) {
+            mMeasurementUrlIndex = null;
+        }
+    }
+
     /**
      * Validates enrollment urls returned by selection query by matching its scheme + first
      * subdomain to that of registration uri.
@@ -441,6 +496,8 @@ public class EnrollmentDao implements IEnrollmentDao {
         } catch (SQLException e) {
             LogUtil.e("Failed to insert EnrollmentData. Exception : " + e.getMessage());
             return false;
+        } finally {
+            invalidateMeasurementUrlIndex();
         }
         return true;
     }
@@ -460,6 +517,8 @@ public class EnrollmentDao implements IEnrollmentDao {
         } catch (SQLException e) {
             LogUtil.e("Failed to delete EnrollmentData." + e.getMessage());
             return false;
+        } finally {
+            invalidateMeasurementUrlIndex();
         }
         return true;
     }
@@ -483,7 +542,33 @@ public class EnrollmentDao implements IEnrollmentDao {
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            invalidateMeasurementUrlIndex();
         }
         return success;
     }
+
+    /** Enrollments by the site and by the origin of their measurement registration URLs. */
+    private static final class MeasurementUrlIndex {
+        private final Map<Uri, EnrollmentData> mBySite = new HashMap<>();
+        private final Map<Uri, EnrollmentData> mByOrigin = new HashMap<>();
+
+        private void add(EnrollmentData data) {
+            List<String> urls = new ArrayList<>(data.getAttributionSourceRegistrationUrl());
+            urls.addAll(data.getAttributionTriggerRegistrationUrl());
+            for (String url : urls) {
+                Uri uri = Uri.parse(url);
+                // The first enrollment of a site or origin wins, as with the table scan
+                Web.topPrivateDomainAndScheme(uri)
+                        .ifPresent(site -> mBySite.putIfAbsent(site, data));
+                Web.originAndScheme(uri).ifPresent(origin -> mByOrigin.putIfAbsent(origin, data));
+            }
+        }
+
+        @Nullable
+        private EnrollmentData get(Uri registrationBaseUri, boolean originMatch) {
+            return originMatch
+                    ? mByOrigin.get(registrationBaseUri)
+                    : mBySite.get(registrationBaseUri);
+        }
+    }
 }
@@ -38,6 +38,7 @@ import com.android.adservices.service.measurement.reporting.DebugReport;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -77,6 +78,15 @@ public interface IMeasurementDao {
      */
     Trigger getTrigger(String triggerId) throws DatastoreException;
 
+    /**
+     * Queries and returns the {@link Trigger}s with the given IDs in a single query.
+     *
+     * @param triggerIds Ids of the requested Triggers
+     * @return the requested Triggers in the order of {@code triggerIds}, skipping any Id that does
+     *     not match a Trigger
+     */
+    List<Trigger> getTriggers(@NonNull List<String> triggerIds) throws DatastoreException;
+
     /**
      * Fetches the count of aggregate reports for the provided destination.
      *
@@ -125,6 +135,17 @@ public interface IMeasurementDao {
             long windowEndTime)
             throws DatastoreException;
 
+    /**
+     * Gets the enrollment ID and trigger time of every entry in the Attribution table in a time
+     * window with matching publisher and destination, so that several rate limit counts of the
+     * same sites can be computed from a single query.
+     *
+     * @return pairs of enrollment ID and trigger time of the matching attributions
+     */
+    List<Pair<String, Long>> getEnrollmentIdsAndTimesPerPublisherXDestinationInAttribution(
+            Uri sourceSite, Uri destinationSite, long windowStartTime, long windowEndTime)
+            throws DatastoreException;
+
     /**
      * Gets the count of distinct Uri's of destinations in the Source table in a time window with
      * matching publisher, enrollment, and ACTIVE status, excluding a given destination.
@@ -196,6 +217,18 @@ public interface IMeasurementDao {
     Optional<Source> getNearestDelayedMatchingActiveSource(@NonNull Trigger trigger)
             throws DatastoreException;
 
+    /**
+     * Queries and returns the list of matching {@link Source} and the most recent matching delayed
+     * {@link Source} (Optional) for each of the provided {@link Trigger}s, reading the candidate
+     * sources of triggers sharing a destination in one query.
+     *
+     * @return map from trigger Id to the same sources as {@link
+     *     #getMatchingActiveSources(Trigger)}, paired with the same source as {@link
+     *     #getNearestDelayedMatchingActiveSource(Trigger)}
+     */
+    Map<String, Pair<List<Source>, Optional<Source>>> getMatchingAndDelayedActiveSourcesForTriggers(
+            @NonNull List<Trigger> triggers) throws DatastoreException;
+
     /**
      * Updates the {@link Source.Status} value for the provided list of {@link Source}
      *
@@ -446,6 +479,17 @@ public interface IMeasurementDao {
     AsyncRegistration fetchNextQueuedAsyncRegistration(int retryLimit, Set<Uri> failedOrigins)
             throws DatastoreException;
 
+    /**
+     * Get the records with the earliest request times and a valid retry count, ordered by request
+     * time.
+     *
+     * @param retryLimit a long that is used for determining the next valid records to be serviced
+     * @param failedOrigins set of origins that have failed during the current run
+     * @param limit the maximum number of records to return
+     */
+    List<AsyncRegistration> fetchNextQueuedAsyncRegistrations(
+            int retryLimit, Set<Uri> failedOrigins, int limit) throws DatastoreException;
+
     /**
      * Insert/Update the supplied {@link KeyValueData} object
      *
@@ -54,8 +54,12 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -259,6 +263,44 @@ class MeasurementDao implements IMeasurementDao {
         }
     }
 
+    @Override
+    public List<Trigger> getTriggers(@NonNull List<String> triggerIds) throws DatastoreException {
+        if (triggerIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, Trigger> triggersById = new HashMap<>();
+        try (Cursor cursor =
+                mSQLTransaction
+                        .getDatabase()
+                        .query(
+                                MeasurementTables.TriggerContract.TABLE,
+                                /* columns= */ null,
+                                MeasurementTables.TriggerContract.ID
+                                        + " IN ("
+                                        + Stream.generate(() -> "?")
+                                                .limit(triggerIds.size())
+                                                .collect(Collectors.joining(","))
+                                        + ")",
+                                triggerIds.toArray(new String[0]),
+                                /* groupBy= */ null,
+                                /* having= */ null,
+                                /* orderBy= */ null,
+                                /* limit= */ null)) {
+            while (cursor.moveToNext()) {
+                Trigger trigger = SqliteObjectMapper.constructTriggerFromCursor(cursor);
+                triggersById.put(trigger.getId(), trigger);
+            }
+        }
+        List<Trigger> triggers = new ArrayList<>(triggersById.size());
+        for (String triggerId : triggerIds) {
+            Trigger trigger = triggersById.get(triggerId);
+            if (trigger != null) {
+                triggers.add(trigger);
+            }
+        }
+        return triggers;
+    }
+
     @Override
     public int getNumAggregateReportsPerDestination(
             @NonNull Uri attributionDestination, @EventSurfaceType int destinationType)
@@ -572,6 +614,129 @@ class MeasurementDao implements IMeasurementDao {
         }
     }
 
+    @Override
+    public Map<String, Pair<List<Source>, Optional<Source>>>
+            getMatchingAndDelayedActiveSourcesForTriggers(@NonNull List<Trigger> triggers)
+                    throws DatastoreException {
+        Map<String, Pair<List<Source>, Optional<Source>>> sourcesByTriggerId = new HashMap<>();
+        for (Trigger trigger : triggers) {
+            sourcesByTriggerId.put(
+                    trigger.getId(), Pair.create(new ArrayList<>(), Optional.empty()));
+        }
+        for (Map.Entry<Pair<String, Integer>, List<Trigger>> destinationTriggers :
+                groupTriggersByDestinationValue(triggers).entrySet()) {
+            List<Source> candidateSources =
+                    getCandidateActiveSourcesForTriggers(
+                            destinationTriggers.getKey().first,
+                            destinationTriggers.getKey().second,
+                            destinationTriggers.getValue());
+            for (Trigger trigger : destinationTriggers.getValue()) {
+                Uri registrationOrigin = trigger.getRegistrationOrigin();
+                List<Source> matchingSources = new ArrayList<>();
+                Optional<Source> delayedSource = Optional.empty();
+                // Candidates are ordered by event time, so matching sources come first and the
+                // first delayed match is the nearest one
+                for (Source source : candidateSources) {
+                    if (!registrationOrigin.equals(source.getRegistrationOrigin())
+                            || source.getExpiryTime() <= trigger.getTriggerTime()) {
+                        continue;
+                    }
+                    if (source.getEventTime() <= trigger.getTriggerTime()) {
+                        matchingSources.add(source);
+                    } else if (source.getEventTime()
+                            <= trigger.getTriggerTime() + MAX_DELAYED_SOURCE_REGISTRATION_WINDOW) {
+                        delayedSource = Optional.of(source);
+                        break;
+                    }
+                }
+                sourcesByTriggerId.put(
+                        trigger.getId(), Pair.create(matchingSources, delayedSource));
+            }
+        }
+        return sourcesByTriggerId;
+    }
+
+    /**
+     * Groups the triggers by the destination value used to match their sources, dropping triggers
+     * whose destination value cannot be obtained.
+     */
+    private static Map<Pair<String, Integer>, List<Trigger>> groupTriggersByDestinationValue(
+            List<Trigger> triggers) {
+        Map<Pair<String, Integer>, List<Trigger>> triggersByDestination = new LinkedHashMap<>();
+        for (Trigger trigger : triggers) {
+            Optional<String> destinationValue = getDestinationValue(trigger);
+            if (!destinationValue.isPresent()) {
+                LogUtil.d(
+                        "groupTriggersByDestinationValue: unable to obtain destination value: %s",
+                        trigger.getAttributionDestination().toString());
+                continue;
+            }
+            triggersByDestination
+                    .computeIfAbsent(
+                            Pair.create(destinationValue.get(), trigger.getDestinationType()),
+                            destination -> new ArrayList<>())
+                    .add(trigger);
+        }
+        return triggersByDestination;
+    }
+
+    /**
+     * Returns, ordered by event time, the active sources of the given destination which may match
+     * any of the given triggers, either directly or as a delayed source.
+     */
+    private List<Source> getCandidateActiveSourcesForTriggers(
+            String triggerDestinationValue,
+            @EventSurfaceType int destinationType,
+            List<Trigger> triggers)
+            throws DatastoreException {
+        Set<String> registrationOrigins = new LinkedHashSet<>();
+        long minTriggerTime = Long.MAX_VALUE;
+        long maxTriggerTime = Long.MIN_VALUE;
+        for (Trigger trigger : triggers) {
+            registrationOrigins.add(trigger.getRegistrationOrigin().toString());
+            minTriggerTime = Math.min(minTriggerTime, trigger.getTriggerTime());
+            maxTriggerTime = Math.max(maxTriggerTime, trigger.getTriggerTime());
+        }
+        String sourceWhereStatement =
+                String.format(
+                        "%1$s.%2$s IN (%6$s) "
+                                + "AND %1$s.%3$s <= ? "
+                                + "AND %1$s.%4$s > ? "
+                                + "AND %1$s.%5$s = ?",
+                        MeasurementTables.SourceContract.TABLE,
+                        MeasurementTables.SourceContract.REGISTRATION_ORIGIN,
+                        MeasurementTables.SourceContract.EVENT_TIME,
+                        MeasurementTables.SourceContract.EXPIRY_TIME,
+                        MeasurementTables.SourceContract.STATUS,
+                        Stream.generate(() -> "?")
+                                .limit(registrationOrigins.size())
+                                .collect(Collectors.joining(",")));
+        String sourceOrderByStatement =
+                String.format(" ORDER BY %1$s ASC", MeasurementTables.SourceContract.EVENT_TIME);
+        List<String> selectionArgs = new ArrayList<>(registrationOrigins);
+        selectionArgs.add(
+                String.valueOf(maxTriggerTime + MAX_DELAYED_SOURCE_REGISTRATION_WINDOW));
+        selectionArgs.add(String.valueOf(minTriggerTime));
+        selectionArgs.add(String.valueOf(Source.Status.ACTIVE));
+
+        try (Cursor cursor =
+                mSQLTransaction
+                        .getDatabase()
+                        .rawQuery(
+                                selectSourcesByDestination(
+                                                triggerDestinationValue,
+                                                destinationType,
+                                                sourceWhereStatement)
+                                        + sourceOrderByStatement,
+                                selectionArgs.toArray(new String[0]))) {
+            List<Source> sources = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                sources.add(SqliteObjectMapper.constructSourceFromCursor(cursor));
+            }
+            return sources;
+        }
+    }
+
     @Override
     public void updateTriggerStatus(List<String> triggerIds, @Trigger.Status int status)
             throws DatastoreException {
@@ -1087,6 +1252,48 @@ class MeasurementDao implements IMeasurementDao {
                         });
     }
 
+    @Override
+    public List<Pair<String, Long>> getEnrollmentIdsAndTimesPerPublisherXDestinationInAttribution(
+            Uri sourceSite, Uri destinationSite, long windowStartTime, long windowEndTime)
+            throws DatastoreException {
+        try (Cursor cursor =
+                mSQLTransaction
+                        .getDatabase()
+                        .query(
+                                MeasurementTables.AttributionContract.TABLE,
+                                new String[] {
+                                    MeasurementTables.AttributionContract.ENROLLMENT_ID,
+                                    MeasurementTables.AttributionContract.TRIGGER_TIME
+                                },
+                                MeasurementTables.AttributionContract.SOURCE_SITE
+                                        + " = ? AND "
+                                        + MeasurementTables.AttributionContract.DESTINATION_SITE
+                                        + " = ? AND "
+                                        + MeasurementTables.AttributionContract.TRIGGER_TIME
+                                        + " > ? AND "
+                                        + MeasurementTables.AttributionContract.TRIGGER_TIME
+                                        + " <= ? ",
+                                new String[] {
+                                    sourceSite.toString(),
+                                    destinationSite.toString(),
+                                    String.valueOf(windowStartTime),
+                                    String.valueOf(windowEndTime)
+                                },
+                                /* groupBy= */ null,
+                                /* having= */ null,
+                                /* orderBy= */ null,
+                                /* limit= */ null)) {
+            List<Pair<String, Long>> attributions = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                attributions.add(
+                        Pair.create(
+                                cursor.getString(/* columnIndex= */ 0),
+                                cursor.getLong(/* columnIndex= */ 1)));
+            }
+            return attributions;
+        }
+    }
+
     @Override
     public Integer countDistinctDestinationsPerPublisherXEnrollmentInActiveSource(
             Uri publisher,
@@ -2403,6 +2610,9 @@ class MeasurementDao implements IMeasurementDao {
         values.put(
                 MeasurementTables.AsyncRegistrationContract.PLATFORM_AD_ID,
                 asyncRegistration.getPlatformAdId());
+        values.put(
+                MeasurementTables.AsyncRegistrationContract.REGISTRATION_ORIGIN,
+                BaseUriExtractor.getBaseUri(asyncRegistration.getRegistrationUri()).toString());
         long rowId =
                 mSQLTransaction
                         .getDatabase()
@@ -2450,18 +2660,32 @@ class MeasurementDao implements IMeasurementDao {
     @Override
     public AsyncRegistration fetchNextQueuedAsyncRegistration(
             int retryLimit, Set<Uri> failedOrigins) throws DatastoreException {
+        List<AsyncRegistration> asyncRegistrations =
+                fetchNextQueuedAsyncRegistrations(retryLimit, failedOrigins, /* limit= */ 1);
+        return asyncRegistrations.isEmpty() ? null : asyncRegistrations.get(0);
+    }
+
+    @Override
+    public List<AsyncRegistration> fetchNextQueuedAsyncRegistrations(
+            int retryLimit, Set<Uri> failedOrigins, int limit) throws DatastoreException {
+        List<String> selectionArgs = new ArrayList<>();
+        selectionArgs.add(String.valueOf(retryLimit));
         String originExclusion = "";
 
         if (!failedOrigins.isEmpty()) {
-            List<String> notLikes = new ArrayList<>();
-            failedOrigins.forEach(
-                    (origin) -> {
-                        notLikes.add(
-                                MeasurementTables.AsyncRegistrationContract.REGISTRATION_URI
-                                        + " NOT LIKE "
-                                        + DatabaseUtils.sqlEscapeString(origin + "%"));
-                    });
-            originExclusion = mergeConditions(" AND ", notLikes.toArray(new String[0]));
+            // Registrations migrated without a parseable registration URI have no origin, they
+            // can't belong to a failed origin.
+            originExclusion =
+                    "("
+                            + MeasurementTables.AsyncRegistrationContract.REGISTRATION_ORIGIN
+                            + " IS NULL OR "
+                            + MeasurementTables.AsyncRegistrationContract.REGISTRATION_ORIGIN
+                            + " NOT IN ("
+                            + Stream.generate(() -> "?")
+                                    .limit(failedOrigins.size())
+                                    .collect(Collectors.joining(","))
+                            + "))";
+            failedOrigins.forEach((origin) -> selectionArgs.add(origin.toString()));
         }
         try (Cursor cursor =
                 mSQLTransaction
@@ -2474,17 +2698,17 @@ class MeasurementDao implements IMeasurementDao {
                                         MeasurementTables.AsyncRegistrationContract.RETRY_COUNT
                                                 + " < ? ",
                                         originExclusion),
-                                new String[] {String.valueOf(retryLimit)},
+                                selectionArgs.toArray(new String[0]),
                                 /* groupBy= */ null,
                                 /* having= */ null,
                                 /* orderBy= */ MeasurementTables.AsyncRegistrationContract
                                         .REQUEST_TIME,
-                                /* limit= */ "1")) {
-            if (cursor.getCount() == 0) {
-                return null;
+                                /* limit= */ String.valueOf(limit))) {
+            List<AsyncRegistration> asyncRegistrations = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                asyncRegistrations.add(SqliteObjectMapper.constructAsyncRegistration(cursor));
             }
-            cursor.moveToNext();
-            return SqliteObjectMapper.constructAsyncRegistration(cursor);
+            return asyncRegistrations;
         }
     }
 
@@ -92,6 +92,7 @@ public final class MeasurementTables {
         String AD_ID_PERMISSION = "ad_id_permission";
         String REGISTRATION_ID = "registration_id";
         String PLATFORM_AD_ID = "platform_ad_id";
+        String REGISTRATION_ORIGIN = "registration_origin";
     }
 
     /** Contract for Source. */
@@ -340,6 +341,8 @@ public final class MeasurementTables {
                     + MeasurementTables.AsyncRegistrationContract.REGISTRATION_ID
                     + " TEXT NOT NULL,"
                     + MeasurementTables.AsyncRegistrationContract.PLATFORM_AD_ID
+                    + " TEXT, "
+                    + MeasurementTables.AsyncRegistrationContract.REGISTRATION_ORIGIN
                     + " TEXT "
                     + ")";
 
@@ -1122,6 +1125,19 @@ public final class MeasurementTables {
                 + AttributionContract.ENROLLMENT_ID
                 + ", "
                 + AttributionContract.TRIGGER_TIME
+                + ")",
+        "CREATE INDEX "
+                + INDEX_PREFIX
+                + AsyncRegistrationContract.TABLE
+                + "_rt_rc_ro"
+                + " ON "
+                + AsyncRegistrationContract.TABLE
+                + "("
+                + AsyncRegistrationContract.REQUEST_TIME
+                + ", "
+                + AsyncRegistrationContract.RETRY_COUNT
+                + ", "
+                + AsyncRegistrationContract.REGISTRATION_ORIGIN
                 + ")"
     };
 
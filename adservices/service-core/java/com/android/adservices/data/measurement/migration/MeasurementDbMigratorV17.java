@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.data.measurement.migration;
+
+import android.annotation.NonNull;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.android.adservices.LogUtil;
+import com.android.adservices.data.measurement.MeasurementTables;
+import com.android.adservices.service.measurement.util.BaseUriExtractor;
+
+/**
+ * Migrates Measurement DB to version 17 by performing following steps - 1) Add {@link
+ * MeasurementTables.AsyncRegistrationContract#REGISTRATION_ORIGIN} column to the async
+ * registration table 2) Populate it with the origin of the registration URI of each queued
+ * registration 3) Index the columns used to fetch the next queued registrations
+ */
+public class MeasurementDbMigratorV17 extends AbstractMeasurementDbMigrator {
+    private static final String CREATE_INDEX_ASYNC_REGISTRATION_RT_RC_RO =
+            "CREATE INDEX "
+                    + MeasurementTables.INDEX_PREFIX
+                    + MeasurementTables.AsyncRegistrationContract.TABLE
+                    + "_rt_rc_ro"
+                    + " ON "
+                    + MeasurementTables.AsyncRegistrationContract.TABLE
+                    + "("
+                    + MeasurementTables.AsyncRegistrationContract.REQUEST_TIME
+                    + ", "
+                    + MeasurementTables.AsyncRegistrationContract.RETRY_COUNT
+                    + ", "
+                    + MeasurementTables.AsyncRegistrationContract.REGISTRATION_ORIGIN
+                    + ")";
+
+    public MeasurementDbMigratorV17() {
+        super(17);
+    }
+
+    @Override
+    protected void performMigration(@NonNull SQLiteDatabase db) {
+        MigrationHelpers.addTextColumnIfAbsent(
+                db,
+                MeasurementTables.AsyncRegistrationContract.TABLE,
+                MeasurementTables.AsyncRegistrationContract.REGISTRATION_ORIGIN);
+        populateRegistrationOrigin(db);
+        db.execSQL(CREATE_INDEX_ASYNC_REGISTRATION_RT_RC_RO);
+    }
+
+    private static void populateRegistrationOrigin(@NonNull SQLiteDatabase db) {
+        try (Cursor cursor =
+                db.query(
+                        /*table=*/ MeasurementTables.AsyncRegistrationContract.TABLE,
+                        /*columns=*/ new String[] {
+                            MeasurementTables.AsyncRegistrationContract.ID,
+                            MeasurementTables.AsyncRegistrationContract.REGISTRATION_URI
+                        },
+                        /*selection*/ null,
+                        /*selectionArgs=*/ null,
+                        /*groupBy=*/ null,
+                        /*having=*/ null,
+                        /*orderBy=*/ null,
+                        /*limit=*/ null)) {
+            while (cursor.moveToNext()) {
+                String id =
+                        cursor.getString(
+                                cursor.getColumnIndex(
+                                        MeasurementTables.AsyncRegistrationContract.ID));
+                String registrationUri =
+                        cursor.getString(
+                                cursor.getColumnIndex(
+                                        MeasurementTables.AsyncRegistrationContract
+                                                .REGISTRATION_URI));
+                Uri uri = registrationUri == null ? null : Uri.parse(registrationUri);
+                if (uri == null || !uri.isHierarchical() || !uri.isAbsolute()) {
+                    LogUtil.d("Invalid registration URI for async registration id - " + id);
+                    continue;
+                }
+                ContentValues values = new ContentValues();
+                values.put(
+                        MeasurementTables.AsyncRegistrationContract.REGISTRATION_ORIGIN,
+                        BaseUriExtractor.getBaseUri(uri).toString());
+                db.update(
+                        MeasurementTables.AsyncRegistrationContract.TABLE,
+                        values,
+                        MeasurementTables.AsyncRegistrationContract.ID + " = ? ",
+                        new String[] {id});
+            }
+        }
+    }
+}
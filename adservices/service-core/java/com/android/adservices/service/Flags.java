@@ -104,6 +104,30 @@ public interface Flags {
         return TOPICS_NUMBER_OF_LOOK_BACK_EPOCHS;
     }
 
+    boolean TOPICS_ENABLE_USAGE_HISTORY_BUFFER = false;
+
+    /**
+     * Returns whether the usage history of getTopics calls is buffered in memory and written to
+     * the database in batches.
+     */
+    default boolean getTopicsEnableUsageHistoryBuffer() {
+        return TOPICS_ENABLE_USAGE_HISTORY_BUFFER;
+    }
+
+    int TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES = 100;
+
+    /** Returns the number of distinct buffered usages that triggers a flush of the buffer. */
+    default int getTopicsUsageHistoryBufferMaxEntries() {
+        return TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES;
+    }
+
+    long TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS = 60_000L;
+
+    /** Returns the maximum time a usage stays in the buffer before it is flushed. */
+    default long getTopicsUsageHistoryBufferFlushDelayMs() {
+        return TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS;
+    }
+
     /** Available types of classifier behaviours for the Topics API. */
     @IntDef(
             flag = true,
@@ -323,6 +347,82 @@ public interface Flags {
         return MEASUREMENT_ENABLE_TRIGGER_DEBUG_REPORT;
     }
 
+    boolean MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION = false;
+
+    /** Returns whether several pending triggers are attributed in a single transaction. */
+    default boolean getMeasurementEnableBatchedAttribution() {
+        return MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION;
+    }
+
+    int MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION = 10;
+
+    /**
+     * Returns the maximum number of triggers attributed in a single transaction when batched
+     * attribution is enabled.
+     */
+    default int getMeasurementAttributionTriggersPerTransaction() {
+        return MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION;
+    }
+
+    boolean MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD = false;
+
+    /** Returns whether pending reports are uploaded concurrently, grouped by reporting origin. */
+    default boolean getMeasurementEnableConcurrentReportUpload() {
+        return MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD;
+    }
+
+    int MEASUREMENT_REPORT_UPLOAD_PARALLELISM = 4;
+
+    /** Returns the maximum number of reports uploaded concurrently. */
+    default int getMeasurementReportUploadParallelism() {
+        return MEASUREMENT_REPORT_UPLOAD_PARALLELISM;
+    }
+
+    int MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM = 2;
+
+    /** Returns the maximum number of reports uploaded concurrently to a single reporting origin. */
+    default int getMeasurementReportUploadPerOriginParallelism() {
+        return MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM;
+    }
+
+    int MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE = 50;
+
+    /**
+     * Returns the number of reports read and marked delivered per transaction when uploading
+     * reports concurrently.
+     */
+    default int getMeasurementReportUploadBatchSize() {
+        return MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE;
+    }
+
+    boolean MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH = false;
+
+    /** Returns whether queued async registrations are fetched concurrently, in batches. */
+    default boolean getMeasurementEnableConcurrentAsyncRegistrationFetch() {
+        return MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH;
+    }
+
+    int MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM = 4;
+
+    /** Returns the maximum number of async registrations fetched concurrently. */
+    default int getMeasurementAsyncRegistrationFetchParallelism() {
+        return MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM;
+    }
+
+    int MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM = 2;
+
+    /** Returns the maximum number of async registrations fetched concurrently from an origin. */
+    default int getMeasurementAsyncRegistrationFetchPerOriginParallelism() {
+        return MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM;
+    }
+
+    int MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE = 20;
+
+    /** Returns the number of queued async registrations leased and stored per transaction. */
+    default int getMeasurementAsyncRegistrationFetchBatchSize() {
+        return MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE;
+    }
+
     long MEASUREMENT_DATA_EXPIRY_WINDOW_MS = TimeUnit.DAYS.toMillis(37);
 
     /** Returns the data expiry window in milliseconds. */
@@ -527,6 +627,13 @@ public interface Flags {
         return FLEDGE_CUSTOM_AUDIENCE_ACTIVE_TIME_WINDOW_MS;
     }
 
+    boolean FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED = false;
+
+    /** Returns whether ad selection reads custom audiences from in-memory per-buyer snapshots. */
+    default boolean getFledgeCustomAudienceSnapshotCacheEnabled() {
+        return FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED;
+    }
+
     boolean FLEDGE_BACKGROUND_FETCH_ENABLED = true;
     long FLEDGE_BACKGROUND_FETCH_JOB_PERIOD_MS = 4L * 60L * 60L * 1000L; // 4 hours
     long FLEDGE_BACKGROUND_FETCH_JOB_FLEX_MS = 30L * 60L * 1000L; // 30 minutes
@@ -639,6 +746,40 @@ public interface Flags {
         return FLEDGE_HTTP_CACHE_DEFAULT_MAX_AGE_SECONDS;
     }
 
+    boolean FLEDGE_HTTP_ENABLE_REQUEST_COALESCING = false;
+
+    /** Returns whether concurrent identical payload fetches share a single HTTPS request */
+    default boolean getFledgeHttpRequestCoalescingEnabled() {
+        return FLEDGE_HTTP_ENABLE_REQUEST_COALESCING;
+    }
+
+    long FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES = 0L;
+
+    /** Returns the max size in bytes of the in-memory tier of the HTTP cache, 0 to disable it */
+    default long getFledgeHttpCacheMemoryMaxBytes() {
+        return FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES;
+    }
+
+    boolean FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION = false;
+
+    /** Returns whether expired cache entries are revalidated with their ETag and Last-Modified */
+    default boolean getFledgeHttpCacheRevalidationEnabled() {
+        return FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION;
+    }
+
+    boolean FLEDGE_ENABLE_STORAGE_COMPRESSION = false;
+
+    /**
+     * Returns whether large custom audience ad lists are persisted compressed.
+     *
+     * <p>Builds without {@link com.android.adservices.data.common.TextCompression} can't read the
+     * compressed lists, so this must stay off until every build the module can roll back to reads
+     * them.
+     */
+    default boolean getFledgeStorageCompressionEnabled() {
+        return FLEDGE_ENABLE_STORAGE_COMPRESSION;
+    }
+
     int FLEDGE_AD_COUNTER_HISTOGRAM_ABSOLUTE_MAX_EVENT_COUNT = 1000;
     int FLEDGE_AD_COUNTER_HISTOGRAM_LOWER_MAX_EVENT_COUNT = 950;
 
@@ -655,6 +796,46 @@ public interface Flags {
         return FLEDGE_AD_COUNTER_HISTOGRAM_LOWER_MAX_EVENT_COUNT;
     }
 
+    boolean FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED = false;
+
+    /**
+     * Returns {@code true} if frequency cap filtering should count histogram events using the
+     * in-memory histogram index instead of querying the database for every filter.
+     */
+    default boolean getFledgeAdCounterHistogramInMemoryIndexEnabled() {
+        return FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED;
+    }
+
+    boolean FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED = false;
+
+    /**
+     * Returns {@code true} if the frequency cap filters for all custom audiences in an auction
+     * should be evaluated against histograms read with a single bulk query.
+     */
+    default boolean getFledgeAdCounterHistogramBulkQueryEnabled() {
+        return FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED;
+    }
+
+    boolean FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED = false;
+
+    /**
+     * Returns {@code true} if the FLEDGE maintenance job should trim the frequency cap histogram
+     * table down to the lower max event count in batches.
+     */
+    default boolean getFledgeAdCounterHistogramBackgroundEvictionEnabled() {
+        return FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED;
+    }
+
+    int FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE = 25;
+
+    /**
+     * Returns the maximum number of frequency cap histogram events evicted in a single database
+     * transaction by the FLEDGE maintenance job.
+     */
+    default int getFledgeAdCounterHistogramEvictionBatchSize() {
+        return FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE;
+    }
+
     int FLEDGE_AD_SELECTION_MAX_CONCURRENT_BIDDING_COUNT = 6;
 
     /** Returns the number of CA that can be bid in parallel for one Ad Selection */
@@ -662,6 +843,23 @@ public interface Flags {
         return FLEDGE_AD_SELECTION_MAX_CONCURRENT_BIDDING_COUNT;
     }
 
+    boolean FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED = false;
+
+    /**
+     * Returns whether the {@code generateBid} invocations of the custom audiences of a buyer that
+     * share the same bidding logic are batched into a single JS evaluation.
+     */
+    default boolean getFledgeAdSelectionBatchBiddingEnabled() {
+        return FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED;
+    }
+
+    int FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE = 20;
+
+    /** Returns the maximum number of CAs whose bids are generated by a single JS evaluation */
+    default int getFledgeAdSelectionBatchBiddingMaxBatchSize() {
+        return FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE;
+    }
+
     // TODO(b/240647148): Limits are increased temporarily, re-evaluate these numbers after
     //  getting real world data from telemetry & set accurately scoped timeout
     long FLEDGE_AD_SELECTION_BIDDING_TIMEOUT_PER_CA_MS = 5000;
@@ -912,6 +1110,40 @@ public interface Flags {
         return CONSENT_MANAGER_DEBUG_MODE;
     }
 
+    boolean CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT = false;
+
+    /**
+     * Returns whether the consent read by the {@code ConsentManager} is kept in an immutable
+     * snapshot, so that consent checks do not read the source of truth until the consent changes.
+     */
+    default boolean getConsentManagerEnableConsentSnapshot() {
+        return CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT;
+    }
+
+    boolean CONSENT_MANAGER_ENABLE_APP_UID_INDEX = false;
+
+    /**
+     * Returns whether the app consent datastore keeps the UIDs of installed packages in memory,
+     * instead of asking the {@code PackageManager} on every app consent check.
+     */
+    default boolean getConsentManagerEnableAppUidIndex() {
+        return CONSENT_MANAGER_ENABLE_APP_UID_INDEX;
+    }
+
+    boolean ENABLE_CONSENT_DATASTORE_JOURNAL = false;
+
+    /**
+     * Returns whether the consent datastores append their changes to a journal, compacted
+     * periodically, instead of rewriting the whole datastore file on every change.
+     *
+     * <p>Builds without the journal don't read it, so a module rollback to one of them loses the
+     * changes not compacted yet, consent revocations included. This must stay off until every build
+     * the module can roll back to replays the journal.
+     */
+    default boolean getEnableConsentDatastoreJournal() {
+        return ENABLE_CONSENT_DATASTORE_JOURNAL;
+    }
+
     /** Available sources of truth to get consent for PPAPI. */
     @IntDef(
             flag = true,
@@ -1776,6 +2008,13 @@ public interface Flags {
         return MEASUREMENT_ENFORCE_ENROLLMENT_ORIGIN_MATCH;
     }
 
+    boolean ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX = false;
+
+    /** @return true if enrollments are matched to measurement URLs with an in-memory index */
+    default boolean getEnrollmentMeasurementUrlIndexEnabled() {
+        return ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX;
+    }
+
     /** @return true if Topics API should require that the calling API is running in foreground. */
     default boolean getEnforceForegroundStatusForTopics() {
         return ENFORCE_FOREGROUND_STATUS_TOPICS;
@@ -1821,6 +2060,36 @@ public interface Flags {
         return ISOLATE_MAX_HEAP_SIZE_BYTES;
     }
 
+    int FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES = 0;
+
+    /**
+     * @return max number of JavaScript isolates created ahead of time for later evaluations. Every
+     *     isolate serves a single evaluation. A value of 0 disables isolate pre-creation.
+     */
+    default int getFledgeJsIsolatePoolMaxIdleIsolates() {
+        return FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES;
+    }
+
+    boolean FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED = false;
+
+    /**
+     * @return whether large JSON arguments of JS evaluations are passed to the isolate as array
+     *     buffers, when supported by the JS Sandbox, instead of being inlined in the script.
+     */
+    default boolean getFledgeJsArrayBufferArgumentsEnabled() {
+        return FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED;
+    }
+
+    int FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS = 16 * 1024;
+
+    /**
+     * @return the minimum length of the JSON representation of a JS argument for it to be passed
+     *     as an array buffer.
+     */
+    default int getFledgeJsArrayBufferArgumentsMinSizeChars() {
+        return FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS;
+    }
+
     /**
      * @return max allowed size in bytes for response based registrations payload of an individual
      *     source/trigger registration.
@@ -58,6 +58,12 @@ public final class PhFlags implements Flags {
     static final String KEY_TOPICS_NUMBER_OF_TOP_TOPICS = "topics_number_of_top_topics";
     static final String KEY_TOPICS_NUMBER_OF_RANDOM_TOPICS = "topics_number_of_random_topics";
     static final String KEY_TOPICS_NUMBER_OF_LOOK_BACK_EPOCHS = "topics_number_of_lookback_epochs";
+    static final String KEY_TOPICS_ENABLE_USAGE_HISTORY_BUFFER =
+            "topics_enable_usage_history_buffer";
+    static final String KEY_TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES =
+            "topics_usage_history_buffer_max_entries";
+    static final String KEY_TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS =
+            "topics_usage_history_buffer_flush_delay_ms";
     static final String KEY_NUMBER_OF_EPOCHS_TO_KEEP_IN_HISTORY =
             "topics_number_of_epochs_to_keep_in_history";
     static final String KEY_GLOBAL_BLOCKED_TOPIC_IDS = "topics_global_blocked_topic_ids";
@@ -104,6 +110,8 @@ public final class PhFlags implements Flags {
             "measurement_enforce_foreground_status_register_web_trigger";
     static final String KEY_MEASUREMENT_ENFORCE_ENROLLMENT_ORIGIN_MATCH =
             "measurement_enforce_enrollment_origin_match";
+    static final String KEY_ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX =
+            "enrollment_enable_measurement_url_index";
     static final String KEY_MEASUREMENT_ENFORCE_FOREGROUND_STATUS_DELETE_REGISTRATIONS =
             "measurement_enforce_foreground_status_delete_registrations";
     static final String KEY_MEASUREMENT_ENFORCE_FOREGROUND_STATUS_GET_STATUS =
@@ -114,6 +122,26 @@ public final class PhFlags implements Flags {
             "measurement_enable_source_debug_report";
     static final String KEY_MEASUREMENT_ENABLE_TRIGGER_DEBUG_REPORT =
             "measurement_enable_trigger_debug_report";
+    static final String KEY_MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION =
+            "measurement_enable_batched_attribution";
+    static final String KEY_MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION =
+            "measurement_attribution_triggers_per_transaction";
+    static final String KEY_MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD =
+            "measurement_enable_concurrent_report_upload";
+    static final String KEY_MEASUREMENT_REPORT_UPLOAD_PARALLELISM =
+            "measurement_report_upload_parallelism";
+    static final String KEY_MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM =
+            "measurement_report_upload_per_origin_parallelism";
+    static final String KEY_MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE =
+            "measurement_report_upload_batch_size";
+    static final String KEY_MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH =
+            "measurement_enable_concurrent_async_registration_fetch";
+    static final String KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM =
+            "measurement_async_registration_fetch_parallelism";
+    static final String KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM =
+            "measurement_async_registration_fetch_per_origin_parallelism";
+    static final String KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE =
+            "measurement_async_registration_fetch_batch_size";
     static final String KEY_MEASUREMENT_DATA_EXPIRY_WINDOW_MS = "measurement_data_expiry_window_ms";
 
     static final String KEY_MEASUREMENT_MAX_REGISTRATION_REDIRECTS =
@@ -186,6 +214,8 @@ public final class PhFlags implements Flags {
             "fledge_custom_audience_max_num_ads";
     static final String KEY_FLEDGE_CUSTOM_AUDIENCE_ACTIVE_TIME_WINDOW_MS =
             "fledge_custom_audience_active_time_window_ms";
+    static final String KEY_FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED =
+            "fledge_custom_audience_snapshot_cache_enabled";
 
     // FLEDGE Background Fetch keys
     static final String KEY_FLEDGE_BACKGROUND_FETCH_ENABLED = "fledge_background_fetch_enabled";
@@ -211,6 +241,10 @@ public final class PhFlags implements Flags {
     // FLEDGE Ad Selection keys
     static final String KEY_FLEDGE_AD_SELECTION_MAX_CONCURRENT_BIDDING_COUNT =
             "fledge_ad_selection_max_concurrent_bidding_count";
+    static final String KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED =
+            "fledge_ad_selection_batch_bidding_enabled";
+    static final String KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE =
+            "fledge_ad_selection_batch_bidding_max_batch_size";
     static final String KEY_FLEDGE_AD_SELECTION_BIDDING_TIMEOUT_PER_CA_MS =
             "fledge_ad_selection_bidding_timeout_per_ca_ms";
     static final String KEY_FLEDGE_AD_SELECTION_SCORING_TIMEOUT_MS =
@@ -241,6 +275,13 @@ public final class PhFlags implements Flags {
             "fledge_http_cache_enable_js_caching";
     static final String KEY_FLEDGE_HTTP_CACHE_DEFAULT_MAX_AGE_SECONDS =
             "fledge_http_cache_default_max_age_seconds";
+    static final String KEY_FLEDGE_HTTP_ENABLE_REQUEST_COALESCING =
+            "fledge_http_enable_request_coalescing";
+    static final String KEY_FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES =
+            "fledge_http_cache_memory_max_bytes";
+    static final String KEY_FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION =
+            "fledge_http_cache_enable_revalidation";
+    static final String KEY_FLEDGE_ENABLE_STORAGE_COMPRESSION = "fledge_enable_storage_compression";
     static final String KEY_FLEDGE_HTTP_CACHE_MAX_ENTRIES = "fledge_http_cache_max_entries";
 
     // FLEDGE Ad Counter Histogram keys
@@ -248,6 +289,14 @@ public final class PhFlags implements Flags {
             "fledge_ad_counter_histogram_absolute_max_event_count";
     static final String KEY_FLEDGE_AD_COUNTER_HISTOGRAM_LOWER_MAX_EVENT_COUNT =
             "fledge_ad_counter_histogram_lower_max_event_count";
+    static final String KEY_FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED =
+            "fledge_ad_counter_histogram_in_memory_index_enabled";
+    static final String KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED =
+            "fledge_ad_counter_histogram_bulk_query_enabled";
+    static final String KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED =
+            "fledge_ad_counter_histogram_background_eviction_enabled";
+    static final String KEY_FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE =
+            "fledge_ad_counter_histogram_eviction_batch_size";
 
     // FLEDGE Off device ad selection keys
     static final String KEY_FLEDGE_AD_SELECTION_OFF_DEVICE_OVERALL_TIMEOUT_MS =
@@ -287,6 +336,12 @@ public final class PhFlags implements Flags {
     static final String KEY_ENFORCE_ISOLATE_MAX_HEAP_SIZE =
             "fledge_js_isolate_enforce_max_heap_size";
     static final String KEY_ISOLATE_MAX_HEAP_SIZE_BYTES = "fledge_js_isolate_max_heap_size_bytes";
+    static final String KEY_FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES =
+            "fledge_js_isolate_pool_max_idle_isolates";
+    static final String KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED =
+            "fledge_js_array_buffer_arguments_enabled";
+    static final String KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS =
+            "fledge_js_array_buffer_arguments_min_size_chars";
 
     // AppSetId invoking app status key.
     static final String KEY_ENFORCE_FOREGROUND_STATUS_APPSETID =
@@ -416,6 +471,11 @@ public final class PhFlags implements Flags {
 
     // Consent Manager debug mode keys.
     static final String KEY_CONSENT_MANAGER_DEBUG_MODE = "consent_manager_debug_mode";
+    static final String KEY_CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT =
+            "consent_manager_enable_consent_snapshot";
+    static final String KEY_CONSENT_MANAGER_ENABLE_APP_UID_INDEX =
+            "consent_manager_enable_app_uid_index";
+    static final String KEY_ENABLE_CONSENT_DATASTORE_JOURNAL = "enable_consent_datastore_journal";
 
     // Source of truth to get consent for PPAPI
     static final String KEY_CONSENT_SOURCE_OF_TRUTH = "consent_source_of_truth";
@@ -629,6 +689,30 @@ public final class PhFlags implements Flags {
         return topicsNumberOfLookBackEpochs;
     }
 
+    @Override
+    public boolean getTopicsEnableUsageHistoryBuffer() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_TOPICS_ENABLE_USAGE_HISTORY_BUFFER,
+                /* defaultValue */ TOPICS_ENABLE_USAGE_HISTORY_BUFFER);
+    }
+
+    @Override
+    public int getTopicsUsageHistoryBufferMaxEntries() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES,
+                /* defaultValue */ TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES);
+    }
+
+    @Override
+    public long getTopicsUsageHistoryBufferFlushDelayMs() {
+        return DeviceConfig.getLong(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS,
+                /* defaultValue */ TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS);
+    }
+
     @Override
     public int getClassifierType() {
         // The priority of applying the flag values: SystemProperties, PH (DeviceConfig), then
@@ -868,6 +952,86 @@ public final class PhFlags implements Flags {
                 /* defaultValue */ MEASUREMENT_ENABLE_TRIGGER_DEBUG_REPORT);
     }
 
+    @Override
+    public boolean getMeasurementEnableBatchedAttribution() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION,
+                /* defaultValue */ MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION);
+    }
+
+    @Override
+    public int getMeasurementAttributionTriggersPerTransaction() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION,
+                /* defaultValue */ MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION);
+    }
+
+    @Override
+    public boolean getMeasurementEnableConcurrentReportUpload() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD,
+                /* defaultValue */ MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD);
+    }
+
+    @Override
+    public int getMeasurementReportUploadParallelism() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_REPORT_UPLOAD_PARALLELISM,
+                /* defaultValue */ MEASUREMENT_REPORT_UPLOAD_PARALLELISM);
+    }
+
+    @Override
+    public int getMeasurementReportUploadPerOriginParallelism() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM,
+                /* defaultValue */ MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM);
+    }
+
+    @Override
+    public int getMeasurementReportUploadBatchSize() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE,
+                /* defaultValue */ MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE);
+    }
+
+    @Override
+    public boolean getMeasurementEnableConcurrentAsyncRegistrationFetch() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH,
+                /* defaultValue */ MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH);
+    }
+
+    @Override
+    public int getMeasurementAsyncRegistrationFetchParallelism() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM,
+                /* defaultValue */ MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM);
+    }
+
+    @Override
+    public int getMeasurementAsyncRegistrationFetchPerOriginParallelism() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM,
+                /* defaultValue */ MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM);
+    }
+
+    @Override
+    public int getMeasurementAsyncRegistrationFetchBatchSize() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE,
+                /* defaultValue */ MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE);
+    }
+
     @Override
     public long getMeasurementDataExpiryWindowMs() {
         return DeviceConfig.getLong(
@@ -1086,6 +1250,14 @@ public final class PhFlags implements Flags {
                 /* defaultValue */ FLEDGE_CUSTOM_AUDIENCE_ACTIVE_TIME_WINDOW_MS);
     }
 
+    @Override
+    public boolean getFledgeCustomAudienceSnapshotCacheEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED,
+                /* defaultValue */ FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED);
+    }
+
     @Override
     public boolean getFledgeBackgroundFetchEnabled() {
         // The priority of applying the flag values: PH (DeviceConfig) and then hard-coded value.
@@ -1184,6 +1356,22 @@ public final class PhFlags implements Flags {
                 /* defaultValue */ FLEDGE_AD_SELECTION_MAX_CONCURRENT_BIDDING_COUNT);
     }
 
+    @Override
+    public boolean getFledgeAdSelectionBatchBiddingEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED,
+                /* defaultValue */ FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED);
+    }
+
+    @Override
+    public int getFledgeAdSelectionBatchBiddingMaxBatchSize() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE,
+                /* defaultValue */ FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE);
+    }
+
     @Override
     public long getAdSelectionBiddingTimeoutPerCaMs() {
         return DeviceConfig.getLong(
@@ -1331,6 +1519,38 @@ public final class PhFlags implements Flags {
                 /* defaultValue */ FLEDGE_HTTP_CACHE_DEFAULT_MAX_AGE_SECONDS);
     }
 
+    @Override
+    public boolean getFledgeHttpRequestCoalescingEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_HTTP_ENABLE_REQUEST_COALESCING,
+                /* defaultValue */ FLEDGE_HTTP_ENABLE_REQUEST_COALESCING);
+    }
+
+    @Override
+    public long getFledgeHttpCacheMemoryMaxBytes() {
+        return DeviceConfig.getLong(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES,
+                /* defaultValue */ FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES);
+    }
+
+    @Override
+    public boolean getFledgeHttpCacheRevalidationEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION,
+                /* defaultValue */ FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION);
+    }
+
+    @Override
+    public boolean getFledgeStorageCompressionEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_ENABLE_STORAGE_COMPRESSION,
+                /* defaultValue */ FLEDGE_ENABLE_STORAGE_COMPRESSION);
+    }
+
     @Override
     public int getFledgeAdCounterHistogramAbsoluteMaxEventCount() {
         return DeviceConfig.getInt(
@@ -1347,6 +1567,38 @@ public final class PhFlags implements Flags {
                 /* defaultValue */ FLEDGE_AD_COUNTER_HISTOGRAM_LOWER_MAX_EVENT_COUNT);
     }
 
+    @Override
+    public boolean getFledgeAdCounterHistogramInMemoryIndexEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED,
+                /* defaultValue */ FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED);
+    }
+
+    @Override
+    public boolean getFledgeAdCounterHistogramBulkQueryEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED,
+                /* defaultValue */ FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED);
+    }
+
+    @Override
+    public boolean getFledgeAdCounterHistogramBackgroundEvictionEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED,
+                /* defaultValue */ FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED);
+    }
+
+    @Override
+    public int getFledgeAdCounterHistogramEvictionBatchSize() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE,
+                /* defaultValue */ FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE);
+    }
+
     // MDD related flags.
     @Override
     public int getDownloaderConnectionTimeoutMs() {
@@ -2223,6 +2475,14 @@ public final class PhFlags implements Flags {
                 /* defaultValue */ MEASUREMENT_ENFORCE_ENROLLMENT_ORIGIN_MATCH);
     }
 
+    @Override
+    public boolean getEnrollmentMeasurementUrlIndexEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX,
+                /* defaultValue */ ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX);
+    }
+
     @Override
     public boolean getEnforceIsolateMaxHeapSize() {
         return DeviceConfig.getBoolean(
@@ -2239,6 +2499,30 @@ public final class PhFlags implements Flags {
                 /* defaultValue */ ISOLATE_MAX_HEAP_SIZE_BYTES);
     }
 
+    @Override
+    public int getFledgeJsIsolatePoolMaxIdleIsolates() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES,
+                /* defaultValue */ FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES);
+    }
+
+    @Override
+    public boolean getFledgeJsArrayBufferArgumentsEnabled() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED,
+                /* defaultValue */ FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED);
+    }
+
+    @Override
+    public int getFledgeJsArrayBufferArgumentsMinSizeChars() {
+        return DeviceConfig.getInt(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS,
+                /* defaultValue */ FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS);
+    }
+
     @Override
     public String getWebContextClientAppAllowList() {
         return DeviceConfig.getString(
@@ -2286,6 +2570,30 @@ public final class PhFlags implements Flags {
                 /* defaultValue */ CONSENT_MANAGER_DEBUG_MODE);
     }
 
+    @Override
+    public boolean getConsentManagerEnableConsentSnapshot() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT,
+                /* defaultValue */ CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT);
+    }
+
+    @Override
+    public boolean getConsentManagerEnableAppUidIndex() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_CONSENT_MANAGER_ENABLE_APP_UID_INDEX,
+                /* defaultValue */ CONSENT_MANAGER_ENABLE_APP_UID_INDEX);
+    }
+
+    @Override
+    public boolean getEnableConsentDatastoreJournal() {
+        return DeviceConfig.getBoolean(
+                NAMESPACE_ADSERVICES,
+                /* flagName */ KEY_ENABLE_CONSENT_DATASTORE_JOURNAL,
+                /* defaultValue */ ENABLE_CONSENT_DATASTORE_JOURNAL);
+    }
+
     @Override
     public int getConsentSourceOfTruth() {
         return DeviceConfig.getInt(
@@ -2577,6 +2885,21 @@ public final class PhFlags implements Flags {
                         + KEY_TOPICS_NUMBER_OF_LOOK_BACK_EPOCHS
                         + " = "
                         + getTopicsNumberOfLookBackEpochs());
+        writer.println(
+                "\t"
+                        + KEY_TOPICS_ENABLE_USAGE_HISTORY_BUFFER
+                        + " = "
+                        + getTopicsEnableUsageHistoryBuffer());
+        writer.println(
+                "\t"
+                        + KEY_TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES
+                        + " = "
+                        + getTopicsUsageHistoryBufferMaxEntries());
+        writer.println(
+                "\t"
+                        + KEY_TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS
+                        + " = "
+                        + getTopicsUsageHistoryBufferFlushDelayMs());
         writer.println("\t" + KEY_GLOBAL_BLOCKED_TOPIC_IDS + " = " + getGlobalBlockedTopicIds());
 
         writer.println("==== AdServices PH Flags Dump Topics Classifier related flags ====");
@@ -2692,6 +3015,11 @@ public final class PhFlags implements Flags {
                         + KEY_MEASUREMENT_ENFORCE_ENROLLMENT_ORIGIN_MATCH
                         + " = "
                         + getEnforceEnrollmentOriginMatch());
+        writer.println(
+                "\t"
+                        + KEY_ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX
+                        + " = "
+                        + getEnrollmentMeasurementUrlIndexEnabled());
         writer.println(
                 "\t"
                         + KEY_MEASUREMENT_ENABLE_DEBUG_REPORT
@@ -2707,6 +3035,56 @@ public final class PhFlags implements Flags {
                         + KEY_MEASUREMENT_ENABLE_TRIGGER_DEBUG_REPORT
                         + " = "
                         + getMeasurementEnableTriggerDebugReport());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION
+                        + " = "
+                        + getMeasurementEnableBatchedAttribution());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION
+                        + " = "
+                        + getMeasurementAttributionTriggersPerTransaction());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD
+                        + " = "
+                        + getMeasurementEnableConcurrentReportUpload());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_REPORT_UPLOAD_PARALLELISM
+                        + " = "
+                        + getMeasurementReportUploadParallelism());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM
+                        + " = "
+                        + getMeasurementReportUploadPerOriginParallelism());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE
+                        + " = "
+                        + getMeasurementReportUploadBatchSize());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH
+                        + " = "
+                        + getMeasurementEnableConcurrentAsyncRegistrationFetch());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM
+                        + " = "
+                        + getMeasurementAsyncRegistrationFetchParallelism());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM
+                        + " = "
+                        + getMeasurementAsyncRegistrationFetchPerOriginParallelism());
+        writer.println(
+                "\t"
+                        + KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE
+                        + " = "
+                        + getMeasurementAsyncRegistrationFetchBatchSize());
         writer.println(
                 "\t"
                         + KEY_MEASUREMENT_DATA_EXPIRY_WINDOW_MS
@@ -2921,6 +3299,11 @@ public final class PhFlags implements Flags {
                         + KEY_FLEDGE_CUSTOM_AUDIENCE_ACTIVE_TIME_WINDOW_MS
                         + " = "
                         + getFledgeCustomAudienceActiveTimeWindowInMs());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED
+                        + " = "
+                        + getFledgeCustomAudienceSnapshotCacheEnabled());
         writer.println(
                 "\t"
                         + KEY_FLEDGE_CUSTOM_AUDIENCE_MAX_NUM_ADS
@@ -2939,6 +3322,26 @@ public final class PhFlags implements Flags {
                         + KEY_FLEDGE_HTTP_CACHE_DEFAULT_MAX_AGE_SECONDS
                         + " = "
                         + getFledgeHttpCacheMaxAgeSeconds());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_HTTP_ENABLE_REQUEST_COALESCING
+                        + " = "
+                        + getFledgeHttpRequestCoalescingEnabled());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES
+                        + " = "
+                        + getFledgeHttpCacheMemoryMaxBytes());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION
+                        + " = "
+                        + getFledgeHttpCacheRevalidationEnabled());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_ENABLE_STORAGE_COMPRESSION
+                        + " = "
+                        + getFledgeStorageCompressionEnabled());
         writer.println(
                 "\t"
                         + KEY_FLEDGE_AD_COUNTER_HISTOGRAM_ABSOLUTE_MAX_EVENT_COUNT
@@ -2949,6 +3352,26 @@ public final class PhFlags implements Flags {
                         + KEY_FLEDGE_AD_COUNTER_HISTOGRAM_LOWER_MAX_EVENT_COUNT
                         + " = "
                         + getFledgeAdCounterHistogramLowerMaxEventCount());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED
+                        + " = "
+                        + getFledgeAdCounterHistogramInMemoryIndexEnabled());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED
+                        + " = "
+                        + getFledgeAdCounterHistogramBulkQueryEnabled());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED
+                        + " = "
+                        + getFledgeAdCounterHistogramBackgroundEvictionEnabled());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE
+                        + " = "
+                        + getFledgeAdCounterHistogramEvictionBatchSize());
         writer.println(
                 "\t"
                         + KEY_FLEDGE_BACKGROUND_FETCH_ENABLED
@@ -2999,6 +3422,16 @@ public final class PhFlags implements Flags {
                         + KEY_FLEDGE_AD_SELECTION_MAX_CONCURRENT_BIDDING_COUNT
                         + " = "
                         + getAdSelectionMaxConcurrentBiddingCount());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED
+                        + " = "
+                        + getFledgeAdSelectionBatchBiddingEnabled());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE
+                        + " = "
+                        + getFledgeAdSelectionBatchBiddingMaxBatchSize());
         writer.println(
                 "\t"
                         + KEY_FLEDGE_AD_SELECTION_BIDDING_TIMEOUT_PER_CA_MS
@@ -3115,6 +3548,21 @@ public final class PhFlags implements Flags {
 
         writer.println(
                 "\t" + KEY_ISOLATE_MAX_HEAP_SIZE_BYTES + " = " + getIsolateMaxHeapSizeBytes());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES
+                        + " = "
+                        + getFledgeJsIsolatePoolMaxIdleIsolates());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED
+                        + " = "
+                        + getFledgeJsArrayBufferArgumentsEnabled());
+        writer.println(
+                "\t"
+                        + KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS
+                        + " = "
+                        + getFledgeJsArrayBufferArgumentsMinSizeChars());
         writer.println(
                 "\t"
                         + KEY_FLEDGE_AD_SELECTION_EXPIRATION_WINDOW_S
@@ -3189,6 +3637,21 @@ public final class PhFlags implements Flags {
                         + KEY_BLOCKED_TOPICS_SOURCE_OF_TRUTH
                         + " = "
                         + getBlockedTopicsSourceOfTruth());
+        writer.println(
+                "\t"
+                        + KEY_CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT
+                        + " = "
+                        + getConsentManagerEnableConsentSnapshot());
+        writer.println(
+                "\t"
+                        + KEY_CONSENT_MANAGER_ENABLE_APP_UID_INDEX
+                        + " = "
+                        + getConsentManagerEnableAppUidIndex());
+        writer.println(
+                "\t"
+                        + KEY_ENABLE_CONSENT_DATASTORE_JOURNAL
+                        + " = "
+                        + getEnableConsentDatastoreJournal());
         writer.println("==== Back-Compat PH Flags Dump STATUS ====");
         writer.println(
                 "\t" + KEY_COMPAT_LOGGING_KILL_SWITCH + " = " + getCompatLoggingKillSwitch());
@@ -28,6 +28,7 @@ import com.google.common.util.concurrent.FluentFuture;
 
 import org.json.JSONObject;
 
+import java.util.List;
 import java.util.Map;
 
 /** Defines the bid generator applied on the ads of each custom audience during the ad selection. */
@@ -53,4 +54,25 @@ interface AdBidGenerator {
             @NonNull AdSelectionSignals buyerSignals,
             @NonNull AdSelectionSignals contextualSignals,
             @NonNull RunAdBiddingPerCAExecutionLogger runAdBiddingPerCAExecutionLogger);
+
+    /**
+     * Same as {@link #runAdBiddingPerCA} but for a batch of custom audiences of the same buyer.
+     * Custom audiences resolving to the same bidding logic are bid with a single JS evaluation,
+     * while the outcome of every custom audience is still computed, timed out and failed
+     * independently from the others.
+     *
+     * @param customAudiences the custom audiences to bid for.
+     * @param runAdBiddingPerCAExecutionLoggers one logger per custom audience, in the same order as
+     *     {@code customAudiences}.
+     * @return one future per custom audience, in the same order as {@code customAudiences}, with
+     *     the same semantic of the future returned by {@link #runAdBiddingPerCA}.
+     */
+    @NonNull
+    List<FluentFuture<AdBiddingOutcome>> runAdBiddingPerCABatch(
+            @NonNull List<DBCustomAudience> customAudiences,
+            @NonNull Map<Uri, JSONObject> trustedBiddingDataPerBaseUri,
+            @NonNull AdSelectionSignals adSelectionSignals,
+            @NonNull AdSelectionSignals buyerSignals,
+            @NonNull AdSelectionSignals contextualSignals,
+            @NonNull List<RunAdBiddingPerCAExecutionLogger> runAdBiddingPerCAExecutionLoggers);
 }
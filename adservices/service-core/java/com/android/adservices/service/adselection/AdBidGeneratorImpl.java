@@ -37,10 +37,12 @@ import com.android.adservices.data.customaudience.CustomAudienceDao;
 import com.android.adservices.data.customaudience.DBCustomAudience;
 import com.android.adservices.data.customaudience.DBTrustedBiddingData;
 import com.android.adservices.service.Flags;
+import com.android.adservices.service.adselection.AdSelectionScriptEngine.GenerateBidsBatchResult;
 import com.android.adservices.service.common.httpclient.AdServicesHttpClientRequest;
 import com.android.adservices.service.common.httpclient.AdServicesHttpsClient;
 import com.android.adservices.service.devapi.CustomAudienceDevOverridesHelper;
 import com.android.adservices.service.devapi.DevContext;
+import com.android.adservices.service.exception.JSExecutionException;
 import com.android.adservices.service.js.IsolateSettings;
 import com.android.adservices.service.profiling.Tracing;
 import com.android.adservices.service.stats.AdServicesLoggerUtil;
@@ -48,8 +50,10 @@ import com.android.adservices.service.stats.RunAdBiddingPerCAExecutionLogger;
 import com.android.internal.annotations.VisibleForTesting;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ExecutionSequencer;
 import com.google.common.util.concurrent.FluentFuture;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.UncheckedTimeoutException;
 
@@ -57,13 +61,17 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 /**
  * This class implements the ad bid generator. A new instance is assumed to be created for every
@@ -201,26 +209,9 @@ public class AdBidGeneratorImpl implements AdBidGenerator {
                 CustomAudienceSignals.buildFromCustomAudience(customAudience);
 
         long versionRequested = mFlags.getFledgeAdSelectionBiddingLogicJsVersion();
-        Map<Integer, Long> jsVersionMap =
-                versionRequested >= JsVersionRegister.BUYER_BIDDING_LOGIC_VERSION_VERSION_3
-                        ? ImmutableMap.of(
-                                JsVersionHelper.JS_PAYLOAD_TYPE_BUYER_BIDDING_LOGIC_JS,
-                                versionRequested)
-                        : ImmutableMap.of();
-        AdServicesHttpClientRequest biddingLogicUriHttpRequest =
-                JsVersionHelper.getRequestWithVersionHeader(
-                        customAudience.getBiddingLogicUri(),
-                        jsVersionMap,
-                        mFlags.getFledgeHttpJsCachingEnabled());
-
         FluentFuture<DecisionLogic> buyerDecisionLogic =
-                mJsFetcher.getBuyerDecisionLogicWithLogger(
-                        biddingLogicUriHttpRequest,
-                        mCustomAudienceDevOverridesHelper,
-                        customAudience.getOwner(),
-                        customAudience.getBuyer(),
-                        customAudience.getName(),
-                        runAdBiddingPerCAExecutionLogger);
+                getBuyerDecisionLogic(
+                        customAudience, versionRequested, runAdBiddingPerCAExecutionLogger);
 
         FluentFuture<Pair<AdWithBid, String>> adWithBidPair =
                 buyerDecisionLogic.transformAsync(
@@ -237,6 +228,467 @@ public class AdBidGeneratorImpl implements AdBidGenerator {
                                     runAdBiddingPerCAExecutionLogger);
                         },
                         mLightweightExecutorService);
+        return toAdBiddingOutcome(
+                customAudience,
+                adWithBidPair,
+                mFlags.getAdSelectionBiddingTimeoutPerCaMs(),
+                runAdBiddingPerCAExecutionLogger);
+    }
+
+    @Override
+    @NonNull
+    public List<FluentFuture<AdBiddingOutcome>> runAdBiddingPerCABatch(
+            @NonNull List<DBCustomAudience> customAudiences,
+            @NonNull Map<Uri, JSONObject> trustedBiddingDataPerBaseUri,
+            @NonNull AdSelectionSignals adSelectionSignals,
+            @NonNull AdSelectionSignals buyerSignals,
+            @NonNull AdSelectionSignals contextualSignals,
+            @NonNull List<RunAdBiddingPerCAExecutionLogger> runAdBiddingPerCAExecutionLoggers) {
+        Objects.requireNonNull(customAudiences);
+        Objects.requireNonNull(trustedBiddingDataPerBaseUri);
+        Objects.requireNonNull(adSelectionSignals);
+        Objects.requireNonNull(buyerSignals);
+        Objects.requireNonNull(contextualSignals);
+        Objects.requireNonNull(runAdBiddingPerCAExecutionLoggers);
+        if (customAudiences.size() != runAdBiddingPerCAExecutionLoggers.size()) {
+            throw new IllegalArgumentException(
+                    "A logger must be provided for every custom audience in the batch");
+        }
+
+        sLogger.v("Running batched Ad Bidding for #%d CAs", customAudiences.size());
+        long versionRequested = mFlags.getFledgeAdSelectionBiddingLogicJsVersion();
+        // The bids of the whole batch are generated in a single evaluation, so every CA is given
+        // the time the batch would have taken if its CAs were bid sequentially. The CAs bid alone
+        // after the batch evaluation fails are bid within the same time.
+        long batchTimeoutMs = mFlags.getAdSelectionBiddingTimeoutPerCaMs() * customAudiences.size();
+
+        List<Integer> biddableIndexes = new ArrayList<>();
+        List<FluentFuture<DecisionLogic>> decisionLogics = new ArrayList<>();
+        List<FluentFuture<AdBiddingOutcome>> adBiddingOutcomes =
+                new ArrayList<>(customAudiences.size());
+        for (int i = 0; i < customAudiences.size(); i++) {
+            DBCustomAudience customAudience = customAudiences.get(i);
+            if (customAudience.getAds().isEmpty()) {
+                adBiddingOutcomes.add(
+                        runAdBiddingPerCA(
+                                customAudience,
+                                trustedBiddingDataPerBaseUri,
+                                adSelectionSignals,
+                                buyerSignals,
+                                contextualSignals,
+                                runAdBiddingPerCAExecutionLoggers.get(i)));
+                continue;
+            }
+            runAdBiddingPerCAExecutionLoggers
+                    .get(i)
+                    .startRunAdBiddingPerCA(customAudience.getAds().size());
+            biddableIndexes.add(i);
+            decisionLogics.add(
+                    getBuyerDecisionLogic(
+                            customAudience,
+                            versionRequested,
+                            runAdBiddingPerCAExecutionLoggers.get(i)));
+            adBiddingOutcomes.add(null);
+        }
+
+        // Shared by all the CAs of the batch, cancelling the outcome of one CA must not affect the
+        // others.
+        ListenableFuture<Map<Integer, FluentFuture<Pair<AdWithBid, String>>>> bidsByIndex =
+                Futures.nonCancellationPropagating(
+                        FluentFuture.from(Futures.successfulAsList(decisionLogics))
+                                .transform(
+                                        resolvedDecisionLogics ->
+                                                runBiddingBatches(
+                                                        biddableIndexes,
+                                                        decisionLogics,
+                                                        resolvedDecisionLogics,
+                                                        versionRequested,
+                                                        customAudiences,
+                                                        buyerSignals,
+                                                        contextualSignals,
+                                                        adSelectionSignals,
+                                                        trustedBiddingDataPerBaseUri,
+                                                        runAdBiddingPerCAExecutionLoggers),
+                                        mLightweightExecutorService));
+
+        for (int index : biddableIndexes) {
+            FluentFuture<Pair<AdWithBid, String>> adWithBidPair =
+                    FluentFuture.from(bidsByIndex)
+                            .transformAsync(bids -> bids.get(index), mLightweightExecutorService);
+            adBiddingOutcomes.set(
+                    index,
+                    toAdBiddingOutcome(
+                            customAudiences.get(index),
+                            adWithBidPair,
+                            batchTimeoutMs,
+                            runAdBiddingPerCAExecutionLoggers.get(index)));
+        }
+        return adBiddingOutcomes;
+    }
+
+    /**
+     * Groups the CAs whose bidding logic is a {@link
+     * JsVersionRegister#BUYER_BIDDING_LOGIC_VERSION_VERSION_3} script by script content and
+     * generates the bids of every group with a single evaluation. The CAs with a different version
+     * of the bidding logic are bid individually as in {@link #runBidding}, the ones whose bidding
+     * logic could not be fetched fail with the fetching error.
+     *
+     * @return the future bid of every CA in {@code biddableIndexes}, keyed by its index
+     */
+    private Map<Integer, FluentFuture<Pair<AdWithBid, String>>> runBiddingBatches(
+            @NonNull List<Integer> biddableIndexes,
+            @NonNull List<FluentFuture<DecisionLogic>> decisionLogics,
+            @NonNull List<DecisionLogic> resolvedDecisionLogics,
+            long versionRequested,
+            @NonNull List<DBCustomAudience> customAudiences,
+            @NonNull AdSelectionSignals buyerSignals,
+            @NonNull AdSelectionSignals contextualSignals,
+            @NonNull AdSelectionSignals adSelectionSignals,
+            @NonNull Map<Uri, JSONObject> trustedBiddingDataByBaseUri,
+            @NonNull List<RunAdBiddingPerCAExecutionLogger> runAdBiddingPerCAExecutionLoggers) {
+        Map<Integer, FluentFuture<Pair<AdWithBid, String>>> bidsByIndex = new HashMap<>();
+        Map<String, List<Integer>> batchesByBiddingLogic = new LinkedHashMap<>();
+        for (int i = 0; i < biddableIndexes.size(); i++) {
+            int index = biddableIndexes.get(i);
+            DecisionLogic decisionLogic = resolvedDecisionLogics.get(i);
+            if (decisionLogic == null) {
+                // The fetch failed, propagate its failure to the CA.
+                bidsByIndex.put(
+                        index,
+                        decisionLogics
+                                .get(i)
+                                .transform(ignored -> null, mLightweightExecutorService));
+                continue;
+            }
+            long version =
+                    decisionLogic.getVersion(
+                            JsVersionHelper.JS_PAYLOAD_TYPE_BUYER_BIDDING_LOGIC_JS);
+            if (version == JsVersionRegister.BUYER_BIDDING_LOGIC_VERSION_VERSION_3
+                    && version <= versionRequested) {
+                batchesByBiddingLogic
+                        .computeIfAbsent(decisionLogic.getPayload(), k -> new ArrayList<>())
+                        .add(index);
+                continue;
+            }
+            DBCustomAudience customAudience = customAudiences.get(index);
+            bidsByIndex.put(
+                    index,
+                    FluentFuture.from(
+                            Futures.submitAsync(
+                                    () ->
+                                            runBidding(
+                                                    decisionLogic,
+                                                    versionRequested,
+                                                    customAudience,
+                                                    buyerSignals,
+                                                    contextualSignals,
+                                                    CustomAudienceSignals.buildFromCustomAudience(
+                                                            customAudience),
+                                                    adSelectionSignals,
+                                                    trustedBiddingDataByBaseUri,
+                                                    runAdBiddingPerCAExecutionLoggers.get(index)),
+                                    mLightweightExecutorService)));
+        }
+
+        for (Map.Entry<String, List<Integer>> batch : batchesByBiddingLogic.entrySet()) {
+            List<FluentFuture<Pair<AdWithBid, String>>> batchBids =
+                    runBiddingBatchV3(
+                            batch.getKey(),
+                            batch.getValue().stream()
+                                    .map(customAudiences::get)
+                                    .collect(Collectors.toList()),
+                            buyerSignals,
+                            contextualSignals,
+                            adSelectionSignals,
+                            trustedBiddingDataByBaseUri,
+                            batch.getValue().stream()
+                                    .map(runAdBiddingPerCAExecutionLoggers::get)
+                                    .collect(Collectors.toList()));
+            for (int i = 0; i < batchBids.size(); i++) {
+                bidsByIndex.put(batch.getValue().get(i), batchBids.get(i));
+            }
+        }
+        return bidsByIndex;
+    }
+
+    /**
+     * Generates the bids for {@code customAudiences} with a single evaluation of the {@link
+     * JsVersionRegister#BUYER_BIDDING_LOGIC_VERSION_VERSION_3} script {@code biddingLogic}. The
+     * CAs the batch evaluation didn't produce a result for, because it failed, timed out or stopped
+     * after a CA exceeding its timeout, are bid one at a time, so that a batch never runs more than
+     * one evaluation at a time, like a work partition bidding its CAs sequentially.
+     *
+     * @return the future bid of every CA, in the same order as {@code customAudiences}
+     */
+    private List<FluentFuture<Pair<AdWithBid, String>>> runBiddingBatchV3(
+            @NonNull String biddingLogic,
+            @NonNull List<DBCustomAudience> customAudiences,
+            @NonNull AdSelectionSignals buyerSignals,
+            @NonNull AdSelectionSignals contextualSignals,
+            @NonNull AdSelectionSignals adSelectionSignals,
+            @NonNull Map<Uri, JSONObject> trustedBiddingDataByBaseUri,
+            @NonNull List<RunAdBiddingPerCAExecutionLogger> runAdBiddingPerCAExecutionLoggers) {
+        sLogger.v("Generating bids for #%d CAs in one batch", customAudiences.size());
+        List<FluentFuture<AdSelectionSignals>> trustedBiddingSignals = new ArrayList<>();
+        for (int i = 0; i < customAudiences.size(); i++) {
+            DBCustomAudience customAudience = customAudiences.get(i);
+            runAdBiddingPerCAExecutionLoggers.get(i).startRunBidding();
+            trustedBiddingSignals.add(
+                    getTrustedBiddingSignals(
+                            customAudience.getTrustedBiddingData(),
+                            trustedBiddingDataByBaseUri,
+                            customAudience.getOwner(),
+                            customAudience.getBuyer(),
+                            customAudience.getName(),
+                            runAdBiddingPerCAExecutionLoggers.get(i)));
+        }
+        int traceCookie = Tracing.beginAsyncSection(Tracing.RUN_BIDDING);
+
+        ListenableFuture<List<GenerateBidsBatchResult>> batchResults =
+                Futures.nonCancellationPropagating(
+                        FluentFuture.from(Futures.successfulAsList(trustedBiddingSignals))
+                                .transformAsync(
+                                        signals ->
+                                                generateBidsV3Batch(
+                                                        biddingLogic,
+                                                        customAudiences,
+                                                        buyerSignals,
+                                                        contextualSignals,
+                                                        adSelectionSignals,
+                                                        signals,
+                                                        runAdBiddingPerCAExecutionLoggers),
+                                        mLightweightExecutorService)
+                                .catching(
+                                        Exception.class,
+                                        e -> {
+                                            sLogger.w(
+                                                    e,
+                                                    "Batched generateBid failed, bidding CAs one"
+                                                            + " at a time");
+                                            return null;
+                                        },
+                                        mLightweightExecutorService));
+        batchResults.addListener(
+                () -> Tracing.endAsyncSection(Tracing.RUN_BIDDING, traceCookie),
+                mLightweightExecutorService);
+
+        ExecutionSequencer fallbackSequencer = ExecutionSequencer.create();
+        List<FluentFuture<Pair<AdWithBid, String>>> adWithBidPairs = new ArrayList<>();
+        for (int i = 0; i < customAudiences.size(); i++) {
+            adWithBidPairs.add(
+                    getBidFromBatch(
+                            batchResults,
+                            fallbackSequencer,
+                            i,
+                            biddingLogic,
+                            customAudiences.get(i),
+                            trustedBiddingSignals.get(i),
+                            buyerSignals,
+                            contextualSignals,
+                            adSelectionSignals,
+                            runAdBiddingPerCAExecutionLoggers.get(i)));
+        }
+        return adWithBidPairs;
+    }
+
+    /**
+     * @return the bid of the CA at {@code index} in the batch, generated alone through {@code
+     *     fallbackSequencer} if the batch evaluation didn't produce a result for it
+     */
+    private FluentFuture<Pair<AdWithBid, String>> getBidFromBatch(
+            @NonNull ListenableFuture<List<GenerateBidsBatchResult>> batchResults,
+            @NonNull ExecutionSequencer fallbackSequencer,
+            int index,
+            @NonNull String biddingLogic,
+            @NonNull DBCustomAudience customAudience,
+            @NonNull FluentFuture<AdSelectionSignals> trustedBiddingSignals,
+            @NonNull AdSelectionSignals buyerSignals,
+            @NonNull AdSelectionSignals contextualSignals,
+            @NonNull AdSelectionSignals adSelectionSignals,
+            @NonNull RunAdBiddingPerCAExecutionLogger runAdBiddingPerCAExecutionLogger) {
+        return FluentFuture.from(batchResults)
+                .transformAsync(
+                        results -> {
+                            GenerateBidsBatchResult result =
+                                    results == null ? null : results.get(index);
+                            if (result != null) {
+                                return Futures.immediateFuture(
+                                        toAdWithBidPair(
+                                                biddingLogic,
+                                                customAudience,
+                                                result,
+                                                runAdBiddingPerCAExecutionLogger));
+                            }
+                            // Either the trusted bidding signals could not be fetched, and the
+                            // failure is propagated, or the batch didn't get to evaluate the CA.
+                            return trustedBiddingSignals.transformAsync(
+                                    signals ->
+                                            generateBidV3Alone(
+                                                    fallbackSequencer,
+                                                    biddingLogic,
+                                                    customAudience,
+                                                    buyerSignals,
+                                                    contextualSignals,
+                                                    adSelectionSignals,
+                                                    signals,
+                                                    runAdBiddingPerCAExecutionLogger),
+                                    mLightweightExecutorService);
+                        },
+                        mLightweightExecutorService);
+    }
+
+    /**
+     * Runs the batched {@code generateBid} evaluation for the CAs whose trusted bidding signals
+     * were fetched, giving it the time the CAs would have taken if bid sequentially. The CAs whose
+     * signals are missing, a null entry in {@code trustedBiddingSignals}, are left out of the
+     * evaluation and have a null result, as do the CAs the evaluation stopped before.
+     */
+    private ListenableFuture<List<GenerateBidsBatchResult>> generateBidsV3Batch(
+            @NonNull String biddingLogic,
+            @NonNull List<DBCustomAudience> customAudiences,
+            @NonNull AdSelectionSignals buyerSignals,
+            @NonNull AdSelectionSignals contextualSignals,
+            @NonNull AdSelectionSignals adSelectionSignals,
+            @NonNull List<AdSelectionSignals> trustedBiddingSignals,
+            @NonNull List<RunAdBiddingPerCAExecutionLogger> runAdBiddingPerCAExecutionLoggers)
+            throws JSONException {
+        List<Integer> readyIndexes = new ArrayList<>();
+        List<DBCustomAudience> readyCustomAudiences = new ArrayList<>();
+        List<AdSelectionSignals> readyTrustedBiddingSignals = new ArrayList<>();
+        for (int i = 0; i < customAudiences.size(); i++) {
+            if (trustedBiddingSignals.get(i) != null) {
+                readyIndexes.add(i);
+                readyCustomAudiences.add(customAudiences.get(i));
+                readyTrustedBiddingSignals.add(trustedBiddingSignals.get(i));
+                runAdBiddingPerCAExecutionLoggers.get(i).startGenerateBids();
+            }
+        }
+        List<GenerateBidsBatchResult> results =
+                new ArrayList<>(Collections.nCopies(customAudiences.size(), null));
+        if (readyIndexes.isEmpty()) {
+            return Futures.immediateFuture(results);
+        }
+        long perCaTimeoutMs = mFlags.getAdSelectionBiddingTimeoutPerCaMs();
+        return FluentFuture.from(
+                        mAdSelectionScriptEngine.generateBidsV3Batch(
+                                biddingLogic,
+                                readyCustomAudiences,
+                                adSelectionSignals,
+                                buyerSignals,
+                                readyTrustedBiddingSignals,
+                                contextualSignals,
+                                perCaTimeoutMs))
+                .withTimeout(
+                        perCaTimeoutMs * readyIndexes.size(),
+                        TimeUnit.MILLISECONDS,
+                        mScheduledExecutor)
+                .transform(
+                        readyResults -> {
+                            for (int i = 0; i < readyResults.size(); i++) {
+                                results.set(readyIndexes.get(i), readyResults.get(i));
+                            }
+                            return results;
+                        },
+                        mLightweightExecutorService);
+    }
+
+    /**
+     * Generates the bid of a CA the batched evaluation didn't produce a result for, evaluating the
+     * batch entry point with that CA only, within the bidding timeout of a single CA. The
+     * evaluation starts once the ones submitted before to {@code sequencer} complete. The generate
+     * bids phase of the CA has already been started by the batch.
+     */
+    private FluentFuture<Pair<AdWithBid, String>> generateBidV3Alone(
+            @NonNull ExecutionSequencer sequencer,
+            @NonNull String biddingLogic,
+            @NonNull DBCustomAudience customAudience,
+            @NonNull AdSelectionSignals buyerSignals,
+            @NonNull AdSelectionSignals contextualSignals,
+            @NonNull AdSelectionSignals adSelectionSignals,
+            @NonNull AdSelectionSignals trustedBiddingSignals,
+            @NonNull RunAdBiddingPerCAExecutionLogger runAdBiddingPerCAExecutionLogger) {
+        long perCaTimeoutMs = mFlags.getAdSelectionBiddingTimeoutPerCaMs();
+        return FluentFuture.from(
+                        sequencer.submitAsync(
+                                () -> {
+                                    sLogger.v(
+                                            "Generating bid for CA %s alone",
+                                            customAudience.getName());
+                                    return FluentFuture.from(
+                                                    mAdSelectionScriptEngine.generateBidsV3Batch(
+                                                            biddingLogic,
+                                                            Collections.singletonList(
+                                                                    customAudience),
+                                                            adSelectionSignals,
+                                                            buyerSignals,
+                                                            Collections.singletonList(
+                                                                    trustedBiddingSignals),
+                                                            contextualSignals,
+                                                            perCaTimeoutMs))
+                                            .withTimeout(
+                                                    perCaTimeoutMs,
+                                                    TimeUnit.MILLISECONDS,
+                                                    mScheduledExecutor);
+                                },
+                                mLightweightExecutorService))
+                .transform(
+                        results ->
+                                toAdWithBidPair(
+                                        biddingLogic,
+                                        customAudience,
+                                        results.get(0),
+                                        runAdBiddingPerCAExecutionLogger),
+                        mLightweightExecutorService);
+    }
+
+    private Pair<AdWithBid, String> toAdWithBidPair(
+            @NonNull String biddingLogic,
+            @NonNull DBCustomAudience customAudience,
+            @NonNull GenerateBidsBatchResult result,
+            @NonNull RunAdBiddingPerCAExecutionLogger runAdBiddingPerCAExecutionLogger) {
+        if (result.error != null) {
+            throw new JSExecutionException(result.error);
+        }
+        if (result.elapsedMs > mFlags.getAdSelectionBiddingTimeoutPerCaMs()) {
+            sLogger.v(
+                    "generateBid for CA %s took %d ms", customAudience.getName(), result.elapsedMs);
+            throw new UncheckedTimeoutException(BIDDING_TIMED_OUT);
+        }
+        runAdBiddingPerCAExecutionLogger.endGenerateBids();
+        runAdBiddingPerCAExecutionLogger.endRunBidding();
+        return new Pair<>(getBestAdWithBidPerCA(result.adsWithBids), biddingLogic);
+    }
+
+    private FluentFuture<DecisionLogic> getBuyerDecisionLogic(
+            @NonNull DBCustomAudience customAudience,
+            long versionRequested,
+            @NonNull RunAdBiddingPerCAExecutionLogger runAdBiddingPerCAExecutionLogger) {
+        Map<Integer, Long> jsVersionMap =
+                versionRequested >= JsVersionRegister.BUYER_BIDDING_LOGIC_VERSION_VERSION_3
+                        ? ImmutableMap.of(
+                                JsVersionHelper.JS_PAYLOAD_TYPE_BUYER_BIDDING_LOGIC_JS,
+                                versionRequested)
+                        : ImmutableMap.of();
+        AdServicesHttpClientRequest biddingLogicUriHttpRequest =
+                JsVersionHelper.getRequestWithVersionHeader(
+                        customAudience.getBiddingLogicUri(),
+                        jsVersionMap,
+                        mFlags.getFledgeHttpJsCachingEnabled());
+
+        return mJsFetcher.getBuyerDecisionLogicWithLogger(
+                biddingLogicUriHttpRequest,
+                mCustomAudienceDevOverridesHelper,
+                customAudience.getOwner(),
+                customAudience.getBuyer(),
+                customAudience.getName(),
+                runAdBiddingPerCAExecutionLogger);
+    }
+
+    private FluentFuture<AdBiddingOutcome> toAdBiddingOutcome(
+            @NonNull DBCustomAudience customAudience,
+            @NonNull FluentFuture<Pair<AdWithBid, String>> adWithBidPair,
+            long timeoutMs,
+            @NonNull RunAdBiddingPerCAExecutionLogger runAdBiddingPerCAExecutionLogger) {
         int traceCookie = Tracing.beginAsyncSection(Tracing.RUN_BIDDING_PER_CA);
         FluentFuture<AdBiddingOutcome> adBiddingOutcome =
                 adWithBidPair
@@ -269,10 +721,7 @@ public class AdBidGeneratorImpl implements AdBidGenerator {
                                     return result;
                                 },
                                 mLightweightExecutorService)
-                        .withTimeout(
-                                mFlags.getAdSelectionBiddingTimeoutPerCaMs(),
-                                TimeUnit.MILLISECONDS,
-                                mScheduledExecutor)
+                        .withTimeout(timeoutMs, TimeUnit.MILLISECONDS, mScheduledExecutor)
                         .transform(
                                 result -> {
                                     runAdBiddingPerCAExecutionLogger.close(STATUS_SUCCESS);
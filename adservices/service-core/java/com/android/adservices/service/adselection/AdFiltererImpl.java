@@ -22,16 +22,21 @@ import android.adservices.common.AdTechIdentifier;
 import android.adservices.common.FrequencyCapFilters;
 import android.adservices.common.KeyedFrequencyCap;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 
 import com.android.adservices.LoggerFactory;
 import com.android.adservices.data.adselection.AppInstallDao;
 import com.android.adservices.data.adselection.FrequencyCapDao;
+import com.android.adservices.data.adselection.FrequencyCapHistogramIndex;
 import com.android.adservices.data.common.DBAdData;
 import com.android.adservices.data.customaudience.DBCustomAudience;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -43,17 +48,39 @@ public final class AdFiltererImpl implements AdFilterer {
     @NonNull private final Clock mClock;
     @NonNull private final AppInstallDao mAppInstallDao;
     @NonNull private final FrequencyCapDao mFrequencyCapDao;
+    private final boolean mUseHistogramIndex;
+    private final boolean mUseBulkHistogramQuery;
 
     public AdFiltererImpl(
             @NonNull AppInstallDao appInstallDao,
             @NonNull FrequencyCapDao frequencyCapDao,
             @NonNull Clock clock) {
+        this(appInstallDao, frequencyCapDao, clock, false, false);
+    }
+
+    /**
+     * Creates an {@link AdFiltererImpl}.
+     *
+     * @param useHistogramIndex if {@code true}, frequency cap filters are evaluated against the
+     *     in-memory histogram index kept by the {@link FrequencyCapDao} instead of querying the
+     *     database for every filter
+     * @param useBulkHistogramQuery if {@code true}, the histograms needed to filter a list of
+     *     custom audiences are read with a single bulk query before any filter is evaluated
+     */
+    public AdFiltererImpl(
+            @NonNull AppInstallDao appInstallDao,
+            @NonNull FrequencyCapDao frequencyCapDao,
+            @NonNull Clock clock,
+            boolean useHistogramIndex,
+            boolean useBulkHistogramQuery) {
         Objects.requireNonNull(appInstallDao);
         Objects.requireNonNull(frequencyCapDao);
         Objects.requireNonNull(clock);
         mAppInstallDao = appInstallDao;
         mFrequencyCapDao = frequencyCapDao;
         mClock = clock;
+        mUseHistogramIndex = useHistogramIndex;
+        mUseBulkHistogramQuery = useBulkHistogramQuery;
     }
 
     /**
@@ -72,6 +99,8 @@ public final class AdFiltererImpl implements AdFilterer {
         List<DBCustomAudience> toReturn = new ArrayList<>();
         Instant currentTime = mClock.instant();
         sLogger.v("Applying filters to %d CAs with current time %s.", cas.size(), currentTime);
+        FrequencyCapHistogramIndex histogramSnapshot =
+                mUseBulkHistogramQuery ? getHistogramSnapshot(cas, currentTime) : null;
         int totalAds = 0;
         int remainingAds = 0;
         for (DBCustomAudience ca : cas) {
@@ -79,7 +108,12 @@ public final class AdFiltererImpl implements AdFilterer {
             totalAds += ca.getAds().size();
             for (DBAdData ad : ca.getAds()) {
                 if (doesAdPassFilters(
-                        ad, ca.getBuyer(), ca.getOwner(), ca.getName(), currentTime)) {
+                        ad,
+                        ca.getBuyer(),
+                        ca.getOwner(),
+                        ca.getName(),
+                        currentTime,
+                        histogramSnapshot)) {
                     filteredAds.add(ad);
                 }
             }
@@ -95,6 +129,52 @@ public final class AdFiltererImpl implements AdFilterer {
         return toReturn;
     }
 
+    /**
+     * Reads every histogram event needed to evaluate the frequency cap filters of the given custom
+     * audiences with a single bulk query.
+     *
+     * @return a snapshot of the needed histograms, or {@code null} if no ad has frequency cap
+     *     filters
+     */
+    @Nullable
+    private FrequencyCapHistogramIndex getHistogramSnapshot(
+            List<DBCustomAudience> cas, Instant currentTime) {
+        Set<AdTechIdentifier> buyers = new HashSet<>();
+        Duration longestInterval = Duration.ZERO;
+        for (DBCustomAudience ca : cas) {
+            for (DBAdData ad : ca.getAds()) {
+                if (ad.getAdFilters() == null
+                        || ad.getAdFilters().getFrequencyCapFilters() == null) {
+                    continue;
+                }
+                FrequencyCapFilters filters = ad.getAdFilters().getFrequencyCapFilters();
+                for (Set<KeyedFrequencyCap> keyedFrequencyCaps :
+                        Arrays.asList(
+                                filters.getKeyedFrequencyCapsForWinEvents(),
+                                filters.getKeyedFrequencyCapsForImpressionEvents(),
+                                filters.getKeyedFrequencyCapsForViewEvents(),
+                                filters.getKeyedFrequencyCapsForClickEvents())) {
+                    for (KeyedFrequencyCap frequencyCap : keyedFrequencyCaps) {
+                        buyers.add(ca.getBuyer());
+                        if (frequencyCap.getInterval().compareTo(longestInterval) > 0) {
+                            longestInterval = frequencyCap.getInterval();
+                        }
+                    }
+                }
+            }
+        }
+
+        if (buyers.isEmpty()) {
+            return null;
+        }
+
+        Instant earliestStartTime = currentTime.minusMillis(longestInterval.toMillis());
+        sLogger.v(
+                "Reading histograms for %d buyers with events since %s.",
+                buyers.size(), earliestStartTime);
+        return mFrequencyCapDao.getHistogramSnapshotForBuyersAfterTime(buyers, earliestStartTime);
+    }
+
     /**
      * Takes in a {@link ContextualAds} object and filters out ads from it that should not be in the
      * auction
@@ -116,7 +196,8 @@ public final class AdFiltererImpl implements AdFilterer {
                             ad.getAdData().getMetadata(),
                             ad.getAdData().getAdCounterKeys(),
                             ad.getAdData().getAdFilters());
-            if (doesAdPassFilters(dbAdData, contextualAds.getBuyer(), null, null, currentTime)) {
+            if (doesAdPassFilters(
+                    dbAdData, contextualAds.getBuyer(), null, null, currentTime, null)) {
                 toReturn.add(ad);
             }
         }
@@ -135,13 +216,19 @@ public final class AdFiltererImpl implements AdFilterer {
             AdTechIdentifier buyer,
             String customAudienceOwner,
             String customAudienceName,
-            Instant currentTime) {
+            Instant currentTime,
+            @Nullable FrequencyCapHistogramIndex histogramSnapshot) {
         if (ad.getAdFilters() == null) {
             return true;
         }
         return doesAdPassAppInstallFilters(ad, buyer)
                 && doesAdPassFrequencyCapFilters(
-                        ad, buyer, customAudienceOwner, customAudienceName, currentTime);
+                        ad,
+                        buyer,
+                        customAudienceOwner,
+                        customAudienceName,
+                        currentTime,
+                        histogramSnapshot);
     }
 
     private boolean doesAdPassAppInstallFilters(DBAdData ad, AdTechIdentifier buyer) {
@@ -165,7 +252,8 @@ public final class AdFiltererImpl implements AdFilterer {
             AdTechIdentifier buyer,
             String customAudienceOwner,
             String customAudienceName,
-            Instant currentTime) {
+            Instant currentTime,
+            @Nullable FrequencyCapHistogramIndex histogramSnapshot) {
         if (ad.getAdFilters().getFrequencyCapFilters() == null) {
             return true;
         }
@@ -185,7 +273,8 @@ public final class AdFiltererImpl implements AdFilterer {
                         buyer,
                         customAudienceOwner,
                         customAudienceName,
-                        currentTime)) {
+                        currentTime,
+                        histogramSnapshot)) {
             return false;
         }
 
@@ -194,7 +283,8 @@ public final class AdFiltererImpl implements AdFilterer {
                         filters.getKeyedFrequencyCapsForImpressionEvents(),
                         FrequencyCapFilters.AD_EVENT_TYPE_IMPRESSION,
                         buyer,
-                        currentTime)) {
+                        currentTime,
+                        histogramSnapshot)) {
             return false;
         }
 
@@ -203,7 +293,8 @@ public final class AdFiltererImpl implements AdFilterer {
                         filters.getKeyedFrequencyCapsForViewEvents(),
                         FrequencyCapFilters.AD_EVENT_TYPE_VIEW,
                         buyer,
-                        currentTime)) {
+                        currentTime,
+                        histogramSnapshot)) {
             return false;
         }
 
@@ -212,7 +303,8 @@ public final class AdFiltererImpl implements AdFilterer {
                         filters.getKeyedFrequencyCapsForClickEvents(),
                         FrequencyCapFilters.AD_EVENT_TYPE_CLICK,
                         buyer,
-                        currentTime)) {
+                        currentTime,
+                        histogramSnapshot)) {
             return false;
         }
 
@@ -224,18 +316,20 @@ public final class AdFiltererImpl implements AdFilterer {
             AdTechIdentifier buyer,
             String customAudienceOwner,
             String customAudienceName,
-            Instant currentTime) {
+            Instant currentTime,
+            @Nullable FrequencyCapHistogramIndex histogramSnapshot) {
         for (KeyedFrequencyCap frequencyCap : keyedFrequencyCaps) {
             Instant intervalStartTime =
                     currentTime.minusMillis(frequencyCap.getInterval().toMillis());
             int numEventsSinceStartTime =
-                    mFrequencyCapDao.getNumEventsForCustomAudienceAfterTime(
+                    getNumEventsForCustomAudienceAfterTime(
                             frequencyCap.getAdCounterKey(),
                             buyer,
                             customAudienceOwner,
                             customAudienceName,
                             FrequencyCapFilters.AD_EVENT_TYPE_WIN,
-                            intervalStartTime);
+                            intervalStartTime,
+                            histogramSnapshot);
 
             if (numEventsSinceStartTime > frequencyCap.getMaxCount()) {
                 return false;
@@ -249,13 +343,18 @@ public final class AdFiltererImpl implements AdFilterer {
             Set<KeyedFrequencyCap> keyedFrequencyCaps,
             int adEventType,
             AdTechIdentifier buyer,
-            Instant currentTime) {
+            Instant currentTime,
+            @Nullable FrequencyCapHistogramIndex histogramSnapshot) {
         for (KeyedFrequencyCap frequencyCap : keyedFrequencyCaps) {
             Instant intervalStartTime =
                     currentTime.minusMillis(frequencyCap.getInterval().toMillis());
             int numEventsSinceStartTime =
-                    mFrequencyCapDao.getNumEventsForBuyerAfterTime(
-                            frequencyCap.getAdCounterKey(), buyer, adEventType, intervalStartTime);
+                    getNumEventsForBuyerAfterTime(
+                            frequencyCap.getAdCounterKey(),
+                            buyer,
+                            adEventType,
+                            intervalStartTime,
+                            histogramSnapshot);
 
             if (numEventsSinceStartTime > frequencyCap.getMaxCount()) {
                 return false;
@@ -264,4 +363,57 @@ public final class AdFiltererImpl implements AdFilterer {
 
         return true;
     }
+
+    private int getNumEventsForBuyerAfterTime(
+            String adCounterKey,
+            AdTechIdentifier buyer,
+            int adEventType,
+            Instant startTime,
+            @Nullable FrequencyCapHistogramIndex histogramSnapshot) {
+        if (histogramSnapshot != null) {
+            return histogramSnapshot.getNumEventsForBuyerAfterTime(
+                    adCounterKey, buyer, adEventType, startTime);
+        }
+        if (mUseHistogramIndex) {
+            return mFrequencyCapDao.getNumEventsForBuyerAfterTimeFromIndex(
+                    adCounterKey, buyer, adEventType, startTime);
+        }
+        return mFrequencyCapDao.getNumEventsForBuyerAfterTime(
+                adCounterKey, buyer, adEventType, startTime);
+    }
+
+    private int getNumEventsForCustomAudienceAfterTime(
+            String adCounterKey,
+            AdTechIdentifier buyer,
+            String customAudienceOwner,
+            String customAudienceName,
+            int adEventType,
+            Instant startTime,
+            @Nullable FrequencyCapHistogramIndex histogramSnapshot) {
+        if (histogramSnapshot != null) {
+            return histogramSnapshot.getNumEventsForCustomAudienceAfterTime(
+                    adCounterKey,
+                    buyer,
+                    customAudienceOwner,
+                    customAudienceName,
+                    adEventType,
+                    startTime);
+        }
+        if (mUseHistogramIndex) {
+            return mFrequencyCapDao.getNumEventsForCustomAudienceAfterTimeFromIndex(
+                    adCounterKey,
+                    buyer,
+                    customAudienceOwner,
+                    customAudienceName,
+                    adEventType,
+                    startTime);
+        }
+        return mFrequencyCapDao.getNumEventsForCustomAudienceAfterTime(
+                adCounterKey,
+                buyer,
+                customAudienceOwner,
+                customAudienceName,
+                adEventType,
+                startTime);
+    }
 }
@@ -29,6 +29,8 @@ public final class AdFilteringFeatureFactory {
 
     private static final LoggerFactory.Logger sLogger = LoggerFactory.getFledgeLogger();
     private final boolean mIsFledgeAdSelectionFilteringEnabled;
+    private final boolean mIsAdCounterHistogramInMemoryIndexEnabled;
+    private final boolean mIsAdCounterHistogramBulkQueryEnabled;
     private final AppInstallDao mAppInstallDao;
     private final FrequencyCapDao mFrequencyCapDao;
 
@@ -36,6 +38,10 @@ public final class AdFilteringFeatureFactory {
             AppInstallDao appInstallDao, FrequencyCapDao frequencyCapDao, Flags flags) {
         mIsFledgeAdSelectionFilteringEnabled =
                 BinderFlagReader.readFlag(flags::getFledgeAdSelectionFilteringEnabled);
+        mIsAdCounterHistogramInMemoryIndexEnabled =
+                BinderFlagReader.readFlag(flags::getFledgeAdCounterHistogramInMemoryIndexEnabled);
+        mIsAdCounterHistogramBulkQueryEnabled =
+                BinderFlagReader.readFlag(flags::getFledgeAdCounterHistogramBulkQueryEnabled);
 
         mAppInstallDao = appInstallDao;
         mFrequencyCapDao = frequencyCapDao;
@@ -53,7 +59,12 @@ public final class AdFilteringFeatureFactory {
      */
     public AdFilterer getAdFilterer() {
         if (mIsFledgeAdSelectionFilteringEnabled) {
-            return new AdFiltererImpl(mAppInstallDao, mFrequencyCapDao, Clock.systemUTC());
+            return new AdFiltererImpl(
+                    mAppInstallDao,
+                    mFrequencyCapDao,
+                    Clock.systemUTC(),
+                    mIsAdCounterHistogramInMemoryIndexEnabled,
+                    mIsAdCounterHistogramBulkQueryEnabled);
         } else {
             return new AdFiltererNoOpImpl();
         }
@@ -507,11 +507,15 @@ public abstract class AdSelectionRunner {
                     // Set start of bidding stage.
                     mAdSelectionExecutionLogger.startBiddingProcess(
                             countBuyersRequested(adSelectionConfig));
+                    List<AdTechIdentifier> buyers = adSelectionConfig.getCustomAudienceBuyers();
+                    long activeWindowTimeMs = mFlags.getFledgeCustomAudienceActiveTimeWindowInMs();
                     List<DBCustomAudience> buyerCustomAudience =
-                            mCustomAudienceDao.getActiveCustomAudienceByBuyers(
-                                    adSelectionConfig.getCustomAudienceBuyers(),
-                                    mClock.instant(),
-                                    mFlags.getFledgeCustomAudienceActiveTimeWindowInMs());
+                            mFlags.getFledgeCustomAudienceSnapshotCacheEnabled()
+                                    ? mCustomAudienceDao
+                                            .getActiveCustomAudienceByBuyersFromSnapshots(
+                                                    buyers, mClock.instant(), activeWindowTimeMs)
+                                    : mCustomAudienceDao.getActiveCustomAudienceByBuyers(
+                                            buyers, mClock.instant(), activeWindowTimeMs);
                     if ((buyerCustomAudience == null || buyerCustomAudience.isEmpty())
                             && adSelectionConfig.getBuyerContextualAds().isEmpty()) {
                         IllegalStateException exception =
@@ -18,6 +18,7 @@ package com.android.adservices.service.adselection;
 
 import static com.android.adservices.service.js.JSScriptArgument.arrayArg;
 import static com.android.adservices.service.js.JSScriptArgument.jsonArg;
+import static com.android.adservices.service.js.JSScriptArgument.numericArg;
 import static com.android.adservices.service.js.JSScriptArgument.recordArg;
 import static com.android.adservices.service.js.JSScriptArgument.stringArg;
 import static com.android.adservices.service.js.JSScriptArgument.stringArrayArg;
@@ -29,6 +30,7 @@ import android.adservices.adselection.AdWithBid;
 import android.adservices.common.AdData;
 import android.adservices.common.AdSelectionSignals;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.content.Context;
 
 import com.android.adservices.LoggerFactory;
@@ -101,6 +103,13 @@ public class AdSelectionScriptEngine {
     public static final String GENERATE_BID_FUNCTION_NAME = "generateBid";
     public static final String SCORE_AD_FUNCTION_NAME = "scoreAd";
     public static final String USER_SIGNALS_ARG_NAME = "__rb_user_signals";
+    public static final String CUSTOM_AUDIENCES_ARG_NAME = "__rb_custom_audiences";
+    public static final String TRUSTED_BIDDING_SIGNALS_LIST_ARG_NAME =
+            "__rb_trusted_bidding_signals_list";
+    public static final String ERROR_FIELD_NAME = "error";
+    public static final String ELAPSED_MS_FIELD_NAME = "elapsed_ms";
+    public static final String PER_CUSTOM_AUDIENCE_TIMEOUT_MS_ARG_NAME =
+            "__rb_per_custom_audience_timeout_ms";
     /**
      * Template for the iterative invocation function. The two tokens to expand are the list of
      * parameters and the invocation of the actual per-ad function.
@@ -173,6 +182,75 @@ public class AdSelectionScriptEngine {
                     + "    return { 'status': status, 'results': results };\n"
                     + "};";
 
+    /**
+     * Template for the batched invocation of {@code generateBid} for several custom audiences
+     * sharing the same bidding logic. Every invocation is isolated from the others: an exception or
+     * an invalid result only affects the entry of the failing custom audience, which also reports
+     * the time spent evaluating it. The batch stops after the first custom audience taking longer
+     * than its timeout, the custom audiences following it have no entry in the result.
+     */
+    public static final String AD_SELECTION_GENERATE_BID_BATCH_JS_V3 =
+            "function "
+                    + JSScriptEngine.ENTRY_POINT_FUNC_NAME
+                    + "("
+                    + CUSTOM_AUDIENCES_ARG_NAME
+                    + ", "
+                    + AUCTION_SIGNALS_ARG_NAME
+                    + ", "
+                    + PER_BUYER_SIGNALS_ARG_NAME
+                    + ", "
+                    + TRUSTED_BIDDING_SIGNALS_LIST_ARG_NAME
+                    + ", "
+                    + CONTEXTUAL_SIGNALS_ARG_NAME
+                    + ", "
+                    + PER_CUSTOM_AUDIENCE_TIMEOUT_MS_ARG_NAME
+                    + ") {\n"
+                    + "  const batch_results = [];\n"
+                    + "  for (let i = 0; i < "
+                    + CUSTOM_AUDIENCES_ARG_NAME
+                    + ".length; i++) {\n"
+                    + "    const start_ms = Date.now();\n"
+                    + "    let status = 0;\n"
+                    + "    let results = [];\n"
+                    + "    let error = null;\n"
+                    + "    try {\n"
+                    + "      const script_result = "
+                    + GENERATE_BID_FUNCTION_NAME
+                    + "("
+                    + CUSTOM_AUDIENCES_ARG_NAME
+                    + "[i], "
+                    + AUCTION_SIGNALS_ARG_NAME
+                    + ", "
+                    + PER_BUYER_SIGNALS_ARG_NAME
+                    + ", "
+                    + TRUSTED_BIDDING_SIGNALS_LIST_ARG_NAME
+                    + "[i], "
+                    + CONTEXTUAL_SIGNALS_ARG_NAME
+                    + ");\n"
+                    + "      if (script_result === Object(script_result) &&\n"
+                    + "          'ad' in script_result &&\n"
+                    + "          'bid' in script_result &&\n"
+                    + "          'render' in script_result) {\n"
+                    + "        results = [{'ad': script_result.ad,'bid': script_result.bid},];\n"
+                    + "      } else {\n"
+                    + "        // invalid script\n"
+                    + "        status = -1;\n"
+                    + "      }\n"
+                    + "    } catch (e) {\n"
+                    + "      error = String(e);\n"
+                    + "    }\n"
+                    + "    const elapsed_ms = Date.now() - start_ms;\n"
+                    + "    batch_results.push({'status': status, 'results': results,\n"
+                    + "        'error': error, 'elapsed_ms': elapsed_ms});\n"
+                    + "    if (elapsed_ms > "
+                    + PER_CUSTOM_AUDIENCE_TIMEOUT_MS_ARG_NAME
+                    + ") {\n"
+                    + "      break;\n"
+                    + "    }\n"
+                    + "  }\n"
+                    + "  return batch_results;\n"
+                    + "};";
+
     public static final String CHECK_FUNCTIONS_EXIST_JS =
             "function "
                     + JSScriptEngine.ENTRY_POINT_FUNC_NAME
@@ -351,6 +429,87 @@ public class AdSelectionScriptEngine {
                         mExecutor));
     }
 
+    /**
+     * Invokes the {@code generateBid} function in the given {@code generateBidJS} JS script for
+     * every custom audience in {@code customAudiences} with a single script evaluation. The list
+     * {@code trustedBiddingSignals} is expected to be aligned with {@code customAudiences}. The
+     * evaluation stops after the first custom audience whose {@code generateBid} invocation takes
+     * longer than {@code perCustomAudienceTimeoutMs}.
+     *
+     * @return one {@link GenerateBidsBatchResult} per evaluated custom audience, in the same order
+     *     as {@code customAudiences}. The custom audiences following the one that timed out have no
+     *     result. The list of ads with bid of a custom audience will be empty if the script
+     *     returned an invalid result for it.
+     * @throws JSONException If any of the signals is not a valid JSON object.
+     */
+    @NonNull
+    public ListenableFuture<List<GenerateBidsBatchResult>> generateBidsV3Batch(
+            @NonNull String generateBidJS,
+            @NonNull List<DBCustomAudience> customAudiences,
+            @NonNull AdSelectionSignals auctionSignals,
+            @NonNull AdSelectionSignals perBuyerSignals,
+            @NonNull List<AdSelectionSignals> trustedBiddingSignals,
+            @NonNull AdSelectionSignals contextualSignals,
+            long perCustomAudienceTimeoutMs)
+            throws JSONException {
+        Objects.requireNonNull(generateBidJS);
+        Objects.requireNonNull(customAudiences);
+        Objects.requireNonNull(auctionSignals);
+        Objects.requireNonNull(perBuyerSignals);
+        Objects.requireNonNull(trustedBiddingSignals);
+        Objects.requireNonNull(contextualSignals);
+        if (trustedBiddingSignals.size() != customAudiences.size()) {
+            throw new IllegalArgumentException(
+                    "Trusted bidding signals must be provided for every custom audience in the"
+                            + " batch");
+        }
+        int traceCookie = Tracing.beginAsyncSection(Tracing.GENERATE_BIDS);
+
+        // Both arrays are indexed by position, the name of their items is ignored.
+        ImmutableList.Builder<JSScriptArgument> customAudienceArgs = ImmutableList.builder();
+        ImmutableList.Builder<JSScriptArgument> trustedBiddingSignalsArgs =
+                ImmutableList.builder();
+        for (int i = 0; i < customAudiences.size(); i++) {
+            customAudienceArgs.add(translateCustomAudience(customAudiences.get(i)));
+            trustedBiddingSignalsArgs.add(
+                    jsonArg(SCRIPT_ARGUMENT_NAME_IGNORED, trustedBiddingSignals.get(i)));
+        }
+        ImmutableList<JSScriptArgument> args =
+                ImmutableList.<JSScriptArgument>builder()
+                        .add(arrayArg(CUSTOM_AUDIENCES_ARG_NAME, customAudienceArgs.build()))
+                        .add(jsonArg(AUCTION_SIGNALS_ARG_NAME, auctionSignals))
+                        .add(jsonArg(PER_BUYER_SIGNALS_ARG_NAME, perBuyerSignals))
+                        .add(
+                                arrayArg(
+                                        TRUSTED_BIDDING_SIGNALS_LIST_ARG_NAME,
+                                        trustedBiddingSignalsArgs.build()))
+                        .add(jsonArg(CONTEXTUAL_SIGNALS_ARG_NAME, contextualSignals))
+                        .add(
+                                numericArg(
+                                        PER_CUSTOM_AUDIENCE_TIMEOUT_MS_ARG_NAME,
+                                        perCustomAudienceTimeoutMs))
+                        .build();
+
+        IsolateSettings isolateSettings =
+                mEnforceMaxHeapSizeFeatureSupplier.get()
+                        ? IsolateSettings.forMaxHeapSizeEnforcementEnabled(
+                                mMaxHeapSizeBytesSupplier.get())
+                        : IsolateSettings.forMaxHeapSizeEnforcementDisabled();
+        return FluentFuture.from(
+                transform(
+                        mJsEngine.evaluate(
+                                generateBidJS + "\n" + AD_SELECTION_GENERATE_BID_BATCH_JS_V3,
+                                args,
+                                isolateSettings),
+                        result -> {
+                            List<GenerateBidsBatchResult> batchResults =
+                                    handleGenerateBidsBatchOutput(result, customAudiences.size());
+                            Tracing.endAsyncSection(Tracing.GENERATE_BIDS, traceCookie);
+                            return batchResults;
+                        },
+                        mExecutor));
+    }
+
     /**
      * @return The scored ads for this custom audiences given the list of Ads with associated bid
      *     and the set of signals. Will return an empty list if the script fails for any reason.
@@ -479,6 +638,47 @@ public class AdSelectionScriptEngine {
         }
     }
 
+    /**
+     * Parses the output of {@link #AD_SELECTION_GENERATE_BID_BATCH_JS_V3} into one {@link
+     * GenerateBidsBatchResult} per evaluated custom audience. The per custom audience results are
+     * converted with {@link #handleGenerateBidsOutput(AuctionScriptResult)}.
+     */
+    private List<GenerateBidsBatchResult> handleGenerateBidsBatchOutput(
+            String batchScriptResult, int expectedResultsCount) {
+        try {
+            JSONArray batchResults = new JSONArray(batchScriptResult);
+            if (batchResults.length() > expectedResultsCount) {
+                throw new IllegalArgumentException(
+                        String.format(
+                                "Expected at most %d results from the batched generateBid"
+                                        + " invocation but got %d",
+                                expectedResultsCount, batchResults.length()));
+            }
+            ImmutableList.Builder<GenerateBidsBatchResult> result = ImmutableList.builder();
+            for (int i = 0; i < batchResults.length(); i++) {
+                JSONObject customAudienceResult = batchResults.getJSONObject(i);
+                String error =
+                        customAudienceResult.isNull(ERROR_FIELD_NAME)
+                                ? null
+                                : customAudienceResult.getString(ERROR_FIELD_NAME);
+                List<AdWithBid> adsWithBids =
+                        handleGenerateBidsOutput(
+                                new AuctionScriptResult(
+                                        customAudienceResult.getInt(STATUS_FIELD_NAME),
+                                        customAudienceResult.getJSONArray(RESULTS_FIELD_NAME)));
+                result.add(
+                        new GenerateBidsBatchResult(
+                                adsWithBids,
+                                error,
+                                customAudienceResult.optLong(ELAPSED_MS_FIELD_NAME)));
+            }
+            return result.build();
+        } catch (JSONException e) {
+            throw new JSExecutionException(
+                    "Illegal result returned by our internal batched generateBid function.", e);
+        }
+    }
+
     /**
      * Parses the output from the invocation of the {@code scoreAd} JS function on a list of ad with
      * associated bids {@link Double}. The script output has been pre-parsed into an {@link
@@ -927,6 +1127,21 @@ public class AdSelectionScriptEngine {
         }
     }
 
+    /** The outcome of the batched {@code generateBid} invocation for a single custom audience. */
+    static class GenerateBidsBatchResult {
+        @NonNull public final List<AdWithBid> adsWithBids;
+        // The message of the exception thrown by generateBid, or null if it didn't throw.
+        @Nullable public final String error;
+        public final long elapsedMs;
+
+        GenerateBidsBatchResult(
+                @NonNull List<AdWithBid> adsWithBids, @Nullable String error, long elapsedMs) {
+            this.adsWithBids = adsWithBids;
+            this.error = error;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
     JSScriptArgument translateCustomAudience(DBCustomAudience customAudience) throws JSONException {
         ImmutableList.Builder<JSScriptArgument> adsArg = ImmutableList.builder();
         for (DBAdData ad : customAudience.getAds()) {
@@ -193,7 +193,8 @@ public class AdSelectionServiceImpl extends AdSelectionService.Stub {
                 SharedStorageDatabase.getInstance(context).frequencyCapDao(),
                 new AdServicesHttpsClient(
                         AdServicesExecutors.getBlockingExecutor(),
-                        CacheProviderFactory.create(context, FlagsFactory.getFlags())),
+                        CacheProviderFactory.create(context, FlagsFactory.getFlags()),
+                        FlagsFactory.getFlags().getFledgeHttpRequestCoalescingEnabled()),
                 DevContextFilter.create(context),
                 AdServicesExecutors.getLightWeightExecutor(),
                 AdServicesExecutors.getBackgroundExecutor(),
@@ -196,7 +196,8 @@ public class OutcomeSelectionRunner {
         mAdServicesHttpsClient =
                 new AdServicesHttpsClient(
                         AdServicesExecutors.getBlockingExecutor(),
-                        CacheProviderFactory.create(context, flags));
+                        CacheProviderFactory.create(context, flags),
+                        flags.getFledgeHttpRequestCoalescingEnabled());
         mAdServicesLogger = adServicesLogger;
         mContext = context;
         mFlags = flags;
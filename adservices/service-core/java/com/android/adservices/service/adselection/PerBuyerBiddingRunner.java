@@ -33,10 +33,16 @@ import com.android.internal.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ExecutionSequencer;
 import com.google.common.util.concurrent.FluentFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -91,13 +97,20 @@ public class PerBuyerBiddingRunner {
                 "Running bid for #%d Custom Audiences for buyer: %s",
                 customAudienceList.size(), buyer);
 
-        List<List<DBCustomAudience>> biddingWorkPartitions =
-                partitionList(customAudienceList, getMaxConcurrentBiddingCount());
-
         sLogger.v("Fetching trusted bidding data for buyer: %s", buyer);
         FluentFuture<Map<Uri, JSONObject>> trustedBiddingDataMap =
                 mTrustedBiddingDataFetcher.getTrustedBiddingDataForBuyer(customAudienceList);
 
+        if (mFlags.getFledgeAdSelectionBatchBiddingEnabled()) {
+            List<ListenableFuture<AdBiddingOutcome>> buyerBiddingOutcomes =
+                    runBatchedBidding(customAudienceList, adSelectionConfig, trustedBiddingDataMap);
+            eventuallyTimeoutIncompleteTasks(buyerTimeoutMs, buyerBiddingOutcomes);
+            return buyerBiddingOutcomes;
+        }
+
+        List<List<DBCustomAudience>> biddingWorkPartitions =
+                partitionList(customAudienceList, getMaxConcurrentBiddingCount());
+
         List<ListenableFuture<AdBiddingOutcome>> buyerBiddingOutcomes =
                 biddingWorkPartitions.stream()
                         .map(
@@ -143,6 +156,131 @@ public class PerBuyerBiddingRunner {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Runs bidding for the Custom Audiences in batches. Custom Audiences sharing the same bidding
+     * logic URI are grouped in batches of at most {@link
+     * Flags#getFledgeAdSelectionBatchBiddingMaxBatchSize()} CAs, which are bid with a single JS
+     * evaluation. The batches are then distributed over the same number of sequential work
+     * partitions used when bidding every CA on its own.
+     *
+     * @return list of futures with bidding outcomes, in the same order as {@code
+     *     customAudienceList}
+     */
+    private List<ListenableFuture<AdBiddingOutcome>> runBatchedBidding(
+            List<DBCustomAudience> customAudienceList,
+            AdSelectionConfig adSelectionConfig,
+            FluentFuture<Map<Uri, JSONObject>> trustedBiddingDataMap) {
+        Map<Uri, List<DBCustomAudience>> customAudiencesByBiddingLogicUri =
+                customAudienceList.stream()
+                        .collect(
+                                Collectors.groupingBy(
+                                        DBCustomAudience::getBiddingLogicUri,
+                                        LinkedHashMap::new,
+                                        Collectors.toList()));
+        int maxBatchSize = Math.max(1, mFlags.getFledgeAdSelectionBatchBiddingMaxBatchSize());
+        List<List<DBCustomAudience>> batches = new ArrayList<>();
+        for (List<DBCustomAudience> customAudiences : customAudiencesByBiddingLogicUri.values()) {
+            batches.addAll(Lists.partition(customAudiences, maxBatchSize));
+        }
+        sLogger.v(
+                "Bidding for #%d Custom Audiences in #%d batches",
+                customAudienceList.size(), batches.size());
+
+        Map<DBCustomAudience, ListenableFuture<AdBiddingOutcome>> outcomesByCustomAudience =
+                new IdentityHashMap<>();
+        for (List<List<DBCustomAudience>> batchWorkPartition :
+                partitionList(batches, getMaxConcurrentBiddingCount())) {
+            runBatchWorkPartition(
+                    batchWorkPartition,
+                    adSelectionConfig,
+                    trustedBiddingDataMap,
+                    outcomesByCustomAudience);
+        }
+        return customAudienceList.stream()
+                .map(outcomesByCustomAudience::get)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Runs the bidding for the given batches in a strict sequence, in the same way {@link
+     * #runBidPerCAWorkPartition} does for single Custom Audiences. The outcome of every Custom
+     * Audience is added to {@code outcomesByCustomAudience}.
+     */
+    private void runBatchWorkPartition(
+            List<List<DBCustomAudience>> batches,
+            AdSelectionConfig adSelectionConfig,
+            FluentFuture<Map<Uri, JSONObject>> trustedBiddingDataMap,
+            Map<DBCustomAudience, ListenableFuture<AdBiddingOutcome>> outcomesByCustomAudience) {
+        ExecutionSequencer sequencer = ExecutionSequencer.create();
+        for (List<DBCustomAudience> batch : batches) {
+            List<SettableFuture<AdBiddingOutcome>> batchOutcomes = new ArrayList<>();
+            for (DBCustomAudience customAudience : batch) {
+                SettableFuture<AdBiddingOutcome> outcome = SettableFuture.create();
+                batchOutcomes.add(outcome);
+                outcomesByCustomAudience.put(customAudience, outcome);
+            }
+            ListenableFuture<List<AdBiddingOutcome>> batchCompletion =
+                    sequencer.submitAsync(
+                            () ->
+                                    trustedBiddingDataMap.transformAsync(
+                                            map -> {
+                                                List<FluentFuture<AdBiddingOutcome>> outcomes =
+                                                        runBiddingPerCABatch(
+                                                                batch, adSelectionConfig, map);
+                                                for (int i = 0; i < outcomes.size(); i++) {
+                                                    batchOutcomes.get(i).setFuture(outcomes.get(i));
+                                                }
+                                                return Futures.successfulAsList(outcomes);
+                                            },
+                                            mBackgroundExecutorService),
+                            mBackgroundExecutorService);
+            // Fail the CAs of a batch that could not be started, e.g. because the trusted bidding
+            // data could not be fetched.
+            Futures.addCallback(
+                    batchCompletion,
+                    new FutureCallback<List<AdBiddingOutcome>>() {
+                        @Override
+                        public void onSuccess(List<AdBiddingOutcome> result) {}
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            batchOutcomes.forEach(outcome -> outcome.setException(t));
+                        }
+                    },
+                    mBackgroundExecutorService);
+            // Stop the batch once all its CAs are done or cancelled by the buyer timeout.
+            Futures.whenAllComplete(batchOutcomes)
+                    .run(() -> batchCompletion.cancel(true), mBackgroundExecutorService);
+        }
+    }
+
+    private List<FluentFuture<AdBiddingOutcome>> runBiddingPerCABatch(
+            @NonNull final List<DBCustomAudience> customAudiences,
+            @NonNull final AdSelectionConfig adSelectionConfig,
+            @NonNull final Map<Uri, JSONObject> trustedBiddingDataByBaseUri) {
+        sLogger.v("Invoking bidding for a batch of #%d CAs", customAudiences.size());
+        // All the CAs of a batch belong to the same buyer
+        AdSelectionSignals buyerSignal =
+                Optional.ofNullable(
+                                adSelectionConfig
+                                        .getPerBuyerSignals()
+                                        .get(customAudiences.get(0).getBuyer()))
+                        .orElse(AdSelectionSignals.EMPTY);
+        List<RunAdBiddingPerCAExecutionLogger> loggers = new ArrayList<>();
+        for (int i = 0; i < customAudiences.size(); i++) {
+            loggers.add(
+                    new RunAdBiddingPerCAExecutionLogger(
+                            Clock.SYSTEM_CLOCK, AdServicesLoggerImpl.getInstance()));
+        }
+        return mAdBidGenerator.runAdBiddingPerCABatch(
+                customAudiences,
+                trustedBiddingDataByBaseUri,
+                adSelectionConfig.getAdSelectionSignals(),
+                buyerSignal,
+                AdSelectionSignals.EMPTY,
+                loggers);
+    }
+
     private ListenableFuture<AdBiddingOutcome> runBiddingPerCA(
             @NonNull final DBCustomAudience customAudience,
             @NonNull final AdSelectionConfig adSelectionConfig,
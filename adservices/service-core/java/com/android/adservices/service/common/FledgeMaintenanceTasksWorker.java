@@ -22,6 +22,9 @@ import android.content.Context;
 import com.android.adservices.LoggerFactory;
 import com.android.adservices.data.adselection.AdSelectionDatabase;
 import com.android.adservices.data.adselection.AdSelectionEntryDao;
+import com.android.adservices.data.adselection.FrequencyCapDao;
+import com.android.adservices.data.adselection.SharedStorageDatabase;
+import com.android.adservices.service.Flags;
 import com.android.adservices.service.FlagsFactory;
 import com.android.internal.annotations.VisibleForTesting;
 
@@ -32,14 +35,18 @@ import java.time.Instant;
 public class FledgeMaintenanceTasksWorker {
     private static final LoggerFactory.Logger sLogger = LoggerFactory.getFledgeLogger();
     @NonNull private AdSelectionEntryDao mAdSelectionEntryDao;
+    @NonNull private FrequencyCapDao mFrequencyCapDao;
 
     @VisibleForTesting
-    public FledgeMaintenanceTasksWorker(AdSelectionEntryDao adSelectionEntryDao) {
+    public FledgeMaintenanceTasksWorker(
+            AdSelectionEntryDao adSelectionEntryDao, FrequencyCapDao frequencyCapDao) {
         mAdSelectionEntryDao = adSelectionEntryDao;
+        mFrequencyCapDao = frequencyCapDao;
     }
 
     private FledgeMaintenanceTasksWorker(Context context) {
         mAdSelectionEntryDao = AdSelectionDatabase.getInstance(context).adSelectionEntryDao();
+        mFrequencyCapDao = SharedStorageDatabase.getInstance(context).frequencyCapDao();
     }
 
     /** Creates a new instance of {@link FledgeMaintenanceTasksWorker}. */
@@ -51,12 +58,14 @@ public class FledgeMaintenanceTasksWorker {
      * Clears all entries in the {@code ad_selection} table that are older than {@code
      * expirationTime}. Then, clears all expired entries in the {@code buyer_decision_logic} as well
      * as the {@code registered_ad_interactions} table.
+     *
+     * <p>If enabled, also evicts the oldest frequency cap histogram events in batches so that the
+     * histogram table is trimmed outside of the ad event update path.
      */
     public void clearExpiredAdSelectionData() {
+        Flags flags = FlagsFactory.getFlags();
         Instant expirationTime =
-                Clock.systemUTC()
-                        .instant()
-                        .minusSeconds(FlagsFactory.getFlags().getAdSelectionExpirationWindowS());
+                Clock.systemUTC().instant().minusSeconds(flags.getAdSelectionExpirationWindowS());
         sLogger.v("Clearing expired Ad Selection data");
         mAdSelectionEntryDao.removeExpiredAdSelection(expirationTime);
 
@@ -65,5 +74,14 @@ public class FledgeMaintenanceTasksWorker {
 
         sLogger.v("Clearing expired Registered Ad Interaction data ");
         mAdSelectionEntryDao.removeExpiredRegisteredAdInteractions();
+
+        if (flags.getFledgeAdCounterHistogramBackgroundEvictionEnabled()) {
+            sLogger.v("Evicting oldest frequency cap histogram data");
+            int numEvictedEvents =
+                    mFrequencyCapDao.evictOldestHistogramEventsInBatches(
+                            flags.getFledgeAdCounterHistogramLowerMaxEventCount(),
+                            flags.getFledgeAdCounterHistogramEvictionBatchSize());
+            sLogger.v("Evicted %d frequency cap histogram events", numEvictedEvents);
+        }
     }
 }
@@ -178,6 +178,7 @@ public class PackageChangedReceiver extends BroadcastReceiver {
     private void handlePackageAdded(Context context, Uri packageUri) {
         measurementOnPackageAdded(context, packageUri);
         topicsOnPackageAdded(context, packageUri);
+        consentOnPackageAdded(context, packageUri);
     }
 
     private void handlePackageDataCleared(Context context, Uri packageUri) {
@@ -330,6 +331,18 @@ public class PackageChangedReceiver extends BroadcastReceiver {
                 });
     }
 
+    /** Drops the consent state kept in memory for the given application. */
+    @VisibleForTesting
+    void consentOnPackageAdded(@NonNull Context context, @NonNull Uri packageUri) {
+        Objects.requireNonNull(context);
+        Objects.requireNonNull(packageUri);
+
+        String packageName = packageUri.toString();
+        LogUtil.d("Package Added for consent: %s", packageName);
+        sBackgroundExecutor.execute(
+                () -> ConsentManager.getInstance(context).handleAppInstallation(packageName));
+    }
+
     /**
      * Checks if the removed package name is still present in the list of installed packages
      *
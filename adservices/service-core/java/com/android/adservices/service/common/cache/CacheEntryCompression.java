@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.service.common.cache;
+
+import androidx.annotation.Nullable;
+
+import com.android.adservices.LogUtil;
+import com.android.adservices.data.common.TextCompression;
+
+/** Converts the body of a {@link DBCacheEntry} between its text and its stored form. */
+final class CacheEntryCompression {
+    private CacheEntryCompression() {}
+
+    /** Returns the entry with its body in its stored form. */
+    static DBCacheEntry compressBody(DBCacheEntry cacheEntry) {
+        return DBCacheEntry.create(
+                cacheEntry.getUrl(),
+                TextCompression.compress(cacheEntry.getResponseBody()),
+                cacheEntry.getResponseHeaders(),
+                cacheEntry.getCreationTimestamp(),
+                cacheEntry.getMaxAgeSeconds(),
+                cacheEntry.getEtag(),
+                cacheEntry.getLastModified());
+    }
+
+    /** Returns the entry with its body decompressed, or null if it cannot be decompressed. */
+    @Nullable
+    static DBCacheEntry decompressBody(@Nullable DBCacheEntry storedEntry) {
+        if (storedEntry == null || !TextCompression.isCompressed(storedEntry.getResponseBody())) {
+            return storedEntry;
+        }
+        try {
+            return DBCacheEntry.create(
+                    storedEntry.getUrl(),
+                    TextCompression.decompress(storedEntry.getResponseBody()),
+                    storedEntry.getResponseHeaders(),
+                    storedEntry.getCreationTimestamp(),
+                    storedEntry.getMaxAgeSeconds(),
+                    storedEntry.getEtag(),
+                    storedEntry.getLastModified());
+        } catch (IllegalArgumentException e) {
+            LogUtil.e(e, "Failed to decompress cached body, treating it as a cache miss");
+            return null;
+        }
+    }
+}
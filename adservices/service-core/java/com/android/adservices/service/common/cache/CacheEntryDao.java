@@ -16,14 +16,22 @@
 
 package com.android.adservices.service.common.cache;
 
+import androidx.annotation.Nullable;
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 
+import com.android.adservices.data.common.TextCompression;
+
 import java.time.Instant;
+import java.util.List;
 
-/** A Dao for handling the queries related to {@link CacheDatabase} */
+/**
+ * A Dao for handling the queries related to {@link CacheDatabase}
+ *
+ * <p>Large response bodies are persisted compressed, see {@link TextCompression}.
+ */
 @Dao
 public interface CacheEntryDao {
 
@@ -31,8 +39,9 @@ public interface CacheEntryDao {
      * @param cacheEntry an entry that needs to cached
      * @return the count of entries persisted, ideally 1 if succeeded
      */
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    long persistCacheEntry(DBCacheEntry cacheEntry);
+    default long persistCacheEntry(DBCacheEntry cacheEntry) {
+        return insertCacheEntry(CacheEntryCompression.compressBody(cacheEntry));
+    }
 
     /**
      * Should only return entries that are fresh
@@ -41,16 +50,59 @@ public interface CacheEntryDao {
      * @param curTime the current clock time
      * @return the cached entry corresponding to the url key
      */
+    @Nullable
+    default DBCacheEntry getCacheEntry(String url, Instant curTime) {
+        return CacheEntryCompression.decompressBody(getStoredCacheEntry(url, curTime));
+    }
+
+    /**
+     * Returns the entry, fresh or expired, if it has an ETag or a Last-Modified date to revalidate
+     * it with.
+     *
+     * @param url which was use do cache an entry in the persistence layer
+     * @return the cached entry corresponding to the url key
+     */
+    @Nullable
+    default DBCacheEntry getRevalidatableCacheEntry(String url) {
+        return CacheEntryCompression.decompressBody(getStoredRevalidatableCacheEntry(url));
+    }
+
+    /** Persists an entry whose body is already in its stored form. */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    long insertCacheEntry(DBCacheEntry cacheEntry);
+
+    /** Returns the fresh entry of the url, with its body in its stored form. */
     @Query(
             "SELECT http_cache.cache_url AS cache_url, http_cache.response_body as response_body,"
                     + " http_cache.response_headers as response_headers, http_cache"
                     + ".creation_timestamp as creation_timestamp, http_cache.max_age as"
-                    + " max_age FROM http_cache WHERE (max_age * 1000) + creation_timestamp > "
-                    + " :curTime AND cache_url = :url")
-    DBCacheEntry getCacheEntry(String url, Instant curTime);
+                    + " max_age, http_cache.etag as etag, http_cache.last_modified as"
+                    + " last_modified FROM http_cache WHERE (max_age * 1000) +"
+                    + " creation_timestamp >  :curTime AND cache_url = :url")
+    DBCacheEntry getStoredCacheEntry(String url, Instant curTime);
+
+    /** Returns the revalidatable entry of the url, with its body in its stored form. */
+    @Query(
+            "SELECT * FROM http_cache WHERE cache_url = :url"
+                    + " AND (etag IS NOT NULL OR last_modified IS NOT NULL)")
+    DBCacheEntry getStoredRevalidatableCacheEntry(String url);
+
+    /**
+     * Makes a revalidated entry fresh again.
+     *
+     * @param url which was use do cache an entry in the persistence layer
+     * @param creationTimestamp the time the entry was revalidated at
+     * @param maxAgeSeconds time for which the entry is considered fresh after revalidation
+     * @return the number of updated entries
+     */
+    @Query(
+            "UPDATE http_cache SET creation_timestamp = :creationTimestamp, max_age ="
+                    + " :maxAgeSeconds WHERE cache_url = :url")
+    int updateCacheEntryFreshness(String url, Instant creationTimestamp, long maxAgeSeconds);
 
     /**
      * Deletes the rows in the persistence layer which are expired or are older than the cache's
+     * max-age. Expired rows that can be revalidated are kept until they are older than the cache's
      * max-age.
      *
      * @param defaultMaxAgeSeconds cache enforced max age for which entries should be considered
@@ -58,7 +110,8 @@ public interface CacheEntryDao {
      * @param curTime the current clock time
      */
     @Query(
-            "DELETE FROM http_cache WHERE (max_age * 1000) + creation_timestamp < :curTime"
+            "DELETE FROM http_cache WHERE ((max_age * 1000) + creation_timestamp < :curTime"
+                    + " AND etag IS NULL AND last_modified IS NULL)"
                     + " OR (:defaultMaxAgeSeconds * 1000) + creation_timestamp < :curTime")
     void deleteStaleRows(long defaultMaxAgeSeconds, Instant curTime);
 
@@ -80,4 +133,14 @@ public interface CacheEntryDao {
             "DELETE FROM http_cache WHERE cache_url IN (SELECT cache_url FROM http_cache ORDER BY"
                     + " creation_timestamp DESC LIMIT -1 OFFSET :maxCacheEntries)")
     void prune(long maxCacheEntries);
+
+    /**
+     * @param maxCacheEntries max allowed size of cache
+     * @return the urls of the entries {@link #prune(long)} would delete for the same size
+     */
+    @Query(
+            "SELECT cache_url FROM http_cache ORDER BY creation_timestamp DESC LIMIT -1 OFFSET"
+                    + " :maxCacheEntries")
+    List<String> getPrunableUrls(long maxCacheEntries);
+
 }
@@ -16,6 +16,7 @@
 
 package com.android.adservices.service.common.cache;
 
+import android.annotation.Nullable;
 import android.content.Context;
 
 import com.android.adservices.service.Flags;
@@ -40,7 +41,9 @@ public class CacheProviderFactory {
             return new FledgeHttpCache(
                     cacheEntryDao,
                     flags.getFledgeHttpCacheMaxAgeSeconds(),
-                    flags.getFledgeHttpCacheMaxEntries());
+                    flags.getFledgeHttpCacheMaxEntries(),
+                    flags.getFledgeHttpCacheMemoryMaxBytes(),
+                    flags.getFledgeHttpCacheRevalidationEnabled());
         } else {
             return new NoOpCache();
         }
@@ -71,6 +74,29 @@ public class CacheProviderFactory {
                 Map<String, List<String>> requestPropertiesMap,
                 Map<String, List<String>> responseHeaders) {}
 
+        /** puts nothing into the cache */
+        @Override
+        public void put(
+                URL url,
+                String body,
+                Map<String, List<String>> requestPropertiesMap,
+                Map<String, List<String>> responseHeaders,
+                @Nullable String etag,
+                @Nullable String lastModified) {}
+
+        /** gets nothing from cache, null */
+        @Override
+        public DBCacheEntry getForRevalidation(URL url) {
+            return null;
+        }
+
+        /** refreshes nothing as there is nothing cached */
+        @Override
+        public void refresh(
+                DBCacheEntry entry,
+                Map<String, List<String>> requestPropertiesMap,
+                Map<String, List<String>> responseHeaders) {}
+
         /** @return 0 */
         @Override
         public long getCachedEntriesCount() {
@@ -72,6 +72,21 @@ public abstract class DBCacheEntry {
     @ColumnInfo(name = "max_age")
     public abstract long getMaxAgeSeconds();
 
+    /** @return the ETag of the cached response, used to revalidate the entry once expired */
+    @AutoValue.CopyAnnotations
+    @ColumnInfo(name = "etag")
+    @Nullable
+    public abstract String getEtag();
+
+    /**
+     * @return the Last-Modified date of the cached response, used to revalidate the entry once
+     *     expired
+     */
+    @AutoValue.CopyAnnotations
+    @ColumnInfo(name = "last_modified")
+    @Nullable
+    public abstract String getLastModified();
+
     /**
      * Creates an entry that can be persisted in the cache storage
      *
@@ -80,6 +95,8 @@ public abstract class DBCacheEntry {
      * @param responseHeaders headers for the response corresponding to the request made by url
      * @param creationTimestamp time at which the request is persisted
      * @param maxAgeSeconds time for which this cache entry is considered fresh
+     * @param etag ETag of the response, if any
+     * @param lastModified Last-Modified date of the response, if any
      * @return an instance or created {@link DBCacheEntry}
      */
     public static DBCacheEntry create(
@@ -87,13 +104,17 @@ public abstract class DBCacheEntry {
             String responseBody,
             ImmutableMap<String, List<String>> responseHeaders,
             Instant creationTimestamp,
-            long maxAgeSeconds) {
+            long maxAgeSeconds,
+            @Nullable String etag,
+            @Nullable String lastModified) {
         return builder()
                 .setUrl(url)
                 .setResponseBody(responseBody)
                 .setResponseHeaders(responseHeaders)
                 .setCreationTimestamp(creationTimestamp)
                 .setMaxAgeSeconds(maxAgeSeconds)
+                .setEtag(etag)
+                .setLastModified(lastModified)
                 .build();
     }
 
@@ -122,6 +143,12 @@ public abstract class DBCacheEntry {
         /** Sets the maxAge in seconds for which the entry is considered fresh */
         public abstract DBCacheEntry.Builder setMaxAgeSeconds(long maxAgeSeconds);
 
+        /** Sets the ETag of the cached response */
+        public abstract DBCacheEntry.Builder setEtag(@Nullable String etag);
+
+        /** Sets the Last-Modified date of the cached response */
+        public abstract DBCacheEntry.Builder setLastModified(@Nullable String lastModified);
+
         /**
          * Returns a {@link com.android.adservices.service.common.cache.DBCacheEntry} build with the
          * information provided in this builder *
@@ -17,6 +17,8 @@
 package com.android.adservices.service.common.cache;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.util.LruCache;
 
 import com.android.adservices.LoggerFactory;
 import com.android.adservices.concurrency.AdServicesExecutors;
@@ -29,13 +31,19 @@ import com.google.common.net.HttpHeaders;
 import java.net.URL;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An instance of {@link HttpCache} that is responsible for caching network requests corresponding
  * to Fledge web requests
+ *
+ * <p>Entries are persisted through the {@link CacheEntryDao}. If a max memory size is set, the
+ * most recently used entries are also kept in a size-bounded in-memory tier, written through to
+ * the persisted one, which serves repeated look-ups without querying the database.
  */
 public class FledgeHttpCache implements HttpCache {
     private static final LoggerFactory.Logger sLogger = LoggerFactory.getFledgeLogger();
@@ -44,6 +52,12 @@ public class FledgeHttpCache implements HttpCache {
     private final long mMaxAgeSeconds;
     private final long mMaxEntriesCount;
     private List<CacheObserver> mCacheObservers;
+    // Null if the in-memory tier is disabled
+    @Nullable private final LruCache<String, DBCacheEntry> mMemoryCache;
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mMemoryHitCount = new AtomicLong();
+    private final AtomicLong mDbHitCount = new AtomicLong();
+    private final boolean mRevalidationEnabled;
 
     @VisibleForTesting static final String PROPERTY_NO_CACHE = "no-cache";
     @VisibleForTesting static final String PROPERTY_NO_STORE = "no-store";
@@ -52,11 +66,35 @@ public class FledgeHttpCache implements HttpCache {
 
     public FledgeHttpCache(
             @NonNull CacheEntryDao cacheEntryDao, long maxAgeSeconds, long maxEntriesCount) {
+        this(
+                cacheEntryDao,
+                maxAgeSeconds,
+                maxEntriesCount,
+                /* maxMemoryBytes= */ 0,
+                /* revalidationEnabled= */ false);
+    }
+
+    /**
+     * @param cacheEntryDao the persisted tier of the cache
+     * @param maxAgeSeconds the max age of the cached entries
+     * @param maxEntriesCount the max number of persisted entries
+     * @param maxMemoryBytes the max size in bytes of the in-memory tier, 0 to disable it
+     * @param revalidationEnabled whether the validators of the responses are kept, so that expired
+     *     entries can be revalidated
+     */
+    public FledgeHttpCache(
+            @NonNull CacheEntryDao cacheEntryDao,
+            long maxAgeSeconds,
+            long maxEntriesCount,
+            long maxMemoryBytes,
+            boolean revalidationEnabled) {
         this(
                 cacheEntryDao,
                 AdServicesExecutors.getBackgroundExecutor(),
                 maxAgeSeconds,
-                maxEntriesCount);
+                maxEntriesCount,
+                maxMemoryBytes,
+                revalidationEnabled);
     }
 
     @VisibleForTesting
@@ -65,11 +103,33 @@ public class FledgeHttpCache implements HttpCache {
             @NonNull ExecutorService executorService,
             long maxAgeSeconds,
             long maxEntriesCount) {
+        this(
+                cacheEntryDao,
+                executorService,
+                maxAgeSeconds,
+                maxEntriesCount,
+                /* maxMemoryBytes= */ 0,
+                /* revalidationEnabled= */ false);
+    }
+
+    @VisibleForTesting
+    FledgeHttpCache(
+            @NonNull CacheEntryDao cacheEntryDao,
+            @NonNull ExecutorService executorService,
+            long maxAgeSeconds,
+            long maxEntriesCount,
+            long maxMemoryBytes,
+            boolean revalidationEnabled) {
         mCacheEntryDao = cacheEntryDao;
         mExecutorService = executorService;
         mMaxAgeSeconds = maxAgeSeconds;
         mMaxEntriesCount = maxEntriesCount;
         mCacheObservers = new ArrayList<>();
+        mMemoryCache =
+                maxMemoryBytes > 0
+                        ? new MemoryCache((int) Math.min(maxMemoryBytes, Integer.MAX_VALUE))
+                        : null;
+        mRevalidationEnabled = revalidationEnabled;
     }
 
     /**
@@ -82,10 +142,20 @@ public class FledgeHttpCache implements HttpCache {
     public DBCacheEntry get(URL url) {
         int traceCookie = Tracing.beginAsyncSection(Tracing.CACHE_GET);
         incrementRequestCount();
-        DBCacheEntry entry = mCacheEntryDao.getCacheEntry(url.toString(), Instant.now());
+        Instant now = Instant.now();
+        DBCacheEntry entry = getFromMemory(url.toString(), now);
         if (entry != null) {
-            sLogger.v("Returning Cached results for Url: %s", url.toString());
-            incrementHitCount();
+            sLogger.v("Returning in-memory cached results for Url: %s", url.toString());
+            mMemoryHitCount.incrementAndGet();
+            notifyObservers(CacheEventType.MEMORY_HIT);
+        } else {
+            entry = mCacheEntryDao.getCacheEntry(url.toString(), now);
+            if (entry != null) {
+                sLogger.v("Returning Cached results for Url: %s", url.toString());
+                mDbHitCount.incrementAndGet();
+                putInMemory(entry);
+                notifyObservers(CacheEventType.DB_HIT);
+            }
         }
         notifyObservers(CacheEventType.GET);
         Tracing.endAsyncSection(Tracing.CACHE_GET, traceCookie);
@@ -105,19 +175,36 @@ public class FledgeHttpCache implements HttpCache {
             String body,
             Map<String, List<String>> requestPropertiesMap,
             Map<String, List<String>> responseHeaders) {
+        put(
+                url,
+                body,
+                requestPropertiesMap,
+                responseHeaders,
+                /* etag= */ null,
+                /* lastModified= */ null);
+    }
+
+    /**
+     * Puts an entry in the cache, keeping the validators of the response if revalidation is
+     * enabled
+     *
+     * @param url The primary key corresponding to which data is cached
+     * @param body The response for the url for which this data was originally fetched
+     * @param requestPropertiesMap associated with the original url connection
+     * @param etag the ETag of the response, if any
+     * @param lastModified the Last-Modified date of the response, if any
+     */
+    @Override
+    public void put(
+            URL url,
+            String body,
+            Map<String, List<String>> requestPropertiesMap,
+            Map<String, List<String>> responseHeaders,
+            @Nullable String etag,
+            @Nullable String lastModified) {
         int traceCookie = Tracing.beginAsyncSection(Tracing.CACHE_PUT);
-        List<String> cacheProperties = new ArrayList<>();
-        List<String> requestCacheProperties = requestPropertiesMap.get(HttpHeaders.CACHE_CONTROL);
-        if (requestCacheProperties != null && !requestCacheProperties.isEmpty()) {
-            cacheProperties.addAll(requestCacheProperties);
-        }
-        List<String> responseCacheProperties = responseHeaders.get(HttpHeaders.CACHE_CONTROL);
-        if (responseCacheProperties != null && !responseCacheProperties.isEmpty()) {
-            cacheProperties.addAll(responseCacheProperties);
-        }
-        if ((cacheProperties != null)
-                && (cacheProperties.contains(PROPERTY_NO_CACHE)
-                        || cacheProperties.contains(PROPERTY_NO_STORE))) {
+        List<String> cacheProperties = getCacheProperties(requestPropertiesMap, responseHeaders);
+        if (isNotCacheable(cacheProperties)) {
             return;
         }
         long requestMaxAge = getRequestMaxAgeSeconds(cacheProperties);
@@ -132,43 +219,104 @@ public class FledgeHttpCache implements HttpCache {
                                 ImmutableMap.<String, List<String>>builder()
                                         .putAll(responseHeaders.entrySet())
                                         .build())
+                        .setEtag(mRevalidationEnabled ? etag : null)
+                        .setLastModified(mRevalidationEnabled ? lastModified : null)
                         .build();
         mCacheEntryDao.persistCacheEntry(entry);
+        putInMemory(entry);
         notifyObservers(CacheEventType.PUT);
         Tracing.endAsyncSection(Tracing.CACHE_PUT, traceCookie);
     }
 
+    /**
+     * Retrieves an entry, fresh or expired, that has validators to revalidate it with
+     *
+     * @param url primary key, the link for which this data would have been cached
+     * @return the cached instance of {@link DBCacheEntry}, or null if revalidation is disabled
+     */
+    @Override
+    @Nullable
+    public DBCacheEntry getForRevalidation(URL url) {
+        if (!mRevalidationEnabled) {
+            return null;
+        }
+        return mCacheEntryDao.getRevalidatableCacheEntry(url.toString());
+    }
+
+    /**
+     * Makes a revalidated entry fresh again, with the max age of the revalidation request and
+     * response
+     *
+     * @param entry the revalidated entry
+     * @param requestPropertiesMap associated with the revalidation url connection
+     * @param responseHeaders of the revalidation response
+     */
+    @Override
+    public void refresh(
+            DBCacheEntry entry,
+            Map<String, List<String>> requestPropertiesMap,
+            Map<String, List<String>> responseHeaders) {
+        List<String> cacheProperties = getCacheProperties(requestPropertiesMap, responseHeaders);
+        if (isNotCacheable(cacheProperties)) {
+            return;
+        }
+        sLogger.v("Refreshing cached results for Url: %s", entry.getUrl());
+        DBCacheEntry refreshedEntry =
+                DBCacheEntry.create(
+                        entry.getUrl(),
+                        entry.getResponseBody(),
+                        entry.getResponseHeaders(),
+                        Instant.now(),
+                        Math.min(getRequestMaxAgeSeconds(cacheProperties), mMaxAgeSeconds),
+                        entry.getEtag(),
+                        entry.getLastModified());
+        mCacheEntryDao.updateCacheEntryFreshness(
+                refreshedEntry.getUrl(),
+                refreshedEntry.getCreationTimestamp(),
+                refreshedEntry.getMaxAgeSeconds());
+        putInMemory(refreshedEntry);
+        notifyObservers(CacheEventType.PUT);
+    }
+
     @Override
     public long getCachedEntriesCount() {
         return mCacheEntryDao.getDBEntriesCount();
     }
 
     /** @return No of requests that were served directly from cache, saving a network call */
-    // TODO(b/259751299) Support hit and request count in cache
     @Override
     public long getHitCount() {
-        return 0;
+        return mMemoryHitCount.get() + mDbHitCount.get();
     }
 
-    private void incrementHitCount() {
-        // TODO(b/259751299) No - op
+    /** @return No of requests that were served from the in-memory tier of the cache */
+    public long getMemoryHitCount() {
+        return mMemoryHitCount.get();
+    }
+
+    /** @return No of requests that were served from the persisted tier of the cache */
+    public long getDbHitCount() {
+        return mDbHitCount.get();
     }
 
     /** @return no of get requests received by the cache */
     @Override
     public long getRequestCount() {
-        return 0;
+        return mRequestCount.get();
     }
 
     private void incrementRequestCount() {
-        // TODO(b/259751299) No - op
+        mRequestCount.incrementAndGet();
     }
 
     /** Deletes all entries from the cache */
     @Override
     public void delete() {
-        // TODO(b/259751299) also clear hit and request counts
         mCacheEntryDao.deleteAll();
+        evictMemory();
+        mRequestCount.set(0);
+        mMemoryHitCount.set(0);
+        mDbHitCount.set(0);
         notifyObservers(CacheEventType.DELETE);
     }
 
@@ -179,11 +327,14 @@ public class FledgeHttpCache implements HttpCache {
      *   <li>Deletes stale entries from the cache.
      *   <li>Prunes the cache to bound it within max permissible size of entries.
      * </ul>
+     *
+     * <p>The fresh entries of the in-memory tier that are not pruned are kept.
      */
     @Override
     public void cleanUp() {
-        mCacheEntryDao.deleteStaleRows(mMaxAgeSeconds, Instant.now());
-        prune();
+        Instant now = Instant.now();
+        mCacheEntryDao.deleteStaleRows(mMaxAgeSeconds, now);
+        evictFromMemory(prune(), now);
         notifyObservers(CacheEventType.CLEANUP);
     }
 
@@ -197,12 +348,68 @@ public class FledgeHttpCache implements HttpCache {
         mCacheObservers.parallelStream().forEach(o -> o.update(cacheEvent));
     }
 
-    private float getHitRate() {
-        long totalRequests = getRequestCount();
-        if (totalRequests == 0) {
-            return 0;
+    @Nullable
+    private DBCacheEntry getFromMemory(String url, Instant now) {
+        if (mMemoryCache == null) {
+            return null;
+        }
+        DBCacheEntry entry = mMemoryCache.get(url);
+        if (entry != null && !isFresh(entry, now)) {
+            mMemoryCache.remove(url);
+            return null;
+        }
+        return entry;
+    }
+
+    private void putInMemory(DBCacheEntry entry) {
+        if (mMemoryCache != null) {
+            mMemoryCache.put(entry.getUrl(), entry);
+        }
+    }
+
+    private void evictMemory() {
+        if (mMemoryCache != null) {
+            mMemoryCache.evictAll();
+        }
+    }
+
+    /** Removes the {@code prunedUrls} and the entries no longer fresh from the in-memory tier. */
+    private void evictFromMemory(List<String> prunedUrls, Instant now) {
+        if (mMemoryCache == null) {
+            return;
+        }
+        prunedUrls.forEach(mMemoryCache::remove);
+        for (Map.Entry<String, DBCacheEntry> entry : mMemoryCache.snapshot().entrySet()) {
+            if (!isFresh(entry.getValue(), now)) {
+                mMemoryCache.remove(entry.getKey());
+            }
+        }
+    }
+
+    /** Same freshness rule as {@link CacheEntryDao#getCacheEntry(String, Instant)}. */
+    private static boolean isFresh(DBCacheEntry entry, Instant now) {
+        return entry.getMaxAgeSeconds() * 1000 + entry.getCreationTimestamp().toEpochMilli()
+                > now.toEpochMilli();
+    }
+
+    private static List<String> getCacheProperties(
+            Map<String, List<String>> requestPropertiesMap,
+            Map<String, List<String>> responseHeaders) {
+        List<String> cacheProperties = new ArrayList<>();
+        List<String> requestCacheProperties = requestPropertiesMap.get(HttpHeaders.CACHE_CONTROL);
+        if (requestCacheProperties != null && !requestCacheProperties.isEmpty()) {
+            cacheProperties.addAll(requestCacheProperties);
+        }
+        List<String> responseCacheProperties = responseHeaders.get(HttpHeaders.CACHE_CONTROL);
+        if (responseCacheProperties != null && !responseCacheProperties.isEmpty()) {
+            cacheProperties.addAll(responseCacheProperties);
         }
-        return getHitCount() / totalRequests;
+        return cacheProperties;
+    }
+
+    private static boolean isNotCacheable(List<String> cacheProperties) {
+        return cacheProperties.contains(PROPERTY_NO_CACHE)
+                || cacheProperties.contains(PROPERTY_NO_STORE);
     }
 
     @VisibleForTesting
@@ -224,15 +431,70 @@ public class FledgeHttpCache implements HttpCache {
                         .orElse(mMaxAgeSeconds));
     }
 
-    private void prune() {
+    /** @return the urls of the pruned entries, empty if the in-memory tier is disabled */
+    private List<String> prune() {
+        List<String> prunedUrls =
+                mMemoryCache != null
+                        ? mCacheEntryDao.getPrunableUrls(mMaxEntriesCount)
+                        : Collections.emptyList();
         mCacheEntryDao.prune(mMaxEntriesCount);
+        return prunedUrls;
     }
 
-    /** A type of {@link CacheObserver} that helps observer the {@link FledgeHttpCache}'s events */
+    /** In-memory tier of the cache, weighing the entries by their approximate size in bytes */
+    private static class MemoryCache extends LruCache<String, DBCacheEntry> {
+        MemoryCache(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        protected int sizeOf(String url, DBCacheEntry entry) {
+            // Strings are stored as UTF-16
+            long chars = url.length() + entry.getResponseBody().length();
+            for (Map.Entry<String, List<String>> header : entry.getResponseHeaders().entrySet()) {
+                chars += header.getKey().length();
+                for (String value : header.getValue()) {
+                    chars += value.length();
+                }
+            }
+            return (int) Math.min(chars * 2, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * A type of {@link CacheObserver} that helps observer the {@link FledgeHttpCache}'s events. It
+     * also logs the ratio of look-ups served by each tier of the cache.
+     */
     public static class HttpCacheObserver implements CacheObserver {
+        private final AtomicLong mGetCount = new AtomicLong();
+        private final AtomicLong mMemoryHitCount = new AtomicLong();
+        private final AtomicLong mDbHitCount = new AtomicLong();
+
         @Override
         public void update(CacheEventType cacheEvent) {
             sLogger.v("Fledge Cache event completed: %s", cacheEvent);
+            switch (cacheEvent) {
+                case GET:
+                    long getCount = mGetCount.incrementAndGet();
+                    sLogger.v(
+                            "Fledge Cache hit ratio: memory %.2f, database %.2f",
+                            (float) mMemoryHitCount.get() / getCount,
+                            (float) mDbHitCount.get() / getCount);
+                    break;
+                case MEMORY_HIT:
+                    mMemoryHitCount.incrementAndGet();
+                    break;
+                case DB_HIT:
+                    mDbHitCount.incrementAndGet();
+                    break;
+                case DELETE:
+                    mGetCount.set(0);
+                    mMemoryHitCount.set(0);
+                    mDbHitCount.set(0);
+                    break;
+                default:
+                    break;
+            }
         }
     }
 }
@@ -16,6 +16,8 @@
 
 package com.android.adservices.service.common.cache;
 
+import android.annotation.Nullable;
+
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +41,40 @@ public interface HttpCache {
             Map<String, List<String>> requestPropertiesMap,
             Map<String, List<String>> responseHeaders);
 
+    /**
+     * Saves a cache entry along with the validators of the response, used to revalidate the entry
+     * once expired
+     *
+     * @param url for which the request was made
+     * @param body response for the url
+     * @param requestPropertiesMap original connection's properties
+     * @param etag the ETag of the response, if any
+     * @param lastModified the Last-Modified date of the response, if any
+     */
+    void put(
+            URL url,
+            String body,
+            Map<String, List<String>> requestPropertiesMap,
+            Map<String, List<String>> responseHeaders,
+            @Nullable String etag,
+            @Nullable String lastModified);
+
+    /** Gets a cached entry, fresh or expired, that can be revalidated with its validators */
+    @Nullable
+    DBCacheEntry getForRevalidation(URL url);
+
+    /**
+     * Makes an entry fresh again after the server confirmed that it was not modified
+     *
+     * @param entry the revalidated entry
+     * @param requestPropertiesMap the revalidation connection's properties
+     * @param responseHeaders headers of the revalidation response
+     */
+    void refresh(
+            DBCacheEntry entry,
+            Map<String, List<String>> requestPropertiesMap,
+            Map<String, List<String>> responseHeaders);
+
     /** @return no of entries cached */
     long getCachedEntriesCount();
 
@@ -57,6 +93,10 @@ public interface HttpCache {
     /** Possible observable events for Cache */
     enum CacheEventType {
         GET,
+        // A look-up served from the in-memory tier of a cache, notified before GET
+        MEMORY_HIT,
+        // A look-up served from the persisted tier of a cache, notified before GET
+        DB_HIT,
         PUT,
         DELETE,
         CLEANUP
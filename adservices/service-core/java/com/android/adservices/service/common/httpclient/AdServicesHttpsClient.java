@@ -33,10 +33,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
 import com.google.common.util.concurrent.ClosingFuture;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
@@ -57,7 +60,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -78,6 +83,14 @@ public class AdServicesHttpsClient {
     private final ListeningExecutorService mExecutorService;
     private final UriConverter mUriConverter;
     private final HttpCache mCache;
+    private final boolean mCoalesceFetches;
+    // Payload fetches in progress, shared by the concurrent callers making the same request
+    private final ConcurrentHashMap<
+                    AdServicesHttpClientRequest, ListenableFuture<AdServicesHttpClientResponse>>
+            mInFlightFetches = new ConcurrentHashMap<>();
+    private final AtomicLong mCacheHitCount = new AtomicLong();
+    private final AtomicLong mCoalescedFetchCount = new AtomicLong();
+    private final AtomicLong mRevalidatedFetchCount = new AtomicLong();
 
     /**
      * Create an HTTPS client with the input {@link ExecutorService} and initial connect and read
@@ -126,6 +139,30 @@ public class AdServicesHttpsClient {
                 cache);
     }
 
+    /**
+     * Create an HTTPS client with the input {@link ExecutorService}, default initial connect and
+     * read timeouts and the default size of an HTTPS response, 1 MB.
+     *
+     * @param executorService an {@link ExecutorService} that allows connection and fetching to be
+     *     executed outside the main calling thread
+     * @param cache A {@link HttpCache} that caches requests and response based on the use case
+     * @param coalesceFetches whether concurrent payload fetches of the same request share a single
+     *     HTTPS request, see {@link #fetchPayload(AdServicesHttpClientRequest)}
+     */
+    public AdServicesHttpsClient(
+            @NonNull ExecutorService executorService,
+            @NonNull HttpCache cache,
+            boolean coalesceFetches) {
+        this(
+                executorService,
+                DEFAULT_TIMEOUT_MS,
+                DEFAULT_TIMEOUT_MS,
+                DEFAULT_MAX_BYTES,
+                new UriConverter(),
+                cache,
+                coalesceFetches);
+    }
+
     @VisibleForTesting
     AdServicesHttpsClient(
             ExecutorService executorService,
@@ -134,12 +171,32 @@ public class AdServicesHttpsClient {
             long maxBytes,
             UriConverter uriConverter,
             @NonNull HttpCache cache) {
+        this(
+                executorService,
+                connectTimeoutMs,
+                readTimeoutMs,
+                maxBytes,
+                uriConverter,
+                cache,
+                /* coalesceFetches= */ false);
+    }
+
+    @VisibleForTesting
+    AdServicesHttpsClient(
+            ExecutorService executorService,
+            int connectTimeoutMs,
+            int readTimeoutMs,
+            long maxBytes,
+            UriConverter uriConverter,
+            @NonNull HttpCache cache,
+            boolean coalesceFetches) {
         mConnectTimeoutMs = connectTimeoutMs;
         mReadTimeoutMs = readTimeoutMs;
         mExecutorService = MoreExecutors.listeningDecorator(executorService);
         mMaxBytes = maxBytes;
         mUriConverter = uriConverter;
         mCache = cache;
+        mCoalesceFetches = coalesceFetches;
     }
 
     /** Opens the Url Connection */
@@ -187,6 +244,11 @@ public class AdServicesHttpsClient {
     /**
      * Performs a GET request on the given URI in order to fetch a payload.
      *
+     * <p>If the client coalesces fetches, a request equal to one already in progress, i.e. with the
+     * same URI, request properties, response header keys and cache usage, does not open another
+     * connection and completes with the response of the request in progress instead. Cancelling
+     * the returned future then does not cancel the shared request.
+     *
      * @param request of type {@link AdServicesHttpClientRequest}
      * @return a string containing the fetched payload
      */
@@ -200,6 +262,28 @@ public class AdServicesHttpsClient {
                         + request.getUri()
                         + " use cache: "
                         + request.getUseCache());
+        if (!mCoalesceFetches) {
+            return startFetchPayload(request);
+        }
+
+        SettableFuture<AdServicesHttpClientResponse> fetch = SettableFuture.create();
+        ListenableFuture<AdServicesHttpClientResponse> inFlightFetch =
+                mInFlightFetches.putIfAbsent(request, fetch);
+        if (inFlightFetch != null) {
+            LogUtil.v("Joining in-flight fetch for uri: %s", request.getUri());
+            mCoalescedFetchCount.incrementAndGet();
+            return Futures.nonCancellationPropagating(inFlightFetch);
+        }
+        ListenableFuture<AdServicesHttpClientResponse> newFetch = startFetchPayload(request);
+        // Stops sharing the fetch before any caller sees it complete
+        newFetch.addListener(
+                () -> mInFlightFetches.remove(request, fetch), MoreExecutors.directExecutor());
+        fetch.setFuture(newFetch);
+        return Futures.nonCancellationPropagating(fetch);
+    }
+
+    private ListenableFuture<AdServicesHttpClientResponse> startFetchPayload(
+            AdServicesHttpClientRequest request) {
         return ClosingFuture.from(
                         mExecutorService.submit(() -> mUriConverter.toUrl(request.getUri())))
                 .transformAsync(
@@ -218,12 +302,14 @@ public class AdServicesHttpsClient {
             throws IOException {
         int traceCookie = Tracing.beginAsyncSection(Tracing.FETCH_PAYLOAD);
         LogUtil.v("Downloading payload from: \"%s\"", url.toString());
+        DBCacheEntry expiredEntry = null;
         if (request.getUseCache()) {
             AdServicesHttpClientResponse cachedResponse = getResultsFromCache(url);
             if (cachedResponse != null) {
                 return cachedResponse;
             }
             LogUtil.v("Cache miss for url: %s", url.toString());
+            expiredEntry = mCache.getForRevalidation(url);
         }
         int httpTraceCookie = Tracing.beginAsyncSection(Tracing.HTTP_REQUEST);
         HttpsURLConnection urlConnection;
@@ -241,11 +327,19 @@ public class AdServicesHttpsClient {
             for (Map.Entry<String, String> entry : request.getRequestProperties().entrySet()) {
                 urlConnection.setRequestProperty(entry.getKey(), entry.getValue());
             }
+            if (expiredEntry != null) {
+                setValidators(urlConnection, expiredEntry);
+            }
             Map<String, List<String>> requestPropertiesMap = urlConnection.getRequestProperties();
             inputStream = new BufferedInputStream(urlConnection.getInputStream());
             closer.eventuallyClose(new CloseableConnectionWrapper(urlConnection), mExecutorService);
             int responseCode = urlConnection.getResponseCode();
-            if (isSuccessfulResponse(responseCode)) {
+            if (expiredEntry != null && responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                LogUtil.v("Cached payload not modified for url: %s", url);
+                mCache.refresh(expiredEntry, requestPropertiesMap, urlConnection.getHeaderFields());
+                mRevalidatedFetchCount.incrementAndGet();
+                return toResponse(expiredEntry);
+            } else if (isSuccessfulResponse(responseCode)) {
                 String responseBody =
                         fromInputStream(inputStream, urlConnection.getContentLengthLong());
                 Map<String, List<String>> responseHeadersMap =
@@ -253,7 +347,13 @@ public class AdServicesHttpsClient {
                                 urlConnection.getHeaderFields(), request.getResponseHeaderKeys());
                 if (request.getUseCache()) {
                     LogUtil.v("Putting data in cache for url: %s", url);
-                    mCache.put(url, responseBody, requestPropertiesMap, responseHeadersMap);
+                    mCache.put(
+                            url,
+                            responseBody,
+                            requestPropertiesMap,
+                            responseHeadersMap,
+                            urlConnection.getHeaderField(HttpHeaders.ETAG),
+                            urlConnection.getHeaderField(HttpHeaders.LAST_MODIFIED));
                 }
                 AdServicesHttpClientResponse response =
                         AdServicesHttpClientResponse.builder()
@@ -293,16 +393,32 @@ public class AdServicesHttpsClient {
         DBCacheEntry cachedEntry = mCache.get(url);
         if (cachedEntry != null) {
             LogUtil.v("Cache hit for url: %s", url.toString());
-            return AdServicesHttpClientResponse.builder()
-                    .setResponseBody(cachedEntry.getResponseBody())
-                    .setResponseHeaders(
-                            ImmutableMap.<String, List<String>>builder()
-                                    .putAll(cachedEntry.getResponseHeaders().entrySet())
-                                    .build())
-                    .build();
+            mCacheHitCount.incrementAndGet();
+            return toResponse(cachedEntry);
         }
         return null;
     }
+
+    private static AdServicesHttpClientResponse toResponse(DBCacheEntry cachedEntry) {
+        return AdServicesHttpClientResponse.builder()
+                .setResponseBody(cachedEntry.getResponseBody())
+                .setResponseHeaders(
+                        ImmutableMap.<String, List<String>>builder()
+                                .putAll(cachedEntry.getResponseHeaders().entrySet())
+                                .build())
+                .build();
+    }
+
+    /** Makes the request conditional on the cached entry having been modified */
+    private static void setValidators(HttpsURLConnection urlConnection, DBCacheEntry cachedEntry) {
+        if (cachedEntry.getEtag() != null) {
+            urlConnection.setRequestProperty(HttpHeaders.IF_NONE_MATCH, cachedEntry.getEtag());
+        }
+        if (cachedEntry.getLastModified() != null) {
+            urlConnection.setRequestProperty(
+                    HttpHeaders.IF_MODIFIED_SINCE, cachedEntry.getLastModified());
+        }
+    }
     /**
      * Performs a GET request on a Uri without reading the response.
      *
@@ -572,4 +688,25 @@ public class AdServicesHttpsClient {
     public HttpCache getAssociatedCache() {
         return mCache;
     }
+
+    /** @return the number of payload fetches served from the cache by this client */
+    public long getCacheHitCount() {
+        return mCacheHitCount.get();
+    }
+
+    /**
+     * @return the number of payload fetches that joined an identical fetch in progress instead of
+     *     making their own request
+     */
+    public long getCoalescedFetchCount() {
+        return mCoalescedFetchCount.get();
+    }
+
+    /**
+     * @return the number of payload fetches served from an expired cache entry that the server
+     *     confirmed was not modified
+     */
+    public long getRevalidatedFetchCount() {
+        return mRevalidatedFetchCount.get();
+    }
 }
@@ -32,6 +32,7 @@ import static com.android.adservices.service.stats.AdServicesStatsLog.AD_SERVICE
 
 import android.annotation.IntDef;
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.app.adservices.AdServicesManager;
 import android.app.adservices.consent.ConsentParcel;
 import android.app.job.JobScheduler;
@@ -66,17 +67,22 @@ import com.android.adservices.service.stats.MeasurementWipeoutStats;
 import com.android.adservices.service.stats.StatsdAdServicesLogger;
 import com.android.adservices.service.stats.UiStatsLogger;
 import com.android.adservices.service.topics.TopicsWorker;
+import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.Preconditions;
 import com.android.modules.utils.build.SdkLevel;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
@@ -124,6 +130,11 @@ public class ConsentManager {
 
     private static final Object LOCK = new Object();
 
+    private final boolean mConsentSnapshotEnabled;
+    // Consent read from the source of truth. Replaced under LOCK, and dropped after each write, so
+    // that it can be read without holding LOCK.
+    private volatile ConsentSnapshot mConsentSnapshot = ConsentSnapshot.EMPTY;
+
     ConsentManager(
             @NonNull Context context,
             @NonNull TopicsWorker topicsWorker,
@@ -167,6 +178,7 @@ public class ConsentManager {
         mAppSearchConsentManager = appSearchConsentManager;
         mFlags = flags;
         mConsentSourceOfTruth = consentSourceOfTruth;
+        mConsentSnapshotEnabled = flags.getConsentManagerEnableConsentSnapshot();
     }
 
     /**
@@ -369,25 +381,36 @@ public class ConsentManager {
             return AdServicesApiConsent.GIVEN;
         }
 
+        AdServicesApiConsent snapshotConsent = getSnapshotConsent(ConsentConstants.CONSENT_KEY);
+        if (snapshotConsent != null) {
+            return snapshotConsent;
+        }
+
         synchronized (LOCK) {
             try {
                 switch (mConsentSourceOfTruth) {
                     case Flags.PPAPI_ONLY:
-                        return AdServicesApiConsent.getConsent(
-                                mDatastore.get(ConsentConstants.CONSENT_KEY));
+                        return publishConsent(
+                                ConsentConstants.CONSENT_KEY,
+                                AdServicesApiConsent.getConsent(
+                                        mDatastore.get(ConsentConstants.CONSENT_KEY)));
                     case Flags.SYSTEM_SERVER_ONLY:
                         // Intentional fallthrough
                     case Flags.PPAPI_AND_SYSTEM_SERVER:
                         ConsentParcel consentParcel =
                                 mAdServicesManager.getConsent(ConsentParcel.ALL_API);
-                        return AdServicesApiConsent.getConsent(consentParcel.isIsGiven());
+                        return publishConsent(
+                                ConsentConstants.CONSENT_KEY,
+                                AdServicesApiConsent.getConsent(consentParcel.isIsGiven()));
                         // This is the default for back compat. All consent data is written to and
                         // read from AppSearch on S- devices.
                     case Flags.APPSEARCH_ONLY:
                         if (mFlags.getEnableAppsearchConsentData()) {
-                            return AdServicesApiConsent.getConsent(
-                                    mAppSearchConsentManager.getConsent(
-                                            ConsentConstants.CONSENT_KEY_FOR_ALL));
+                            return publishConsent(
+                                    ConsentConstants.CONSENT_KEY,
+                                    AdServicesApiConsent.getConsent(
+                                            mAppSearchConsentManager.getConsent(
+                                                    ConsentConstants.CONSENT_KEY_FOR_ALL)));
                         }
                     default:
                         LogUtil.e(ConsentConstants.ERROR_MESSAGE_INVALID_CONSENT_SOURCE_OF_TRUTH);
@@ -421,23 +444,31 @@ public class ConsentManager {
             return AdServicesApiConsent.GIVEN;
         }
 
+        String key = apiType.toPpApiDatastoreKey();
+        AdServicesApiConsent snapshotConsent = getSnapshotConsent(key);
+        if (snapshotConsent != null) {
+            return snapshotConsent;
+        }
+
         synchronized (LOCK) {
             try {
                 switch (mConsentSourceOfTruth) {
                     case Flags.PPAPI_ONLY:
-                        return AdServicesApiConsent.getConsent(
-                                mDatastore.get(apiType.toPpApiDatastoreKey()));
+                        return publishConsent(
+                                key, AdServicesApiConsent.getConsent(mDatastore.get(key)));
                     case Flags.SYSTEM_SERVER_ONLY:
                         // Intentional fallthrough
                     case Flags.PPAPI_AND_SYSTEM_SERVER:
                         ConsentParcel consentParcel =
                                 mAdServicesManager.getConsent(apiType.toConsentApiType());
-                        return AdServicesApiConsent.getConsent(consentParcel.isIsGiven());
+                        return publishConsent(
+                                key, AdServicesApiConsent.getConsent(consentParcel.isIsGiven()));
                     case Flags.APPSEARCH_ONLY:
                         if (mFlags.getEnableAppsearchConsentData()) {
-                            return AdServicesApiConsent.getConsent(
-                                    mAppSearchConsentManager.getConsent(
-                                            apiType.toPpApiDatastoreKey()));
+                            return publishConsent(
+                                    key,
+                                    AdServicesApiConsent.getConsent(
+                                            mAppSearchConsentManager.getConsent(key)));
                         }
                     default:
                         LogUtil.e(ConsentConstants.ERROR_MESSAGE_INVALID_CONSENT_SOURCE_OF_TRUTH);
@@ -638,6 +669,7 @@ public class ConsentManager {
             } catch (RuntimeException e) {
                 LogUtil.e(e, "Error revoke consent for app %s", app.getPackageName());
             }
+            invalidateConsentSnapshot();
         }
         asyncExecute(
                 () -> mCustomAudienceDao.deleteCustomAudienceDataByOwner(app.getPackageName()));
@@ -683,6 +715,7 @@ public class ConsentManager {
             } catch (RuntimeException e) {
                 LogUtil.e(e, "Error restore consent for app %s", app.getPackageName());
             }
+            invalidateConsentSnapshot();
         }
     }
 
@@ -718,6 +751,7 @@ public class ConsentManager {
             } catch (RuntimeException e) {
                 LogUtil.e(e, "Error reset apps and blocked apps.");
             }
+            invalidateConsentSnapshot();
         }
         asyncExecute(mCustomAudienceDao::deleteAllCustomAudienceData);
         if (mFlags.getFledgeAdSelectionFilteringEnabled()) {
@@ -757,6 +791,7 @@ public class ConsentManager {
             } catch (RuntimeException e) {
                 LogUtil.e(e, "Error reset apps.");
             }
+            invalidateConsentSnapshot();
         }
         asyncExecute(mCustomAudienceDao::deleteAllCustomAudienceData);
         if (mFlags.getFledgeAdSelectionFilteringEnabled()) {
@@ -792,11 +827,22 @@ public class ConsentManager {
             return true;
         }
 
+        Boolean snapshotRevoked =
+                mConsentSnapshotEnabled
+                        ? mConsentSnapshot.mAppsFledgeConsentRevoked.get(packageName)
+                        : null;
+        if (snapshotRevoked != null) {
+            return snapshotRevoked;
+        }
+
         synchronized (LOCK) {
             switch (mConsentSourceOfTruth) {
                 case Flags.PPAPI_ONLY:
                     try {
-                        return mAppConsentDao.isConsentRevokedForApp(packageName);
+                        return publishAppFledgeConsentRevoked(
+                                packageName,
+                                mAppConsentDao.isConsentRevokedForApp(packageName),
+                                /* isFledgeUseRecorded= */ false);
                     } catch (IOException exception) {
                         LogUtil.e(exception, "FLEDGE consent check failed due to IOException");
                     }
@@ -804,11 +850,18 @@ public class ConsentManager {
                 case Flags.SYSTEM_SERVER_ONLY:
                     // Intentional fallthrough
                 case Flags.PPAPI_AND_SYSTEM_SERVER:
-                    return mAdServicesManager.isConsentRevokedForApp(
-                            packageName, mAppConsentDao.getUidForInstalledPackageName(packageName));
+                    return publishAppFledgeConsentRevoked(
+                            packageName,
+                            mAdServicesManager.isConsentRevokedForApp(
+                                    packageName,
+                                    mAppConsentDao.getUidForInstalledPackageName(packageName)),
+                            /* isFledgeUseRecorded= */ false);
                 case Flags.APPSEARCH_ONLY:
                     if (mFlags.getEnableAppsearchConsentData()) {
-                        return mAppSearchConsentManager.isFledgeConsentRevokedForApp(packageName);
+                        return publishAppFledgeConsentRevoked(
+                                packageName,
+                                mAppSearchConsentManager.isFledgeConsentRevokedForApp(packageName),
+                                /* isFledgeUseRecorded= */ false);
                     }
                 default:
                     LogUtil.e(ConsentConstants.ERROR_MESSAGE_INVALID_CONSENT_SOURCE_OF_TRUTH);
@@ -847,20 +900,32 @@ public class ConsentManager {
             return true;
         }
 
+        // Setting the use again is a no-op once it has been recorded
+        ConsentSnapshot snapshot = mConsentSnapshot;
+        if (mConsentSnapshotEnabled && snapshot.mAppsWithFledgeUseRecorded.contains(packageName)) {
+            return snapshot.mAppsFledgeConsentRevoked.get(packageName);
+        }
+
         synchronized (LOCK) {
             switch (mConsentSourceOfTruth) {
                 case Flags.PPAPI_ONLY:
                     try {
-                        return mAppConsentDao.setConsentForAppIfNew(packageName, false);
+                        return publishAppFledgeConsentRevoked(
+                                packageName,
+                                mAppConsentDao.setConsentForAppIfNew(packageName, false),
+                                /* isFledgeUseRecorded= */ true);
                     } catch (IOException exception) {
                         LogUtil.e(exception, "FLEDGE consent check failed due to IOException");
                         return true;
                     }
                 case Flags.SYSTEM_SERVER_ONLY:
-                    return mAdServicesManager.setConsentForAppIfNew(
+                    return publishAppFledgeConsentRevoked(
                             packageName,
-                            mAppConsentDao.getUidForInstalledPackageName(packageName),
-                            false);
+                            mAdServicesManager.setConsentForAppIfNew(
+                                    packageName,
+                                    mAppConsentDao.getUidForInstalledPackageName(packageName),
+                                    false),
+                            /* isFledgeUseRecorded= */ true);
                 case Flags.PPAPI_AND_SYSTEM_SERVER:
                     try {
                         mAppConsentDao.setConsentForAppIfNew(packageName, false);
@@ -868,14 +933,21 @@ public class ConsentManager {
                         LogUtil.e(exception, "FLEDGE consent check failed due to IOException");
                         return true;
                     }
-                    return mAdServicesManager.setConsentForAppIfNew(
+                    return publishAppFledgeConsentRevoked(
                             packageName,
-                            mAppConsentDao.getUidForInstalledPackageName(packageName),
-                            false);
+                            mAdServicesManager.setConsentForAppIfNew(
+                                    packageName,
+                                    mAppConsentDao.getUidForInstalledPackageName(packageName),
+                                    false),
+                            /* isFledgeUseRecorded= */ true);
                 case Flags.APPSEARCH_ONLY:
                     if (mFlags.getEnableAppsearchConsentData()) {
-                        return mAppSearchConsentManager
-                                .isFledgeConsentRevokedForAppAfterSettingFledgeUse(packageName);
+                        return publishAppFledgeConsentRevoked(
+                                packageName,
+                                mAppSearchConsentManager
+                                        .isFledgeConsentRevokedForAppAfterSettingFledgeUse(
+                                                packageName),
+                                /* isFledgeUseRecorded= */ true);
                     }
                 default:
                     LogUtil.e(ConsentConstants.ERROR_MESSAGE_INVALID_CONSENT_SOURCE_OF_TRUTH);
@@ -939,6 +1011,8 @@ public class ConsentManager {
                         packageName,
                         packageUid);
             }
+            mAppConsentDao.clearPackageUid(packageName);
+            invalidateConsentSnapshot();
         }
     }
 
@@ -980,6 +1054,23 @@ public class ConsentManager {
             } catch (RuntimeException e) {
                 LogUtil.e(e, "Error clear consent for uninstalled app %s.", packageName);
             }
+            mAppConsentDao.clearPackageUid(packageName);
+            invalidateConsentSnapshot();
+        }
+    }
+
+    /**
+     * Drops the consent state kept in memory for an app that got installed, as its UID may differ
+     * from the one of a previous installation.
+     *
+     * @param packageName the package name that had been installed.
+     */
+    public void handleAppInstallation(@NonNull String packageName) {
+        Objects.requireNonNull(packageName);
+
+        synchronized (LOCK) {
+            mAppConsentDao.clearPackageUid(packageName);
+            invalidateConsentSnapshot();
         }
     }
 
@@ -1712,7 +1803,8 @@ public class ConsentManager {
                 new BooleanFileDatastore(
                         context,
                         ConsentConstants.STORAGE_XML_IDENTIFIER,
-                        ConsentConstants.STORAGE_VERSION);
+                        ConsentConstants.STORAGE_VERSION,
+                        FlagsFactory.getFlags().getEnableConsentDatastoreJournal());
 
         try {
             booleanFileDatastore.initialize();
@@ -2034,6 +2126,7 @@ public class ConsentManager {
     @VisibleForTesting
     void setConsentToSourceOfTruth(boolean isGiven) {
         synchronized (LOCK) {
+            invalidateConsentSnapshot();
             try {
                 switch (mConsentSourceOfTruth) {
                     case Flags.PPAPI_ONLY:
@@ -2059,6 +2152,8 @@ public class ConsentManager {
                 }
             } catch (IOException | RuntimeException e) {
                 throw new RuntimeException(ConsentConstants.ERROR_MESSAGE_WHILE_SET_CONTENT, e);
+            } finally {
+                invalidateConsentSnapshot();
             }
         }
     }
@@ -2066,6 +2161,8 @@ public class ConsentManager {
     @VisibleForTesting
     void setPerApiConsentToSourceOfTruth(boolean isGiven, AdServicesApiType apiType) {
         synchronized (LOCK) {
+            // The aggregated consent is computed from the per API consent read after the write.
+            invalidateConsentSnapshot();
             try {
                 switch (mConsentSourceOfTruth) {
                     case Flags.PPAPI_ONLY:
@@ -2095,6 +2192,8 @@ public class ConsentManager {
                 }
             } catch (IOException | RuntimeException e) {
                 throw new RuntimeException(ConsentConstants.ERROR_MESSAGE_WHILE_SET_CONTENT, e);
+            } finally {
+                invalidateConsentSnapshot();
             }
         }
     }
@@ -2281,6 +2380,90 @@ public class ConsentManager {
         }
     }
 
+    @Nullable
+    private AdServicesApiConsent getSnapshotConsent(String key) {
+        return mConsentSnapshotEnabled ? mConsentSnapshot.mApiConsents.get(key) : null;
+    }
+
+    @GuardedBy("LOCK")
+    private AdServicesApiConsent publishConsent(String key, AdServicesApiConsent consent) {
+        if (mConsentSnapshotEnabled) {
+            mConsentSnapshot = mConsentSnapshot.withApiConsent(key, consent);
+        }
+        return consent;
+    }
+
+    @GuardedBy("LOCK")
+    private boolean publishAppFledgeConsentRevoked(
+            String packageName, boolean isConsentRevoked, boolean isFledgeUseRecorded) {
+        if (mConsentSnapshotEnabled) {
+            mConsentSnapshot =
+                    mConsentSnapshot.withAppFledgeConsentRevoked(
+                            packageName, isConsentRevoked, isFledgeUseRecorded);
+        }
+        return isConsentRevoked;
+    }
+
+    @GuardedBy("LOCK")
+    private void invalidateConsentSnapshot() {
+        mConsentSnapshot = ConsentSnapshot.EMPTY;
+    }
+
+    /**
+     * Immutable view of the consent read from the source of truth. A snapshot is only replaced by
+     * a new one, so that it can be read without synchronization.
+     */
+    private static final class ConsentSnapshot {
+        static final ConsentSnapshot EMPTY =
+                new ConsentSnapshot(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of());
+
+        // Consent keyed by PPAPI datastore key
+        final ImmutableMap<String, AdServicesApiConsent> mApiConsents;
+        // Whether the FLEDGE consent is revoked, keyed by package name
+        final ImmutableMap<String, Boolean> mAppsFledgeConsentRevoked;
+        // Packages whose FLEDGE use is recorded, so that setting it again is a no-op
+        final ImmutableSet<String> mAppsWithFledgeUseRecorded;
+
+        private ConsentSnapshot(
+                ImmutableMap<String, AdServicesApiConsent> apiConsents,
+                ImmutableMap<String, Boolean> appsFledgeConsentRevoked,
+                ImmutableSet<String> appsWithFledgeUseRecorded) {
+            mApiConsents = apiConsents;
+            mAppsFledgeConsentRevoked = appsFledgeConsentRevoked;
+            mAppsWithFledgeUseRecorded = appsWithFledgeUseRecorded;
+        }
+
+        ConsentSnapshot withApiConsent(String key, AdServicesApiConsent consent) {
+            return new ConsentSnapshot(
+                    with(mApiConsents, key, consent),
+                    mAppsFledgeConsentRevoked,
+                    mAppsWithFledgeUseRecorded);
+        }
+
+        ConsentSnapshot withAppFledgeConsentRevoked(
+                String packageName, boolean isConsentRevoked, boolean isFledgeUseRecorded) {
+            ImmutableSet<String> appsWithFledgeUseRecorded = mAppsWithFledgeUseRecorded;
+            if (isFledgeUseRecorded && !appsWithFledgeUseRecorded.contains(packageName)) {
+                appsWithFledgeUseRecorded =
+                        ImmutableSet.<String>builder()
+                                .addAll(appsWithFledgeUseRecorded)
+                                .add(packageName)
+                                .build();
+            }
+            return new ConsentSnapshot(
+                    mApiConsents,
+                    with(mAppsFledgeConsentRevoked, packageName, isConsentRevoked),
+                    appsWithFledgeUseRecorded);
+        }
+
+        private static <V> ImmutableMap<String, V> with(
+                ImmutableMap<String, V> map, String key, V value) {
+            Map<String, V> copy = new HashMap<>(map);
+            copy.put(key, value);
+            return ImmutableMap.copyOf(copy);
+        }
+    }
+
     private void asyncExecute(Runnable runnable) {
         AdServicesExecutors.getBackgroundExecutor().execute(runnable);
     }
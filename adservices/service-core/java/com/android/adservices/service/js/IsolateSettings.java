@@ -20,6 +20,8 @@ import androidx.javascriptengine.JavaScriptIsolate;
 
 import com.android.internal.util.Preconditions;
 
+import java.util.Objects;
+
 /** Class used to set startup parameters for {@link JavaScriptIsolate}. */
 public final class IsolateSettings {
     private final long mMaxHeapSizeBytes;
@@ -69,4 +71,18 @@ public final class IsolateSettings {
     public static IsolateSettings forMaxHeapSizeEnforcementEnabled(long maxHeapSizeBytes) {
         return new IsolateSettings(true, maxHeapSizeBytes);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IsolateSettings)) return false;
+        IsolateSettings that = (IsolateSettings) o;
+        return mMaxHeapSizeBytes == that.mMaxHeapSizeBytes
+                && mEnforceMaxHeapSizeFeature == that.mEnforceMaxHeapSizeFeature;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mMaxHeapSizeBytes, mEnforceMaxHeapSizeFeature);
+    }
 }
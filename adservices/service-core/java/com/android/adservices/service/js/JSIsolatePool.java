@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.service.js;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+
+import androidx.javascriptengine.JavaScriptIsolate;
+import androidx.javascriptengine.JavaScriptSandbox;
+
+import com.android.adservices.LogUtil;
+import com.android.adservices.service.profiling.JSScriptEngineLogConstants;
+import com.android.adservices.service.profiling.Profiler;
+import com.android.adservices.service.profiling.StopWatch;
+import com.android.adservices.service.profiling.Tracing;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Bounded pool of {@link JavaScriptIsolate} instances created ahead of time, keyed by the {@link
+ * JavaScriptSandbox} and the {@link IsolateSettings} used to create them.
+ *
+ * <p>Pooled isolates have never evaluated any script. Every isolate is leased for a single
+ * evaluation and closed when the lease is closed, so nothing an evaluation does to the isolate,
+ * including changes to the built-in objects, can be observed by a later evaluation. Leasing an
+ * isolate schedules the creation of a replacement on the executor, moving the cost of creating
+ * isolates out of the evaluation path. Idle isolates created on a {@link JavaScriptSandbox}
+ * instance that has been replaced since are closed.
+ */
+final class JSIsolatePool {
+    private final int mMaxIdleIsolates;
+    @NonNull private final Profiler mProfiler;
+    @NonNull private final ListeningExecutorService mExecutorService;
+    private final Object mLock = new Object();
+
+    // Idle isolates in creation order.
+    @GuardedBy("mLock")
+    private final Deque<PooledIsolate> mIdleIsolates = new ArrayDeque<>();
+
+    // Number of isolates being created to replace the leased ones.
+    @GuardedBy("mLock")
+    private int mPendingIsolates;
+
+    // Incremented every time the pool is cleared so that isolates being created before then are
+    // not added to the pool.
+    @GuardedBy("mLock")
+    private long mGeneration;
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    /**
+     * @param maxIdleIsolates max number of idle isolates kept by the pool. A value of 0 disables
+     *     pooling.
+     */
+    JSIsolatePool(
+            int maxIdleIsolates,
+            @NonNull Profiler profiler,
+            @NonNull ListeningExecutorService executorService) {
+        Preconditions.checkArgument(maxIdleIsolates >= 0, "maxIdleIsolates should be >= 0");
+        Objects.requireNonNull(profiler);
+        Objects.requireNonNull(executorService);
+
+        mMaxIdleIsolates = maxIdleIsolates;
+        mProfiler = profiler;
+        mExecutorService = executorService;
+    }
+
+    /** Creates a pool that never retains isolates, every lease will create a new one. */
+    static JSIsolatePool createDisabledInstance(
+            @NonNull Profiler profiler, @NonNull ListeningExecutorService executorService) {
+        return new JSIsolatePool(0, profiler, executorService);
+    }
+
+    /** @return true if isolates are created ahead of time. */
+    boolean isEnabled() {
+        return mMaxIdleIsolates > 0;
+    }
+
+    /**
+     * Leases an isolate created on {@code jsSandbox} with the given {@code isolateSettings}, using
+     * an idle one if available or creating a new one through {@code isolateFactory} otherwise.
+     * When the pool is enabled a replacement isolate is then created through {@code
+     * isolateFactory} on the executor.
+     */
+    @NonNull
+    Lease lease(
+            @NonNull JavaScriptSandbox jsSandbox,
+            @NonNull IsolateSettings isolateSettings,
+            @NonNull Supplier<JavaScriptIsolate> isolateFactory) {
+        Objects.requireNonNull(jsSandbox);
+        Objects.requireNonNull(isolateSettings);
+        Objects.requireNonNull(isolateFactory);
+
+        if (!isEnabled()) {
+            return new Lease(isolateFactory.get());
+        }
+
+        JavaScriptIsolate isolate;
+        PooledIsolate idleIsolate = pollIdleIsolate(jsSandbox, isolateSettings);
+        if (idleIsolate != null) {
+            mHitCount.incrementAndGet();
+            mProfiler.start(JSScriptEngineLogConstants.ISOLATE_POOL_HIT).stop();
+            LogUtil.v("Using pre-created JS isolate");
+            isolate = idleIsolate.mIsolate;
+        } else {
+            mMissCount.incrementAndGet();
+            StopWatch missStopWatch = mProfiler.start(JSScriptEngineLogConstants.ISOLATE_POOL_MISS);
+            try {
+                isolate = isolateFactory.get();
+            } finally {
+                missStopWatch.stop();
+            }
+        }
+
+        createIdleIsolate(jsSandbox, isolateSettings, isolateFactory);
+        return new Lease(isolate);
+    }
+
+    /**
+     * Closes all the idle isolates. Isolates being created when this method is called are closed
+     * instead of being added to the pool.
+     */
+    void clear() {
+        List<PooledIsolate> toClose;
+        synchronized (mLock) {
+            mGeneration++;
+            toClose = new ArrayList<>(mIdleIsolates);
+            mIdleIsolates.clear();
+        }
+        toClose.forEach(this::evict);
+    }
+
+    @VisibleForTesting
+    long getHitCount() {
+        return mHitCount.get();
+    }
+
+    @VisibleForTesting
+    long getMissCount() {
+        return mMissCount.get();
+    }
+
+    @VisibleForTesting
+    long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    @VisibleForTesting
+    int getIdleIsolateCount() {
+        synchronized (mLock) {
+            return mIdleIsolates.size();
+        }
+    }
+
+    @Nullable
+    private PooledIsolate pollIdleIsolate(
+            @NonNull JavaScriptSandbox jsSandbox, @NonNull IsolateSettings isolateSettings) {
+        List<PooledIsolate> staleIsolates = new ArrayList<>();
+        PooledIsolate result = null;
+        synchronized (mLock) {
+            Iterator<PooledIsolate> oldestFirst = mIdleIsolates.iterator();
+            while (oldestFirst.hasNext()) {
+                PooledIsolate candidate = oldestFirst.next();
+                if (candidate.mSandbox != jsSandbox) {
+                    oldestFirst.remove();
+                    staleIsolates.add(candidate);
+                } else if (candidate.mSettings.equals(isolateSettings)) {
+                    oldestFirst.remove();
+                    result = candidate;
+                    break;
+                }
+            }
+        }
+        staleIsolates.forEach(this::evict);
+        return result;
+    }
+
+    private void createIdleIsolate(
+            @NonNull JavaScriptSandbox jsSandbox,
+            @NonNull IsolateSettings isolateSettings,
+            @NonNull Supplier<JavaScriptIsolate> isolateFactory) {
+        long generation;
+        synchronized (mLock) {
+            if (mIdleIsolates.size() + mPendingIsolates >= mMaxIdleIsolates) {
+                return;
+            }
+            mPendingIsolates++;
+            generation = mGeneration;
+        }
+
+        mExecutorService.execute(
+                () -> {
+                    JavaScriptIsolate isolate = null;
+                    try {
+                        isolate = isolateFactory.get();
+                    } catch (RuntimeException e) {
+                        LogUtil.d(e, "Unable to create JS isolate ahead of time");
+                    } finally {
+                        synchronized (mLock) {
+                            mPendingIsolates--;
+                        }
+                    }
+                    if (isolate != null) {
+                        offerIdleIsolate(
+                                new PooledIsolate(isolate, jsSandbox, isolateSettings, generation));
+                    }
+                });
+    }
+
+    private void offerIdleIsolate(@NonNull PooledIsolate pooledIsolate) {
+        PooledIsolate oldest = null;
+        synchronized (mLock) {
+            if (pooledIsolate.mGeneration != mGeneration) {
+                oldest = pooledIsolate;
+            } else {
+                mIdleIsolates.addLast(pooledIsolate);
+                if (mIdleIsolates.size() > mMaxIdleIsolates) {
+                    oldest = mIdleIsolates.pollFirst();
+                }
+            }
+        }
+        if (oldest != null) {
+            evict(oldest);
+        }
+    }
+
+    private void evict(@NonNull PooledIsolate pooledIsolate) {
+        mEvictionCount.incrementAndGet();
+        closeIsolate(pooledIsolate.mIsolate);
+    }
+
+    private static void closeIsolate(@NonNull JavaScriptIsolate isolate) {
+        int traceCookie = Tracing.beginAsyncSection(Tracing.JSSCRIPTENGINE_CLOSE_ISOLATE);
+        LogUtil.d("Closing WebView isolate");
+        // Closing the isolate will also cause the thread in WebView to be terminated if
+        // still running.
+        // There is no need to verify if ISOLATE_TERMINATION is supported by WebView
+        // because there is no new API but just new capability on the WebView side for
+        // existing API.
+        isolate.close();
+        Tracing.endAsyncSection(Tracing.JSSCRIPTENGINE_CLOSE_ISOLATE, traceCookie);
+    }
+
+    /** A single use of an isolate. Closing the lease closes the isolate. */
+    static final class Lease implements Closeable {
+        @NonNull private final JavaScriptIsolate mIsolate;
+
+        private Lease(@NonNull JavaScriptIsolate isolate) {
+            mIsolate = isolate;
+        }
+
+        @NonNull
+        JavaScriptIsolate getIsolate() {
+            return mIsolate;
+        }
+
+        @Override
+        public void close() {
+            closeIsolate(mIsolate);
+        }
+    }
+
+    private static final class PooledIsolate {
+        @NonNull final JavaScriptIsolate mIsolate;
+        @NonNull final JavaScriptSandbox mSandbox;
+        @NonNull final IsolateSettings mSettings;
+        final long mGeneration;
+
+        PooledIsolate(
+                @NonNull JavaScriptIsolate isolate,
+                @NonNull JavaScriptSandbox sandbox,
+                @NonNull IsolateSettings settings,
+                long generation) {
+            mIsolate = isolate;
+            mSandbox = sandbox;
+            mSettings = settings;
+            mGeneration = generation;
+        }
+    }
+}
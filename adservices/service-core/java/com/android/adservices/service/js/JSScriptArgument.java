@@ -149,4 +149,18 @@ public abstract class JSScriptArgument {
      * @return the JS code to use to initialize the newly declared variable.
      */
     abstract String initializationValue();
+
+    /**
+     * @return true if the value can be passed as the JSON returned by {@link #jsonValue()} and
+     *     parsed with {@code JSON.parse} instead of being evaluated as JS code.
+     */
+    abstract boolean isJsonCompatible();
+
+    /**
+     * @return the JSON text to parse with {@code JSON.parse} to obtain the value of the argument.
+     *     Only valid if {@link #isJsonCompatible()} is true.
+     */
+    String jsonValue() {
+        return initializationValue();
+    }
 }
@@ -48,6 +48,32 @@ public class JSScriptArrayArgument<T extends JSScriptArgument> extends JSScriptA
         return valueInitialization.toString();
     }
 
+    @Override
+    String jsonValue() {
+        StringBuilder valueJson = new StringBuilder("[\n");
+        boolean firstItem = true;
+        for (T elem : mValue) {
+            if (firstItem) {
+                firstItem = false;
+            } else {
+                valueJson.append(",\n");
+            }
+            valueJson.append(elem.jsonValue());
+        }
+        valueJson.append("\n]");
+        return valueJson.toString();
+    }
+
+    @Override
+    boolean isJsonCompatible() {
+        for (T elem : mValue) {
+            if (!elem.isJsonCompatible()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -27,6 +27,8 @@ import androidx.javascriptengine.JavaScriptSandbox;
 
 import com.android.adservices.LogUtil;
 import com.android.adservices.concurrency.AdServicesExecutors;
+import com.android.adservices.service.Flags;
+import com.android.adservices.service.FlagsFactory;
 import com.android.adservices.service.exception.JSExecutionException;
 import com.android.adservices.service.profiling.JSScriptEngineLogConstants;
 import com.android.adservices.service.profiling.Profiler;
@@ -42,9 +44,16 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
-import java.io.Closeable;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import javax.annotation.concurrent.GuardedBy;
@@ -56,6 +65,14 @@ import javax.annotation.concurrent.GuardedBy;
  *
  * <p>The class is re-entrant, for best performance when using it on multiple thread is better to
  * have every thread using its own instance.
+ *
+ * <p>Isolates can be created ahead of time through a {@link JSIsolatePool}. Every isolate is used
+ * for a single evaluation and closed afterwards.
+ *
+ * <p>When the JS Sandbox supports {@link
+ * JavaScriptSandbox#JS_FEATURE_PROVIDE_CONSUME_ARRAY_BUFFER}, large JSON arguments can be passed to
+ * the isolate as named array buffers and parsed with {@code JSON.parse} instead of being inlined in
+ * the evaluated script as JS source.
  */
 public class JSScriptEngine {
     public static final String ENTRY_POINT_FUNC_NAME = "__rb_entry_point";
@@ -63,6 +80,25 @@ public class JSScriptEngine {
     @VisibleForTesting public static final String TAG = JSScriptEngine.class.getSimpleName();
     public static final String WASM_MODULE_BYTES_ID = "__wasmModuleBytes";
     public static final String WASM_MODULE_ARG_NAME = "wasmModule";
+    public static final String ARRAY_BUFFER_ARGUMENT_ID_PREFIX = "__rb_arg_";
+
+    /** Value of the minimum size of array buffer arguments disabling them. */
+    @VisibleForTesting static final int ARRAY_BUFFER_ARGUMENTS_DISABLED = -1;
+
+    /**
+     * Decodes the UTF-16 code units stored in an array buffer into a string. The code units are
+     * converted in chunks to stay below the maximum number of arguments of a function call.
+     */
+    private static final String DECODE_ARRAY_BUFFER_JS =
+            "const __rb_decode = function(buffer) {\n"
+                    + "  const codes = new Uint16Array(buffer);\n"
+                    + "  let result = '';\n"
+                    + "  for (let i = 0; i < codes.length; i += 8192) {\n"
+                    + "    result +=\n"
+                    + "        String.fromCharCode.apply(null, codes.subarray(i, i + 8192));\n"
+                    + "  }\n"
+                    + "  return result;\n"
+                    + "};\n";
 
     public static final String NON_SUPPORTED_MAX_HEAP_SIZE_EXCEPTION_MSG =
             "JS isolate does not support Max heap size";
@@ -76,6 +112,11 @@ public class JSScriptEngine {
     @NonNull private final JavaScriptSandboxProvider mJsSandboxProvider;
     @NonNull private final ListeningExecutorService mExecutorService;
     @NonNull private final Profiler mProfiler;
+    @NonNull private final JSIsolatePool mIsolatePool;
+    private final int mArrayBufferArgumentsMinSizeChars;
+    // Named data can only be provided once per name in an isolate, every argument is given a
+    // unique id.
+    private final AtomicLong mArrayBufferArgumentIdGenerator = new AtomicLong();
 
     /**
      * Extracting the logic to create the JavaScriptSandbox in a factory class for better
@@ -185,13 +226,23 @@ public class JSScriptEngine {
         synchronized (JSScriptEngine.class) {
             if (sSingleton == null) {
                 Profiler profiler = Profiler.createNoOpInstance(TAG);
+                Flags flags = FlagsFactory.getFlags();
+                // There is no blocking call or IO code in the service logic
+                ListeningExecutorService executorService =
+                        AdServicesExecutors.getLightWeightExecutor();
                 sSingleton =
                         new JSScriptEngine(
                                 context,
                                 new JavaScriptSandboxProvider(profiler),
                                 profiler,
-                                // There is no blocking call or IO code in the service logic
-                                AdServicesExecutors.getLightWeightExecutor());
+                                executorService,
+                                new JSIsolatePool(
+                                        flags.getFledgeJsIsolatePoolMaxIdleIsolates(),
+                                        profiler,
+                                        executorService),
+                                flags.getFledgeJsArrayBufferArgumentsEnabled()
+                                        ? flags.getFledgeJsArrayBufferArgumentsMinSizeChars()
+                                        : ARRAY_BUFFER_ARGUMENTS_DISABLED);
             }
 
             return sSingleton;
@@ -213,12 +264,14 @@ public class JSScriptEngine {
                                 + "the real JavaScriptSandboxProvider.");
             }
 
+            ListeningExecutorService executorService = AdServicesExecutors.getLightWeightExecutor();
             sSingleton =
                     new JSScriptEngine(
                             context,
                             new JavaScriptSandboxProvider(profiler),
                             profiler,
-                            AdServicesExecutors.getLightWeightExecutor());
+                            executorService,
+                            JSIsolatePool.createDisabledInstance(profiler, executorService));
         }
 
         return sSingleton;
@@ -236,8 +289,13 @@ public class JSScriptEngine {
             @NonNull Context context,
             @NonNull JavaScriptSandboxProvider jsSandboxProvider,
             @NonNull Profiler profiler) {
+        ListeningExecutorService executorService = AdServicesExecutors.getLightWeightExecutor();
         return new JSScriptEngine(
-                context, jsSandboxProvider, profiler, AdServicesExecutors.getLightWeightExecutor());
+                context,
+                jsSandboxProvider,
+                profiler,
+                executorService,
+                JSIsolatePool.createDisabledInstance(profiler, executorService));
     }
 
     /**
@@ -249,25 +307,52 @@ public class JSScriptEngine {
      * @return A future to be used by tests needing to know when the sandbox close call happened.
      */
     public ListenableFuture<Void> shutdown() {
+        mIsolatePool.clear();
         return mJsSandboxProvider.destroyCurrentInstance();
     }
 
+    @VisibleForTesting
+    JSScriptEngine(
+            @NonNull Context context,
+            @NonNull JavaScriptSandboxProvider jsSandboxProvider,
+            @NonNull Profiler profiler,
+            @NonNull ListeningExecutorService executorService,
+            @NonNull JSIsolatePool isolatePool) {
+        this(
+                context,
+                jsSandboxProvider,
+                profiler,
+                executorService,
+                isolatePool,
+                ARRAY_BUFFER_ARGUMENTS_DISABLED);
+    }
+
+    /**
+     * @param arrayBufferArgumentsMinSizeChars the minimum length of the JSON representation of an
+     *     argument for it to be passed as an array buffer, or {@link
+     *     #ARRAY_BUFFER_ARGUMENTS_DISABLED} to always inline the arguments in the script
+     */
     @VisibleForTesting
     @SuppressWarnings("FutureReturnValueIgnored")
     JSScriptEngine(
             @NonNull Context context,
             @NonNull JavaScriptSandboxProvider jsSandboxProvider,
             @NonNull Profiler profiler,
-            @NonNull ListeningExecutorService executorService) {
+            @NonNull ListeningExecutorService executorService,
+            @NonNull JSIsolatePool isolatePool,
+            int arrayBufferArgumentsMinSizeChars) {
         Objects.requireNonNull(context);
         Objects.requireNonNull(jsSandboxProvider);
         Objects.requireNonNull(profiler);
         Objects.requireNonNull(executorService);
+        Objects.requireNonNull(isolatePool);
 
         this.mContext = context;
         this.mJsSandboxProvider = jsSandboxProvider;
         this.mProfiler = profiler;
         this.mExecutorService = executorService;
+        this.mIsolatePool = isolatePool;
+        this.mArrayBufferArgumentsMinSizeChars = arrayBufferArgumentsMinSizeChars;
         // Forcing initialization of WebView
         jsSandboxProvider.getFutureInstance(mContext);
     }
@@ -374,8 +459,13 @@ public class JSScriptEngine {
                             + " Sandbox available on this device");
         }
 
-        JavaScriptIsolate jsIsolate = createIsolate(jsSandbox, isolateSettings);
-        closer.eventuallyClose(new CloseableIsolateWrapper(jsIsolate), mExecutorService);
+        JSIsolatePool.Lease isolateLease =
+                mIsolatePool.lease(
+                        jsSandbox,
+                        isolateSettings,
+                        () -> createIsolate(jsSandbox, isolateSettings));
+        closer.eventuallyClose(isolateLease, mExecutorService);
+        JavaScriptIsolate jsIsolate = isolateLease.getIsolate();
 
         if (hasWasmModule) {
             LogUtil.d(
@@ -389,7 +479,15 @@ public class JSScriptEngine {
             LogUtil.d("Evaluating JS script on thread %s", Thread.currentThread().getName());
         }
 
-        String entryPointCall = callEntryPoint(args, entryFunctionName, hasWasmModule);
+        // The WASM module is already consumed in a promise chain, array buffer arguments are only
+        // used for scripts without WASM.
+        Map<JSScriptArgument, String> arrayBufferArgumentIds =
+                hasWasmModule
+                        ? Collections.emptyMap()
+                        : provideArrayBufferArguments(jsSandbox, jsIsolate, args);
+
+        String entryPointCall =
+                callEntryPoint(args, entryFunctionName, hasWasmModule, arrayBufferArgumentIds);
 
         String fullScript = jsScript + "\n" + entryPointCall;
         LogUtil.v("Calling WebView for script %s", fullScript);
@@ -454,6 +552,53 @@ public class JSScriptEngine {
                 .transform(this::isWasmSupported, mExecutorService);
     }
 
+    private boolean isArrayBufferArgumentSupported(JavaScriptSandbox jsSandbox) {
+        // The arguments are read with android.consumeNamedDataAsArrayBuffer, which returns a
+        // promise.
+        return jsSandbox.isFeatureSupported(
+                        JavaScriptSandbox.JS_FEATURE_PROVIDE_CONSUME_ARRAY_BUFFER)
+                && jsSandbox.isFeatureSupported(JavaScriptSandbox.JS_FEATURE_PROMISE_RETURN);
+    }
+
+    /**
+     * Provides to {@code jsIsolate} as named array buffers the arguments in {@code args} that have
+     * a JSON representation at least {@link #mArrayBufferArgumentsMinSizeChars} long. The JSON
+     * text is passed as UTF-16 code units so that it can be decoded without relying on {@code
+     * TextDecoder}, which is not available in the isolate.
+     *
+     * @return the id of the named data of every argument passed as array buffer.
+     */
+    @NonNull
+    private Map<JSScriptArgument, String> provideArrayBufferArguments(
+            @NonNull JavaScriptSandbox jsSandbox,
+            @NonNull JavaScriptIsolate jsIsolate,
+            @NonNull List<JSScriptArgument> args) {
+        // Arguments are compared by value, identity is needed to tell apart equal arguments
+        Map<JSScriptArgument, String> arrayBufferArgumentIds = new IdentityHashMap<>();
+        if (mArrayBufferArgumentsMinSizeChars == ARRAY_BUFFER_ARGUMENTS_DISABLED
+                || !isArrayBufferArgumentSupported(jsSandbox)) {
+            return arrayBufferArgumentIds;
+        }
+        for (JSScriptArgument arg : args) {
+            if (!arg.isJsonCompatible()) {
+                continue;
+            }
+            String jsonValue = arg.jsonValue();
+            if (jsonValue.length() < mArrayBufferArgumentsMinSizeChars) {
+                continue;
+            }
+            String id =
+                    ARRAY_BUFFER_ARGUMENT_ID_PREFIX
+                            + mArrayBufferArgumentIdGenerator.incrementAndGet();
+            if (!jsIsolate.provideNamedData(id, jsonValue.getBytes(StandardCharsets.UTF_16LE))) {
+                LogUtil.w("Unable to pass argument %s as array buffer, inlining it", arg.name());
+                continue;
+            }
+            arrayBufferArgumentIds.put(arg, id);
+        }
+        return arrayBufferArgumentIds;
+    }
+
     boolean isConfigurableHeapSizeSupported(JavaScriptSandbox jsSandbox) {
         boolean isConfigurableHeapSupported =
                 jsSandbox.isFeatureSupported(JavaScriptSandbox.JS_FEATURE_ISOLATE_MAX_HEAP_SIZE);
@@ -510,6 +655,7 @@ public class JSScriptEngine {
                     "JavaScriptSandboxProcess is disconnected, cannot create an isolate to run JS"
                             + " code into. Resetting connection with AwJavaScriptSandbox to enable"
                             + " future calls.");
+            mIsolatePool.clear();
             mJsSandboxProvider.destroyCurrentInstance();
             throw new JSScriptEngineConnectionException(
                     JS_SCRIPT_ENGINE_CONNECTION_EXCEPTION_MSG, jsSandboxIsDisconnected);
@@ -524,23 +670,55 @@ public class JSScriptEngine {
      *     the value of {@code args} and the invocation of the given {@code entryFunctionName}. If
      *     the {@code addWasmBinary} parameter is true, the target function is expected to accept an
      *     extra final parameter 'wasmModule' of type {@code WebAssembly.Module} and the method will
-     *     return a promise.
+     *     return a promise. The arguments in {@code arrayBufferArgumentIds} are read from the named
+     *     data with the associated id instead of being declared inline, in that case the method
+     *     will return a promise too.
      */
     @NonNull
     private String callEntryPoint(
             @NonNull List<JSScriptArgument> args,
             @NonNull String entryFunctionName,
-            boolean addWasmBinary) {
+            boolean addWasmBinary,
+            @NonNull Map<JSScriptArgument, String> arrayBufferArgumentIds) {
         StringBuilder resultBuilder = new StringBuilder("(function() {\n");
         // Declare args as constant inside this function closure to avoid any direct access by
         // the functions in the script we are calling.
+        List<JSScriptArgument> arrayBufferArgs = new ArrayList<>();
         for (JSScriptArgument arg : args) {
+            if (arrayBufferArgumentIds.containsKey(arg)) {
+                arrayBufferArgs.add(arg);
+                continue;
+            }
             // Avoiding to use addJavaScriptInterface because too expensive, just
             // declaring the string parameter as part of the script.
             resultBuilder.append(arg.variableDeclaration());
             resultBuilder.append("\n");
         }
 
+        boolean hasArrayBufferArgs = !arrayBufferArgs.isEmpty();
+        if (hasArrayBufferArgs) {
+            resultBuilder.append(DECODE_ARRAY_BUFFER_JS);
+            resultBuilder.append(
+                    arrayBufferArgs.stream()
+                            .map(
+                                    arg ->
+                                            String.format(
+                                                    "android.consumeNamedDataAsArrayBuffer(%s)",
+                                                    JSONObject.quote(
+                                                            arrayBufferArgumentIds.get(arg))))
+                            .collect(
+                                    Collectors.joining(
+                                            ",",
+                                            "return Promise.all([",
+                                            "]).then((__rb_buffers) => {\n")));
+            for (int i = 0; i < arrayBufferArgs.size(); i++) {
+                resultBuilder.append(
+                        String.format(
+                                "const %s = JSON.parse(__rb_decode(__rb_buffers[%d]));\n",
+                                arrayBufferArgs.get(i).name(), i));
+            }
+        }
+
         String argumentPassing =
                 args.stream().map(JSScriptArgument::name).collect(Collectors.joining(","));
         if (addWasmBinary) {
@@ -561,6 +739,9 @@ public class JSScriptEngine {
         if (addWasmBinary) {
             resultBuilder.append("})});\n");
         }
+        if (hasArrayBufferArgs) {
+            resultBuilder.append("});\n");
+        }
         resultBuilder.append("})();\n");
 
         return resultBuilder.toString();
@@ -580,30 +761,4 @@ public class JSScriptEngine {
             return JavaScriptSandbox.isSupported();
         }
     }
-
-    /**
-     * Wrapper class required to convert an {@link java.lang.AutoCloseable} {@link
-     * JavaScriptIsolate} into a {@link Closeable} type.
-     */
-    private static class CloseableIsolateWrapper implements Closeable {
-        @NonNull final JavaScriptIsolate mIsolate;
-
-        CloseableIsolateWrapper(@NonNull JavaScriptIsolate isolate) {
-            Objects.requireNonNull(isolate);
-            mIsolate = isolate;
-        }
-
-        @Override
-        public void close() {
-            int traceCookie = Tracing.beginAsyncSection(Tracing.JSSCRIPTENGINE_CLOSE_ISOLATE);
-            LogUtil.d("Closing WebView isolate");
-            // Closing the isolate will also cause the thread in WebView to be terminated if
-            // still running.
-            // There is no need to verify if ISOLATE_TERMINATION is supported by WebView
-            // because there is no new API but just new capability on the WebView side for
-            // existing API.
-            mIsolate.close();
-            Tracing.endAsyncSection(Tracing.JSSCRIPTENGINE_CLOSE_ISOLATE, traceCookie);
-        }
-    }
 }
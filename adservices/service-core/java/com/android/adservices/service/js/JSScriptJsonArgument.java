@@ -16,6 +16,9 @@
 
 package com.android.adservices.service.js;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.Objects;
 
 /**
@@ -35,6 +38,22 @@ class JSScriptJsonArgument extends JSScriptArgument {
         return mValue;
     }
 
+    @Override
+    boolean isJsonCompatible() {
+        return true;
+    }
+
+    @Override
+    String jsonValue() {
+        // The value has been validated with the lenient org.json parser, that accepts JS-only
+        // syntax such as unquoted keys or single quoted strings rejected by JSON.parse.
+        try {
+            return new JSONObject(mValue).toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException("Invalid JSON argument " + name(), e);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -36,6 +36,12 @@ public class JSScriptNumericArgument<T extends Number> extends JSScriptArgument
         return mValue.toString();
     }
 
+    @Override
+    boolean isJsonCompatible() {
+        // NaN and Infinity have no JSON representation
+        return Double.isFinite(mValue.doubleValue());
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -59,6 +59,32 @@ public class JSScriptRecordArgument extends JSScriptArgument {
         return result.toString();
     }
 
+    @Override
+    String jsonValue() {
+        StringBuilder result = new StringBuilder();
+        result.append("{");
+        boolean firstArg = true;
+        for (JSScriptArgument field : mFields) {
+            result.append(
+                    String.format(
+                            "%s\n\"%s\": %s",
+                            firstArg ? "" : ",", field.name(), field.jsonValue()));
+            firstArg = false;
+        }
+        result.append("\n}");
+        return result.toString();
+    }
+
+    @Override
+    boolean isJsonCompatible() {
+        for (JSScriptArgument field : mFields) {
+            if (!field.isJsonCompatible()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
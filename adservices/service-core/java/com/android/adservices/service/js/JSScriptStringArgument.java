@@ -32,6 +32,19 @@ class JSScriptStringArgument extends JSScriptArgument {
         return String.format("\"%s\"", mValue);
     }
 
+    @Override
+    boolean isJsonCompatible() {
+        // The value is not escaped, JS and JSON only agree on strings without escape sequences
+        // and control characters.
+        for (int i = 0; i < mValue.length(); i++) {
+            char c = mValue.charAt(i);
+            if (c == '\\' || c < 0x20) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -26,9 +26,11 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 
 /**
@@ -37,6 +39,7 @@ import java.util.Objects;
 public class FilterMap {
 
     private Map<String, List<String>> mAttributionFilterMap;
+    @Nullable private Map<String, Set<String>> mAttributionFilterValueSets;
 
     FilterMap() {
         mAttributionFilterMap = new HashMap<>();
@@ -63,6 +66,31 @@ public class FilterMap {
         return mAttributionFilterMap;
     }
 
+    /**
+     * Returns whether the values of the given key include any of the given values. The values of
+     * each key are hashed on first use, so the filter map must not be modified afterwards.
+     */
+    public boolean containsAnyValue(String key, List<String> values) {
+        Map<String, Set<String>> valueSets = mAttributionFilterValueSets;
+        if (valueSets == null) {
+            valueSets = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : mAttributionFilterMap.entrySet()) {
+                valueSets.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+            mAttributionFilterValueSets = valueSets;
+        }
+        Set<String> valueSet = valueSets.get(key);
+        if (valueSet == null) {
+            return false;
+        }
+        for (String value : values) {
+            if (valueSet.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Serializes the object into a {@link JSONObject}.
      *
@@ -37,6 +37,7 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -72,6 +73,10 @@ public class Trigger {
     @Nullable private String mPlatformAdId;
     @Nullable private String mDebugAdId;
     private Uri mRegistrationOrigin;
+    @Nullable private List<EventTrigger> mParsedEventTriggers;
+    @Nullable private Optional<Map<String, BigInteger>> mParsedAdtechKeyMapping;
+    @Nullable private List<FilterMap> mParsedFilters;
+    @Nullable private List<FilterMap> mParsedNotFilters;
 
     @IntDef(value = {Status.PENDING, Status.IGNORED, Status.ATTRIBUTED, Status.MARKED_TO_DELETE})
     @Retention(RetentionPolicy.SOURCE)
@@ -435,11 +440,19 @@ public class Trigger {
 
     /**
      * Parses the json array under {@link #mEventTriggers} to form a list of {@link EventTrigger}s.
+     * The list is parsed once and cached.
      *
-     * @return list of {@link EventTrigger}s
+     * @return unmodifiable list of {@link EventTrigger}s
      * @throws JSONException if JSON parsing fails
      */
     public List<EventTrigger> parseEventTriggers() throws JSONException {
+        if (mParsedEventTriggers == null) {
+            mParsedEventTriggers = Collections.unmodifiableList(doParseEventTriggers());
+        }
+        return mParsedEventTriggers;
+    }
+
+    private List<EventTrigger> doParseEventTriggers() throws JSONException {
         JSONArray jsonArray = new JSONArray(this.mEventTriggers);
         List<EventTrigger> eventTriggers = new ArrayList<>();
 
@@ -483,15 +496,26 @@ public class Trigger {
 
     /**
      * Parses the json object under {@link #mAdtechKeyMapping} to create a mapping of adtechs to
-     * their bits.
+     * their bits. The mapping is parsed once and cached.
      *
-     * @return mapping of String to BigInteger
+     * @return unmodifiable mapping of String to BigInteger
      * @throws JSONException if JSON parsing fails
      * @throws NumberFormatException if BigInteger parsing fails
      */
     @Nullable
     public Map<String, BigInteger> parseAdtechKeyMapping()
             throws JSONException, NumberFormatException {
+        if (mParsedAdtechKeyMapping == null) {
+            mParsedAdtechKeyMapping =
+                    Optional.ofNullable(doParseAdtechKeyMapping())
+                            .map(Collections::unmodifiableMap);
+        }
+        return mParsedAdtechKeyMapping.orElse(null);
+    }
+
+    @Nullable
+    private Map<String, BigInteger> doParseAdtechKeyMapping()
+            throws JSONException, NumberFormatException {
         if (mAdtechKeyMapping == null) {
             return null;
         }
@@ -506,6 +530,42 @@ public class Trigger {
         return adtechBitMapping;
     }
 
+    /**
+     * Parses the top level filters under {@link #mFilters} into a filter set. The filter set is
+     * parsed once and cached.
+     *
+     * @return unmodifiable filter set, empty if the trigger has no filters
+     * @throws JSONException if JSON parsing fails
+     */
+    public List<FilterMap> parseFilters() throws JSONException {
+        if (mParsedFilters == null) {
+            mParsedFilters = parseFilterSet(mFilters);
+        }
+        return mParsedFilters;
+    }
+
+    /**
+     * Parses the top level not-filters under {@link #mNotFilters} into a filter set. The filter
+     * set is parsed once and cached.
+     *
+     * @return unmodifiable filter set, empty if the trigger has no not-filters
+     * @throws JSONException if JSON parsing fails
+     */
+    public List<FilterMap> parseNotFilters() throws JSONException {
+        if (mParsedNotFilters == null) {
+            mParsedNotFilters = parseFilterSet(mNotFilters);
+        }
+        return mParsedNotFilters;
+    }
+
+    private static List<FilterMap> parseFilterSet(@Nullable String filters)
+            throws JSONException {
+        if (filters == null || filters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Filter.deserializeFilterSet(new JSONArray(filters)));
+    }
+
     /**
      * Returns a {@code Uri} with scheme and (1) public suffix + 1 in case of a web destination, or
      * (2) the Android package name in case of an app destination. Returns null if extracting the
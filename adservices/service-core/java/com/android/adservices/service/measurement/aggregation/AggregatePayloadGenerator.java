@@ -62,8 +62,12 @@ public class AggregatePayloadGenerator {
         AggregatableAttributionTrigger attributionTrigger = aggregateAttributionTrigger.get();
 
         FilterMap sourceFilterMap = attributionSource.getFilterMap();
+        // The aggregatable source is cached by the source, so it is updated in a copy.
         TreeMap<String, BigInteger> aggregateSourceMap =
-                attributionSource.getAggregatableSource();
+                new TreeMap<>(attributionSource.getAggregatableSource());
+        Optional<BigInteger> keyMappingForAdtech =
+                Optional.ofNullable(trigger.parseAdtechKeyMapping())
+                        .map(map -> map.get(source.getEnrollmentId()));
         for (AggregateTriggerData triggerData : attributionTrigger.getTriggerData()) {
             Optional<List<FilterMap>> filterSet = triggerData.getFilterSet();
             Optional<List<FilterMap>> notFilterSet = triggerData.getNotFilterSet();
@@ -80,9 +84,6 @@ public class AggregatePayloadGenerator {
             }
 
             final BigInteger triggerDataKey;
-            Optional<BigInteger> keyMappingForAdtech =
-                    Optional.ofNullable(trigger.parseAdtechKeyMapping())
-                            .map(map -> map.get(source.getEnrollmentId()));
             if (source.getParentId() != null && keyMappingForAdtech.isPresent()) {
                 int keyOffset =
                         triggerData
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.service.measurement.attribution;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.Uri;
+import android.util.Pair;
+
+import com.android.adservices.data.measurement.DatastoreException;
+import com.android.adservices.data.measurement.IMeasurementDao;
+import com.android.adservices.service.measurement.Attribution;
+import com.android.adservices.service.measurement.PrivacyParams;
+import com.android.adservices.service.measurement.Source;
+import com.android.adservices.service.measurement.Trigger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Memoizes the datastore reads made while attributing a batch of triggers in a single transaction.
+ *
+ * <p>The candidate sources of all triggers of the batch are read together, and the attributions
+ * counted by the rate limits are read once per pair of publisher and destination sites for a time
+ * window covering every trigger of the batch. Attributing a trigger may update the sources of the
+ * following triggers, so the sources reported by {@link #updateSources(Collection)} are read again
+ * by Id, and dropped from the memo once they are no longer active.
+ *
+ * <p>A memo must only be used in the transaction it was created in.
+ */
+final class AttributionBatchMemo {
+    private final IMeasurementDao mMeasurementDao;
+    private final List<Trigger> mTriggers;
+    private final long mMinTriggerTime;
+    private final long mMaxTriggerTime;
+    private final Map<Pair<String, String>, List<Pair<String, Long>>> mAttributionsBySites =
+            new HashMap<>();
+    private final Map<String, List<Source>> mMatchingSources = new HashMap<>();
+    private final Map<String, Optional<Source>> mDelayedSources = new HashMap<>();
+    private final Map<String, Set<String>> mTriggerIdsBySourceId = new HashMap<>();
+    private final Set<String> mUpdatedSourceIds = new HashSet<>();
+    private boolean mSourcesLoaded;
+
+    /**
+     * @param measurementDao the datastore of the transaction the batch is attributed in
+     * @param triggers the pending triggers of the batch
+     */
+    AttributionBatchMemo(@NonNull IMeasurementDao measurementDao, @NonNull List<Trigger> triggers) {
+        Objects.requireNonNull(measurementDao);
+        Objects.requireNonNull(triggers);
+
+        mMeasurementDao = measurementDao;
+        mTriggers = new ArrayList<>(triggers);
+        long minTriggerTime = Long.MAX_VALUE;
+        long maxTriggerTime = Long.MIN_VALUE;
+        for (Trigger trigger : triggers) {
+            minTriggerTime = Math.min(minTriggerTime, trigger.getTriggerTime());
+            maxTriggerTime = Math.max(maxTriggerTime, trigger.getTriggerTime());
+        }
+        mMinTriggerTime = minTriggerTime;
+        mMaxTriggerTime = maxTriggerTime;
+    }
+
+    /** See {@link IMeasurementDao#getMatchingActiveSources(Trigger)}. */
+    List<Source> getMatchingActiveSources(@NonNull Trigger trigger) throws DatastoreException {
+        loadSourcesIfNeeded();
+        List<Source> sources = mMatchingSources.remove(trigger.getId());
+        return sources != null ? sources : mMeasurementDao.getMatchingActiveSources(trigger);
+    }
+
+    /** See {@link IMeasurementDao#getNearestDelayedMatchingActiveSource(Trigger)}. */
+    Optional<Source> getNearestDelayedMatchingActiveSource(@NonNull Trigger trigger)
+            throws DatastoreException {
+        loadSourcesIfNeeded();
+        Optional<Source> source = mDelayedSources.remove(trigger.getId());
+        return source != null
+                ? source
+                : mMeasurementDao.getNearestDelayedMatchingActiveSource(trigger);
+    }
+
+    /**
+     * Records that the given sources may be updated in the transaction of the memo. They are read
+     * again before the memoized sources are next returned.
+     */
+    void updateSources(@NonNull Collection<String> sourceIds) {
+        for (String sourceId : sourceIds) {
+            if (mTriggerIdsBySourceId.containsKey(sourceId)) {
+                mUpdatedSourceIds.add(sourceId);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of attributions of the given enrollment with matching publisher and
+     * destination sites in the rate limit window ending at {@code triggerTime}.
+     */
+    long getAttributionsPerRateLimitWindow(
+            @NonNull Uri sourceSite,
+            @NonNull Uri destinationSite,
+            String enrollmentId,
+            long triggerTime)
+            throws DatastoreException {
+        long count = 0;
+        for (Pair<String, Long> attribution :
+                getAttributions(sourceSite, destinationSite, triggerTime)) {
+            if (Objects.equals(enrollmentId, attribution.first)
+                    && isInRateLimitWindow(attribution.second, triggerTime)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of distinct enrollments, other than {@code excludedEnrollmentId}, of the
+     * attributions with matching publisher and destination sites in the rate limit window ending
+     * at {@code triggerTime}.
+     */
+    int countDistinctEnrollmentsInAttribution(
+            @NonNull Uri sourceSite,
+            @NonNull Uri destinationSite,
+            String excludedEnrollmentId,
+            long triggerTime)
+            throws DatastoreException {
+        Set<String> enrollmentIds = new HashSet<>();
+        for (Pair<String, Long> attribution :
+                getAttributions(sourceSite, destinationSite, triggerTime)) {
+            if (attribution.first != null
+                    && !attribution.first.equals(excludedEnrollmentId)
+                    && isInRateLimitWindow(attribution.second, triggerTime)) {
+                enrollmentIds.add(attribution.first);
+            }
+        }
+        return enrollmentIds.size();
+    }
+
+    /** Records an attribution inserted in the transaction of the memo. */
+    void addAttribution(@NonNull Attribution attribution) {
+        List<Pair<String, Long>> attributions =
+                mAttributionsBySites.get(
+                        Pair.create(attribution.getSourceSite(), attribution.getDestinationSite()));
+        if (attributions != null) {
+            attributions.add(
+                    Pair.create(attribution.getEnrollmentId(), attribution.getTriggerTime()));
+        }
+    }
+
+    private void loadSourcesIfNeeded() throws DatastoreException {
+        if (!mSourcesLoaded) {
+            mSourcesLoaded = true;
+            for (Map.Entry<String, Pair<List<Source>, Optional<Source>>> triggerSources :
+                    mMeasurementDao
+                            .getMatchingAndDelayedActiveSourcesForTriggers(mTriggers)
+                            .entrySet()) {
+                String triggerId = triggerSources.getKey();
+                mMatchingSources.put(triggerId, triggerSources.getValue().first);
+                mDelayedSources.put(triggerId, triggerSources.getValue().second);
+                for (Source source : triggerSources.getValue().first) {
+                    indexSource(source.getId(), triggerId);
+                }
+                triggerSources
+                        .getValue()
+                        .second
+                        .ifPresent(source -> indexSource(source.getId(), triggerId));
+            }
+            return;
+        }
+        for (String sourceId : mUpdatedSourceIds) {
+            refreshSource(mMeasurementDao.getSource(sourceId));
+        }
+        mUpdatedSourceIds.clear();
+    }
+
+    private void indexSource(String sourceId, String triggerId) {
+        mTriggerIdsBySourceId.computeIfAbsent(sourceId, id -> new HashSet<>()).add(triggerId);
+    }
+
+    /**
+     * Replaces the memoized copies of the given source, or drops them when the source is no longer
+     * active. A dropped delayed source falls back to the datastore, as the next nearest one is not
+     * memoized.
+     */
+    private void refreshSource(Source updatedSource) {
+        boolean isActive = updatedSource.getStatus() == Source.Status.ACTIVE;
+        for (String triggerId : mTriggerIdsBySourceId.get(updatedSource.getId())) {
+            List<Source> sources = mMatchingSources.get(triggerId);
+            if (sources != null) {
+                if (isActive) {
+                    sources.replaceAll(
+                            source ->
+                                    source.getId().equals(updatedSource.getId())
+                                            ? updatedSource
+                                            : source);
+                } else {
+                    sources.removeIf(source -> source.getId().equals(updatedSource.getId()));
+                }
+            }
+            Optional<Source> delayedSource = mDelayedSources.get(triggerId);
+            if (delayedSource != null
+                    && delayedSource.isPresent()
+                    && delayedSource.get().getId().equals(updatedSource.getId())) {
+                if (isActive) {
+                    mDelayedSources.put(triggerId, Optional.of(updatedSource));
+                } else {
+                    mDelayedSources.remove(triggerId);
+                }
+            }
+        }
+    }
+
+    private List<Pair<String, Long>> getAttributions(
+            Uri sourceSite, Uri destinationSite, long triggerTime) throws DatastoreException {
+        long windowStartTime = mMinTriggerTime - PrivacyParams.RATE_LIMIT_WINDOW_MILLISECONDS;
+        if (triggerTime < mMinTriggerTime || triggerTime > mMaxTriggerTime) {
+            // Not a trigger of the batch, so the window is not covered by the memo
+            return mMeasurementDao.getEnrollmentIdsAndTimesPerPublisherXDestinationInAttribution(
+                    sourceSite,
+                    destinationSite,
+                    triggerTime - PrivacyParams.RATE_LIMIT_WINDOW_MILLISECONDS,
+                    triggerTime);
+        }
+        Pair<String, String> sites = Pair.create(sourceSite.toString(), destinationSite.toString());
+        List<Pair<String, Long>> attributions = mAttributionsBySites.get(sites);
+        if (attributions == null) {
+            attributions =
+                    new ArrayList<>(
+                            mMeasurementDao
+                                    .getEnrollmentIdsAndTimesPerPublisherXDestinationInAttribution(
+                                            sourceSite,
+                                            destinationSite,
+                                            windowStartTime,
+                                            mMaxTriggerTime));
+            mAttributionsBySites.put(sites, attributions);
+        }
+        return attributions;
+    }
+
+    private static boolean isInRateLimitWindow(long attributionTime, long triggerTime) {
+        return attributionTime > triggerTime - PrivacyParams.RATE_LIMIT_WINDOW_MILLISECONDS
+                && attributionTime <= triggerTime;
+    }
+}
@@ -22,6 +22,7 @@ import static com.android.adservices.service.stats.AdServicesStatsLog.AD_SERVICE
 import static com.android.adservices.service.stats.AdServicesStatsLog.AD_SERVICES_MEASUREMENT_DELAYED_SOURCE_REGISTRATION;
 
 import android.annotation.NonNull;
+import android.annotation.Nullable;
 import android.net.Uri;
 import android.util.Pair;
 
@@ -134,6 +135,10 @@ class AttributionJobHandler {
         }
         List<String> pendingTriggers = pendingTriggersOpt.get();
 
+        if (mFlags.getMeasurementEnableBatchedAttribution()) {
+            return performPendingAttributionsInBatches(pendingTriggers);
+        }
+
         for (int i = 0; i < pendingTriggers.size()
                 && i < SystemHealthParams.MAX_ATTRIBUTIONS_PER_INVOCATION; i++) {
             AttributionStatus attributionStatus = new AttributionStatus();
@@ -150,6 +155,90 @@ class AttributionJobHandler {
         return SystemHealthParams.MAX_ATTRIBUTIONS_PER_INVOCATION >= pendingTriggers.size();
     }
 
+    /**
+     * Perform attribution for {@code pendingTriggers} in order, batching the attribution of
+     * consecutive triggers into a single transaction.
+     *
+     * <p>When the transaction of a batch fails, its triggers are attributed again one per
+     * transaction, so that a single failing trigger doesn't hold back the others.
+     *
+     * @return false if there are datastore failures or pending {@link Trigger} left, true otherwise
+     */
+    private boolean performPendingAttributionsInBatches(List<String> pendingTriggers) {
+        List<String> triggerIds =
+                pendingTriggers.subList(
+                        0,
+                        Math.min(
+                                pendingTriggers.size(),
+                                SystemHealthParams.MAX_ATTRIBUTIONS_PER_INVOCATION));
+        int batchSize = Math.max(1, mFlags.getMeasurementAttributionTriggersPerTransaction());
+        for (int i = 0; i < triggerIds.size(); i += batchSize) {
+            List<String> batch = triggerIds.subList(i, Math.min(triggerIds.size(), i + batchSize));
+            if (performAttributions(batch)) {
+                continue;
+            }
+            if (batch.size() == 1) {
+                // Failure during trigger attribution
+                // Reschedule for retry
+                return false;
+            }
+            for (String triggerId : batch) {
+                AttributionStatus attributionStatus = new AttributionStatus();
+                boolean success = performAttribution(triggerId, attributionStatus);
+                logAttributionStats(attributionStatus);
+                if (!success) {
+                    // Failure during trigger attribution
+                    // Reschedule for retry
+                    return false;
+                }
+            }
+        }
+
+        // Reschedule if there are unprocessed pending triggers.
+        return SystemHealthParams.MAX_ATTRIBUTIONS_PER_INVOCATION >= pendingTriggers.size();
+    }
+
+    /**
+     * Perform attribution for each of {@code triggerIds} in a single transaction.
+     *
+     * <p>The triggers are loaded together, and their candidate sources and rate limit counts are
+     * read through an {@link AttributionBatchMemo} shared by the whole batch.
+     *
+     * @param triggerIds datastore ids of the {@link Trigger}s
+     * @return success
+     */
+    private boolean performAttributions(List<String> triggerIds) {
+        List<AttributionStatus> attributionStatuses = new ArrayList<>(triggerIds.size());
+        boolean success =
+                mDatastoreManager.runInTransaction(
+                        measurementDao -> {
+                            List<Trigger> triggers = measurementDao.getTriggers(triggerIds);
+                            AttributionBatchMemo memo =
+                                    new AttributionBatchMemo(
+                                            measurementDao,
+                                            triggers.stream()
+                                                    .filter(
+                                                            trigger ->
+                                                                    trigger.getStatus()
+                                                                            == Trigger.Status
+                                                                                    .PENDING)
+                                                    .collect(Collectors.toList()));
+                            for (Trigger trigger : triggers) {
+                                AttributionStatus attributionStatus = new AttributionStatus();
+                                attributionStatuses.add(attributionStatus);
+                                performAttribution(
+                                        trigger, measurementDao, attributionStatus, memo);
+                            }
+                        });
+        if (success) {
+            attributionStatuses.forEach(this::logAttributionStats);
+        } else if (triggerIds.size() == 1 && !attributionStatuses.isEmpty()) {
+            // Batches of several triggers are rolled back and attributed again one by one
+            logAttributionStats(attributionStatuses.get(0));
+        }
+        return success;
+    }
+
     /**
      * Perform attribution for {@code triggerId}.
      *
@@ -158,97 +247,116 @@ class AttributionJobHandler {
      */
     private boolean performAttribution(String triggerId, AttributionStatus attributionStatus) {
         return mDatastoreManager.runInTransaction(
-                measurementDao -> {
-                    Trigger trigger = measurementDao.getTrigger(triggerId);
-
-                    if (trigger.getStatus() != Trigger.Status.PENDING) {
-                        attributionStatus.setAttributionResult(
-                                AttributionStatus.AttributionResult.FAILURE);
-                        attributionStatus.setFailureTypeFromTriggerStatus(trigger.getStatus());
-                        return;
-                    }
-
-                    Optional<Pair<Source, List<Source>>> sourceOpt =
-                            selectSourceToAttribute(trigger, measurementDao, attributionStatus);
-
-                    // Log competing source that did not win attribution because of delay
-                    Optional<Source> matchingDelayedSource =
-                            measurementDao.getNearestDelayedMatchingActiveSource(trigger);
-                    if (matchingDelayedSource.isPresent()) {
-                        logDelayedSourceRegistrationStats(matchingDelayedSource.get(), trigger);
-                    }
-
-                    if (sourceOpt.isEmpty()) {
-                        mDebugReportApi.scheduleTriggerNoMatchingSourceDebugReport(
-                                trigger, measurementDao, Type.TRIGGER_NO_MATCHING_SOURCE);
-                        attributionStatus.setAttributionResult(
-                                AttributionStatus.AttributionResult.FAILURE);
-                        attributionStatus.setFailureType(
-                                AttributionStatus.FailureType.NO_MATCHING_SOURCE);
-                        ignoreTrigger(trigger, measurementDao);
-                        return;
-                    }
-
-                    Source source = sourceOpt.get().first;
-                    List<Source> remainingMatchingSources = sourceOpt.get().second;
-
-                    attributionStatus.setSourceType(source.getSourceType());
-                    attributionStatus.setSurfaceTypeFromSourceAndTrigger(source, trigger);
-
-                    if (source.isInstallAttributed()) {
-                        attributionStatus.setInstallAttribution(true);
-                    }
-
-                    if (!doTopLevelFiltersMatch(source, trigger, measurementDao)) {
-                        attributionStatus.setAttributionResult(
-                                AttributionStatus.AttributionResult.FAILURE);
-                        attributionStatus.setFailureType(
-                                AttributionStatus.FailureType.TOP_LEVEL_FILTER_MATCH_FAILURE);
-                        ignoreTrigger(trigger, measurementDao);
-                        return;
-                    }
-
-                    if (shouldAttributionBeBlockedByRateLimits(source, trigger, measurementDao)) {
-                        attributionStatus.setAttributionResult(
-                                AttributionStatus.AttributionResult.FAILURE);
-                        attributionStatus.setFailureType(
-                                AttributionStatus.FailureType.RATE_LIMIT_EXCEEDED);
-                        ignoreTrigger(trigger, measurementDao);
-                        return;
-                    }
-
-                    TriggeringStatus aggregateTriggeringStatus =
-                            maybeGenerateAggregateReport(source, trigger, measurementDao);
-
-                    TriggeringStatus eventTriggeringStatus =
-                            maybeGenerateEventReport(source, trigger, measurementDao);
-
-                    if (eventTriggeringStatus == TriggeringStatus.ATTRIBUTED
-                            || aggregateTriggeringStatus == TriggeringStatus.ATTRIBUTED) {
-                        ignoreCompetingSources(
+                measurementDao ->
+                        performAttribution(
+                                measurementDao.getTrigger(triggerId),
                                 measurementDao,
-                                remainingMatchingSources,
-                                trigger.getEnrollmentId());
-                        attributeTriggerAndInsertAttribution(trigger, source, measurementDao);
-                        long endTime = System.currentTimeMillis();
-                        attributionStatus.setAttributionDelay(endTime - trigger.getTriggerTime());
-                        attributionStatus.setAttributionResult(
-                                AttributionStatus.AttributionResult.SUCCESS);
-                    } else {
-                        attributionStatus.setAttributionResult(
-                                AttributionStatus.AttributionResult.FAILURE);
-                        attributionStatus.setFailureType(
-                                AttributionStatus.FailureType.NO_REPORTS_GENERATED);
-                        ignoreTrigger(trigger, measurementDao);
-                    }
-                });
+                                attributionStatus,
+                                /* memo= */ null));
+    }
+
+    /**
+     * Perform attribution for {@code trigger} in the transaction of {@code measurementDao}.
+     *
+     * @param memo reads shared with the other triggers of the transaction, or {@code null} to
+     *     read everything from {@code measurementDao}
+     */
+    private void performAttribution(
+            Trigger trigger,
+            IMeasurementDao measurementDao,
+            AttributionStatus attributionStatus,
+            @Nullable AttributionBatchMemo memo)
+            throws DatastoreException {
+        if (trigger.getStatus() != Trigger.Status.PENDING) {
+            attributionStatus.setAttributionResult(AttributionStatus.AttributionResult.FAILURE);
+            attributionStatus.setFailureTypeFromTriggerStatus(trigger.getStatus());
+            return;
+        }
+
+        Optional<Pair<Source, List<Source>>> sourceOpt =
+                selectSourceToAttribute(trigger, measurementDao, attributionStatus, memo);
+
+        // Log competing source that did not win attribution because of delay
+        Optional<Source> matchingDelayedSource =
+                memo == null
+                        ? measurementDao.getNearestDelayedMatchingActiveSource(trigger)
+                        : memo.getNearestDelayedMatchingActiveSource(trigger);
+        if (matchingDelayedSource.isPresent()) {
+            logDelayedSourceRegistrationStats(matchingDelayedSource.get(), trigger);
+        }
+
+        if (sourceOpt.isEmpty()) {
+            mDebugReportApi.scheduleTriggerNoMatchingSourceDebugReport(
+                    trigger, measurementDao, Type.TRIGGER_NO_MATCHING_SOURCE);
+            attributionStatus.setAttributionResult(AttributionStatus.AttributionResult.FAILURE);
+            attributionStatus.setFailureType(AttributionStatus.FailureType.NO_MATCHING_SOURCE);
+            ignoreTrigger(trigger, measurementDao);
+            return;
+        }
+
+        Source source = sourceOpt.get().first;
+        List<Source> remainingMatchingSources = sourceOpt.get().second;
+        if (memo != null) {
+            // The selected and competing sources may be updated from here on
+            List<String> updatedSourceIds = new ArrayList<>();
+            updatedSourceIds.add(getOriginalSourceId(source));
+            for (Source remainingMatchingSource : remainingMatchingSources) {
+                updatedSourceIds.add(getOriginalSourceId(remainingMatchingSource));
+            }
+            memo.updateSources(updatedSourceIds);
+        }
+
+        attributionStatus.setSourceType(source.getSourceType());
+        attributionStatus.setSurfaceTypeFromSourceAndTrigger(source, trigger);
+
+        if (source.isInstallAttributed()) {
+            attributionStatus.setInstallAttribution(true);
+        }
+
+        if (!doTopLevelFiltersMatch(source, trigger, measurementDao)) {
+            attributionStatus.setAttributionResult(AttributionStatus.AttributionResult.FAILURE);
+            attributionStatus.setFailureType(
+                    AttributionStatus.FailureType.TOP_LEVEL_FILTER_MATCH_FAILURE);
+            ignoreTrigger(trigger, measurementDao);
+            return;
+        }
+
+        if (shouldAttributionBeBlockedByRateLimits(source, trigger, measurementDao, memo)) {
+            attributionStatus.setAttributionResult(AttributionStatus.AttributionResult.FAILURE);
+            attributionStatus.setFailureType(AttributionStatus.FailureType.RATE_LIMIT_EXCEEDED);
+            ignoreTrigger(trigger, measurementDao);
+            return;
+        }
+
+        TriggeringStatus aggregateTriggeringStatus =
+                maybeGenerateAggregateReport(source, trigger, measurementDao);
+
+        TriggeringStatus eventTriggeringStatus =
+                maybeGenerateEventReport(source, trigger, measurementDao);
+
+        if (eventTriggeringStatus == TriggeringStatus.ATTRIBUTED
+                || aggregateTriggeringStatus == TriggeringStatus.ATTRIBUTED) {
+            ignoreCompetingSources(
+                    measurementDao, remainingMatchingSources, trigger.getEnrollmentId());
+            attributeTriggerAndInsertAttribution(trigger, source, measurementDao, memo);
+            long endTime = System.currentTimeMillis();
+            attributionStatus.setAttributionDelay(endTime - trigger.getTriggerTime());
+            attributionStatus.setAttributionResult(AttributionStatus.AttributionResult.SUCCESS);
+        } else {
+            attributionStatus.setAttributionResult(AttributionStatus.AttributionResult.FAILURE);
+            attributionStatus.setFailureType(AttributionStatus.FailureType.NO_REPORTS_GENERATED);
+            ignoreTrigger(trigger, measurementDao);
+        }
     }
 
     private boolean shouldAttributionBeBlockedByRateLimits(
-            Source source, Trigger trigger, IMeasurementDao measurementDao)
+            Source source,
+            Trigger trigger,
+            IMeasurementDao measurementDao,
+            @Nullable AttributionBatchMemo memo)
             throws DatastoreException {
-        if (!hasAttributionQuota(source, trigger, measurementDao)
-                || !isEnrollmentWithinPrivacyBounds(source, trigger, measurementDao)) {
+        if (!hasAttributionQuota(source, trigger, measurementDao, memo)
+                || !isEnrollmentWithinPrivacyBounds(source, trigger, measurementDao, memo)) {
             LogUtil.d("Attribution blocked by rate limits. Source ID: %s ; Trigger ID: %s ",
                     source.getId(), trigger.getId());
             return true;
@@ -391,11 +499,17 @@ class AttributionJobHandler {
     }
 
     private Optional<Pair<Source, List<Source>>> selectSourceToAttribute(
-            Trigger trigger, IMeasurementDao measurementDao, AttributionStatus attributionStatus)
+            Trigger trigger,
+            IMeasurementDao measurementDao,
+            AttributionStatus attributionStatus,
+            @Nullable AttributionBatchMemo memo)
             throws DatastoreException {
         List<Source> matchingSources;
         if (!mFlags.getMeasurementEnableXNA() || trigger.getAttributionConfig() == null) {
-            matchingSources = measurementDao.getMatchingActiveSources(trigger);
+            matchingSources =
+                    memo == null
+                            ? measurementDao.getMatchingActiveSources(trigger)
+                            : memo.getMatchingActiveSources(trigger);
         } else {
             // XNA attribution is possible
             Set<String> enrollmentIds = extractEnrollmentIds(trigger.getAttributionConfig());
@@ -485,6 +599,11 @@ class AttributionJobHandler {
         }
     }
 
+    private static String getOriginalSourceId(Source source) {
+        // Derived sources (XNA) are not stored, their parent may be updated instead
+        return source.getParentId() == null ? source.getId() : source.getParentId();
+    }
+
     private void ignoreCompetingSources(
             IMeasurementDao measurementDao,
             List<Source> remainingMatchingSources,
@@ -708,19 +827,30 @@ class AttributionJobHandler {
                 Collections.singletonList(trigger.getId()), Trigger.Status.IGNORED);
     }
 
-    private static void attributeTriggerAndInsertAttribution(Trigger trigger, Source source,
-            IMeasurementDao measurementDao)
+    private static void attributeTriggerAndInsertAttribution(
+            Trigger trigger,
+            Source source,
+            IMeasurementDao measurementDao,
+            @Nullable AttributionBatchMemo memo)
             throws DatastoreException {
         trigger.setStatus(Trigger.Status.ATTRIBUTED);
         measurementDao.updateTriggerStatus(
                 Collections.singletonList(trigger.getId()), Trigger.Status.ATTRIBUTED);
-        measurementDao.insertAttribution(createAttribution(source, trigger));
+        Attribution attribution = createAttribution(source, trigger);
+        measurementDao.insertAttribution(attribution);
+        if (memo != null) {
+            memo.addAttribution(attribution);
+        }
     }
 
     private boolean hasAttributionQuota(
-            Source source, Trigger trigger, IMeasurementDao measurementDao)
+            Source source,
+            Trigger trigger,
+            IMeasurementDao measurementDao,
+            @Nullable AttributionBatchMemo memo)
             throws DatastoreException {
-        long attributionCount = measurementDao.getAttributionsPerRateLimitWindow(source, trigger);
+        long attributionCount =
+                getAttributionsPerRateLimitWindow(source, trigger, measurementDao, memo);
         if (attributionCount >= mFlags.getMeasurementMaxAttributionPerRateLimitWindow()) {
             mDebugReportApi.scheduleTriggerDebugReport(
                     source,
@@ -732,6 +862,31 @@ class AttributionJobHandler {
         return attributionCount < mFlags.getMeasurementMaxAttributionPerRateLimitWindow();
     }
 
+    private static long getAttributionsPerRateLimitWindow(
+            Source source,
+            Trigger trigger,
+            IMeasurementDao measurementDao,
+            @Nullable AttributionBatchMemo memo)
+            throws DatastoreException {
+        if (memo == null) {
+            return measurementDao.getAttributionsPerRateLimitWindow(source, trigger);
+        }
+        Optional<Uri> publisherTopPrivateDomain =
+                getTopPrivateDomain(source.getPublisher(), source.getPublisherType());
+        Optional<Uri> destinationTopPrivateDomain =
+                getTopPrivateDomain(
+                        trigger.getAttributionDestination(), trigger.getDestinationType());
+        if (!publisherTopPrivateDomain.isPresent() || !destinationTopPrivateDomain.isPresent()) {
+            // Let the datastore report the failure
+            return measurementDao.getAttributionsPerRateLimitWindow(source, trigger);
+        }
+        return memo.getAttributionsPerRateLimitWindow(
+                publisherTopPrivateDomain.get(),
+                destinationTopPrivateDomain.get(),
+                trigger.getEnrollmentId(),
+                trigger.getTriggerTime());
+    }
+
     private boolean isWithinReportLimit(
             Source source, int existingReportCount, @EventSurfaceType int destinationType) {
         return mEventReportWindowCalcDelegate.getMaxReportCount(
@@ -762,8 +917,8 @@ class AttributionJobHandler {
             throws DatastoreException {
         try {
             FilterMap sourceFilters = source.getFilterData();
-            List<FilterMap> triggerFilterSet = extractFilterSet(trigger.getFilters());
-            List<FilterMap> triggerNotFilterSet = extractFilterSet(trigger.getNotFilters());
+            List<FilterMap> triggerFilterSet = trigger.parseFilters();
+            List<FilterMap> triggerNotFilterSet = trigger.parseNotFilters();
             boolean isFilterMatch =
                     Filter.isFilterMatch(sourceFilters, triggerFilterSet, true)
                             && Filter.isFilterMatch(sourceFilters, triggerNotFilterSet, false);
@@ -834,20 +989,6 @@ class AttributionJobHandler {
         return true;
     }
 
-    private static List<FilterMap> extractFilterSet(String str) throws JSONException {
-        String json = (str == null || str.isEmpty()) ? "[]" : str;
-        List<FilterMap> filterSet = new ArrayList<>();
-        JSONArray filters = new JSONArray(json);
-        for (int i = 0; i < filters.length(); i++) {
-            FilterMap filterMap =
-                    new FilterMap.Builder()
-                            .buildFilterData(filters.getJSONObject(i))
-                            .build();
-            filterSet.add(filterMap);
-        }
-        return filterSet;
-    }
-
     private OptionalInt validateAndGetUpdatedAggregateContributions(
             List<AggregateHistogramContribution> contributions,
             Source source,
@@ -887,19 +1028,29 @@ class AttributionJobHandler {
     }
 
     private boolean isEnrollmentWithinPrivacyBounds(
-            Source source, Trigger trigger, IMeasurementDao measurementDao)
+            Source source,
+            Trigger trigger,
+            IMeasurementDao measurementDao,
+            @Nullable AttributionBatchMemo memo)
             throws DatastoreException {
         Optional<Pair<Uri, Uri>> publisherAndDestination =
                 getPublisherAndDestinationTopPrivateDomains(source, trigger);
         if (publisherAndDestination.isPresent()) {
             Integer count =
-                    measurementDao.countDistinctEnrollmentsPerPublisherXDestinationInAttribution(
-                            publisherAndDestination.get().first,
-                            publisherAndDestination.get().second,
-                            trigger.getEnrollmentId(),
-                            trigger.getTriggerTime()
-                                    - PrivacyParams.RATE_LIMIT_WINDOW_MILLISECONDS,
-                            trigger.getTriggerTime());
+                    memo == null
+                            ? measurementDao
+                                    .countDistinctEnrollmentsPerPublisherXDestinationInAttribution(
+                                            publisherAndDestination.get().first,
+                                            publisherAndDestination.get().second,
+                                            trigger.getEnrollmentId(),
+                                            trigger.getTriggerTime()
+                                                    - PrivacyParams.RATE_LIMIT_WINDOW_MILLISECONDS,
+                                            trigger.getTriggerTime())
+                            : memo.countDistinctEnrollmentsInAttribution(
+                                    publisherAndDestination.get().first,
+                                    publisherAndDestination.get().second,
+                                    trigger.getEnrollmentId(),
+                                    trigger.getTriggerTime());
             if (count >= mFlags.getMeasurementMaxDistinctEnrollmentsInAttribution()) {
                 mDebugReportApi.scheduleTriggerDebugReport(
                         source,
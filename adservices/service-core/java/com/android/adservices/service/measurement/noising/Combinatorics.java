@@ -16,6 +16,8 @@
 
 package com.android.adservices.service.measurement.noising;
 
+import android.util.LruCache;
+
 import com.android.adservices.LogUtil;
 import com.android.adservices.service.measurement.PrivacyParams;
 
@@ -23,15 +25,25 @@ import com.google.common.math.DoubleMath;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 /**
  * Combinatorics utilities used for randomization.
  */
 public class Combinatorics {
+    /** Maximum number of entries of the cached number of states tables. */
+    private static final int NUM_STATES_CACHE_MAX_TABLE_ENTRIES = 1 << 18;
+
+    // Sources with the same trigger specs share their state space, so the tables are cached
+    // across sources, bounded by their total number of entries.
+    private static final LruCache<StateSpace, NumStatesTable> sNumStatesCache =
+            new LruCache<StateSpace, NumStatesTable>(NUM_STATES_CACHE_MAX_TABLE_ENTRIES) {
+                @Override
+                protected int sizeOf(StateSpace key, NumStatesTable value) {
+                    return value.size();
+                }
+            };
 
     /**
      * Computes the binomial coefficient aka {@code n} choose {@code k}.
@@ -205,54 +217,20 @@ public class Combinatorics {
      */
     private static int getNumStatesRecursive(
             int totalCap, int[] perTypeNumWindowList, int[] perTypeCapList) {
-        int index = perTypeNumWindowList.length - 1;
-        return getNumStatesRecursive(
-                totalCap,
-                index,
-                perTypeNumWindowList[index],
-                perTypeCapList[index],
-                perTypeNumWindowList,
-                perTypeCapList,
-                new HashMap<>());
+        return getNumStatesTable(totalCap, perTypeNumWindowList, perTypeCapList).getNumStates();
     }
 
-    private static int getNumStatesRecursive(
-            int totalCap,
-            int index,
-            int winVal,
-            int capVal,
-            int[] perTypeNumWindowList,
-            int[] perTypeCapList,
-            Map<List<Integer>, Integer> dp) {
-        List<Integer> key = List.of(totalCap, index, winVal, capVal);
-        if (!dp.containsKey(key)) {
-            if (winVal == 0 && index == 0) {
-                dp.put(key, 1);
-            } else if (winVal == 0) {
-                dp.put(key, getNumStatesRecursive(
-                        totalCap,
-                        index - 1,
-                        perTypeNumWindowList[index - 1],
-                        perTypeCapList[index - 1],
-                        perTypeNumWindowList,
-                        perTypeCapList,
-                        dp));
-            } else {
-                int result = 0;
-                for (int i = 0; i <= Math.min(totalCap, capVal); i++) {
-                    result = Math.addExact(result, getNumStatesRecursive(
-                            totalCap - i,
-                            index,
-                            winVal - 1,
-                            capVal - i,
-                            perTypeNumWindowList,
-                            perTypeCapList,
-                            dp));
-                }
-                dp.put(key, result);
+    private static NumStatesTable getNumStatesTable(
+            int totalCap, int[] perTypeNumWindowList, int[] perTypeCapList) {
+        StateSpace stateSpace = new StateSpace(totalCap, perTypeNumWindowList, perTypeCapList);
+        NumStatesTable table = sNumStatesCache.get(stateSpace);
+        if (table == null) {
+            table = new NumStatesTable(totalCap, perTypeNumWindowList, perTypeCapList);
+            if (table.size() <= NUM_STATES_CACHE_MAX_TABLE_ENTRIES) {
+                sNumStatesCache.put(stateSpace, table);
             }
         }
-        return dp.get(key);
+        return table;
     }
 
     /**
@@ -336,25 +314,23 @@ public class Combinatorics {
      * @param totalCap total_cap
      * @param perTypeNumWindowList per type number of window list
      * @param perTypeCapList per type cap list
+     * @param rank rank of the report set
      * @return a report set based on the input rank
      */
     public static List<AtomReportState> getReportSetBasedOnRank(
-            int totalCap,
-            int[] perTypeNumWindowList,
-            int[] perTypeCapList,
-            int rank,
-            Map<List<Integer>, Integer> dp) {
+            int totalCap, int[] perTypeNumWindowList, int[] perTypeCapList, int rank) {
+        NumStatesTable table = getNumStatesTable(totalCap, perTypeNumWindowList, perTypeCapList);
         int triggerTypeIndex = perTypeNumWindowList.length - 1;
 
         return getReportSetBasedOnRankRecursive(
-                totalCap,
+                table.getTotalCap(),
                 triggerTypeIndex,
                 perTypeNumWindowList[triggerTypeIndex],
                 perTypeCapList[triggerTypeIndex],
                 rank,
                 perTypeNumWindowList,
                 perTypeCapList,
-                dp);
+                table);
     }
 
     private static List<AtomReportState> getReportSetBasedOnRankRecursive(
@@ -365,7 +341,7 @@ public class Combinatorics {
             int rank,
             int[] perTypeNumWindowList,
             int[] perTypeCapList,
-            Map<List<Integer>, Integer> numStatesLookupTable) {
+            NumStatesTable numStatesLookupTable) {
 
         if (winVal == 0 && triggerTypeIndex == 0) {
             return new ArrayList<>();
@@ -382,14 +358,8 @@ public class Combinatorics {
         }
         for (int i = 0; i <= Math.min(totalCap, capVal); i++) {
             int currentNumStates =
-                    getNumStatesRecursive(
-                            totalCap - i,
-                            triggerTypeIndex,
-                            winVal - 1,
-                            capVal - i,
-                            perTypeNumWindowList,
-                            perTypeCapList,
-                            numStatesLookupTable);
+                    numStatesLookupTable.getNumStates(
+                            totalCap - i, triggerTypeIndex, winVal - 1, capVal - i);
             if (currentNumStates > rank) {
                 // The triggers to be appended.
                 List<AtomReportState> toAppend = new ArrayList<>();
@@ -416,6 +386,114 @@ public class Combinatorics {
         return new ArrayList<>();
     }
 
+    /** Report specification whose states are counted by a {@link NumStatesTable}. */
+    private static final class StateSpace {
+        private final int mTotalCap;
+        private final int[] mPerTypeNumWindowList;
+        private final int[] mPerTypeCapList;
+
+        private StateSpace(int totalCap, int[] perTypeNumWindowList, int[] perTypeCapList) {
+            mTotalCap = totalCap;
+            mPerTypeNumWindowList = perTypeNumWindowList.clone();
+            mPerTypeCapList = perTypeCapList.clone();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StateSpace)) {
+                return false;
+            }
+            StateSpace stateSpace = (StateSpace) obj;
+            return mTotalCap == stateSpace.mTotalCap
+                    && Arrays.equals(mPerTypeNumWindowList, stateSpace.mPerTypeNumWindowList)
+                    && Arrays.equals(mPerTypeCapList, stateSpace.mPerTypeCapList);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    mTotalCap,
+                    Arrays.hashCode(mPerTypeNumWindowList),
+                    Arrays.hashCode(mPerTypeCapList));
+        }
+    }
+
+    /**
+     * Number of states of every sub-problem of a report specification, indexed by (total cap,
+     * trigger data index, remaining windows, remaining cap).
+     *
+     * <p>The total cap is reduced to the sum of the caps, and every cap to the remaining total cap,
+     * as the states do not depend on a cap that can't be reached. The table is filled when it is
+     * created and is read-only afterwards.
+     */
+    private static final class NumStatesTable {
+        private final int mTotalCap;
+        private final int mMaxNumWindows;
+        private final int[] mPerTypeNumWindowList;
+        private final int[] mPerTypeCapList;
+        private final int[] mTable;
+        private final int mNumStates;
+
+        private NumStatesTable(int totalCap, int[] perTypeNumWindowList, int[] perTypeCapList) {
+            mTotalCap =
+                    (int) Math.min(totalCap, Arrays.stream(perTypeCapList).asLongStream().sum());
+            mMaxNumWindows = Arrays.stream(perTypeNumWindowList).max().orElse(0);
+            mPerTypeNumWindowList = perTypeNumWindowList.clone();
+            mPerTypeCapList = perTypeCapList.clone();
+            int numCaps = Math.multiplyExact(mTotalCap + 1, mTotalCap + 1);
+            int numWindows = Math.multiplyExact(perTypeNumWindowList.length, mMaxNumWindows + 1);
+            mTable = new int[Math.multiplyExact(numWindows, numCaps)];
+            Arrays.fill(mTable, -1);
+            int index = perTypeNumWindowList.length - 1;
+            mNumStates =
+                    getNumStates(
+                            mTotalCap, index, perTypeNumWindowList[index], perTypeCapList[index]);
+        }
+
+        private int getTotalCap() {
+            return mTotalCap;
+        }
+
+        private int getNumStates() {
+            return mNumStates;
+        }
+
+        private int size() {
+            return mTable.length;
+        }
+
+        private int getNumStates(int totalCap, int index, int winVal, int capVal) {
+            capVal = Math.min(capVal, totalCap);
+            int key =
+                    ((index * (mMaxNumWindows + 1) + winVal) * (mTotalCap + 1) + totalCap)
+                                    * (mTotalCap + 1)
+                            + capVal;
+            if (mTable[key] < 0) {
+                int result;
+                if (winVal == 0 && index == 0) {
+                    result = 1;
+                } else if (winVal == 0) {
+                    result =
+                            getNumStates(
+                                    totalCap,
+                                    index - 1,
+                                    mPerTypeNumWindowList[index - 1],
+                                    mPerTypeCapList[index - 1]);
+                } else {
+                    result = 0;
+                    for (int i = 0; i <= capVal; i++) {
+                        result =
+                                Math.addExact(
+                                        result,
+                                        getNumStates(totalCap - i, index, winVal - 1, capVal - i));
+                    }
+                }
+                mTable[key] = result;
+            }
+            return mTable[key];
+        }
+    }
+
     /** A single report including triggerDataType and window index for the fake report generation */
     public static class AtomReportState {
         private final int mTriggerDataType;
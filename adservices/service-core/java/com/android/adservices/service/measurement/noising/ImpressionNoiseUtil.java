@@ -20,7 +20,6 @@ import com.android.adservices.service.measurement.ReportSpec;
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
@@ -177,7 +176,7 @@ public final class ImpressionNoiseUtil {
         int sequenceIndex = rand.nextInt(numStates);
         List<Combinatorics.AtomReportState> rawFakeReports =
                 Combinatorics.getReportSetBasedOnRank(
-                        params[0][0], params[1], params[2], sequenceIndex, new HashMap<>());
+                        params[0][0], params[1], params[2], sequenceIndex);
         List<int[]> fakeReportConfigs = new ArrayList<>();
         for (Combinatorics.AtomReportState rawFakeReport : rawFakeReports) {
             int[] fakeReportConfig = new int[3];
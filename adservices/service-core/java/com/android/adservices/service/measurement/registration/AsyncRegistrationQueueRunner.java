@@ -24,6 +24,7 @@ import android.net.Uri;
 import android.os.RemoteException;
 
 import com.android.adservices.LogUtil;
+import com.android.adservices.concurrency.AdServicesExecutors;
 import com.android.adservices.data.measurement.DatastoreException;
 import com.android.adservices.data.measurement.DatastoreManager;
 import com.android.adservices.data.measurement.DatastoreManagerFactory;
@@ -43,16 +44,26 @@ import com.android.adservices.service.measurement.attribution.TriggerContentProv
 import com.android.adservices.service.measurement.noising.SourceNoiseHandler;
 import com.android.adservices.service.measurement.reporting.DebugReportApi;
 import com.android.adservices.service.measurement.util.BaseUriExtractor;
+import com.android.adservices.service.measurement.util.OriginWorkers;
 import com.android.adservices.service.measurement.util.Web;
 import com.android.adservices.service.stats.AdServicesLoggerImpl;
 import com.android.internal.annotations.VisibleForTesting;
 
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 /** Runner for servicing queued registration requests */
@@ -64,6 +75,7 @@ public class AsyncRegistrationQueueRunner {
     private final ContentResolver mContentResolver;
     private final DebugReportApi mDebugReportApi;
     private final SourceNoiseHandler mSourceNoiseHandler;
+    private final ListeningExecutorService mFetchExecutor;
 
     private AsyncRegistrationQueueRunner(Context context) {
         mDatastoreManager = DatastoreManagerFactory.getDatastoreManager(context);
@@ -72,6 +84,7 @@ public class AsyncRegistrationQueueRunner {
         mContentResolver = context.getContentResolver();
         mDebugReportApi = new DebugReportApi(context, FlagsFactory.getFlags());
         mSourceNoiseHandler = new SourceNoiseHandler(FlagsFactory.getFlags());
+        mFetchExecutor = AdServicesExecutors.getBlockingExecutor();
     }
 
     @VisibleForTesting
@@ -82,12 +95,32 @@ public class AsyncRegistrationQueueRunner {
             DatastoreManager datastoreManager,
             DebugReportApi debugReportApi,
             SourceNoiseHandler sourceNoiseHandler) {
+        this(
+                contentResolver,
+                asyncSourceFetcher,
+                asyncTriggerFetcher,
+                datastoreManager,
+                debugReportApi,
+                sourceNoiseHandler,
+                AdServicesExecutors.getBlockingExecutor());
+    }
+
+    @VisibleForTesting
+    AsyncRegistrationQueueRunner(
+            ContentResolver contentResolver,
+            AsyncSourceFetcher asyncSourceFetcher,
+            AsyncTriggerFetcher asyncTriggerFetcher,
+            DatastoreManager datastoreManager,
+            DebugReportApi debugReportApi,
+            SourceNoiseHandler sourceNoiseHandler,
+            ListeningExecutorService fetchExecutor) {
         mAsyncSourceFetcher = asyncSourceFetcher;
         mAsyncTriggerFetcher = asyncTriggerFetcher;
         mDatastoreManager = datastoreManager;
         mContentResolver = contentResolver;
         mDebugReportApi = debugReportApi;
         mSourceNoiseHandler = sourceNoiseHandler;
+        mFetchExecutor = fetchExecutor;
     }
 
     /**
@@ -103,11 +136,18 @@ public class AsyncRegistrationQueueRunner {
         return sAsyncRegistrationQueueRunner;
     }
 
-    /** Processes records in the AsyncRegistration Queue table. */
+    /**
+     * Processes records in the AsyncRegistration Queue table, one at a time or concurrently if
+     * enabled by {@link Flags#getMeasurementEnableConcurrentAsyncRegistrationFetch()}.
+     */
     public void runAsyncRegistrationQueueWorker() {
         Flags flags = FlagsFactory.getFlags();
         int recordServiceLimit = flags.getMeasurementMaxRegistrationsPerJobInvocation();
         int retryLimit = flags.getMeasurementMaxRetriesPerRegistrationRequest();
+        if (flags.getMeasurementEnableConcurrentAsyncRegistrationFetch()) {
+            runAsyncRegistrationQueueWorkerConcurrently(flags, recordServiceLimit, retryLimit);
+            return;
+        }
 
         Set<Uri> failedOrigins = new HashSet<>();
         for (int i = 0; i < recordServiceLimit; i++) {
@@ -127,48 +167,197 @@ public class AsyncRegistrationQueueRunner {
 
             if (asyncRegistration.isSourceRequest()) {
                 LogUtil.d("AsyncRegistrationQueueRunner:" + " processing source");
-                processSourceRegistration(asyncRegistration, failedOrigins);
             } else {
                 LogUtil.d("AsyncRegistrationQueueRunner:" + " processing trigger");
-                processTriggerRegistration(asyncRegistration, failedOrigins);
+            }
+            FetchedRegistration fetchedRegistration = new FetchedRegistration(asyncRegistration);
+            fetchRegistration(fetchedRegistration);
+            boolean transactionResult =
+                    mDatastoreManager.runInTransaction(
+                            (dao) ->
+                                    storeFetchedRegistration(
+                                            fetchedRegistration, failedOrigins, dao));
+            emitFetchMetrics(fetchedRegistration, transactionResult);
+        }
+    }
+
+    /**
+     * Leases queued registrations in batches ordered by request time, fetches the registrations of
+     * a batch concurrently, and stores the results of the batch in a single transaction.
+     *
+     * <p>Each registration origin is fetched from by a bounded number of workers, so that an origin
+     * with many queued registrations does not hold up the others. Once a fetch from an origin
+     * fails and can be retried, the registrations of the origin that have not been fetched yet are
+     * left queued, like the origins excluded from the following leases.
+     *
+     * <p>If the batch cannot be stored, its registrations are stored again one per transaction, so
+     * that a single registration that cannot be stored does not hold up the rest of the batch.
+     */
+    private void runAsyncRegistrationQueueWorkerConcurrently(
+            Flags flags, int recordServiceLimit, int retryLimit) {
+        int batchSize = Math.max(1, flags.getMeasurementAsyncRegistrationFetchBatchSize());
+        Set<Uri> failedOrigins = new HashSet<>();
+        int serviced = 0;
+        while (serviced < recordServiceLimit) {
+            int limit = Math.min(batchSize, recordServiceLimit - serviced);
+            List<AsyncRegistration> asyncRegistrations =
+                    mDatastoreManager
+                            .runInTransactionWithResult(
+                                    (dao) ->
+                                            dao.fetchNextQueuedAsyncRegistrations(
+                                                    retryLimit, failedOrigins, limit))
+                            .orElse(Collections.emptyList());
+            if (asyncRegistrations.isEmpty()) {
+                LogUtil.d("AsyncRegistrationQueueRunner: no async registration fetched.");
+                return;
+            }
+            LogUtil.d(
+                    "AsyncRegistrationQueueRunner: processing %d registrations",
+                    asyncRegistrations.size());
+
+            List<FetchedRegistration> fetchedRegistrations =
+                    fetchConcurrently(flags, asyncRegistrations);
+            boolean transactionResult =
+                    mDatastoreManager.runInTransaction(
+                            (dao) -> {
+                                for (FetchedRegistration fetchedRegistration :
+                                        fetchedRegistrations) {
+                                    storeFetchedRegistration(
+                                            fetchedRegistration, failedOrigins, dao);
+                                }
+                            });
+            for (FetchedRegistration fetchedRegistration : fetchedRegistrations) {
+                if (transactionResult) {
+                    emitFetchMetrics(fetchedRegistration, /* stored= */ true);
+                } else {
+                    storeFetchedRegistrationAlone(fetchedRegistration, failedOrigins);
+                }
+            }
+            serviced += asyncRegistrations.size();
+        }
+    }
+
+    /** Returns the registrations fetched, in the order of {@code asyncRegistrations}. */
+    private List<FetchedRegistration> fetchConcurrently(
+            Flags flags, List<AsyncRegistration> asyncRegistrations) {
+        List<FetchedRegistration> fetchedRegistrations =
+                new ArrayList<>(asyncRegistrations.size());
+        Map<Uri, OriginQueue> origins = new LinkedHashMap<>();
+        for (AsyncRegistration asyncRegistration : asyncRegistrations) {
+            FetchedRegistration fetchedRegistration = new FetchedRegistration(asyncRegistration);
+            fetchedRegistrations.add(fetchedRegistration);
+            origins.computeIfAbsent(
+                            BaseUriExtractor.getBaseUri(asyncRegistration.getRegistrationUri()),
+                            origin -> new OriginQueue())
+                    .mRegistrations
+                    .add(fetchedRegistration);
+        }
+
+        try {
+            OriginWorkers.run(
+                    origins.values(),
+                    origin -> origin.mRegistrations.size(),
+                    flags.getMeasurementAsyncRegistrationFetchPerOriginParallelism(),
+                    flags.getMeasurementAsyncRegistrationFetchParallelism(),
+                    mFetchExecutor,
+                    this::fetchOriginRegistrations);
+        } catch (InterruptedException e) {
+            LogUtil.e(e, "Interrupted while fetching registrations");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LogUtil.e(e, "Fetching registrations failed");
+        }
+
+        // Registrations not fetched are left queued
+        fetchedRegistrations.removeIf(fetchedRegistration -> !fetchedRegistration.mFetched);
+        return fetchedRegistrations;
+    }
+
+    private void fetchOriginRegistrations(OriginQueue origin) {
+        FetchedRegistration fetchedRegistration;
+        while ((fetchedRegistration = origin.mRegistrations.poll()) != null) {
+            if (origin.mFailed) {
+                return;
+            }
+            fetchRegistration(fetchedRegistration);
+            if (fetchedRegistration.mAsyncFetchStatus.canRetry()) {
+                origin.mFailed = true;
             }
         }
     }
 
-    private void processSourceRegistration(
-            AsyncRegistration asyncRegistration, Set<Uri> failedOrigins) {
-        AsyncFetchStatus asyncFetchStatus = new AsyncFetchStatus();
-        AsyncRedirect asyncRedirect = new AsyncRedirect();
+    private void fetchRegistration(FetchedRegistration fetchedRegistration) {
+        AsyncRegistration asyncRegistration = fetchedRegistration.mAsyncRegistration;
+        AsyncFetchStatus asyncFetchStatus = fetchedRegistration.mAsyncFetchStatus;
         long startTime = asyncRegistration.getRequestTime();
-        Optional<Source> resultSource =
-                mAsyncSourceFetcher.fetchSource(asyncRegistration, asyncFetchStatus, asyncRedirect);
+        if (asyncRegistration.isSourceRequest()) {
+            fetchedRegistration.mSource =
+                    mAsyncSourceFetcher.fetchSource(
+                            asyncRegistration,
+                            asyncFetchStatus,
+                            fetchedRegistration.mAsyncRedirect);
+        } else {
+            fetchedRegistration.mTrigger =
+                    mAsyncTriggerFetcher.fetchTrigger(
+                            asyncRegistration,
+                            asyncFetchStatus,
+                            fetchedRegistration.mAsyncRedirect);
+        }
         long endTime = System.currentTimeMillis();
         asyncFetchStatus.setRegistrationDelay(endTime - startTime);
+        fetchedRegistration.mFetched = true;
+    }
 
+    /**
+     * Stores a fetched registration in its own transaction. If it cannot be stored, e.g. because
+     * another job deleted it, its retry count is incremented instead, so that it is eventually
+     * dropped rather than leased again indefinitely.
+     */
+    private void storeFetchedRegistrationAlone(
+            FetchedRegistration fetchedRegistration, Set<Uri> failedOrigins) {
         boolean transactionResult =
                 mDatastoreManager.runInTransaction(
-                        (dao) -> {
-                            if (asyncFetchStatus.isRequestSuccess()) {
-                                if (resultSource.isPresent()) {
-                                    storeSource(resultSource.get(), asyncRegistration, dao);
-                                }
-                                handleSuccess(
-                                        asyncRegistration, asyncFetchStatus, asyncRedirect, dao);
-                            } else {
-                                handleFailure(
-                                        asyncRegistration, asyncFetchStatus, failedOrigins, dao);
-                            }
-                        });
-
+                        (dao) -> storeFetchedRegistration(fetchedRegistration, failedOrigins, dao));
         if (!transactionResult) {
-            asyncFetchStatus.setEntityStatus(AsyncFetchStatus.EntityStatus.STORAGE_ERROR);
+            mDatastoreManager.runInTransaction(
+                    (dao) -> {
+                        incrementRetryCount(fetchedRegistration);
+                        dao.updateRetryCount(fetchedRegistration.mAsyncRegistration);
+                    });
+        }
+        emitFetchMetrics(fetchedRegistration, transactionResult);
+    }
+
+    private void storeFetchedRegistration(
+            FetchedRegistration fetchedRegistration, Set<Uri> failedOrigins, IMeasurementDao dao)
+            throws DatastoreException {
+        AsyncRegistration asyncRegistration = fetchedRegistration.mAsyncRegistration;
+        AsyncFetchStatus asyncFetchStatus = fetchedRegistration.mAsyncFetchStatus;
+        if (asyncFetchStatus.isRequestSuccess()) {
+            if (fetchedRegistration.mSource.isPresent()) {
+                storeSource(fetchedRegistration.mSource.get(), asyncRegistration, dao);
+            }
+            if (fetchedRegistration.mTrigger.isPresent()) {
+                storeTrigger(fetchedRegistration.mTrigger.get(), dao);
+            }
+            handleSuccess(
+                    asyncRegistration, asyncFetchStatus, fetchedRegistration.mAsyncRedirect, dao);
+        } else {
+            handleFailure(fetchedRegistration, failedOrigins, dao);
+        }
+    }
+
+    private void emitFetchMetrics(FetchedRegistration fetchedRegistration, boolean stored) {
+        if (!stored) {
+            fetchedRegistration.mAsyncFetchStatus.setEntityStatus(
+                    AsyncFetchStatus.EntityStatus.STORAGE_ERROR);
         }
 
         FetcherUtil.emitHeaderMetrics(
                 FlagsFactory.getFlags(),
                 AdServicesLoggerImpl.getInstance(),
-                asyncRegistration,
-                asyncFetchStatus);
+                fetchedRegistration.mAsyncRegistration,
+                fetchedRegistration.mAsyncFetchStatus);
     }
 
     /** Visible only for testing. */
@@ -191,42 +380,6 @@ public class AsyncRegistrationQueueRunner {
         }
     }
 
-    private void processTriggerRegistration(
-            AsyncRegistration asyncRegistration, Set<Uri> failedOrigins) {
-        AsyncFetchStatus asyncFetchStatus = new AsyncFetchStatus();
-        AsyncRedirect asyncRedirect = new AsyncRedirect();
-        long startTime = asyncRegistration.getRequestTime();
-        Optional<Trigger> resultTrigger = mAsyncTriggerFetcher.fetchTrigger(
-                asyncRegistration, asyncFetchStatus, asyncRedirect);
-        long endTime = System.currentTimeMillis();
-        asyncFetchStatus.setRegistrationDelay(endTime - startTime);
-
-        boolean transactionResult =
-                mDatastoreManager.runInTransaction(
-                        (dao) -> {
-                            if (asyncFetchStatus.isRequestSuccess()) {
-                                if (resultTrigger.isPresent()) {
-                                    storeTrigger(resultTrigger.get(), dao);
-                                }
-                                handleSuccess(
-                                        asyncRegistration, asyncFetchStatus, asyncRedirect, dao);
-                            } else {
-                                handleFailure(
-                                        asyncRegistration, asyncFetchStatus, failedOrigins, dao);
-                            }
-                        });
-
-        if (!transactionResult) {
-            asyncFetchStatus.setEntityStatus(AsyncFetchStatus.EntityStatus.STORAGE_ERROR);
-        }
-
-        FetcherUtil.emitHeaderMetrics(
-                FlagsFactory.getFlags(),
-                AdServicesLoggerImpl.getInstance(),
-                asyncRegistration,
-                asyncFetchStatus);
-    }
-
     /** Visible only for testing. */
     @VisibleForTesting
     public void storeTrigger(Trigger trigger, IMeasurementDao dao) throws DatastoreException {
@@ -512,11 +665,10 @@ public class AsyncRegistrationQueueRunner {
     }
 
     private void handleFailure(
-            AsyncRegistration asyncRegistration,
-            AsyncFetchStatus asyncFetchStatus,
-            Set<Uri> failedOrigins,
-            IMeasurementDao dao)
+            FetchedRegistration fetchedRegistration, Set<Uri> failedOrigins, IMeasurementDao dao)
             throws DatastoreException {
+        AsyncRegistration asyncRegistration = fetchedRegistration.mAsyncRegistration;
+        AsyncFetchStatus asyncFetchStatus = fetchedRegistration.mAsyncFetchStatus;
         if (asyncFetchStatus.canRetry()) {
             LogUtil.d(
                     "AsyncRegistrationQueueRunner: "
@@ -526,7 +678,7 @@ public class AsyncRegistrationQueueRunner {
                             + "Fetch Status : "
                             + asyncFetchStatus.getResponseStatus());
             failedOrigins.add(BaseUriExtractor.getBaseUri(asyncRegistration.getRegistrationUri()));
-            asyncRegistration.incrementRetryCount();
+            incrementRetryCount(fetchedRegistration);
             dao.updateRetryCount(asyncRegistration);
         } else {
             LogUtil.d(
@@ -594,4 +746,35 @@ public class AsyncRegistrationQueueRunner {
             LogUtil.e(e, "Trigger Content Provider invocation failed.");
         }
     }
+
+    /**
+     * Increments the retry count of the registration once, even if storing it is rolled back and
+     * attempted again.
+     */
+    private static void incrementRetryCount(FetchedRegistration fetchedRegistration) {
+        if (!fetchedRegistration.mRetryCountIncremented) {
+            fetchedRegistration.mAsyncRegistration.incrementRetryCount();
+            fetchedRegistration.mRetryCountIncremented = true;
+        }
+    }
+
+    /** A queued registration and the outcome of fetching it. */
+    private static final class FetchedRegistration {
+        private final AsyncRegistration mAsyncRegistration;
+        private final AsyncFetchStatus mAsyncFetchStatus = new AsyncFetchStatus();
+        private final AsyncRedirect mAsyncRedirect = new AsyncRedirect();
+        private Optional<Source> mSource = Optional.empty();
+        private Optional<Trigger> mTrigger = Optional.empty();
+        private volatile boolean mFetched;
+        private boolean mRetryCountIncremented;
+
+        private FetchedRegistration(AsyncRegistration asyncRegistration) {
+            mAsyncRegistration = asyncRegistration;
+        }
+    }
+
+    private static final class OriginQueue {
+        private final Queue<FetchedRegistration> mRegistrations = new ConcurrentLinkedQueue<>();
+        private volatile boolean mFailed;
+    }
 }
@@ -23,8 +23,13 @@ import android.adservices.common.AdServicesStatusUtils;
 import android.net.Uri;
 
 import com.android.adservices.LogUtil;
+import com.android.adservices.concurrency.AdServicesExecutors;
 import com.android.adservices.data.enrollment.EnrollmentDao;
+import com.android.adservices.data.measurement.DatastoreException;
 import com.android.adservices.data.measurement.DatastoreManager;
+import com.android.adservices.data.measurement.IMeasurementDao;
+import com.android.adservices.service.Flags;
+import com.android.adservices.service.FlagsFactory;
 import com.android.adservices.service.measurement.aggregation.AggregateEncryptionKey;
 import com.android.adservices.service.measurement.aggregation.AggregateEncryptionKeyManager;
 import com.android.adservices.service.measurement.aggregation.AggregateReport;
@@ -32,12 +37,16 @@ import com.android.adservices.service.stats.AdServicesLoggerImpl;
 import com.android.adservices.service.stats.MeasurementReportsStats;
 import com.android.internal.annotations.VisibleForTesting;
 
+import com.google.common.util.concurrent.ListeningExecutorService;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
@@ -50,6 +59,8 @@ public class AggregateReportingJobHandler {
     private final EnrollmentDao mEnrollmentDao;
     private final DatastoreManager mDatastoreManager;
     private final AggregateEncryptionKeyManager mAggregateEncryptionKeyManager;
+    private final Flags mFlags;
+    private final ListeningExecutorService mUploadExecutor;
     private boolean mIsDebugInstance;
 
     private ReportingStatus.UploadMethod mUploadMethod;
@@ -58,6 +69,8 @@ public class AggregateReportingJobHandler {
         mEnrollmentDao = enrollmentDao;
         mDatastoreManager = datastoreManager;
         mAggregateEncryptionKeyManager = new AggregateEncryptionKeyManager(datastoreManager);
+        mFlags = FlagsFactory.getFlags();
+        mUploadExecutor = AdServicesExecutors.getBlockingExecutor();
     }
 
     AggregateReportingJobHandler(
@@ -67,6 +80,8 @@ public class AggregateReportingJobHandler {
         mEnrollmentDao = enrollmentDao;
         mDatastoreManager = datastoreManager;
         mAggregateEncryptionKeyManager = new AggregateEncryptionKeyManager(datastoreManager);
+        mFlags = FlagsFactory.getFlags();
+        mUploadExecutor = AdServicesExecutors.getBlockingExecutor();
         mUploadMethod = uploadMethod;
     }
 
@@ -75,9 +90,26 @@ public class AggregateReportingJobHandler {
             EnrollmentDao enrollmentDao,
             DatastoreManager datastoreManager,
             AggregateEncryptionKeyManager aggregateEncryptionKeyManager) {
+        this(
+                enrollmentDao,
+                datastoreManager,
+                aggregateEncryptionKeyManager,
+                FlagsFactory.getFlagsForTest(),
+                AdServicesExecutors.getBlockingExecutor());
+    }
+
+    @VisibleForTesting
+    AggregateReportingJobHandler(
+            EnrollmentDao enrollmentDao,
+            DatastoreManager datastoreManager,
+            AggregateEncryptionKeyManager aggregateEncryptionKeyManager,
+            Flags flags,
+            ListeningExecutorService uploadExecutor) {
         mEnrollmentDao = enrollmentDao;
         mDatastoreManager = datastoreManager;
         mAggregateEncryptionKeyManager = aggregateEncryptionKeyManager;
+        mFlags = flags;
+        mUploadExecutor = uploadExecutor;
     }
 
     /**
@@ -94,7 +126,8 @@ public class AggregateReportingJobHandler {
     /**
      * Finds all aggregate reports within the given window that have a status {@link
      * AggregateReport.Status#PENDING} or {@link AggregateReport.DebugReportStatus#PENDING} based on
-     * mIsDebugReport and attempts to upload them individually.
+     * mIsDebugReport and attempts to upload them individually, or concurrently if enabled by
+     * {@link Flags#getMeasurementEnableConcurrentReportUpload()}.
      *
      * @param windowStartTime Start time of the search window
      * @param windowEndTime End time of the search window
@@ -122,7 +155,11 @@ public class AggregateReportingJobHandler {
                 mAggregateEncryptionKeyManager.getAggregateEncryptionKeys(
                         pendingAggregateReportIdsInWindow.size());
 
-        if (keys.size() == pendingAggregateReportIdsInWindow.size()) {
+        if (keys.size() != pendingAggregateReportIdsInWindow.size()) {
+            LogUtil.w("The number of keys do not align with the number of reports");
+        } else if (mFlags.getMeasurementEnableConcurrentReportUpload()) {
+            performReportsConcurrently(pendingAggregateReportIdsInWindow, keys);
+        } else {
             for (int i = 0; i < pendingAggregateReportIdsInWindow.size(); i++) {
                 ReportingStatus reportingStatus = new ReportingStatus();
                 final String aggregateReportId = pendingAggregateReportIdsInWindow.get(i);
@@ -140,12 +177,86 @@ public class AggregateReportingJobHandler {
                 }
                 logReportingStats(reportingStatus);
             }
-        } else {
-            LogUtil.w("The number of keys do not align with the number of reports");
         }
         return true;
     }
 
+    /**
+     * Uploads the reports with {@link ReportUploadPipeline}, grouped by reporting origin.
+     *
+     * @param aggregateReportIds datastore ids of the {@link AggregateReport}s
+     * @param keys used for encrypting the report payloads, in the order of {@code
+     *     aggregateReportIds}
+     */
+    private void performReportsConcurrently(
+            List<String> aggregateReportIds, List<AggregateEncryptionKey> keys) {
+        Map<String, AggregateEncryptionKey> keysByReportId = new HashMap<>();
+        for (int i = 0; i < aggregateReportIds.size(); i++) {
+            keysByReportId.put(aggregateReportIds.get(i), keys.get(i));
+        }
+        new ReportUploadPipeline<>(
+                        mDatastoreManager,
+                        mFlags,
+                        mUploadExecutor,
+                        new ReportUploadPipeline.ReportUploader<AggregateReport>() {
+                            @Override
+                            public AggregateReport readReport(
+                                    IMeasurementDao dao,
+                                    String reportId,
+                                    ReportingStatus reportingStatus)
+                                    throws DatastoreException {
+                                AggregateReport aggregateReport = dao.getAggregateReport(reportId);
+                                if (!isPending(aggregateReport)) {
+                                    reportingStatus.setFailureStatus(
+                                            ReportingStatus.FailureStatus.REPORT_NOT_PENDING);
+                                    return null;
+                                }
+                                return aggregateReport;
+                            }
+
+                            @Override
+                            public Uri getReportingOrigin(AggregateReport aggregateReport) {
+                                return aggregateReport.getRegistrationOrigin();
+                            }
+
+                            @Override
+                            public int uploadReport(AggregateReport aggregateReport)
+                                    throws IOException, JSONException {
+                                Uri reportingOrigin = aggregateReport.getRegistrationOrigin();
+                                return makeHttpPostRequest(
+                                        reportingOrigin,
+                                        createReportJsonPayload(
+                                                aggregateReport,
+                                                reportingOrigin,
+                                                keysByReportId.get(aggregateReport.getId())));
+                            }
+
+                            @Override
+                            public void markReportDelivered(
+                                    IMeasurementDao dao, AggregateReport aggregateReport)
+                                    throws DatastoreException {
+                                markDelivered(dao, aggregateReport.getId());
+                            }
+
+                            @Override
+                            public void onReportProcessed(
+                                    AggregateReport aggregateReport,
+                                    ReportingStatus reportingStatus) {
+                                if (reportingStatus.getUploadStatus()
+                                        == ReportingStatus.UploadStatus.SUCCESS) {
+                                    reportingStatus.setReportingDelay(
+                                            System.currentTimeMillis()
+                                                    - aggregateReport.getScheduledReportTime());
+                                }
+                                if (mUploadMethod != null) {
+                                    reportingStatus.setUploadMethod(mUploadMethod);
+                                }
+                                logReportingStats(reportingStatus);
+                            }
+                        })
+                .uploadReports(aggregateReportIds);
+    }
+
     /**
      * Perform aggregate reporting by finding the relevant {@link AggregateReport} and making an
      * HTTP POST request to the specified report to URL with the report data as a JSON in the body.
@@ -166,14 +277,7 @@ public class AggregateReportingJobHandler {
         }
         AggregateReport aggregateReport = aggregateReportOpt.get();
 
-        if (mIsDebugInstance
-                && aggregateReport.getDebugReportStatus()
-                        != AggregateReport.DebugReportStatus.PENDING) {
-            LogUtil.d("Debugging status is not pending");
-            reportingStatus.setFailureStatus(ReportingStatus.FailureStatus.REPORT_NOT_PENDING);
-            return AdServicesStatusUtils.STATUS_INVALID_ARGUMENT;
-        }
-        if (!mIsDebugInstance && aggregateReport.getStatus() != AggregateReport.Status.PENDING) {
+        if (!isPending(aggregateReport)) {
             reportingStatus.setFailureStatus(ReportingStatus.FailureStatus.REPORT_NOT_PENDING);
             return AdServicesStatusUtils.STATUS_INVALID_ARGUMENT;
         }
@@ -186,15 +290,7 @@ public class AggregateReportingJobHandler {
                     && returnCode <= 299) {
                 boolean success =
                         mDatastoreManager.runInTransaction(
-                                (dao) -> {
-                                    if (mIsDebugInstance) {
-                                        dao.markAggregateDebugReportDelivered(aggregateReportId);
-                                    } else {
-                                        dao.markAggregateReportStatus(
-                                                aggregateReportId,
-                                                AggregateReport.Status.DELIVERED);
-                                    }
-                                });
+                                (dao) -> markDelivered(dao, aggregateReportId));
 
                 if (success) {
                     long deliveryTime = System.currentTimeMillis();
@@ -216,6 +312,25 @@ public class AggregateReportingJobHandler {
         }
     }
 
+    private boolean isPending(AggregateReport aggregateReport) {
+        if (mIsDebugInstance
+                && aggregateReport.getDebugReportStatus()
+                        != AggregateReport.DebugReportStatus.PENDING) {
+            LogUtil.d("Debugging status is not pending");
+            return false;
+        }
+        return mIsDebugInstance || aggregateReport.getStatus() == AggregateReport.Status.PENDING;
+    }
+
+    private void markDelivered(IMeasurementDao dao, String aggregateReportId)
+            throws DatastoreException {
+        if (mIsDebugInstance) {
+            dao.markAggregateDebugReportDelivered(aggregateReportId);
+        } else {
+            dao.markAggregateReportStatus(aggregateReportId, AggregateReport.Status.DELIVERED);
+        }
+    }
+
     /** Creates the JSON payload for the POST request from the AggregateReport. */
     @VisibleForTesting
     JSONObject createReportJsonPayload(AggregateReport aggregateReport, Uri reportingOrigin,
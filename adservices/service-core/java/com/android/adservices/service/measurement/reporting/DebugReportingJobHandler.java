@@ -21,11 +21,17 @@ import android.adservices.common.AdServicesStatusUtils;
 import android.net.Uri;
 
 import com.android.adservices.LogUtil;
+import com.android.adservices.concurrency.AdServicesExecutors;
 import com.android.adservices.data.enrollment.EnrollmentDao;
+import com.android.adservices.data.measurement.DatastoreException;
 import com.android.adservices.data.measurement.DatastoreManager;
 import com.android.adservices.data.measurement.IMeasurementDao;
+import com.android.adservices.service.Flags;
+import com.android.adservices.service.FlagsFactory;
 import com.android.internal.annotations.VisibleForTesting;
 
+import com.google.common.util.concurrent.ListeningExecutorService;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 
@@ -39,13 +45,33 @@ public class DebugReportingJobHandler {
 
     private final EnrollmentDao mEnrollmentDao;
     private final DatastoreManager mDatastoreManager;
+    private final Flags mFlags;
+    private final ListeningExecutorService mUploadExecutor;
 
     DebugReportingJobHandler(EnrollmentDao enrollmentDao, DatastoreManager datastoreManager) {
+        this(
+                enrollmentDao,
+                datastoreManager,
+                FlagsFactory.getFlags(),
+                AdServicesExecutors.getBlockingExecutor());
+    }
+
+    @VisibleForTesting
+    DebugReportingJobHandler(
+            EnrollmentDao enrollmentDao,
+            DatastoreManager datastoreManager,
+            Flags flags,
+            ListeningExecutorService uploadExecutor) {
         mEnrollmentDao = enrollmentDao;
         mDatastoreManager = datastoreManager;
+        mFlags = flags;
+        mUploadExecutor = uploadExecutor;
     }
 
-    /** Finds all debug reports and attempts to upload them individually. */
+    /**
+     * Finds all debug reports and attempts to upload them individually, or concurrently if enabled
+     * by {@link Flags#getMeasurementEnableConcurrentReportUpload()}.
+     */
     void performScheduledPendingReports() {
         Optional<List<String>> pendingDebugReports =
                 mDatastoreManager.runInTransactionWithResult(IMeasurementDao::getDebugReportIds);
@@ -55,11 +81,67 @@ public class DebugReportingJobHandler {
         }
 
         List<String> pendingDebugReportIdsInWindow = pendingDebugReports.get();
+        if (mFlags.getMeasurementEnableConcurrentReportUpload()) {
+            performReportsConcurrently(pendingDebugReportIdsInWindow);
+            return;
+        }
         for (String debugReportId : pendingDebugReportIdsInWindow) {
             performReport(debugReportId);
         }
     }
 
+    /**
+     * Uploads the reports with {@link ReportUploadPipeline}, grouped by reporting origin.
+     *
+     * @param debugReportIds datastore ids of the {@link DebugReport}s
+     */
+    private void performReportsConcurrently(List<String> debugReportIds) {
+        new ReportUploadPipeline<>(
+                        mDatastoreManager,
+                        mFlags,
+                        mUploadExecutor,
+                        new ReportUploadPipeline.ReportUploader<DebugReport>() {
+                            @Override
+                            public DebugReport readReport(
+                                    IMeasurementDao dao,
+                                    String reportId,
+                                    ReportingStatus reportingStatus)
+                                    throws DatastoreException {
+                                return dao.getDebugReport(reportId);
+                            }
+
+                            @Override
+                            public Uri getReportingOrigin(DebugReport debugReport) {
+                                return debugReport.getRegistrationOrigin();
+                            }
+
+                            @Override
+                            public int uploadReport(DebugReport debugReport)
+                                    throws IOException, JSONException {
+                                return makeHttpPostRequest(
+                                        debugReport.getRegistrationOrigin(),
+                                        createReportJsonPayload(debugReport));
+                            }
+
+                            @Override
+                            public void markReportDelivered(
+                                    IMeasurementDao dao, DebugReport debugReport)
+                                    throws DatastoreException {
+                                dao.deleteDebugReport(debugReport.getId());
+                            }
+
+                            @Override
+                            public void onReportProcessed(
+                                    DebugReport debugReport, ReportingStatus reportingStatus) {
+                                if (reportingStatus.getUploadStatus()
+                                        != ReportingStatus.UploadStatus.SUCCESS) {
+                                    LogUtil.d("Sending debug report failed");
+                                }
+                            }
+                        })
+                .uploadReports(debugReportIds);
+    }
+
     /**
      * Perform reporting by finding the relevant {@link DebugReport} and making an HTTP POST request
      * to the specified report to URL with the report data as a JSON in the body.
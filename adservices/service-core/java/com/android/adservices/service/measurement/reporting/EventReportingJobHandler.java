@@ -23,13 +23,20 @@ import android.adservices.common.AdServicesStatusUtils;
 import android.net.Uri;
 
 import com.android.adservices.LogUtil;
+import com.android.adservices.concurrency.AdServicesExecutors;
 import com.android.adservices.data.enrollment.EnrollmentDao;
+import com.android.adservices.data.measurement.DatastoreException;
 import com.android.adservices.data.measurement.DatastoreManager;
+import com.android.adservices.data.measurement.IMeasurementDao;
+import com.android.adservices.service.Flags;
+import com.android.adservices.service.FlagsFactory;
 import com.android.adservices.service.measurement.EventReport;
 import com.android.adservices.service.stats.AdServicesLoggerImpl;
 import com.android.adservices.service.stats.MeasurementReportsStats;
 import com.android.internal.annotations.VisibleForTesting;
 
+import com.google.common.util.concurrent.ListeningExecutorService;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -46,22 +53,38 @@ public class EventReportingJobHandler {
 
     private final EnrollmentDao mEnrollmentDao;
     private final DatastoreManager mDatastoreManager;
+    private final Flags mFlags;
+    private final ListeningExecutorService mUploadExecutor;
     private boolean mIsDebugInstance;
 
     private ReportingStatus.UploadMethod mUploadMethod;
 
     EventReportingJobHandler(EnrollmentDao enrollmentDao, DatastoreManager datastoreManager) {
-        mEnrollmentDao = enrollmentDao;
-        mDatastoreManager = datastoreManager;
+        this(
+                enrollmentDao,
+                datastoreManager,
+                FlagsFactory.getFlags(),
+                AdServicesExecutors.getBlockingExecutor());
     }
 
     EventReportingJobHandler(
             EnrollmentDao enrollmentDao,
             DatastoreManager datastoreManager,
             ReportingStatus.UploadMethod uploadMethod) {
+        this(enrollmentDao, datastoreManager);
+        mUploadMethod = uploadMethod;
+    }
+
+    @VisibleForTesting
+    EventReportingJobHandler(
+            EnrollmentDao enrollmentDao,
+            DatastoreManager datastoreManager,
+            Flags flags,
+            ListeningExecutorService uploadExecutor) {
         mEnrollmentDao = enrollmentDao;
         mDatastoreManager = datastoreManager;
-        mUploadMethod = uploadMethod;
+        mFlags = flags;
+        mUploadExecutor = uploadExecutor;
     }
 
     /**
@@ -78,7 +101,8 @@ public class EventReportingJobHandler {
     /**
      * Finds all reports within the given window that have a status {@link
      * EventReport.Status#PENDING} or {@link EventReport.DebugReportStatus#PENDING} based on
-     * mIsDebugReport and attempts to upload them individually.
+     * mIsDebugReport and attempts to upload them individually, or concurrently if enabled by
+     * {@link Flags#getMeasurementEnableConcurrentReportUpload()}.
      *
      * @param windowStartTime Start time of the search window
      * @param windowEndTime End time of the search window
@@ -102,6 +126,10 @@ public class EventReportingJobHandler {
         }
 
         List<String> pendingEventReportIdsInWindow = pendingEventReportsInWindowOpt.get();
+        if (mFlags.getMeasurementEnableConcurrentReportUpload()) {
+            performReportsConcurrently(pendingEventReportIdsInWindow);
+            return true;
+        }
         for (String eventReportId : pendingEventReportIdsInWindow) {
             // TODO: Use result to track rate of success vs retry vs failure
             ReportingStatus reportingStatus = new ReportingStatus();
@@ -122,6 +150,70 @@ public class EventReportingJobHandler {
         return true;
     }
 
+    /**
+     * Uploads the reports with {@link ReportUploadPipeline}, grouped by reporting origin.
+     *
+     * @param eventReportIds datastore ids of the {@link EventReport}s
+     */
+    private void performReportsConcurrently(List<String> eventReportIds) {
+        new ReportUploadPipeline<>(
+                        mDatastoreManager,
+                        mFlags,
+                        mUploadExecutor,
+                        new ReportUploadPipeline.ReportUploader<EventReport>() {
+                            @Override
+                            public EventReport readReport(
+                                    IMeasurementDao dao,
+                                    String reportId,
+                                    ReportingStatus reportingStatus)
+                                    throws DatastoreException {
+                                EventReport eventReport = dao.getEventReport(reportId);
+                                if (!isPending(eventReport)) {
+                                    reportingStatus.setFailureStatus(
+                                            ReportingStatus.FailureStatus.REPORT_NOT_PENDING);
+                                    return null;
+                                }
+                                return eventReport;
+                            }
+
+                            @Override
+                            public Uri getReportingOrigin(EventReport eventReport) {
+                                return eventReport.getRegistrationOrigin();
+                            }
+
+                            @Override
+                            public int uploadReport(EventReport eventReport)
+                                    throws IOException, JSONException {
+                                return makeHttpPostRequest(
+                                        eventReport.getRegistrationOrigin(),
+                                        createReportJsonPayload(eventReport));
+                            }
+
+                            @Override
+                            public void markReportDelivered(
+                                    IMeasurementDao dao, EventReport eventReport)
+                                    throws DatastoreException {
+                                markDelivered(dao, eventReport.getId());
+                            }
+
+                            @Override
+                            public void onReportProcessed(
+                                    EventReport eventReport, ReportingStatus reportingStatus) {
+                                if (reportingStatus.getUploadStatus()
+                                        == ReportingStatus.UploadStatus.SUCCESS) {
+                                    reportingStatus.setReportingDelay(
+                                            System.currentTimeMillis()
+                                                    - eventReport.getReportTime());
+                                }
+                                if (mUploadMethod != null) {
+                                    reportingStatus.setUploadMethod(mUploadMethod);
+                                }
+                                logReportingStats(reportingStatus);
+                            }
+                        })
+                .uploadReports(eventReportIds);
+    }
+
     /**
      * Perform reporting by finding the relevant {@link EventReport} and making an HTTP POST request
      * to the specified report to URL with the report data as a JSON in the body.
@@ -139,14 +231,7 @@ public class EventReportingJobHandler {
         }
         EventReport eventReport = eventReportOpt.get();
 
-        if (mIsDebugInstance
-                && eventReport.getDebugReportStatus() != EventReport.DebugReportStatus.PENDING) {
-            LogUtil.d("debugging status is not pending");
-            reportingStatus.setFailureStatus(ReportingStatus.FailureStatus.REPORT_NOT_PENDING);
-            return AdServicesStatusUtils.STATUS_INVALID_ARGUMENT;
-        }
-        if (!mIsDebugInstance && eventReport.getStatus() != EventReport.Status.PENDING) {
-            LogUtil.d("event report status is not pending");
+        if (!isPending(eventReport)) {
             reportingStatus.setFailureStatus(ReportingStatus.FailureStatus.REPORT_NOT_PENDING);
             return AdServicesStatusUtils.STATUS_INVALID_ARGUMENT;
         }
@@ -159,14 +244,7 @@ public class EventReportingJobHandler {
                     && returnCode <= 299) {
                 boolean success =
                         mDatastoreManager.runInTransaction(
-                                (dao) -> {
-                                    if (mIsDebugInstance) {
-                                        dao.markEventDebugReportDelivered(eventReportId);
-                                    } else {
-                                        dao.markEventReportStatus(
-                                                eventReportId, EventReport.Status.DELIVERED);
-                                    }
-                                });
+                                (dao) -> markDelivered(dao, eventReportId));
 
                 if (success) {
                     long deliveryTime = System.currentTimeMillis();
@@ -188,6 +266,28 @@ public class EventReportingJobHandler {
         }
     }
 
+    private boolean isPending(EventReport eventReport) {
+        if (mIsDebugInstance
+                && eventReport.getDebugReportStatus() != EventReport.DebugReportStatus.PENDING) {
+            LogUtil.d("debugging status is not pending");
+            return false;
+        }
+        if (!mIsDebugInstance && eventReport.getStatus() != EventReport.Status.PENDING) {
+            LogUtil.d("event report status is not pending");
+            return false;
+        }
+        return true;
+    }
+
+    private void markDelivered(IMeasurementDao dao, String eventReportId)
+            throws DatastoreException {
+        if (mIsDebugInstance) {
+            dao.markEventDebugReportDelivered(eventReportId);
+        } else {
+            dao.markEventReportStatus(eventReportId, EventReport.Status.DELIVERED);
+        }
+    }
+
     /**
      * Creates the JSON payload for the POST request from the EventReport.
      */
@@ -18,6 +18,7 @@ package com.android.adservices.service.measurement.reporting;
 
 import android.net.Uri;
 
+import com.android.adservices.LogUtil;
 import com.android.adservices.service.measurement.MeasurementHttpClient;
 import com.android.internal.annotations.VisibleForTesting;
 
@@ -26,6 +27,7 @@ import org.json.JSONObject;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -36,6 +38,9 @@ import java.net.URL;
  * origin.
  */
 public abstract class MeasurementReportSender {
+    private static final int MAX_CONSUMED_RESPONSE_BODY_BYTES = 16 * 1024;
+    private static final int RESPONSE_BODY_BUFFER_BYTES = 1024;
+
     private final MeasurementHttpClient mNetworkConnection = new MeasurementHttpClient();
 
     /**
@@ -101,9 +106,37 @@ public abstract class MeasurementReportSender {
             out.close();
 
             code = urlConnection.getResponseCode();
+            consumeResponseBody(urlConnection, code);
         } finally {
             urlConnection.disconnect();
         }
         return code;
     }
+
+    /**
+     * Reads the response body to its end, so that the connection is returned to the keep-alive
+     * pool rather than closed, and the next report to the same reporting origin can reuse it.
+     * Bodies larger than {@link #MAX_CONSUMED_RESPONSE_BODY_BYTES} are not worth the read, and
+     * their connection is closed.
+     */
+    private static void consumeResponseBody(HttpURLConnection urlConnection, int code) {
+        try (InputStream in =
+                code >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? urlConnection.getErrorStream()
+                        : urlConnection.getInputStream()) {
+            if (in == null) {
+                return;
+            }
+            byte[] buffer = new byte[RESPONSE_BODY_BUFFER_BYTES];
+            int consumed = 0;
+            int read;
+            while (consumed <= MAX_CONSUMED_RESPONSE_BODY_BYTES
+                    && (read = in.read(buffer)) != -1) {
+                consumed += read;
+            }
+        } catch (IOException e) {
+            // The report was sent, only the connection can't be reused
+            LogUtil.d(e, "Reading report response failed");
+        }
+    }
 }
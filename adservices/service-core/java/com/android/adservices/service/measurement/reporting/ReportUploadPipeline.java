@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.service.measurement.reporting;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.net.Uri;
+
+import com.android.adservices.LogUtil;
+import com.android.adservices.data.measurement.DatastoreException;
+import com.android.adservices.data.measurement.DatastoreManager;
+import com.android.adservices.data.measurement.IMeasurementDao;
+import com.android.adservices.service.Flags;
+import com.android.adservices.service.measurement.util.OriginWorkers;
+import com.android.internal.annotations.VisibleForTesting;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads measurement reports concurrently.
+ *
+ * <p>Reports are read, and marked delivered once uploaded, in batches of one transaction each. If
+ * the batch can't be marked delivered, each report is marked in its own transaction instead. The
+ * reports of a batch are grouped by reporting origin, and the reports of an origin are uploaded by
+ * a bounded number of workers one after another, so that they reuse the pooled keep-alive
+ * connections to the origin. Once {@link #MAX_CONSECUTIVE_ORIGIN_FAILURES} uploads to an origin
+ * failed in a row, its remaining reports are left pending for the next run.
+ *
+ * @param <T> the type of report
+ */
+final class ReportUploadPipeline<T> {
+    @VisibleForTesting static final int MAX_CONSECUTIVE_ORIGIN_FAILURES = 3;
+
+    /** Report type specific steps of the upload. */
+    interface ReportUploader<T> {
+        /**
+         * Reads the report to upload. Returns {@code null}, after setting the failure status of
+         * {@code reportingStatus}, if the report must not be uploaded.
+         */
+        @Nullable
+        T readReport(IMeasurementDao dao, String reportId, ReportingStatus reportingStatus)
+                throws DatastoreException;
+
+        /** Returns the origin to upload the report to. */
+        Uri getReportingOrigin(T report);
+
+        /** Uploads the report and returns the HTTP response code. */
+        int uploadReport(T report) throws IOException, JSONException;
+
+        /** Marks the uploaded report delivered. */
+        void markReportDelivered(IMeasurementDao dao, T report) throws DatastoreException;
+
+        /**
+         * Called once per report with the outcome of its upload.
+         *
+         * @param report the report, or {@code null} if it could not be read
+         */
+        void onReportProcessed(@Nullable T report, ReportingStatus reportingStatus);
+    }
+
+    private final DatastoreManager mDatastoreManager;
+    private final Flags mFlags;
+    private final ListeningExecutorService mExecutor;
+    private final ReportUploader<T> mUploader;
+
+    ReportUploadPipeline(
+            @NonNull DatastoreManager datastoreManager,
+            @NonNull Flags flags,
+            @NonNull ListeningExecutorService executor,
+            @NonNull ReportUploader<T> uploader) {
+        Objects.requireNonNull(datastoreManager);
+        Objects.requireNonNull(flags);
+        Objects.requireNonNull(executor);
+        Objects.requireNonNull(uploader);
+
+        mDatastoreManager = datastoreManager;
+        mFlags = flags;
+        mExecutor = executor;
+        mUploader = uploader;
+    }
+
+    /** Uploads the reports with the given datastore ids. */
+    void uploadReports(@NonNull List<String> reportIds) {
+        Objects.requireNonNull(reportIds);
+
+        int batchSize = Math.max(1, mFlags.getMeasurementReportUploadBatchSize());
+        for (int start = 0; start < reportIds.size(); start += batchSize) {
+            uploadBatch(reportIds.subList(start, Math.min(start + batchSize, reportIds.size())));
+        }
+    }
+
+    private void uploadBatch(List<String> reportIds) {
+        List<PendingReport<T>> pendingReports = new ArrayList<>(reportIds.size());
+        for (String reportId : reportIds) {
+            pendingReports.add(new PendingReport<>(reportId));
+        }
+
+        boolean read =
+                mDatastoreManager.runInTransaction(
+                        (dao) -> {
+                            for (PendingReport<T> pendingReport : pendingReports) {
+                                try {
+                                    pendingReport.mReport =
+                                            mUploader.readReport(
+                                                    dao, pendingReport.mId, pendingReport.mStatus);
+                                } catch (DatastoreException e) {
+                                    LogUtil.d(e, "Report not found");
+                                }
+                            }
+                        });
+        if (!read) {
+            pendingReports.forEach(pendingReport -> pendingReport.mReport = null);
+        }
+
+        uploadGroupedByOrigin(pendingReports);
+
+        List<PendingReport<T>> uploadedReports = new ArrayList<>();
+        for (PendingReport<T> pendingReport : pendingReports) {
+            if (pendingReport.mUploaded) {
+                uploadedReports.add(pendingReport);
+            }
+        }
+        markDelivered(uploadedReports);
+
+        for (PendingReport<T> pendingReport : pendingReports) {
+            if (pendingReport.mDelivered) {
+                pendingReport.mStatus.setUploadStatus(ReportingStatus.UploadStatus.SUCCESS);
+            } else {
+                if (pendingReport.mUploaded) {
+                    pendingReport.mStatus.setFailureStatus(
+                            ReportingStatus.FailureStatus.DATASTORE);
+                }
+                pendingReport.mStatus.setUploadStatus(ReportingStatus.UploadStatus.FAILURE);
+            }
+            mUploader.onReportProcessed(pendingReport.mReport, pendingReport.mStatus);
+        }
+    }
+
+    private void markDelivered(List<PendingReport<T>> uploadedReports) {
+        if (uploadedReports.isEmpty()) {
+            return;
+        }
+        boolean delivered =
+                mDatastoreManager.runInTransaction(
+                        (dao) -> {
+                            for (PendingReport<T> uploadedReport : uploadedReports) {
+                                mUploader.markReportDelivered(dao, uploadedReport.mReport);
+                            }
+                        });
+        if (delivered) {
+            uploadedReports.forEach(uploadedReport -> uploadedReport.mDelivered = true);
+            return;
+        }
+
+        // A single report that can't be marked, e.g. because it was deleted during the upload,
+        // rolls back the whole batch. Mark the reports one by one so that the other ones are not
+        // uploaded again by the next run.
+        for (PendingReport<T> uploadedReport : uploadedReports) {
+            uploadedReport.mDelivered =
+                    mDatastoreManager.runInTransaction(
+                            (dao) -> mUploader.markReportDelivered(dao, uploadedReport.mReport));
+        }
+    }
+
+    private void uploadGroupedByOrigin(List<PendingReport<T>> pendingReports) {
+        Map<Uri, OriginQueue<T>> origins = new LinkedHashMap<>();
+        for (PendingReport<T> pendingReport : pendingReports) {
+            if (pendingReport.mReport != null) {
+                origins.computeIfAbsent(
+                                mUploader.getReportingOrigin(pendingReport.mReport),
+                                origin -> new OriginQueue<>())
+                        .mReports
+                        .add(pendingReport);
+            }
+        }
+        if (origins.isEmpty()) {
+            return;
+        }
+
+        try {
+            OriginWorkers.run(
+                    origins.values(),
+                    origin -> origin.mReports.size(),
+                    mFlags.getMeasurementReportUploadPerOriginParallelism(),
+                    mFlags.getMeasurementReportUploadParallelism(),
+                    mExecutor,
+                    this::uploadOriginReports);
+        } catch (InterruptedException e) {
+            LogUtil.e(e, "Interrupted while uploading reports");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LogUtil.e(e, "Uploading reports failed");
+        }
+    }
+
+    private void uploadOriginReports(OriginQueue<T> origin) {
+        PendingReport<T> pendingReport;
+        while ((pendingReport = origin.mReports.poll()) != null) {
+            if (origin.mConsecutiveFailures.get() >= MAX_CONSECUTIVE_ORIGIN_FAILURES) {
+                // Back off from the origin until the next run
+                pendingReport.mStatus.setFailureStatus(ReportingStatus.FailureStatus.NETWORK);
+                continue;
+            }
+            try {
+                int returnCode = mUploader.uploadReport(pendingReport.mReport);
+                if (returnCode >= HttpURLConnection.HTTP_OK && returnCode <= 299) {
+                    pendingReport.mUploaded = true;
+                    origin.mConsecutiveFailures.set(0);
+                } else {
+                    pendingReport.mStatus.setFailureStatus(ReportingStatus.FailureStatus.NETWORK);
+                    origin.mConsecutiveFailures.incrementAndGet();
+                }
+            } catch (Exception e) {
+                LogUtil.e(e, e.toString());
+                pendingReport.mStatus.setFailureStatus(ReportingStatus.FailureStatus.UNKNOWN);
+                origin.mConsecutiveFailures.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class PendingReport<T> {
+        private final String mId;
+        private final ReportingStatus mStatus = new ReportingStatus();
+        @Nullable private T mReport;
+        private boolean mUploaded;
+        private boolean mDelivered;
+
+        private PendingReport(String id) {
+            mId = id;
+        }
+    }
+
+    private static final class OriginQueue<T> {
+        private final Queue<PendingReport<T>> mReports = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger mConsecutiveFailures = new AtomicInteger();
+    }
+}
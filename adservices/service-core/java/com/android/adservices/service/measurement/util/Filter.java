@@ -25,9 +25,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /** Filtering utilities for measurement. */
 public final class Filter {
@@ -62,24 +60,27 @@ public final class Filter {
             if (!sourceFilter.getAttributionFilterMap().containsKey(key)) {
                 continue;
             }
-            // Finds the intersection of two value lists.
             List<String> sourceValues = sourceFilter.getAttributionFilterMap().get(key);
             List<String> triggerValues = triggerFilter.getAttributionFilterMap().get(key);
-            if (!matchFilterValues(sourceValues, triggerValues, isFilter)) {
+            if (!matchFilterValues(sourceFilter, key, sourceValues, triggerValues, isFilter)) {
                 return false;
             }
         }
         return true;
     }
 
-    private static boolean matchFilterValues(List<String> sourceValues, List<String> triggerValues,
+    private static boolean matchFilterValues(
+            FilterMap sourceFilter,
+            String key,
+            List<String> sourceValues,
+            List<String> triggerValues,
             boolean isFilter) {
         if (triggerValues.isEmpty()) {
             return isFilter ? sourceValues.isEmpty() : !sourceValues.isEmpty();
         }
-        Set<String> intersection = new HashSet<>(sourceValues);
-        intersection.retainAll(triggerValues);
-        return isFilter ? !intersection.isEmpty() : intersection.isEmpty();
+        // Checks whether the two value lists intersect, using the hashed source values.
+        boolean intersects = sourceFilter.containsAnyValue(key, triggerValues);
+        return isFilter ? intersects : !intersects;
     }
 
     /**
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.service.measurement.util;
+
+import android.annotation.NonNull;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/** Runs the work queued for several origins with a bounded number of workers per origin. */
+public final class OriginWorkers {
+    /**
+     * Runs {@code worker} on {@code executor} for every origin, once per worker assigned to the
+     * origin, and waits for all the workers to complete.
+     *
+     * <p>An origin is assigned at most {@code perOriginParallelism} workers, and no more workers
+     * than the size of its queue. At most {@code parallelism} workers run at the same time. The
+     * workers of each origin are interleaved so that origins are started in turn, in iteration
+     * order.
+     *
+     * @param originQueueSize returns the number of items queued for an origin
+     * @param worker processes items queued for the given origin until none is left
+     */
+    public static <O> void run(
+            @NonNull Collection<O> origins,
+            @NonNull ToIntFunction<O> originQueueSize,
+            int perOriginParallelism,
+            int parallelism,
+            @NonNull ListeningExecutorService executor,
+            @NonNull Consumer<O> worker)
+            throws InterruptedException, ExecutionException {
+        Objects.requireNonNull(origins);
+        Objects.requireNonNull(originQueueSize);
+        Objects.requireNonNull(executor);
+        Objects.requireNonNull(worker);
+
+        Queue<O> originWorkers = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < Math.max(1, perOriginParallelism); i++) {
+            for (O origin : origins) {
+                if (originQueueSize.applyAsInt(origin) > i) {
+                    originWorkers.add(origin);
+                }
+            }
+        }
+
+        int workerCount = Math.min(originWorkers.size(), Math.max(1, parallelism));
+        List<ListenableFuture<?>> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(
+                    executor.submit(
+                            () -> {
+                                O origin;
+                                while ((origin = originWorkers.poll()) != null) {
+                                    worker.accept(origin);
+                                }
+                            }));
+        }
+        Futures.allAsList(workers).get();
+    }
+
+    private OriginWorkers() {}
+}
@@ -20,6 +20,10 @@ package com.android.adservices.service.profiling;
 public class JSScriptEngineLogConstants {
     public static final String SANDBOX_INIT_TIME = "SANDBOX_INIT_TIME";
     public static final String ISOLATE_CREATE_TIME = "ISOLATE_CREATE_TIME";
+    // Logged every time an evaluation is served by an idle isolate from the isolate pool.
+    public static final String ISOLATE_POOL_HIT = "ISOLATE_POOL_HIT";
+    // Time spent creating an isolate when no idle one was available in the isolate pool.
+    public static final String ISOLATE_POOL_MISS = "ISOLATE_POOL_MISS";
     // JS Execution latency as measured by the calling Java process. Includes the overhead
     // of communicating with WebView.
     public static final String JAVA_EXECUTION_TIME = "JAVA_EXECUTION_TIME";
@@ -27,6 +27,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.android.adservices.LoggerFactory;
+import com.android.adservices.concurrency.AdServicesExecutors;
 import com.android.adservices.data.DbHelper;
 import com.android.adservices.data.topics.Topic;
 import com.android.adservices.data.topics.TopicsDao;
@@ -49,6 +50,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /** A class to manage Epoch computation. */
 // TODO(b/269798827): Enable for R.
@@ -114,6 +117,25 @@ public class EpochManager {
     private final Flags mFlags;
     // Use Clock.SYSTEM_CLOCK except in unit tests, which pass in a local instance of Clock to mock.
     private final Clock mClock;
+    private final ScheduledExecutorService mUsageHistoryFlushExecutor;
+
+    private final Object mUsageHistoryLock = new Object();
+    // Held for the whole flush, so that a flush returns only once the usages buffered before it
+    // are persisted, even if they were taken by a concurrent flush.
+    private final Object mUsageHistoryFlushLock = new Object();
+
+    // Buffered usage history, Map<EpochId, Map<App, Set<Sdk>>>
+    @GuardedBy("mUsageHistoryLock")
+    private Map<Long, Map<String, Set<String>>> mBufferedUsageHistory = new HashMap<>();
+
+    @GuardedBy("mUsageHistoryLock")
+    private int mBufferedUsageCount;
+
+    @GuardedBy("mUsageHistoryLock")
+    private boolean mUsageHistoryFlushScheduled;
+
+    @GuardedBy("mUsageHistoryLock")
+    private boolean mImmediateUsageHistoryFlushScheduled;
 
     @VisibleForTesting
     EpochManager(
@@ -123,12 +145,32 @@ public class EpochManager {
             @NonNull Classifier classifier,
             Flags flags,
             @NonNull Clock clock) {
+        this(
+                topicsDao,
+                dbHelper,
+                random,
+                classifier,
+                flags,
+                clock,
+                AdServicesExecutors.getScheduler());
+    }
+
+    @VisibleForTesting
+    EpochManager(
+            @NonNull TopicsDao topicsDao,
+            @NonNull DbHelper dbHelper,
+            @NonNull Random random,
+            @NonNull Classifier classifier,
+            Flags flags,
+            @NonNull Clock clock,
+            @NonNull ScheduledExecutorService usageHistoryFlushExecutor) {
         mTopicsDao = topicsDao;
         mDbHelper = dbHelper;
         mRandom = random;
         mClassifier = classifier;
         mFlags = flags;
         mClock = clock;
+        mUsageHistoryFlushExecutor = usageHistoryFlushExecutor;
     }
 
     /** Returns an instance of the EpochManager given a context. */
@@ -151,6 +193,9 @@ public class EpochManager {
 
     /** Offline Epoch Processing. For more details, see go/rb-topics-epoch-computation */
     public void processEpoch() {
+        // The usage map of this epoch must include the buffered usages
+        flushUsageHistory();
+
         SQLiteDatabase db = mDbHelper.safeGetWritableDatabase();
         if (db == null) {
             return;
@@ -267,10 +312,93 @@ public class EpochManager {
         sLogger.v(
                 "EpochManager.recordUsageHistory for current EpochId = %d for %s, %s",
                 epochId, app, sdk);
+        if (mFlags.getTopicsEnableUsageHistoryBuffer()) {
+            bufferUsageHistory(epochId, app, sdk);
+            return;
+        }
         mTopicsDao.recordUsageHistory(epochId, app, sdk);
         mTopicsDao.recordAppUsageHistory(epochId, app);
     }
 
+    /**
+     * Persist the usage history buffered by {@link #recordUsageHistory(String, String)} in a single
+     * transaction. Must be called before reading the usage history tables.
+     */
+    public void flushUsageHistory() {
+        synchronized (mUsageHistoryFlushLock) {
+            Map<Long, Map<String, Set<String>>> usageHistory;
+            synchronized (mUsageHistoryLock) {
+                if (mBufferedUsageCount == 0) {
+                    return;
+                }
+                usageHistory = mBufferedUsageHistory;
+                mBufferedUsageHistory = new HashMap<>();
+                mBufferedUsageCount = 0;
+                mUsageHistoryFlushScheduled = false;
+                mImmediateUsageHistoryFlushScheduled = false;
+            }
+
+            SQLiteDatabase db = mDbHelper.safeGetWritableDatabase();
+            if (db == null) {
+                return;
+            }
+            db.beginTransaction();
+            try {
+                for (Map.Entry<Long, Map<String, Set<String>>> epochUsage :
+                        usageHistory.entrySet()) {
+                    long epochId = epochUsage.getKey();
+                    for (Map.Entry<String, Set<String>> appUsage :
+                            epochUsage.getValue().entrySet()) {
+                        String app = appUsage.getKey();
+                        for (String sdk : appUsage.getValue()) {
+                            mTopicsDao.recordUsageHistory(epochId, app, sdk);
+                        }
+                        mTopicsDao.recordAppUsageHistory(epochId, app);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            sLogger.v("Flushed usage history of %d epochs", usageHistory.size());
+        }
+    }
+
+    // Buffers a usage, deduplicated by (epochId, app, sdk), and schedules the flush of the buffer.
+    // The flush happens once the buffer is full, or after the flush delay otherwise.
+    private void bufferUsageHistory(long epochId, String app, String sdk) {
+        boolean flushImmediately = false;
+        boolean scheduleFlush = false;
+        synchronized (mUsageHistoryLock) {
+            boolean added =
+                    mBufferedUsageHistory
+                            .computeIfAbsent(epochId, id -> new HashMap<>())
+                            .computeIfAbsent(app, a -> new HashSet<>())
+                            .add(sdk);
+            if (!added) {
+                return;
+            }
+            mBufferedUsageCount++;
+            if (mBufferedUsageCount >= mFlags.getTopicsUsageHistoryBufferMaxEntries()
+                    && !mImmediateUsageHistoryFlushScheduled) {
+                mImmediateUsageHistoryFlushScheduled = true;
+                flushImmediately = true;
+            } else if (!mUsageHistoryFlushScheduled) {
+                mUsageHistoryFlushScheduled = true;
+                scheduleFlush = true;
+            }
+        }
+
+        if (flushImmediately) {
+            mUsageHistoryFlushExecutor.execute(this::flushUsageHistory);
+        } else if (scheduleFlush) {
+            mUsageHistoryFlushExecutor.schedule(
+                    this::flushUsageHistory,
+                    mFlags.getTopicsUsageHistoryBufferFlushDelayMs(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
     /**
      * Determine the learn-ability of a topic to a certain caller.
      *
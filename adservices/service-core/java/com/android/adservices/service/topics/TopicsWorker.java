@@ -292,6 +292,8 @@ public class TopicsWorker {
         // Here we use Write lock to block Read during that computation time.
         mReadWriteLock.writeLock().lock();
         try {
+            // Persist the buffered usages first, so that they are cleared as well.
+            mEpochManager.flushUsageHistory();
             mCacheManager.clearAllTopicsData(tablesToExclude);
 
             // If clearing all Topics data, clear preserved blocked topics in system server.
@@ -321,6 +323,7 @@ public class TopicsWorker {
     public void reconcileApplicationUpdate(Context context) {
         mReadWriteLock.writeLock().lock();
         try {
+            mEpochManager.flushUsageHistory();
             mAppUpdateManager.reconcileUninstalledApps(context, mEpochManager.getCurrentEpochId());
             mAppUpdateManager.reconcileInstalledApps(context, mEpochManager.getCurrentEpochId());
 
@@ -339,6 +342,7 @@ public class TopicsWorker {
     public void handleAppUninstallation(@NonNull Uri packageUri) {
         mReadWriteLock.writeLock().lock();
         try {
+            mEpochManager.flushUsageHistory();
             mAppUpdateManager.handleAppUninstallationInRealTime(
                     packageUri, mEpochManager.getCurrentEpochId());
 
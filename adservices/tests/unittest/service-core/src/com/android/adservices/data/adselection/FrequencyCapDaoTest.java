@@ -27,12 +27,17 @@ import android.database.sqlite.SQLiteConstraintException;
 import androidx.room.Room;
 import androidx.test.core.app.ApplicationProvider;
 
+import com.android.adservices.service.adselection.HistogramEvent;
 import com.android.adservices.service.adselection.HistogramEventFixture;
 
+import com.google.common.collect.ImmutableSet;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 
 public class FrequencyCapDaoTest {
     private static final int ABSOLUTE_MAX_EVENT_COUNT = 10;
@@ -948,6 +953,179 @@ public class FrequencyCapDaoTest {
                 .isEqualTo(3);
     }
 
+    @Test
+    public void testGetNumEventsFromIndexMatchesDatabase() {
+        // Events inserted before the index is loaded are read from the database on first use
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT_EARLIER_TIME,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2));
+
+        // Events inserted after the index is loaded are written through to the index
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT_LATER_TIME,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT_LATER_TIME,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2));
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI);
+        assertThat(
+                        mFrequencyCapDao.getNumEventsForBuyerAfterTimeFromIndex(
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getAdCounterKey(),
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getBuyer(),
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getAdEventType(),
+                                CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2)))
+                .isEqualTo(2);
+        assertThat(
+                        mFrequencyCapDao.getNumEventsForCustomAudienceAfterTimeFromIndex(
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT.getAdCounterKey(),
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT.getBuyer(),
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT
+                                        .getCustomAudienceOwner(),
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT
+                                        .getCustomAudienceName(),
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT.getAdEventType(),
+                                CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2)))
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void testGetNumEventsFromIndexAfterEvictionAndExpiry() {
+        // Load the index before any events are inserted
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2));
+
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT_EARLIER_TIME,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT_LATER_TIME,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+
+        // Insert another event with lower max thresholds to trigger eviction
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT_LATER_TIME, 3, 2);
+
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2));
+
+        mFrequencyCapDao.deleteAllExpiredHistogramData(
+                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT_LATER_TIME.getTimestamp());
+
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2));
+    }
+
+    @Test
+    public void testGetNumEventsFromIndexAfterBatchEviction() {
+        // Load the index before any events are inserted
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2));
+
+        for (HistogramEvent event :
+                Arrays.asList(
+                        HistogramEventFixture.VALID_HISTOGRAM_EVENT_EARLIER_TIME,
+                        HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT,
+                        HistogramEventFixture.VALID_HISTOGRAM_EVENT,
+                        HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT_LATER_TIME,
+                        HistogramEventFixture.VALID_HISTOGRAM_EVENT_LATER_TIME)) {
+            mFrequencyCapDao.insertHistogramEvent(
+                    event, ABSOLUTE_MAX_EVENT_COUNT, LOWER_MAX_EVENT_COUNT);
+        }
+
+        // The evicted events are removed from the index batch by batch
+        assertThat(mFrequencyCapDao.evictOldestHistogramEventsInBatches(2, 2)).isEqualTo(3);
+
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.minusSeconds(2));
+        assertIndexMatchesDatabase(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI);
+    }
+
+    @Test
+    public void testGetHistogramSnapshotForBuyersAfterTime() {
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT_EARLIER_TIME,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT_DIFFERENT_BUYER,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+
+        FrequencyCapHistogramIndex snapshot =
+                mFrequencyCapDao.getHistogramSnapshotForBuyersAfterTime(
+                        ImmutableSet.of(CommonFixture.VALID_BUYER_1),
+                        CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI);
+
+        // Only the buyer's events at or after the snapshot start time are included
+        assertThat(
+                        snapshot.getNumEventsForBuyerAfterTime(
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getAdCounterKey(),
+                                CommonFixture.VALID_BUYER_1,
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getAdEventType(),
+                                CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI))
+                .isEqualTo(1);
+        assertThat(
+                        snapshot.getNumEventsForCustomAudienceAfterTime(
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT.getAdCounterKey(),
+                                CommonFixture.VALID_BUYER_1,
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT
+                                        .getCustomAudienceOwner(),
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT
+                                        .getCustomAudienceName(),
+                                HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT.getAdEventType(),
+                                CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI))
+                .isEqualTo(1);
+        assertThat(
+                        snapshot.getNumEventsForBuyerAfterTime(
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT_DIFFERENT_BUYER
+                                        .getAdCounterKey(),
+                                CommonFixture.VALID_BUYER_2,
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT_DIFFERENT_BUYER
+                                        .getAdEventType(),
+                                CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI))
+                .isEqualTo(0);
+    }
+
+    @Test
+    public void testGetHistogramSnapshotForNoBuyersIsEmpty() {
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+
+        FrequencyCapHistogramIndex snapshot =
+                mFrequencyCapDao.getHistogramSnapshotForBuyersAfterTime(
+                        ImmutableSet.of(), CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI);
+
+        assertThat(
+                        snapshot.getNumEventsForBuyerAfterTime(
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getAdCounterKey(),
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getBuyer(),
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getAdEventType(),
+                                CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI))
+                .isEqualTo(0);
+    }
+
     @Test
     public void testDeleteHistogramEventDataBeforeTimeFromEmptyTables() {
         // Verify that this shouldn't throw an error
@@ -1108,6 +1286,79 @@ public class FrequencyCapDaoTest {
         assertThat(mFrequencyCapDao.getTotalNumHistogramEvents()).isEqualTo(1);
     }
 
+    @Test
+    public void testEvictOldestHistogramEventsInBatches() {
+        // Insert six events, each one second later than the previous one
+        for (int i = 0; i < 6; i++) {
+            mFrequencyCapDao.insertHistogramEvent(
+                    HistogramEventFixture.getValidHistogramEventBuilder()
+                            .setTimestamp(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.plusSeconds(i))
+                            .build(),
+                    ABSOLUTE_MAX_EVENT_COUNT,
+                    LOWER_MAX_EVENT_COUNT);
+        }
+
+        assertThat(mFrequencyCapDao.evictOldestHistogramEventsInBatches(2, 3)).isEqualTo(4);
+        assertThat(mFrequencyCapDao.getTotalNumHistogramEvents()).isEqualTo(2);
+
+        // Verify that only the oldest events were evicted
+        assertThat(
+                        mFrequencyCapDao.getNumEventsForBuyerAfterTime(
+                                KeyedFrequencyCapFixture.KEY1,
+                                CommonFixture.VALID_BUYER_1,
+                                HistogramEventFixture.VALID_HISTOGRAM_EVENT.getAdEventType(),
+                                CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.plusSeconds(4)))
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictOldestHistogramEventsInBatchesBelowLowerMaxIsNoop() {
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+        mFrequencyCapDao.insertHistogramEvent(
+                HistogramEventFixture.VALID_HISTOGRAM_EVENT_DIFFERENT_BUYER,
+                ABSOLUTE_MAX_EVENT_COUNT,
+                LOWER_MAX_EVENT_COUNT);
+
+        assertThat(mFrequencyCapDao.evictOldestHistogramEventsInBatches(2, 1)).isEqualTo(0);
+        assertThat(mFrequencyCapDao.getTotalNumHistogramEvents()).isEqualTo(2);
+    }
+
+    @Test
+    public void testInsertHistogramEventAfterBatchEvictionTracksEventCount() {
+        for (int i = 0; i < ABSOLUTE_MAX_EVENT_COUNT; i++) {
+            mFrequencyCapDao.insertHistogramEvent(
+                    HistogramEventFixture.getValidHistogramEventBuilder()
+                            .setTimestamp(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.plusSeconds(i))
+                            .build(),
+                    ABSOLUTE_MAX_EVENT_COUNT,
+                    LOWER_MAX_EVENT_COUNT);
+        }
+
+        assertThat(mFrequencyCapDao.evictOldestHistogramEventsInBatches(1, 4))
+                .isEqualTo(ABSOLUTE_MAX_EVENT_COUNT - 1);
+        assertThat(
+                        mFrequencyCapDao.deleteAllExpiredHistogramData(
+                                CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.plusSeconds(
+                                        ABSOLUTE_MAX_EVENT_COUNT)))
+                .isEqualTo(1);
+
+        // Refill the table past the absolute max to verify eviction triggers at the right count
+        for (int i = 0; i <= ABSOLUTE_MAX_EVENT_COUNT; i++) {
+            mFrequencyCapDao.insertHistogramEvent(
+                    HistogramEventFixture.getValidHistogramEventBuilder()
+                            .setTimestamp(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI.plusSeconds(i))
+                            .build(),
+                    ABSOLUTE_MAX_EVENT_COUNT,
+                    LOWER_MAX_EVENT_COUNT);
+        }
+
+        assertThat(mFrequencyCapDao.getTotalNumHistogramEvents())
+                .isEqualTo(LOWER_MAX_EVENT_COUNT + 1);
+    }
+
     @Test
     public void testDeleteUnpairedHistogramIdentifiersFromEmptyTables() {
         assertThat(mFrequencyCapDao.deleteUnpairedHistogramIdentifiers()).isEqualTo(0);
@@ -1521,4 +1772,40 @@ public class FrequencyCapDaoTest {
                                         .minus(1, ChronoUnit.DAYS)))
                 .isEqualTo(0);
     }
+
+    private void assertIndexMatchesDatabase(Instant startTime) {
+        for (HistogramEvent event :
+                Arrays.asList(
+                        HistogramEventFixture.VALID_HISTOGRAM_EVENT,
+                        HistogramEventFixture.VALID_WIN_HISTOGRAM_EVENT)) {
+            assertThat(
+                            mFrequencyCapDao.getNumEventsForBuyerAfterTimeFromIndex(
+                                    event.getAdCounterKey(),
+                                    event.getBuyer(),
+                                    event.getAdEventType(),
+                                    startTime))
+                    .isEqualTo(
+                            mFrequencyCapDao.getNumEventsForBuyerAfterTime(
+                                    event.getAdCounterKey(),
+                                    event.getBuyer(),
+                                    event.getAdEventType(),
+                                    startTime));
+            assertThat(
+                            mFrequencyCapDao.getNumEventsForCustomAudienceAfterTimeFromIndex(
+                                    event.getAdCounterKey(),
+                                    event.getBuyer(),
+                                    event.getCustomAudienceOwner(),
+                                    event.getCustomAudienceName(),
+                                    event.getAdEventType(),
+                                    startTime))
+                    .isEqualTo(
+                            mFrequencyCapDao.getNumEventsForCustomAudienceAfterTime(
+                                    event.getAdCounterKey(),
+                                    event.getBuyer(),
+                                    event.getCustomAudienceOwner(),
+                                    event.getCustomAudienceName(),
+                                    event.getAdEventType(),
+                                    startTime));
+        }
+    }
 }
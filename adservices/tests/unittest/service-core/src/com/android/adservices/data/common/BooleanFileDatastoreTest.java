@@ -32,6 +32,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Set;
@@ -302,4 +304,76 @@ public class BooleanFileDatastoreTest {
             assertEquals(item.second, mDatastore.get(item.first));
         }
     }
+
+    @Test
+    public void testJournal_writesAreRestoredOnInitialize() throws IOException {
+        BooleanFileDatastore datastore = createJournaledDatastore();
+        datastore.put(TEST_KEY + 1, true);
+        datastore.put(TEST_KEY + 2, false);
+        datastore.putIfNew(TEST_KEY + 3, true);
+        datastore.remove(TEST_KEY + 1);
+        datastore.put(TEST_KEY + 2, true);
+
+        assertTrue(getJournalFile().exists());
+
+        BooleanFileDatastore restoredDatastore = createJournaledDatastore();
+        assertEquals(Set.of(TEST_KEY + 2, TEST_KEY + 3), restoredDatastore.keySet());
+        assertTrue(restoredDatastore.get(TEST_KEY + 2));
+        assertTrue(restoredDatastore.get(TEST_KEY + 3));
+    }
+
+    @Test
+    public void testJournal_compactedOnceFull() throws IOException {
+        BooleanFileDatastore datastore = createJournaledDatastore();
+        for (int i = 0; i < BooleanFileDatastore.MIN_JOURNAL_RECORDS_BEFORE_COMPACTION - 1; i++) {
+            datastore.put(TEST_KEY + i, true);
+        }
+        assertTrue(getJournalFile().exists());
+
+        datastore.clearAllTrue();
+
+        assertFalse(getJournalFile().exists());
+        assertTrue(createJournaledDatastore().keySet().isEmpty());
+    }
+
+    @Test
+    public void testJournal_truncatedRecordIsDropped() throws IOException {
+        BooleanFileDatastore datastore = createJournaledDatastore();
+        datastore.put(TEST_KEY + 1, true);
+        datastore.put(TEST_KEY + 2, false);
+        // A put cut short by a process death
+        try (FileOutputStream out = new FileOutputStream(getJournalFile(), /* append= */ true)) {
+            out.write(new byte[] {1, 0, 10, 'k'});
+        }
+
+        BooleanFileDatastore restoredDatastore = createJournaledDatastore();
+
+        assertEquals(Set.of(TEST_KEY + 1, TEST_KEY + 2), restoredDatastore.keySet());
+        assertFalse(getJournalFile().exists());
+    }
+
+    @Test
+    public void testJournal_replayedWhenDisabled() throws IOException {
+        createJournaledDatastore().put(TEST_KEY, true);
+
+        BooleanFileDatastore datastore =
+                new BooleanFileDatastore(PPAPI_CONTEXT, FILENAME, DATASTORE_VERSION);
+        datastore.initialize();
+
+        assertTrue(datastore.get(TEST_KEY));
+        assertFalse(getJournalFile().exists());
+    }
+
+    private BooleanFileDatastore createJournaledDatastore() throws IOException {
+        BooleanFileDatastore datastore =
+                new BooleanFileDatastore(
+                        PPAPI_CONTEXT, FILENAME, DATASTORE_VERSION, /* journalEnabled= */ true);
+        datastore.initialize();
+        return datastore;
+    }
+
+    private static File getJournalFile() {
+        return new File(
+                PPAPI_CONTEXT.getFilesDir(), FILENAME + BooleanFileDatastore.JOURNAL_FILE_SUFFIX);
+    }
 }
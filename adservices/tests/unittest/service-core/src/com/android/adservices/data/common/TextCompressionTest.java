@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.data.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Strings;
+
+import org.junit.Test;
+
+public class TextCompressionTest {
+    private static final String LARGE_TEXT =
+            Strings.repeat("{\"render_uri\":\"https://example.com/ad\"},", 100);
+
+    @Test
+    public void testCompress_largeText_isCompressed() {
+        String compressed = TextCompression.compress(LARGE_TEXT);
+
+        assertTrue(TextCompression.isCompressed(compressed));
+        assertTrue(compressed.length() < LARGE_TEXT.length());
+        assertEquals(LARGE_TEXT, TextCompression.decompress(compressed));
+    }
+
+    @Test
+    public void testCompress_smallText_isNotCompressed() {
+        String text = "[{\"render_uri\":\"https://example.com/ad\"}]";
+
+        String compressed = TextCompression.compress(text);
+
+        assertFalse(TextCompression.isCompressed(compressed));
+        assertEquals(text, compressed);
+        assertEquals(text, TextCompression.decompress(compressed));
+    }
+
+    @Test
+    public void testCompress_textStartingWithMarker_isEscaped() {
+        String text = TextCompression.COMPRESSED_PREFIX + "abc";
+
+        String compressed = TextCompression.compress(text);
+
+        assertFalse(TextCompression.isCompressed(compressed));
+        assertEquals(text, TextCompression.decompress(compressed));
+    }
+
+    @Test
+    public void testCompress_nullText() {
+        assertNull(TextCompression.compress(null));
+        assertNull(TextCompression.decompress(null));
+        assertFalse(TextCompression.isCompressed(null));
+    }
+
+    @Test
+    public void testDecompress_invalidValue_throws() {
+        String truncated =
+                TextCompression.compress(LARGE_TEXT)
+                        .substring(0, TextCompression.COMPRESSED_PREFIX.length() + 8);
+
+        assertThrows(IllegalArgumentException.class, () -> TextCompression.decompress(truncated));
+    }
+}
@@ -23,6 +23,7 @@ import static com.android.dx.mockito.inline.extended.ExtendedMockito.doReturn;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.doThrow;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.eq;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.never;
+import static com.android.dx.mockito.inline.extended.ExtendedMockito.times;
 import static com.android.dx.mockito.inline.extended.ExtendedMockito.verify;
 
 import static org.junit.Assert.assertEquals;
@@ -111,6 +112,43 @@ public class AppConsentDaoTest {
         assertTrue(exception.getCause() instanceof PackageManager.NameNotFoundException);
     }
 
+    @Test
+    public void testGetUidForInstalledPackageNameWithUidIndexLooksUpOnce() {
+        AppConsentDao appConsentDao =
+                new AppConsentDao(
+                        mDatastoreSpy,
+                        mContext.getPackageManager(),
+                        /* packageUidIndexEnabled= */ true);
+        mockPackageUid(AppConsentDaoFixture.APP10_PACKAGE_NAME, AppConsentDaoFixture.APP10_UID);
+
+        assertEquals(
+                AppConsentDaoFixture.APP10_UID,
+                appConsentDao.getUidForInstalledPackageName(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME));
+        assertEquals(
+                AppConsentDaoFixture.APP10_UID,
+                appConsentDao.getUidForInstalledPackageName(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME));
+        verify(
+                () ->
+                        PackageManagerCompatUtils.getPackageUid(
+                                any(), eq(AppConsentDaoFixture.APP10_PACKAGE_NAME), anyInt()));
+
+        // The package got reinstalled with a new UID
+        appConsentDao.clearPackageUid(AppConsentDaoFixture.APP10_PACKAGE_NAME);
+        mockPackageUid(AppConsentDaoFixture.APP10_PACKAGE_NAME, AppConsentDaoFixture.APP20_UID);
+
+        assertEquals(
+                AppConsentDaoFixture.APP20_UID,
+                appConsentDao.getUidForInstalledPackageName(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME));
+        verify(
+                () ->
+                        PackageManagerCompatUtils.getPackageUid(
+                                any(), eq(AppConsentDaoFixture.APP10_PACKAGE_NAME), anyInt()),
+                times(2));
+    }
+
     @Test
     public void testPackageNameToDatastoreKeySuccess() {
         mockPackageUid(AppConsentDaoFixture.APP10_PACKAGE_NAME, AppConsentDaoFixture.APP10_UID);
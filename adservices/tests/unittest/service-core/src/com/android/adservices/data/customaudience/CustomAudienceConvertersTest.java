@@ -26,10 +26,12 @@ import android.adservices.common.CommonFixture;
 
 import com.android.adservices.common.DBAdDataFixture;
 import com.android.adservices.data.common.DBAdData;
+import com.android.adservices.data.common.TextCompression;
 
 import org.json.JSONException;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -114,6 +116,40 @@ public class CustomAudienceConvertersTest {
         assertEquals(expected, output);
     }
 
+    @Test
+    public void testSerializeAndDeserialize_compressionEnabled() {
+        DBCustomAudience.Converters compressingConverter =
+                new DBCustomAudience.Converters(true, /* compressionEnabled= */ true);
+        List<DBAdData> input = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            input.addAll(
+                    AdDataFixture.getValidFilterAdsByBuyer(CommonFixture.VALID_BUYER_1).stream()
+                            .map(DBAdDataFixture::convertAdDataToDBAdData)
+                            .collect(Collectors.toList()));
+        }
+        String serializedString = compressingConverter.toJson(input);
+        assertTrue(TextCompression.isCompressed(serializedString));
+        assertTrue(serializedString.length() < mConverters.toJson(input).length());
+
+        // Compressed ad lists are read whether compression is enabled or not
+        assertEquals(input, compressingConverter.fromJson(serializedString));
+        assertEquals(input, mConverters.fromJson(serializedString));
+    }
+
+    @Test
+    public void testSerializeAndDeserialize_compressionEnabledSmallList() {
+        DBCustomAudience.Converters compressingConverter =
+                new DBCustomAudience.Converters(true, /* compressionEnabled= */ true);
+        List<DBAdData> input =
+                AdDataFixture.getValidAdsByBuyer(CommonFixture.VALID_BUYER_1).stream()
+                        .limit(1)
+                        .map(DBAdDataFixture::convertAdDataToDBAdData)
+                        .collect(Collectors.toList());
+        String serializedString = compressingConverter.toJson(input);
+        assertEquals(mConverters.toJson(input), serializedString);
+        assertEquals(input, compressingConverter.fromJson(serializedString));
+    }
+
     @Test
     public void testSerialize_nullInput() {
         assertNull(mConverters.toJson(null));
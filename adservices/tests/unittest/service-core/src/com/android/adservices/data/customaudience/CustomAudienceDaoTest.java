@@ -1060,6 +1060,61 @@ public class CustomAudienceDaoTest {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    public void testGetActiveCustomAudienceByBuyersFromSnapshotsFiltersInMemory() {
+        doReturn(TEST_FLAGS).when(FlagsFactory::getFlags);
+
+        List<AdTechIdentifier> buyers = Arrays.asList(BUYER_1, BUYER_2, BUYER_3);
+        mCustomAudienceDao.insertOrOverwriteCustomAudience(
+                CUSTOM_AUDIENCE_ACTIVE, DAILY_UPDATE_URI_1);
+        mCustomAudienceDao.insertOrOverwriteCustomAudience(
+                CUSTOM_AUDIENCE_EXPIRED, DAILY_UPDATE_URI_2);
+        mCustomAudienceDao.insertOrOverwriteCustomAudience(
+                CUSTOM_AUDIENCE_OUTDATED, DAILY_UPDATE_URI_2);
+        mCustomAudienceDao.insertOrOverwriteCustomAudience(
+                CUSTOM_AUDIENCE_NO_ADS, DAILY_UPDATE_URI_1);
+
+        List<DBCustomAudience> result =
+                mCustomAudienceDao.getActiveCustomAudienceByBuyersFromSnapshots(
+                        buyers,
+                        CURRENT_TIME,
+                        TEST_FLAGS.getFledgeCustomAudienceActiveTimeWindowInMs());
+        assertThat(result)
+                .containsExactlyElementsIn(
+                        mCustomAudienceDao.getActiveCustomAudienceByBuyers(
+                                buyers,
+                                CURRENT_TIME,
+                                TEST_FLAGS.getFledgeCustomAudienceActiveTimeWindowInMs()));
+        assertThat(result).containsExactly(CUSTOM_AUDIENCE_ACTIVE);
+    }
+
+    @Test
+    public void testGetActiveCustomAudienceByBuyersFromSnapshotsInvalidatedByWrites() {
+        doReturn(TEST_FLAGS).when(FlagsFactory::getFlags);
+
+        List<AdTechIdentifier> buyers = Arrays.asList(BUYER_1);
+        long activeWindowTimeMs = TEST_FLAGS.getFledgeCustomAudienceActiveTimeWindowInMs();
+        assertTrue(
+                mCustomAudienceDao
+                        .getActiveCustomAudienceByBuyersFromSnapshots(
+                                buyers, CURRENT_TIME, activeWindowTimeMs)
+                        .isEmpty());
+
+        mCustomAudienceDao.insertOrOverwriteCustomAudience(
+                CUSTOM_AUDIENCE_ACTIVE, DAILY_UPDATE_URI_1);
+        assertThat(
+                        mCustomAudienceDao.getActiveCustomAudienceByBuyersFromSnapshots(
+                                buyers, CURRENT_TIME, activeWindowTimeMs))
+                .containsExactly(CUSTOM_AUDIENCE_ACTIVE);
+
+        mCustomAudienceDao.deleteAllCustomAudienceDataByPrimaryKey(OWNER_1, BUYER_1, NAME_1);
+        assertTrue(
+                mCustomAudienceDao
+                        .getActiveCustomAudienceByBuyersFromSnapshots(
+                                buyers, CURRENT_TIME, activeWindowTimeMs)
+                        .isEmpty());
+    }
+
     @Test
     public void testGetNumActiveEligibleCustomAudienceBackgroundFetchData() {
         doReturn(TEST_FLAGS).when(FlagsFactory::getFlags);
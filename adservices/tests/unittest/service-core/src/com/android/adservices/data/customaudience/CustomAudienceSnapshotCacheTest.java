@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.data.customaudience;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.junit.Assert.assertEquals;
+
+import android.adservices.common.AdTechIdentifier;
+import android.adservices.common.CommonFixture;
+
+import com.android.adservices.customaudience.DBCustomAudienceFixture;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CustomAudienceSnapshotCacheTest {
+    private static final long ACTIVE_WINDOW_TIME_MS = Duration.ofDays(60).toMillis();
+    private static final Instant CURRENT_TIME = CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI;
+
+    private final CustomAudienceSnapshotCache mSnapshotCache = new CustomAudienceSnapshotCache();
+    private final List<List<AdTechIdentifier>> mLoadedBuyers = new ArrayList<>();
+
+    @Test
+    public void testGetActiveCustomAudiences_loadsEachBuyerOnce() {
+        DBCustomAudience customAudience1 = createCustomAudience(CommonFixture.VALID_BUYER_1);
+        DBCustomAudience customAudience2 = createCustomAudience(CommonFixture.VALID_BUYER_2);
+        CustomAudienceSnapshotCache.Loader loader =
+                buyers -> {
+                    mLoadedBuyers.add(new ArrayList<>(buyers));
+                    return Arrays.asList(customAudience1, customAudience2);
+                };
+
+        assertThat(
+                        mSnapshotCache.getActiveCustomAudiences(
+                                Collections.singletonList(CommonFixture.VALID_BUYER_1),
+                                CURRENT_TIME,
+                                ACTIVE_WINDOW_TIME_MS,
+                                loader))
+                .containsExactly(customAudience1);
+        assertThat(
+                        mSnapshotCache.getActiveCustomAudiences(
+                                Arrays.asList(
+                                        CommonFixture.VALID_BUYER_1, CommonFixture.VALID_BUYER_2),
+                                CURRENT_TIME,
+                                ACTIVE_WINDOW_TIME_MS,
+                                loader))
+                .containsExactly(customAudience1, customAudience2);
+
+        assertEquals(
+                Arrays.asList(
+                        Collections.singletonList(CommonFixture.VALID_BUYER_1),
+                        Collections.singletonList(CommonFixture.VALID_BUYER_2)),
+                mLoadedBuyers);
+    }
+
+    @Test
+    public void testGetActiveCustomAudiences_filtersInactiveCustomAudiences() {
+        DBCustomAudience customAudience = createCustomAudience(CommonFixture.VALID_BUYER_1);
+        CustomAudienceSnapshotCache.Loader loader =
+                buyers -> Collections.singletonList(customAudience);
+
+        assertThat(
+                        mSnapshotCache.getActiveCustomAudiences(
+                                Collections.singletonList(CommonFixture.VALID_BUYER_1),
+                                customAudience.getExpirationTime(),
+                                ACTIVE_WINDOW_TIME_MS,
+                                loader))
+                .isEmpty();
+        assertThat(
+                        mSnapshotCache.getActiveCustomAudiences(
+                                Collections.singletonList(CommonFixture.VALID_BUYER_1),
+                                customAudience
+                                        .getLastAdsAndBiddingDataUpdatedTime()
+                                        .plusMillis(ACTIVE_WINDOW_TIME_MS + 1),
+                                ACTIVE_WINDOW_TIME_MS,
+                                loader))
+                .isEmpty();
+    }
+
+    @Test
+    public void testGetActiveCustomAudiences_invalidatedWhileLoading_notCached() {
+        DBCustomAudience customAudience = createCustomAudience(CommonFixture.VALID_BUYER_1);
+        CustomAudienceSnapshotCache.Loader loader =
+                buyers -> {
+                    mLoadedBuyers.add(new ArrayList<>(buyers));
+                    if (mLoadedBuyers.size() == 1) {
+                        // A change is committed while the snapshot is loaded
+                        mSnapshotCache.invalidate();
+                    }
+                    return Collections.singletonList(customAudience);
+                };
+        List<AdTechIdentifier> buyers = Collections.singletonList(CommonFixture.VALID_BUYER_1);
+
+        mSnapshotCache.getActiveCustomAudiences(
+                buyers, CURRENT_TIME, ACTIVE_WINDOW_TIME_MS, loader);
+        mSnapshotCache.getActiveCustomAudiences(
+                buyers, CURRENT_TIME, ACTIVE_WINDOW_TIME_MS, loader);
+        mSnapshotCache.getActiveCustomAudiences(
+                buyers, CURRENT_TIME, ACTIVE_WINDOW_TIME_MS, loader);
+
+        assertEquals(2, mLoadedBuyers.size());
+    }
+
+    private static DBCustomAudience createCustomAudience(AdTechIdentifier buyer) {
+        return DBCustomAudienceFixture.getValidBuilderByBuyer(buyer)
+                .setActivationTime(CURRENT_TIME.minus(Duration.ofHours(1)))
+                .setExpirationTime(CURRENT_TIME.plus(Duration.ofDays(1)))
+                .setLastAdsAndBiddingDataUpdatedTime(CURRENT_TIME)
+                .build();
+    }
+}
@@ -46,6 +46,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 public class EnrollmentDaoTest {
@@ -289,6 +290,54 @@ public class EnrollmentDaoTest {
         assertEquals(e5, ENROLLMENT_DATA5);
     }
 
+    @Test
+    public void getEnrollmentDataFromMeasurementUrl_WithUrlIndex_matchesLikeTableScan() {
+        mEnrollmentDao.insert(ENROLLMENT_DATA2);
+        mEnrollmentDao.insert(ENROLLMENT_DATA5);
+        List<Uri> urls =
+                Arrays.asList(
+                        Uri.parse("https://us.5test.com/source"),
+                        Uri.parse("https://eu.5test.com/source"),
+                        Uri.parse("https://port-test.5test3.com:443/source"),
+                        Uri.parse("https://port-test.5test3.com:8080/source"),
+                        Uri.parse("https://prefix.2test.com/source"),
+                        Uri.parse("https://2test-middle.com/source"),
+                        Uri.parse("https://2test.co/source"));
+
+        for (boolean originMatch : new boolean[] {true, false}) {
+            when(mMockFlags.getEnforceEnrollmentOriginMatch()).thenReturn(originMatch);
+            for (Uri url : urls) {
+                when(mMockFlags.getEnrollmentMeasurementUrlIndexEnabled()).thenReturn(false);
+                EnrollmentData expected = mEnrollmentDao.getEnrollmentDataFromMeasurementUrl(url);
+                when(mMockFlags.getEnrollmentMeasurementUrlIndexEnabled()).thenReturn(true);
+                assertEquals(
+                        url.toString(),
+                        expected,
+                        mEnrollmentDao.getEnrollmentDataFromMeasurementUrl(url));
+            }
+        }
+    }
+
+    @Test
+    public void getEnrollmentDataFromMeasurementUrl_WithUrlIndex_updatedOnWrites() {
+        when(mMockFlags.getEnforceEnrollmentOriginMatch()).thenReturn(true);
+        when(mMockFlags.getEnrollmentMeasurementUrlIndexEnabled()).thenReturn(true);
+        Uri url = Uri.parse("https://us.5test.com/source");
+        assertNull(mEnrollmentDao.getEnrollmentDataFromMeasurementUrl(url));
+
+        mEnrollmentDao.insert(ENROLLMENT_DATA5);
+        assertEquals(ENROLLMENT_DATA5, mEnrollmentDao.getEnrollmentDataFromMeasurementUrl(url));
+
+        mEnrollmentDao.delete(ENROLLMENT_DATA5.getEnrollmentId());
+        assertNull(mEnrollmentDao.getEnrollmentDataFromMeasurementUrl(url));
+
+        mEnrollmentDao.insert(ENROLLMENT_DATA5);
+        assertEquals(ENROLLMENT_DATA5, mEnrollmentDao.getEnrollmentDataFromMeasurementUrl(url));
+
+        mEnrollmentDao.deleteAll();
+        assertNull(mEnrollmentDao.getEnrollmentDataFromMeasurementUrl(url));
+    }
+
     @Test
     public void getEnrollmentDataFromMeasurementUrl_ForOriginMatchAndSamePort_isMatch() {
         when(mMockFlags.getEnforceEnrollmentOriginMatch()).thenReturn(true);
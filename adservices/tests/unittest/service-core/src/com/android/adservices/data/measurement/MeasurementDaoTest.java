@@ -5751,6 +5751,99 @@ public class MeasurementDaoTest {
         assertEquals(regUri2, optAsyncRegistration.get().getRegistrationUri());
     }
 
+    @Test
+    public void testFetchNextQueuedAsyncRegistrations_ordersByRequestTimeAndExcludesOrigins() {
+        Uri origin1 = Uri.parse("https://adtech1.test");
+        Uri origin2 = Uri.parse("https://adtech2.test");
+        AsyncRegistration asyncRegistration1 =
+                AsyncRegistrationFixture.getValidAsyncRegistrationBuilder()
+                        .setRegistrationUri(origin1.buildUpon().appendPath("path1").build())
+                        .setRequestTime(3L)
+                        .build();
+        AsyncRegistration asyncRegistration2 =
+                AsyncRegistrationFixture.getValidAsyncRegistrationBuilder()
+                        .setRegistrationUri(origin2)
+                        .setRequestTime(2L)
+                        .build();
+        AsyncRegistration asyncRegistration3 =
+                AsyncRegistrationFixture.getValidAsyncRegistrationBuilder()
+                        .setRegistrationUri(origin1.buildUpon().appendPath("path2").build())
+                        .setRequestTime(1L)
+                        .build();
+
+        DatastoreManager datastoreManager = DatastoreManagerFactory.getDatastoreManager(sContext);
+        datastoreManager.runInTransaction(
+                (dao) -> {
+                    dao.insertAsyncRegistration(asyncRegistration1);
+                    dao.insertAsyncRegistration(asyncRegistration2);
+                    dao.insertAsyncRegistration(asyncRegistration3);
+                });
+
+        // Should fetch the two earliest registrations
+        Optional<List<AsyncRegistration>> asyncRegistrations =
+                datastoreManager.runInTransactionWithResult(
+                        (dao) -> dao.fetchNextQueuedAsyncRegistrations(4, Set.of(), 2));
+        assertTrue(asyncRegistrations.isPresent());
+        assertEquals(
+                List.of(asyncRegistration3.getId(), asyncRegistration2.getId()),
+                asyncRegistrations.get().stream()
+                        .map(AsyncRegistration::getId)
+                        .collect(Collectors.toList()));
+
+        // Should fetch only the registrations of origin1
+        asyncRegistrations =
+                datastoreManager.runInTransactionWithResult(
+                        (dao) -> dao.fetchNextQueuedAsyncRegistrations(4, Set.of(origin2), 10));
+        assertTrue(asyncRegistrations.isPresent());
+        assertEquals(
+                List.of(asyncRegistration3.getId(), asyncRegistration1.getId()),
+                asyncRegistrations.get().stream()
+                        .map(AsyncRegistration::getId)
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testFetchNextQueuedAsyncRegistrations_includesRegistrationsWithoutOrigin() {
+        Uri origin1 = Uri.parse("https://adtech1.test");
+        Uri origin2 = Uri.parse("https://adtech2.test");
+        AsyncRegistration asyncRegistration1 =
+                AsyncRegistrationFixture.getValidAsyncRegistrationBuilder()
+                        .setRegistrationUri(origin1)
+                        .setRequestTime(1L)
+                        .build();
+        AsyncRegistration asyncRegistration2 =
+                AsyncRegistrationFixture.getValidAsyncRegistrationBuilder()
+                        .setRegistrationUri(origin2)
+                        .setRequestTime(2L)
+                        .build();
+
+        DatastoreManager datastoreManager = DatastoreManagerFactory.getDatastoreManager(sContext);
+        datastoreManager.runInTransaction(
+                (dao) -> {
+                    dao.insertAsyncRegistration(asyncRegistration1);
+                    dao.insertAsyncRegistration(asyncRegistration2);
+                });
+        // Registrations migrated from a version without the column may have no origin
+        SQLiteDatabase db = MeasurementDbHelper.getInstance(sContext).safeGetWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.putNull(MeasurementTables.AsyncRegistrationContract.REGISTRATION_ORIGIN);
+        db.update(
+                MeasurementTables.AsyncRegistrationContract.TABLE,
+                values,
+                MeasurementTables.AsyncRegistrationContract.ID + " = ?",
+                new String[] {asyncRegistration1.getId()});
+
+        Optional<List<AsyncRegistration>> asyncRegistrations =
+                datastoreManager.runInTransactionWithResult(
+                        (dao) -> dao.fetchNextQueuedAsyncRegistrations(4, Set.of(origin2), 10));
+        assertTrue(asyncRegistrations.isPresent());
+        assertEquals(
+                List.of(asyncRegistration1.getId()),
+                asyncRegistrations.get().stream()
+                        .map(AsyncRegistration::getId)
+                        .collect(Collectors.toList()));
+    }
+
     /** Test that AsyncRegistration is deleted correctly. */
     @Test
     public void testDeleteAsyncRegistration() {
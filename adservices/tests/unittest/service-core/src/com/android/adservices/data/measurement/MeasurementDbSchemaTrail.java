@@ -1184,6 +1184,44 @@ public class MeasurementDbSchemaTrail {
                     + " TEXT "
                     + ")";
 
+    public static final String CREATE_TABLE_ASYNC_REGISTRATION_V17 =
+            "CREATE TABLE "
+                    + AsyncRegistrationContract.TABLE
+                    + " ("
+                    + AsyncRegistrationContract.ID
+                    + " TEXT PRIMARY KEY NOT NULL, "
+                    + AsyncRegistrationContract.REGISTRATION_URI
+                    + " TEXT, "
+                    + AsyncRegistrationContract.WEB_DESTINATION
+                    + " TEXT, "
+                    + AsyncRegistrationContract.OS_DESTINATION
+                    + " TEXT, "
+                    + AsyncRegistrationContract.VERIFIED_DESTINATION
+                    + " TEXT, "
+                    + AsyncRegistrationContract.TOP_ORIGIN
+                    + " TEXT, "
+                    + AsyncRegistrationContract.SOURCE_TYPE
+                    + " INTEGER, "
+                    + AsyncRegistrationContract.REGISTRANT
+                    + " TEXT, "
+                    + AsyncRegistrationContract.REQUEST_TIME
+                    + " INTEGER, "
+                    + AsyncRegistrationContract.RETRY_COUNT
+                    + " INTEGER, "
+                    + AsyncRegistrationContract.TYPE
+                    + " INTEGER, "
+                    + AsyncRegistrationContract.DEBUG_KEY_ALLOWED
+                    + " INTEGER, "
+                    + AsyncRegistrationContract.AD_ID_PERMISSION
+                    + " INTEGER, "
+                    + AsyncRegistrationContract.REGISTRATION_ID
+                    + " TEXT NOT NULL,"
+                    + AsyncRegistrationContract.PLATFORM_AD_ID
+                    + " TEXT, "
+                    + AsyncRegistrationContract.REGISTRATION_ORIGIN
+                    + " TEXT "
+                    + ")";
+
     private static final String CREATE_TABLE_DEBUG_REPORT_V6 =
             "CREATE TABLE IF NOT EXISTS "
                     + DebugReportContract.TABLE
@@ -1489,6 +1527,12 @@ public class MeasurementDbSchemaTrail {
         return createStatements;
     }
 
+    private static Map<String, String> getCreateStatementByTableV17() {
+        Map<String, String> createStatements = new HashMap<>(getCreateStatementByTableV16());
+        createStatements.put(AsyncRegistrationContract.TABLE, CREATE_TABLE_ASYNC_REGISTRATION_V17);
+        return createStatements;
+    }
+
     private static Map<String, String> getCreateIndexesV7() {
         Map<String, String> createIndexes = new HashMap<>();
         createIndexes.putAll(CREATE_INDEXES_V6);
@@ -1536,6 +1580,26 @@ public class MeasurementDbSchemaTrail {
         return getCreateIndexesV15();
     }
 
+    private static Map<String, String> getCreateIndexesV17() {
+        Map<String, String> createIndexes = getCreateIndexesV16();
+        createIndexes.put(
+                INDEX_PREFIX + AsyncRegistrationContract.TABLE + "_rt_rc_ro",
+                "CREATE INDEX "
+                        + INDEX_PREFIX
+                        + AsyncRegistrationContract.TABLE
+                        + "_rt_rc_ro"
+                        + " ON "
+                        + AsyncRegistrationContract.TABLE
+                        + "("
+                        + AsyncRegistrationContract.REQUEST_TIME
+                        + ", "
+                        + AsyncRegistrationContract.RETRY_COUNT
+                        + ", "
+                        + AsyncRegistrationContract.REGISTRATION_ORIGIN
+                        + ")");
+        return createIndexes;
+    }
+
     private static final Map<Integer, Collection<String>> CREATE_TABLES_STATEMENTS_BY_VERSION =
             new ImmutableMap.Builder<Integer, Collection<String>>()
                     .put(6, CREATE_STATEMENT_BY_TABLE_V6.values())
@@ -1549,6 +1613,7 @@ public class MeasurementDbSchemaTrail {
                     .put(14, getCreateStatementByTableV14().values())
                     .put(15, getCreateStatementByTableV15().values())
                     .put(16, getCreateStatementByTableV16().values())
+                    .put(17, getCreateStatementByTableV17().values())
                     .build();
 
     private static final Map<Integer, Collection<String>> CREATE_INDEXES_STATEMENTS_BY_VERSION =
@@ -1564,6 +1629,7 @@ public class MeasurementDbSchemaTrail {
                     .put(14, getCreateIndexesV14().values())
                     .put(15, getCreateIndexesV15().values())
                     .put(16, getCreateIndexesV16().values())
+                    .put(17, getCreateIndexesV17().values())
                     .build();
 
     /**
@@ -409,6 +409,10 @@ public class ContentValueFixtures {
         return asyncRegistration;
     }
 
+    public static ContentValues generateAsyncRegistrationContentValuesV16() {
+        return generateAsyncRegistrationContentValuesV13();
+    }
+
     public static ContentValues generateSourceContentValuesV1() {
         ContentValues source = new ContentValues();
 
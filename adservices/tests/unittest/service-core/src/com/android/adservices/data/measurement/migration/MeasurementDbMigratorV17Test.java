@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.data.measurement.migration;
+
+import static com.android.adservices.data.DbTestUtil.getDbHelperForTest;
+import static com.android.adservices.data.measurement.MeasurementTables.AsyncRegistrationContract;
+import static com.android.adservices.data.measurement.migration.MigrationTestHelper.populateDb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.android.adservices.data.measurement.MeasurementDbHelper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MeasurementDbMigratorV17Test extends MeasurementDbMigratorTestBase {
+    private static final String ASYNC_REGISTRATION_ID_1 = "async_registration_id_1";
+    private static final String ASYNC_REGISTRATION_ID_2 = "async_registration_id_2";
+
+    @Test
+    public void performMigration_v16ToV17WithData_maintainsDataIntegrity() {
+        // Setup
+        MeasurementDbHelper dbHelper =
+                new MeasurementDbHelper(
+                        sContext,
+                        MEASUREMENT_DATABASE_NAME_FOR_MIGRATION,
+                        16,
+                        getDbHelperForTest());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        Map<String, List<ContentValues>> fakeData = createFakeDataAsyncRegistrationsV16();
+        populateDb(db, fakeData);
+
+        // Execution
+        getTestSubject().performMigration(db, 16, 17);
+
+        // Assertion
+        MigrationTestHelper.verifyDataInDb(db, fakeData);
+        // Check that the registration origin is populated from the registration URI
+        Map<String, String> registrationOrigins = new LinkedHashMap<>();
+        try (Cursor cursor =
+                db.query(
+                        AsyncRegistrationContract.TABLE,
+                        new String[] {
+                            AsyncRegistrationContract.ID,
+                            AsyncRegistrationContract.REGISTRATION_ORIGIN
+                        },
+                        null,
+                        null,
+                        null,
+                        null,
+                        null)) {
+            while (cursor.moveToNext()) {
+                registrationOrigins.put(
+                        cursor.getString(cursor.getColumnIndex(AsyncRegistrationContract.ID)),
+                        cursor.getString(
+                                cursor.getColumnIndex(
+                                        AsyncRegistrationContract.REGISTRATION_ORIGIN)));
+            }
+        }
+
+        assertEquals(2, registrationOrigins.size());
+        assertEquals(
+                ContentValueFixtures.AsyncRegistrationValues.REGISTRATION_URI,
+                registrationOrigins.get(ASYNC_REGISTRATION_ID_1));
+        assertEquals(
+                "https://subdomain.example.test",
+                registrationOrigins.get(ASYNC_REGISTRATION_ID_2));
+    }
+
+    @Test
+    public void performMigration_v16ToV17_createsIndex() {
+        // Setup
+        MeasurementDbHelper dbHelper =
+                new MeasurementDbHelper(
+                        sContext,
+                        MEASUREMENT_DATABASE_NAME_FOR_MIGRATION,
+                        16,
+                        getDbHelperForTest());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // Execution
+        getTestSubject().performMigration(db, 16, 17);
+
+        // Assertion
+        try (Cursor cursor =
+                db.query(
+                        "sqlite_master",
+                        new String[] {"name"},
+                        "type = 'index' AND name = ?",
+                        new String[] {"idx_msmt_async_registration_contract_rt_rc_ro"},
+                        null,
+                        null,
+                        null)) {
+            assertTrue(cursor.moveToNext());
+        }
+    }
+
+    private Map<String, List<ContentValues>> createFakeDataAsyncRegistrationsV16() {
+        Map<String, List<ContentValues>> tableRowsMap = new LinkedHashMap<>();
+        // Async Registration Table
+        List<ContentValues> asyncRegistrationRows = new ArrayList<>();
+        ContentValues asyncRegistration1 =
+                ContentValueFixtures.generateAsyncRegistrationContentValuesV16();
+        asyncRegistration1.put(AsyncRegistrationContract.ID, ASYNC_REGISTRATION_ID_1);
+        asyncRegistrationRows.add(asyncRegistration1);
+        ContentValues asyncRegistration2 =
+                ContentValueFixtures.generateAsyncRegistrationContentValuesV16();
+        asyncRegistration2.put(AsyncRegistrationContract.ID, ASYNC_REGISTRATION_ID_2);
+        asyncRegistration2.put(
+                AsyncRegistrationContract.REGISTRATION_URI,
+                "https://subdomain.example.test/path?key=value");
+        asyncRegistrationRows.add(asyncRegistration2);
+        tableRowsMap.put(AsyncRegistrationContract.TABLE, asyncRegistrationRows);
+
+        return tableRowsMap;
+    }
+
+    @Override
+    int getTargetVersion() {
+        return 17;
+    }
+
+    @Override
+    AbstractMeasurementDbMigrator getTestSubject() {
+        return new MeasurementDbMigratorV17();
+    }
+}
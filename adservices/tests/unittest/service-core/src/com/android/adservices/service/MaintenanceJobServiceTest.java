@@ -52,6 +52,8 @@ import androidx.test.core.app.ApplicationProvider;
 
 import com.android.adservices.data.adselection.AdSelectionDatabase;
 import com.android.adservices.data.adselection.AdSelectionEntryDao;
+import com.android.adservices.data.adselection.FrequencyCapDao;
+import com.android.adservices.data.adselection.SharedStorageDatabase;
 import com.android.adservices.errorlogging.ErrorLogUtil;
 import com.android.adservices.service.common.FledgeMaintenanceTasksWorker;
 import com.android.adservices.service.common.compat.ServiceCompatUtils;
@@ -113,7 +115,15 @@ public class MaintenanceJobServiceTest {
                         .build()
                         .adSelectionEntryDao();
 
-        mFledgeMaintenanceTasksWorkerSpy = new FledgeMaintenanceTasksWorker(adSelectionEntryDao);
+        FrequencyCapDao frequencyCapDao =
+                Room.inMemoryDatabaseBuilder(
+                                ApplicationProvider.getApplicationContext(),
+                                SharedStorageDatabase.class)
+                        .build()
+                        .frequencyCapDao();
+
+        mFledgeMaintenanceTasksWorkerSpy =
+                new FledgeMaintenanceTasksWorker(adSelectionEntryDao, frequencyCapDao);
 
         // Start a mockitoSession to mock static method
         mStaticMockSession =
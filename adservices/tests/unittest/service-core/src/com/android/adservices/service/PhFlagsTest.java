@@ -32,6 +32,8 @@ import static com.android.adservices.service.Flags.CLASSIFIER_FORCE_USE_BUNDLED_
 import static com.android.adservices.service.Flags.CLASSIFIER_NUMBER_OF_TOP_LABELS;
 import static com.android.adservices.service.Flags.CLASSIFIER_THRESHOLD;
 import static com.android.adservices.service.Flags.COMPAT_LOGGING_KILL_SWITCH;
+import static com.android.adservices.service.Flags.CONSENT_MANAGER_ENABLE_APP_UID_INDEX;
+import static com.android.adservices.service.Flags.CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT;
 import static com.android.adservices.service.Flags.DEFAULT_ADSERVICES_CONSENT_MIGRATION_LOGGING_ENABLED;
 import static com.android.adservices.service.Flags.DEFAULT_BLOCKED_TOPICS_SOURCE_OF_TRUTH;
 import static com.android.adservices.service.Flags.DEFAULT_CLASSIFIER_TYPE;
@@ -50,6 +52,7 @@ import static com.android.adservices.service.Flags.DOWNLOADER_CONNECTION_TIMEOUT
 import static com.android.adservices.service.Flags.DOWNLOADER_MAX_DOWNLOAD_THREADS;
 import static com.android.adservices.service.Flags.DOWNLOADER_READ_TIMEOUT_MS;
 import static com.android.adservices.service.Flags.ENABLE_APPSEARCH_CONSENT_DATA;
+import static com.android.adservices.service.Flags.ENABLE_CONSENT_DATASTORE_JOURNAL;
 import static com.android.adservices.service.Flags.ENABLE_ENROLLMENT_TEST_SEED;
 import static com.android.adservices.service.Flags.ENFORCE_FOREGROUND_STATUS_FLEDGE_CUSTOM_AUDIENCE;
 import static com.android.adservices.service.Flags.ENFORCE_FOREGROUND_STATUS_FLEDGE_OVERRIDES;
@@ -58,8 +61,15 @@ import static com.android.adservices.service.Flags.ENFORCE_FOREGROUND_STATUS_FLE
 import static com.android.adservices.service.Flags.ENFORCE_FOREGROUND_STATUS_FLEDGE_RUN_AD_SELECTION;
 import static com.android.adservices.service.Flags.ENFORCE_FOREGROUND_STATUS_TOPICS;
 import static com.android.adservices.service.Flags.ENFORCE_ISOLATE_MAX_HEAP_SIZE;
+import static com.android.adservices.service.Flags.ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX;
 import static com.android.adservices.service.Flags.FLEDGE_AD_COUNTER_HISTOGRAM_ABSOLUTE_MAX_EVENT_COUNT;
+import static com.android.adservices.service.Flags.FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED;
+import static com.android.adservices.service.Flags.FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED;
+import static com.android.adservices.service.Flags.FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE;
+import static com.android.adservices.service.Flags.FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED;
 import static com.android.adservices.service.Flags.FLEDGE_AD_COUNTER_HISTOGRAM_LOWER_MAX_EVENT_COUNT;
+import static com.android.adservices.service.Flags.FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED;
+import static com.android.adservices.service.Flags.FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE;
 import static com.android.adservices.service.Flags.FLEDGE_AD_SELECTION_BIDDING_LOGIC_JS_VERSION;
 import static com.android.adservices.service.Flags.FLEDGE_AD_SELECTION_BIDDING_TIMEOUT_PER_BUYER_MS;
 import static com.android.adservices.service.Flags.FLEDGE_AD_SELECTION_BIDDING_TIMEOUT_PER_CA_MS;
@@ -99,10 +109,18 @@ import static com.android.adservices.service.Flags.FLEDGE_CUSTOM_AUDIENCE_MAX_TR
 import static com.android.adservices.service.Flags.FLEDGE_CUSTOM_AUDIENCE_MAX_USER_BIDDING_SIGNALS_SIZE_B;
 import static com.android.adservices.service.Flags.FLEDGE_CUSTOM_AUDIENCE_PER_APP_MAX_COUNT;
 import static com.android.adservices.service.Flags.FLEDGE_CUSTOM_AUDIENCE_SERVICE_KILL_SWITCH;
+import static com.android.adservices.service.Flags.FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED;
+import static com.android.adservices.service.Flags.FLEDGE_ENABLE_STORAGE_COMPRESSION;
 import static com.android.adservices.service.Flags.FLEDGE_HTTP_CACHE_DEFAULT_MAX_AGE_SECONDS;
 import static com.android.adservices.service.Flags.FLEDGE_HTTP_CACHE_ENABLE;
 import static com.android.adservices.service.Flags.FLEDGE_HTTP_CACHE_ENABLE_JS_CACHING;
+import static com.android.adservices.service.Flags.FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION;
 import static com.android.adservices.service.Flags.FLEDGE_HTTP_CACHE_MAX_ENTRIES;
+import static com.android.adservices.service.Flags.FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES;
+import static com.android.adservices.service.Flags.FLEDGE_HTTP_ENABLE_REQUEST_COALESCING;
+import static com.android.adservices.service.Flags.FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED;
+import static com.android.adservices.service.Flags.FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS;
+import static com.android.adservices.service.Flags.FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES;
 import static com.android.adservices.service.Flags.FLEDGE_REGISTER_AD_BEACON_ENABLED;
 import static com.android.adservices.service.Flags.FLEDGE_REPORT_IMPRESSION_MAX_REGISTERED_AD_BEACONS_PER_AD_TECH_COUNT;
 import static com.android.adservices.service.Flags.FLEDGE_REPORT_IMPRESSION_MAX_REGISTERED_AD_BEACONS_TOTAL_COUNT;
@@ -130,10 +148,17 @@ import static com.android.adservices.service.Flags.MEASUREMENT_API_REGISTER_TRIG
 import static com.android.adservices.service.Flags.MEASUREMENT_API_REGISTER_WEB_SOURCE_KILL_SWITCH;
 import static com.android.adservices.service.Flags.MEASUREMENT_API_REGISTER_WEB_TRIGGER_KILL_SWITCH;
 import static com.android.adservices.service.Flags.MEASUREMENT_API_STATUS_KILL_SWITCH;
+import static com.android.adservices.service.Flags.MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE;
+import static com.android.adservices.service.Flags.MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM;
+import static com.android.adservices.service.Flags.MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM;
 import static com.android.adservices.service.Flags.MEASUREMENT_ATTRIBUTION_FALLBACK_JOB_KILL_SWITCH;
 import static com.android.adservices.service.Flags.MEASUREMENT_ATTRIBUTION_FALLBACK_JOB_PERIOD_MS;
+import static com.android.adservices.service.Flags.MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION;
 import static com.android.adservices.service.Flags.MEASUREMENT_DATA_EXPIRY_WINDOW_MS;
 import static com.android.adservices.service.Flags.MEASUREMENT_DB_SIZE_LIMIT;
+import static com.android.adservices.service.Flags.MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION;
+import static com.android.adservices.service.Flags.MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH;
+import static com.android.adservices.service.Flags.MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD;
 import static com.android.adservices.service.Flags.MEASUREMENT_ENABLE_CONFIGURABLE_EVENT_REPORTING_WINDOWS;
 import static com.android.adservices.service.Flags.MEASUREMENT_ENABLE_DEBUG_REPORT;
 import static com.android.adservices.service.Flags.MEASUREMENT_ENABLE_SOURCE_DEBUG_REPORT;
@@ -182,6 +207,9 @@ import static com.android.adservices.service.Flags.MEASUREMENT_REGISTRATION_INPU
 import static com.android.adservices.service.Flags.MEASUREMENT_REGISTRATION_JOB_QUEUE_KILL_SWITCH;
 import static com.android.adservices.service.Flags.MEASUREMENT_REGISTRATION_JOB_TRIGGER_DELAY_MS;
 import static com.android.adservices.service.Flags.MEASUREMENT_REGISTRATION_JOB_TRIGGER_MAX_DELAY_MS;
+import static com.android.adservices.service.Flags.MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE;
+import static com.android.adservices.service.Flags.MEASUREMENT_REPORT_UPLOAD_PARALLELISM;
+import static com.android.adservices.service.Flags.MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM;
 import static com.android.adservices.service.Flags.MEASUREMENT_ROLLBACK_DELETION_APP_SEARCH_KILL_SWITCH;
 import static com.android.adservices.service.Flags.MEASUREMENT_ROLLBACK_DELETION_KILL_SWITCH;
 import static com.android.adservices.service.Flags.NUMBER_OF_EPOCHS_TO_KEEP_IN_HISTORY;
@@ -194,6 +222,7 @@ import static com.android.adservices.service.Flags.RECORD_MANUAL_INTERACTION_ENA
 import static com.android.adservices.service.Flags.SDK_REQUEST_PERMITS_PER_SECOND;
 import static com.android.adservices.service.Flags.TOPICS_API_APP_REQUEST_PERMITS_PER_SECOND;
 import static com.android.adservices.service.Flags.TOPICS_API_SDK_REQUEST_PERMITS_PER_SECOND;
+import static com.android.adservices.service.Flags.TOPICS_ENABLE_USAGE_HISTORY_BUFFER;
 import static com.android.adservices.service.Flags.TOPICS_EPOCH_JOB_FLEX_MS;
 import static com.android.adservices.service.Flags.TOPICS_EPOCH_JOB_PERIOD_MS;
 import static com.android.adservices.service.Flags.TOPICS_KILL_SWITCH;
@@ -202,6 +231,8 @@ import static com.android.adservices.service.Flags.TOPICS_NUMBER_OF_RANDOM_TOPIC
 import static com.android.adservices.service.Flags.TOPICS_NUMBER_OF_TOP_TOPICS;
 import static com.android.adservices.service.Flags.TOPICS_ON_DEVICE_CLASSIFIER_KILL_SWITCH;
 import static com.android.adservices.service.Flags.TOPICS_PERCENTAGE_FOR_RANDOM_TOPIC;
+import static com.android.adservices.service.Flags.TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS;
+import static com.android.adservices.service.Flags.TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES;
 import static com.android.adservices.service.Flags.UI_DIALOG_FRAGMENT;
 import static com.android.adservices.service.Flags.UI_EEA_COUNTRIES;
 import static com.android.adservices.service.Flags.UI_FEATURE_TYPE_LOGGING_ENABLED;
@@ -227,6 +258,8 @@ import static com.android.adservices.service.PhFlags.KEY_CLASSIFIER_NUMBER_OF_TO
 import static com.android.adservices.service.PhFlags.KEY_CLASSIFIER_THRESHOLD;
 import static com.android.adservices.service.PhFlags.KEY_CLASSIFIER_TYPE;
 import static com.android.adservices.service.PhFlags.KEY_COMPAT_LOGGING_KILL_SWITCH;
+import static com.android.adservices.service.PhFlags.KEY_CONSENT_MANAGER_ENABLE_APP_UID_INDEX;
+import static com.android.adservices.service.PhFlags.KEY_CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT;
 import static com.android.adservices.service.PhFlags.KEY_CONSENT_SOURCE_OF_TRUTH;
 import static com.android.adservices.service.PhFlags.KEY_DISABLE_FLEDGE_ENROLLMENT_CHECK;
 import static com.android.adservices.service.PhFlags.KEY_DISABLE_MEASUREMENT_ENROLLMENT_CHECK;
@@ -237,14 +270,22 @@ import static com.android.adservices.service.PhFlags.KEY_DOWNLOADER_READ_TIMEOUT
 import static com.android.adservices.service.PhFlags.KEY_ENABLE_AD_SERVICES_SYSTEM_API;
 import static com.android.adservices.service.PhFlags.KEY_ENABLE_APPSEARCH_CONSENT_DATA;
 import static com.android.adservices.service.PhFlags.KEY_ENABLE_BACK_COMPAT;
+import static com.android.adservices.service.PhFlags.KEY_ENABLE_CONSENT_DATASTORE_JOURNAL;
 import static com.android.adservices.service.PhFlags.KEY_ENABLE_ENROLLMENT_TEST_SEED;
 import static com.android.adservices.service.PhFlags.KEY_ENFORCE_FOREGROUND_STATUS_TOPICS;
 import static com.android.adservices.service.PhFlags.KEY_ENFORCE_ISOLATE_MAX_HEAP_SIZE;
 import static com.android.adservices.service.PhFlags.KEY_ENROLLMENT_BLOCKLIST_IDS;
+import static com.android.adservices.service.PhFlags.KEY_ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX;
 import static com.android.adservices.service.PhFlags.KEY_ERROR_CODE_LOGGING_DENY_LIST;
 import static com.android.adservices.service.PhFlags.KEY_EU_NOTIF_FLOW_CHANGE_ENABLED;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_COUNTER_HISTOGRAM_ABSOLUTE_MAX_EVENT_COUNT;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_COUNTER_HISTOGRAM_LOWER_MAX_EVENT_COUNT;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_SELECTION_BIDDING_LOGIC_JS_VERSION;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_SELECTION_BIDDING_TIMEOUT_PER_BUYER_MS;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_AD_SELECTION_BIDDING_TIMEOUT_PER_CA_MS;
@@ -283,10 +324,18 @@ import static com.android.adservices.service.PhFlags.KEY_FLEDGE_CUSTOM_AUDIENCE_
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_CUSTOM_AUDIENCE_MAX_USER_BIDDING_SIGNALS_SIZE_B;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_CUSTOM_AUDIENCE_PER_APP_MAX_COUNT;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_CUSTOM_AUDIENCE_SERVICE_KILL_SWITCH;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_ENABLE_STORAGE_COMPRESSION;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_HTTP_CACHE_DEFAULT_MAX_AGE_SECONDS;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_HTTP_CACHE_ENABLE;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_HTTP_CACHE_ENABLE_JS_CACHING;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_HTTP_CACHE_MAX_ENTRIES;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_HTTP_ENABLE_REQUEST_COALESCING;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS;
+import static com.android.adservices.service.PhFlags.KEY_FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_REPORT_IMPRESSION_MAX_REGISTERED_AD_BEACONS_PER_AD_TECH_COUNT;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_REPORT_IMPRESSION_MAX_REGISTERED_AD_BEACONS_TOTAL_COUNT;
 import static com.android.adservices.service.PhFlags.KEY_FLEDGE_REPORT_IMPRESSION_OVERALL_TIMEOUT_MS;
@@ -315,15 +364,22 @@ import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_API_REGISTE
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_API_REGISTER_WEB_SOURCE_KILL_SWITCH;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_API_REGISTER_WEB_TRIGGER_KILL_SWITCH;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_API_STATUS_KILL_SWITCH;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ATTRIBUTION_FALLBACK_JOB_KILL_SWITCH;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ATTRIBUTION_FALLBACK_JOB_PERIOD_MS;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_DATA_EXPIRY_WINDOW_MS;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_DB_SIZE_LIMIT;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_DEBUG_JOIN_KEY_ENROLLMENT_ALLOWLIST;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_DEBUG_JOIN_KEY_HASH_LIMIT;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_DEBUG_KEY_AD_ID_MATCHING_ENROLLMENT_BLOCKLIST;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_DEBUG_KEY_AD_ID_MATCHING_LIMIT;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ENABLE_COARSE_EVENT_REPORT_DESTINATIONS;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ENABLE_CONFIGURABLE_EVENT_REPORTING_WINDOWS;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ENABLE_DEBUG_REPORT;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ENABLE_SOURCE_DEBUG_REPORT;
@@ -374,6 +430,9 @@ import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_REGISTRATIO
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_REGISTRATION_JOB_QUEUE_KILL_SWITCH;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_REGISTRATION_JOB_TRIGGER_DELAY_MS;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_REGISTRATION_JOB_TRIGGER_MAX_DELAY_MS;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_REPORT_UPLOAD_PARALLELISM;
+import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ROLLBACK_DELETION_APP_SEARCH_KILL_SWITCH;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_ROLLBACK_DELETION_KILL_SWITCH;
 import static com.android.adservices.service.PhFlags.KEY_MEASUREMENT_VTC_CONFIGURABLE_MAX_EVENT_REPORTS_COUNT;
@@ -385,6 +444,7 @@ import static com.android.adservices.service.PhFlags.KEY_RECORD_MANUAL_INTERACTI
 import static com.android.adservices.service.PhFlags.KEY_SDK_REQUEST_PERMITS_PER_SECOND;
 import static com.android.adservices.service.PhFlags.KEY_TOPICS_API_APP_REQUEST_PERMITS_PER_SECOND;
 import static com.android.adservices.service.PhFlags.KEY_TOPICS_API_SDK_REQUEST_PERMITS_PER_SECOND;
+import static com.android.adservices.service.PhFlags.KEY_TOPICS_ENABLE_USAGE_HISTORY_BUFFER;
 import static com.android.adservices.service.PhFlags.KEY_TOPICS_EPOCH_JOB_FLEX_MS;
 import static com.android.adservices.service.PhFlags.KEY_TOPICS_EPOCH_JOB_PERIOD_MS;
 import static com.android.adservices.service.PhFlags.KEY_TOPICS_KILL_SWITCH;
@@ -393,6 +453,8 @@ import static com.android.adservices.service.PhFlags.KEY_TOPICS_NUMBER_OF_RANDOM
 import static com.android.adservices.service.PhFlags.KEY_TOPICS_NUMBER_OF_TOP_TOPICS;
 import static com.android.adservices.service.PhFlags.KEY_TOPICS_ON_DEVICE_CLASSIFIER_KILL_SWITCH;
 import static com.android.adservices.service.PhFlags.KEY_TOPICS_PERCENTAGE_FOR_RANDOM_TOPIC;
+import static com.android.adservices.service.PhFlags.KEY_TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS;
+import static com.android.adservices.service.PhFlags.KEY_TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES;
 import static com.android.adservices.service.PhFlags.KEY_U18_UX_ENABLED;
 import static com.android.adservices.service.PhFlags.KEY_UI_DIALOG_FRAGMENT_ENABLED;
 import static com.android.adservices.service.PhFlags.KEY_UI_EEA_COUNTRIES;
@@ -620,6 +682,60 @@ public class PhFlagsTest {
                 });
     }
 
+    @Test
+    public void testGetTopicsEnableUsageHistoryBuffer() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getTopicsEnableUsageHistoryBuffer())
+                .isEqualTo(TOPICS_ENABLE_USAGE_HISTORY_BUFFER);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_TOPICS_ENABLE_USAGE_HISTORY_BUFFER,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getTopicsEnableUsageHistoryBuffer()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetTopicsUsageHistoryBufferMaxEntries() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getTopicsUsageHistoryBufferMaxEntries())
+                .isEqualTo(TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = 10;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_TOPICS_USAGE_HISTORY_BUFFER_MAX_ENTRIES,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getTopicsUsageHistoryBufferMaxEntries()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetTopicsUsageHistoryBufferFlushDelayMs() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getTopicsUsageHistoryBufferFlushDelayMs())
+                .isEqualTo(TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS);
+
+        // Now overriding with the value from PH.
+        final long phOverridingValue = 1000L;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS,
+                Long.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getTopicsUsageHistoryBufferFlushDelayMs()).isEqualTo(phOverridingValue);
+    }
+
     @Test
     public void testClassifierType() {
         // Without any overriding, the value is the hard coded constant.
@@ -816,6 +932,43 @@ public class PhFlagsTest {
         assertThat(phFlags.getAdSelectionMaxConcurrentBiddingCount()).isEqualTo(phOverrideValue);
     }
 
+    @Test
+    public void testGetFledgeAdSelectionBatchBiddingEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeAdSelectionBatchBiddingEnabled())
+                .isEqualTo(FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_ENABLED,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeAdSelectionBatchBiddingEnabled()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeAdSelectionBatchBiddingMaxBatchSize() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeAdSelectionBatchBiddingMaxBatchSize())
+                .isEqualTo(FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = 7;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_AD_SELECTION_BATCH_BIDDING_MAX_BATCH_SIZE,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeAdSelectionBatchBiddingMaxBatchSize())
+                .isEqualTo(phOverridingValue);
+    }
+
     @Test
     public void testGetAdSelectionBiddingTimeoutPerCaMs() {
         // without any overriding, the value is hard coded constant
@@ -1111,6 +1264,24 @@ public class PhFlagsTest {
         assertThat(phFlags.getEnforceEnrollmentOriginMatch()).isEqualTo(phOverridingValue);
     }
 
+    @Test
+    public void testGetEnrollmentMeasurementUrlIndexEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getEnrollmentMeasurementUrlIndexEnabled())
+                .isEqualTo(ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_ENROLLMENT_ENABLE_MEASUREMENT_URL_INDEX,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getEnrollmentMeasurementUrlIndexEnabled()).isEqualTo(phOverridingValue);
+    }
+
     @Test
     public void testGetMeasurementAggregateEncryptionKeyCoordinatorUrl() {
         // Without any overriding, the value is the hard coded constant.
@@ -1382,6 +1553,196 @@ public class PhFlagsTest {
         assertThat(phFlags.getMeasurementEnableTriggerDebugReport()).isFalse();
     }
 
+    @Test
+    public void testGetMeasurementEnableBatchedAttribution() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementEnableBatchedAttribution())
+                .isEqualTo(MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = !MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_ENABLE_BATCHED_ATTRIBUTION,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementEnableBatchedAttribution()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementAttributionTriggersPerTransaction() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementAttributionTriggersPerTransaction())
+                .isEqualTo(MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION + 5;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_ATTRIBUTION_TRIGGERS_PER_TRANSACTION,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementAttributionTriggersPerTransaction())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementEnableConcurrentReportUpload() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementEnableConcurrentReportUpload())
+                .isEqualTo(MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_ENABLE_CONCURRENT_REPORT_UPLOAD,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementEnableConcurrentReportUpload())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementReportUploadParallelism() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementReportUploadParallelism())
+                .isEqualTo(MEASUREMENT_REPORT_UPLOAD_PARALLELISM);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = 8;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_REPORT_UPLOAD_PARALLELISM,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementReportUploadParallelism()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementReportUploadPerOriginParallelism() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementReportUploadPerOriginParallelism())
+                .isEqualTo(MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = 3;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_REPORT_UPLOAD_PER_ORIGIN_PARALLELISM,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementReportUploadPerOriginParallelism())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementReportUploadBatchSize() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementReportUploadBatchSize())
+                .isEqualTo(MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = 20;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_REPORT_UPLOAD_BATCH_SIZE,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementReportUploadBatchSize()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementEnableConcurrentAsyncRegistrationFetch() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementEnableConcurrentAsyncRegistrationFetch())
+                .isEqualTo(MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = !MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_ENABLE_CONCURRENT_ASYNC_REGISTRATION_FETCH,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementEnableConcurrentAsyncRegistrationFetch())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementAsyncRegistrationFetchParallelism() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementAsyncRegistrationFetchParallelism())
+                .isEqualTo(MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM + 4;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PARALLELISM,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementAsyncRegistrationFetchParallelism())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementAsyncRegistrationFetchPerOriginParallelism() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(
+                        FlagsFactory.getFlags()
+                                .getMeasurementAsyncRegistrationFetchPerOriginParallelism())
+                .isEqualTo(MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue =
+                MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM + 2;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_PER_ORIGIN_PARALLELISM,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementAsyncRegistrationFetchPerOriginParallelism())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetMeasurementAsyncRegistrationFetchBatchSize() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getMeasurementAsyncRegistrationFetchBatchSize())
+                .isEqualTo(MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE + 10;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_MEASUREMENT_ASYNC_REGISTRATION_FETCH_BATCH_SIZE,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getMeasurementAsyncRegistrationFetchBatchSize())
+                .isEqualTo(phOverridingValue);
+    }
+
     @Test
     public void testGetMeasurementDebugJoinKeyHashLimit() {
         // Without any overriding, the value is the hard coded constant.
@@ -1867,6 +2228,25 @@ public class PhFlagsTest {
         assertThat(phFlags.getFledgeCustomAudienceMaxNumAds()).isEqualTo(phOverridingValue);
     }
 
+    @Test
+    public void testGetFledgeCustomAudienceSnapshotCacheEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeCustomAudienceSnapshotCacheEnabled())
+                .isEqualTo(FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_CUSTOM_AUDIENCE_SNAPSHOT_CACHE_ENABLED,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeCustomAudienceSnapshotCacheEnabled())
+                .isEqualTo(phOverridingValue);
+    }
+
     @Test
     public void testGetFledgeHttpCachingEnabled() {
         // Without any overriding, the value is the hard coded constant.
@@ -1939,6 +2319,78 @@ public class PhFlagsTest {
         assertThat(phFlags.getFledgeHttpCacheMaxAgeSeconds()).isEqualTo(phOverridingValue);
     }
 
+    @Test
+    public void testGetFledgeHttpRequestCoalescingEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeHttpRequestCoalescingEnabled())
+                .isEqualTo(FLEDGE_HTTP_ENABLE_REQUEST_COALESCING);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_HTTP_ENABLE_REQUEST_COALESCING,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeHttpRequestCoalescingEnabled()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeHttpCacheMemoryMaxBytes() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeHttpCacheMemoryMaxBytes())
+                .isEqualTo(FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES);
+
+        // Now overriding with the value from PH.
+        final long phOverridingValue = 1_048_576L;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_HTTP_CACHE_MEMORY_MAX_BYTES,
+                Long.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeHttpCacheMemoryMaxBytes()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeHttpCacheRevalidationEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeHttpCacheRevalidationEnabled())
+                .isEqualTo(FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_HTTP_CACHE_ENABLE_REVALIDATION,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeHttpCacheRevalidationEnabled()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeStorageCompressionEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeStorageCompressionEnabled())
+                .isEqualTo(FLEDGE_ENABLE_STORAGE_COMPRESSION);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_ENABLE_STORAGE_COMPRESSION,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeStorageCompressionEnabled()).isEqualTo(phOverridingValue);
+    }
+
     @Test
     public void testGetFledgeAdCounterHistogramAbsoluteMaxEventCount() {
         // Without any overriding, the value is the hard coded constant.
@@ -1977,6 +2429,82 @@ public class PhFlagsTest {
                 .isEqualTo(phOverridingValue);
     }
 
+    @Test
+    public void testGetFledgeAdCounterHistogramInMemoryIndexEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeAdCounterHistogramInMemoryIndexEnabled())
+                .isEqualTo(FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = !FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_AD_COUNTER_HISTOGRAM_IN_MEMORY_INDEX_ENABLED,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeAdCounterHistogramInMemoryIndexEnabled())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeAdCounterHistogramBulkQueryEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeAdCounterHistogramBulkQueryEnabled())
+                .isEqualTo(FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = !FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BULK_QUERY_ENABLED,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeAdCounterHistogramBulkQueryEnabled())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeAdCounterHistogramBackgroundEvictionEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeAdCounterHistogramBackgroundEvictionEnabled())
+                .isEqualTo(FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = !FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_AD_COUNTER_HISTOGRAM_BACKGROUND_EVICTION_ENABLED,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeAdCounterHistogramBackgroundEvictionEnabled())
+                .isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeAdCounterHistogramEvictionBatchSize() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeAdCounterHistogramEvictionBatchSize())
+                .isEqualTo(FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE + 10;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_AD_COUNTER_HISTOGRAM_EVICTION_BATCH_SIZE,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeAdCounterHistogramEvictionBatchSize())
+                .isEqualTo(phOverridingValue);
+    }
+
     @Test
     public void testGetFledgeBackgroundFetchJobPeriodMs() {
         // Without any overriding, the value is the hard coded constant.
@@ -4515,6 +5043,61 @@ public class PhFlagsTest {
         assertThat(phFlags.getIsolateMaxHeapSizeBytes()).isEqualTo(phOverridingValue);
     }
 
+    @Test
+    public void testGetFledgeJsIsolatePoolMaxIdleIsolates() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeJsIsolatePoolMaxIdleIsolates())
+                .isEqualTo(FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = 4;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_JS_ISOLATE_POOL_MAX_IDLE_ISOLATES,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeJsIsolatePoolMaxIdleIsolates()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeJsArrayBufferArgumentsEnabled() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeJsArrayBufferArgumentsEnabled())
+                .isEqualTo(FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_ENABLED,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeJsArrayBufferArgumentsEnabled()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetFledgeJsArrayBufferArgumentsMinSizeChars() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getFledgeJsArrayBufferArgumentsMinSizeChars())
+                .isEqualTo(FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS);
+
+        // Now overriding with the value from PH.
+        final int phOverridingValue = 1024;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_FLEDGE_JS_ARRAY_BUFFER_ARGUMENTS_MIN_SIZE_CHARS,
+                Integer.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getFledgeJsArrayBufferArgumentsMinSizeChars())
+                .isEqualTo(phOverridingValue);
+    }
+
     // Troubles between google-java-format and checkstyle
     // CHECKSTYLE:OFF IndentationCheck
     @Test
@@ -4873,6 +5456,60 @@ public class PhFlagsTest {
         assertThat(phFlags.getConsentSourceOfTruth()).isEqualTo(phOverridingValue);
     }
 
+    @Test
+    public void testGetConsentManagerEnableConsentSnapshot() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getConsentManagerEnableConsentSnapshot())
+                .isEqualTo(CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_CONSENT_MANAGER_ENABLE_CONSENT_SNAPSHOT,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getConsentManagerEnableConsentSnapshot()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetConsentManagerEnableAppUidIndex() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getConsentManagerEnableAppUidIndex())
+                .isEqualTo(CONSENT_MANAGER_ENABLE_APP_UID_INDEX);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_CONSENT_MANAGER_ENABLE_APP_UID_INDEX,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getConsentManagerEnableAppUidIndex()).isEqualTo(phOverridingValue);
+    }
+
+    @Test
+    public void testGetEnableConsentDatastoreJournal() {
+        // Without any overriding, the value is the hard coded constant.
+        assertThat(FlagsFactory.getFlags().getEnableConsentDatastoreJournal())
+                .isEqualTo(ENABLE_CONSENT_DATASTORE_JOURNAL);
+
+        // Now overriding with the value from PH.
+        final boolean phOverridingValue = true;
+        DeviceConfig.setProperty(
+                DeviceConfig.NAMESPACE_ADSERVICES,
+                KEY_ENABLE_CONSENT_DATASTORE_JOURNAL,
+                Boolean.toString(phOverridingValue),
+                /* makeDefault */ false);
+
+        Flags phFlags = FlagsFactory.getFlags();
+        assertThat(phFlags.getEnableConsentDatastoreJournal()).isEqualTo(phOverridingValue);
+    }
+
     @Test
     public void testDefaultBlockedTopicsConsentSourceOfTruth_isAtLeastT() {
         Assume.assumeTrue(SdkLevel.isAtLeastT());
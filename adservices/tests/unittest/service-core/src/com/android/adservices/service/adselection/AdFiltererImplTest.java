@@ -42,10 +42,14 @@ import android.adservices.common.FrequencyCapFiltersFixture;
 import android.adservices.common.KeyedFrequencyCapFixture;
 import android.util.Pair;
 
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+
 import com.android.adservices.common.DBAdDataFixture;
 import com.android.adservices.customaudience.DBCustomAudienceFixture;
 import com.android.adservices.data.adselection.AppInstallDao;
 import com.android.adservices.data.adselection.FrequencyCapDao;
+import com.android.adservices.data.adselection.SharedStorageDatabase;
 import com.android.adservices.data.common.DBAdData;
 import com.android.adservices.data.customaudience.DBCustomAudience;
 
@@ -364,6 +368,41 @@ public class AdFiltererImplTest {
         verifyNoMoreInteractions(mAppInstallDaoMock, mFrequencyCapDaoMock);
     }
 
+    @Test
+    public void testFilterContextualAdsForMatchingFrequencyCapWithHistogramIndex() {
+        AdFilterer adFilterer =
+                new AdFiltererImpl(
+                        mAppInstallDaoMock,
+                        mFrequencyCapDaoMock,
+                        CommonFixture.FIXED_CLOCK_TRUNCATED_TO_MILLI,
+                        true,
+                        false);
+        doReturn(KeyedFrequencyCapFixture.FILTER_EXCEED_COUNT)
+                .when(mFrequencyCapDaoMock)
+                .getNumEventsForBuyerAfterTimeFromIndex(any(), any(), anyInt(), any());
+
+        final AdData adData =
+                AD_DATA_BUILDER
+                        .setAdFilters(
+                                new AdFilters.Builder()
+                                        .setFrequencyCapFilters(
+                                                FrequencyCapFiltersFixture
+                                                        .VALID_FREQUENCY_CAP_FILTERS)
+                                        .build())
+                        .build();
+        final AdData dataNoFilters = AD_DATA_NO_FILTER;
+        List<AdWithBid> adsWithBid =
+                ImmutableList.of(new AdWithBid(adData, 1.0), new AdWithBid(dataNoFilters, 2.0));
+        final ContextualAds contextualAds =
+                CONTEXTUAL_ADS_BUILDER.setAdsWithBid(adsWithBid).build();
+
+        assertThat(adFilterer.filterContextualAds(contextualAds).getAdsWithBid())
+                .containsExactly(new AdWithBid(dataNoFilters, 2.0));
+        verify(mFrequencyCapDaoMock)
+                .getNumEventsForBuyerAfterTimeFromIndex(any(), any(), anyInt(), any());
+        verifyNoMoreInteractions(mAppInstallDaoMock, mFrequencyCapDaoMock);
+    }
+
     @Test
     public void testFilterContextualAdsDoNotFilterWinFrequencyCaps() {
         final AdData adDataOnlyWinFilters =
@@ -675,6 +714,62 @@ public class AdFiltererImplTest {
         verifyNoMoreInteractions(mAppInstallDaoMock, mFrequencyCapDaoMock);
     }
 
+    @Test
+    public void testFilterCustomAudiencesWithBulkHistogramQuery() {
+        FrequencyCapDao frequencyCapDao =
+                Room.inMemoryDatabaseBuilder(
+                                ApplicationProvider.getApplicationContext(),
+                                SharedStorageDatabase.class)
+                        .build()
+                        .frequencyCapDao();
+        AdFilterer adFilterer =
+                new AdFiltererImpl(
+                        mAppInstallDaoMock,
+                        frequencyCapDao,
+                        CommonFixture.FIXED_CLOCK_TRUNCATED_TO_MILLI,
+                        false,
+                        true);
+
+        DBAdData adDataWithWinFilter =
+                DBAdDataFixture.getValidDbAdDataNoFiltersBuilder()
+                        .setAdFilters(
+                                new AdFilters.Builder()
+                                        .setFrequencyCapFilters(
+                                                FrequencyCapFiltersFixture
+                                                        .VALID_FREQUENCY_CAP_FILTERS_ONLY_WIN)
+                                        .build())
+                        .build();
+        DBCustomAudience caWithWinFrequencyCapFilters =
+                DBCustomAudienceFixture.getValidBuilderByBuyerNoFilters(CommonFixture.VALID_BUYER_1)
+                        .setAds(
+                                Arrays.asList(
+                                        adDataWithWinFilter,
+                                        DBAdDataFixture.VALID_DB_AD_DATA_NO_FILTERS))
+                        .build();
+
+        // Register enough wins for the custom audience to exceed the cap
+        for (int i = 0; i < KeyedFrequencyCapFixture.FILTER_EXCEED_COUNT; i++) {
+            frequencyCapDao.insertHistogramEvent(
+                    HistogramEvent.builder()
+                            .setAdCounterKey(KeyedFrequencyCapFixture.KEY1)
+                            .setBuyer(caWithWinFrequencyCapFilters.getBuyer())
+                            .setCustomAudienceOwner(caWithWinFrequencyCapFilters.getOwner())
+                            .setCustomAudienceName(caWithWinFrequencyCapFilters.getName())
+                            .setAdEventType(FrequencyCapFilters.AD_EVENT_TYPE_WIN)
+                            .setTimestamp(CommonFixture.FIXED_NOW_TRUNCATED_TO_MILLI)
+                            .build(),
+                    /* absoluteMaxHistogramEventCount= */ 10,
+                    /* lowerMaxHistogramEventCount= */ 9);
+        }
+
+        assertThat(adFilterer.filterCustomAudiences(Arrays.asList(caWithWinFrequencyCapFilters)))
+                .containsExactly(
+                        DBCustomAudienceFixture.getValidBuilderByBuyerNoFilters(
+                                        CommonFixture.VALID_BUYER_1)
+                                .setAds(Arrays.asList(DBAdDataFixture.VALID_DB_AD_DATA_NO_FILTERS))
+                                .build());
+    }
+
     private void validateAppInstallDBCalls(List<DBCustomAudience> caList) {
         /* We want to validate that all the calls that should have been made were made, but we
          * can't just use a captor and compare lists since we can't guarantee the order.
@@ -24,6 +24,7 @@ import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.adservices.adselection.AdSelectionConfig;
@@ -89,6 +90,7 @@ public class AdSelectionScriptEngineTest {
     private static final String BASE_DOMAIN = "https://www.domain.com/adverts/";
     private static final double BID_1 = 1.1;
     private static final double BID_2 = 2.1;
+    private static final long GENERATE_BID_BATCH_TIMEOUT_MS = 10_000;
     private static final AdData AD_DATA_WITH_DOUBLE_RESULT_1 =
             getAdDataWithResult("123", Double.toString(BID_1), ImmutableSet.of());
     private static final AdData AD_DATA_WITH_DOUBLE_WITH_AD_COUNTER_KEYS_RESULT_1 =
@@ -453,6 +455,107 @@ public class AdSelectionScriptEngineTest {
         assertThat(result).containsExactly(new AdWithBid(AD_DATA_WITH_DOUBLE_RESULT_2, BID_2));
     }
 
+    @Test
+    public void testGenerateBidV3BatchIsolatesFailingCustomAudiences() throws Exception {
+        DBCustomAudience validCustomAudience =
+                DBCustomAudience.fromServiceObject(
+                        CustomAudienceFixture.getValidBuilderForBuyer(CommonFixture.VALID_BUYER_1)
+                                .setAds(AD_DATA_WITH_DOUBLE_RESULT_LIST)
+                                .build(),
+                        CustomAudienceFixture.VALID_OWNER,
+                        CustomAudienceFixture.VALID_ACTIVATION_TIME,
+                        CustomAudienceFixture.CUSTOM_AUDIENCE_DEFAULT_EXPIRE_IN,
+                        FlagsFactory.getFlagsForTest());
+        DBCustomAudience throwingCustomAudience =
+                DBCustomAudience.fromServiceObject(
+                        CustomAudienceFixture.getValidBuilderForBuyer(CommonFixture.VALID_BUYER_1)
+                                .setName("throwing")
+                                .setAds(AD_DATA_WITH_DOUBLE_RESULT_LIST)
+                                .build(),
+                        CustomAudienceFixture.VALID_OWNER,
+                        CustomAudienceFixture.VALID_ACTIVATION_TIME,
+                        CustomAudienceFixture.CUSTOM_AUDIENCE_DEFAULT_EXPIRE_IN,
+                        FlagsFactory.getFlagsForTest());
+
+        final List<AdSelectionScriptEngine.GenerateBidsBatchResult> result =
+                waitForFuture(
+                        () ->
+                                mAdSelectionScriptEngine.generateBidsV3Batch(
+                                        "function generateBid(custom_audience, auction_signals,"
+                                            + " per_buyer_signals,\n"
+                                            + "    trusted_bidding_signals, contextual_signals) {\n"
+                                            + "    if (custom_audience.name == 'throwing') {\n"
+                                            + "        throw new Error('generateBid failed');\n"
+                                            + "    }\n"
+                                            + "    const ads = custom_audience.ads;\n"
+                                            + "    let result = null;\n"
+                                            + "    for (const ad of ads) {\n"
+                                            + "        if (!result || ad.metadata.result >"
+                                            + " result.metadata.result) {\n"
+                                            + "            result = ad;\n"
+                                            + "        }\n"
+                                            + "    }\n"
+                                            + "    return { 'status': 0, 'ad': result, 'bid':"
+                                            + " result.metadata.result, 'render': result.render_uri"
+                                            + " };\n"
+                                            + "}",
+                                        ImmutableList.of(
+                                                throwingCustomAudience, validCustomAudience),
+                                        AdSelectionSignals.EMPTY,
+                                        AdSelectionSignals.EMPTY,
+                                        ImmutableList.of(
+                                                AdSelectionSignals.EMPTY, AdSelectionSignals.EMPTY),
+                                        AdSelectionSignals.EMPTY,
+                                        GENERATE_BID_BATCH_TIMEOUT_MS));
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0).error).contains("generateBid failed");
+        assertThat(result.get(0).adsWithBids).isEmpty();
+        assertThat(result.get(1).error).isNull();
+        assertThat(result.get(1).adsWithBids)
+                .containsExactly(new AdWithBid(AD_DATA_WITH_DOUBLE_RESULT_2, BID_2));
+    }
+
+    @Test
+    public void testGenerateBidV3BatchStopsAfterCustomAudienceExceedingTimeout() throws Exception {
+        ImmutableList.Builder<DBCustomAudience> customAudiences = ImmutableList.builder();
+        for (String name : ImmutableList.of("slow", "skipped")) {
+            customAudiences.add(
+                    DBCustomAudience.fromServiceObject(
+                            CustomAudienceFixture.getValidBuilderForBuyer(
+                                            CommonFixture.VALID_BUYER_1)
+                                    .setName(name)
+                                    .setAds(AD_DATA_WITH_DOUBLE_RESULT_LIST)
+                                    .build(),
+                            CustomAudienceFixture.VALID_OWNER,
+                            CustomAudienceFixture.VALID_ACTIVATION_TIME,
+                            CustomAudienceFixture.CUSTOM_AUDIENCE_DEFAULT_EXPIRE_IN,
+                            FlagsFactory.getFlagsForTest()));
+        }
+
+        final List<AdSelectionScriptEngine.GenerateBidsBatchResult> result =
+                waitForFuture(
+                        () ->
+                                mAdSelectionScriptEngine.generateBidsV3Batch(
+                                        "function generateBid(custom_audience, auction_signals,"
+                                            + " per_buyer_signals,\n"
+                                            + "    trusted_bidding_signals, contextual_signals) {\n"
+                                            + "    const end = Date.now() + 10;\n"
+                                            + "    while (Date.now() <= end) {}\n"
+                                            + "    const ad = custom_audience.ads[0];\n"
+                                            + "    return { 'status': 0, 'ad': ad, 'bid':"
+                                            + " ad.metadata.result, 'render': ad.render_uri };\n"
+                                            + "}",
+                                        customAudiences.build(),
+                                        AdSelectionSignals.EMPTY,
+                                        AdSelectionSignals.EMPTY,
+                                        ImmutableList.of(
+                                                AdSelectionSignals.EMPTY, AdSelectionSignals.EMPTY),
+                                        AdSelectionSignals.EMPTY,
+                                        /* perCustomAudienceTimeoutMs */ 1));
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).elapsedMs).isGreaterThan(1);
+    }
+
     @Test
     public void testGenerateBidV3WithCopierSuccessfulCase() throws Exception {
         mAdSelectionScriptEngine =
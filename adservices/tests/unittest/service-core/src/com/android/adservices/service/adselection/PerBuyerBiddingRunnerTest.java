@@ -164,6 +164,87 @@ public class PerBuyerBiddingRunnerTest {
         runAndValidatePerBuyerBidding(numSlowCustomAudiences, numFastCustomAudiences);
     }
 
+    @Test
+    public void testPerBuyerBidding_BatchBiddingGroupsCustomAudiences() throws Exception {
+        Flags batchBiddingFlags =
+                new Flags() {
+                    @Override
+                    public int getAdSelectionMaxConcurrentBiddingCount() {
+                        return 1;
+                    }
+
+                    @Override
+                    public boolean getFledgeAdSelectionBatchBiddingEnabled() {
+                        return true;
+                    }
+
+                    @Override
+                    public int getFledgeAdSelectionBatchBiddingMaxBatchSize() {
+                        return 5;
+                    }
+                };
+        PerBuyerBiddingRunner perBuyerBiddingRunner =
+                new PerBuyerBiddingRunner(
+                        mAdBidGeneratorMock,
+                        mTrustedBiddingDataFetcherMock,
+                        mScheduledExecutor,
+                        mBackgroundExecutorService,
+                        batchBiddingFlags);
+        ExtendedMockito.doAnswer(
+                        invocation -> {
+                            List<DBCustomAudience> batch = invocation.getArgument(0);
+                            List<FluentFuture<AdBiddingOutcome>> outcomes = new ArrayList<>();
+                            for (int i = 0; i < batch.size(); i++) {
+                                outcomes.add(
+                                        FluentFuture.from(
+                                                Futures.immediateFuture(mAdBiddingOutcome)));
+                            }
+                            return outcomes;
+                        })
+                .when(mAdBidGeneratorMock)
+                .runAdBiddingPerCABatch(
+                        ExtendedMockito.anyList(),
+                        ExtendedMockito.anyMap(),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.anyList());
+        List<DBCustomAudience> customAudienceList = createCustomAudienceList(12, FAST_SUFFIX);
+
+        List<ListenableFuture<AdBiddingOutcome>> biddingOutcomes =
+                perBuyerBiddingRunner.runBidding(
+                        mBuyer, customAudienceList, PER_BUYER_TIMEOUT_MS, AD_SELECTION_CONFIG);
+
+        Assert.assertEquals(customAudienceList.size(), biddingOutcomes.size());
+        for (ListenableFuture<AdBiddingOutcome> bidOutcome : biddingOutcomes) {
+            Assert.assertEquals(mAdBiddingOutcome, bidOutcome.get());
+        }
+        ExtendedMockito.verify(mAdBidGeneratorMock, ExtendedMockito.times(2))
+                .runAdBiddingPerCABatch(
+                        ExtendedMockito.argThat(batch -> batch.size() == 5),
+                        ExtendedMockito.anyMap(),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.anyList());
+        ExtendedMockito.verify(mAdBidGeneratorMock)
+                .runAdBiddingPerCABatch(
+                        ExtendedMockito.argThat(batch -> batch.size() == 2),
+                        ExtendedMockito.anyMap(),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.anyList());
+        ExtendedMockito.verify(mAdBidGeneratorMock, ExtendedMockito.never())
+                .runAdBiddingPerCA(
+                        ExtendedMockito.any(),
+                        ExtendedMockito.anyMap(),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any(AdSelectionSignals.class),
+                        ExtendedMockito.any());
+    }
+
     private void runAndValidatePerBuyerBidding(
             int numSlowCustomAudiences, int numFastCustomAudiences) throws InterruptedException {
         List<DBCustomAudience> slowCustomAudiences =
@@ -16,6 +16,7 @@
 
 package com.android.adservices.service.common;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -31,8 +32,11 @@ import com.android.adservices.data.adselection.AdSelectionEntryDao;
 import com.android.adservices.data.adselection.DBAdSelection;
 import com.android.adservices.data.adselection.DBBuyerDecisionLogic;
 import com.android.adservices.data.adselection.DBRegisteredAdInteraction;
+import com.android.adservices.data.adselection.FrequencyCapDao;
+import com.android.adservices.data.adselection.SharedStorageDatabase;
 import com.android.adservices.service.Flags;
 import com.android.adservices.service.FlagsFactory;
+import com.android.adservices.service.adselection.HistogramEventFixture;
 import com.android.dx.mockito.inline.extended.ExtendedMockito;
 
 import com.google.common.collect.ImmutableList;
@@ -114,6 +118,7 @@ public class FledgeMaintenanceTasksWorkerTests {
                     .build();
 
     private AdSelectionEntryDao mAdSelectionEntryDao;
+    private FrequencyCapDao mFrequencyCapDao;
     private FledgeMaintenanceTasksWorker mFledgeMaintenanceTasksWorker;
     private MockitoSession mMockitoSession;
 
@@ -125,13 +130,20 @@ public class FledgeMaintenanceTasksWorkerTests {
                                 AdSelectionDatabase.class)
                         .build()
                         .adSelectionEntryDao();
+        mFrequencyCapDao =
+                Room.inMemoryDatabaseBuilder(
+                                ApplicationProvider.getApplicationContext(),
+                                SharedStorageDatabase.class)
+                        .build()
+                        .frequencyCapDao();
 
         mMockitoSession =
                 ExtendedMockito.mockitoSession().spyStatic(FlagsFactory.class).startMocking();
         // Mock static method FlagsFactory.getFlags() to return Mock Flags.
         ExtendedMockito.doReturn(TEST_FLAGS).when(FlagsFactory::getFlags);
 
-        mFledgeMaintenanceTasksWorker = new FledgeMaintenanceTasksWorker(mAdSelectionEntryDao);
+        mFledgeMaintenanceTasksWorker =
+                new FledgeMaintenanceTasksWorker(mAdSelectionEntryDao, mFrequencyCapDao);
     }
 
     @After
@@ -259,4 +271,51 @@ public class FledgeMaintenanceTasksWorkerTests {
                         DB_REGISTERED_INTERACTION.getInteractionKey(),
                         DB_REGISTERED_INTERACTION.getDestination()));
     }
+
+    @Test
+    public void testFledgeMaintenanceWorkerDoesNotEvictHistogramDataWhenDisabled() {
+        insertHistogramEvents(3);
+
+        mFledgeMaintenanceTasksWorker.clearExpiredAdSelectionData();
+
+        assertEquals(3, mFrequencyCapDao.getTotalNumHistogramEvents());
+    }
+
+    @Test
+    public void testFledgeMaintenanceWorkerEvictsHistogramDataInBatches() {
+        Flags flags =
+                new Flags() {
+                    @Override
+                    public boolean getFledgeAdCounterHistogramBackgroundEvictionEnabled() {
+                        return true;
+                    }
+
+                    @Override
+                    public int getFledgeAdCounterHistogramLowerMaxEventCount() {
+                        return 1;
+                    }
+
+                    @Override
+                    public int getFledgeAdCounterHistogramEvictionBatchSize() {
+                        return 1;
+                    }
+                };
+        ExtendedMockito.doReturn(flags).when(FlagsFactory::getFlags);
+        insertHistogramEvents(3);
+
+        mFledgeMaintenanceTasksWorker.clearExpiredAdSelectionData();
+
+        assertEquals(1, mFrequencyCapDao.getTotalNumHistogramEvents());
+    }
+
+    private void insertHistogramEvents(int numEvents) {
+        for (int i = 0; i < numEvents; i++) {
+            mFrequencyCapDao.insertHistogramEvent(
+                    HistogramEventFixture.getValidHistogramEventBuilder()
+                            .setTimestamp(Clock.systemUTC().instant().plusSeconds(i))
+                            .build(),
+                    TEST_FLAGS.getFledgeAdCounterHistogramAbsoluteMaxEventCount(),
+                    TEST_FLAGS.getFledgeAdCounterHistogramLowerMaxEventCount());
+        }
+    }
 }
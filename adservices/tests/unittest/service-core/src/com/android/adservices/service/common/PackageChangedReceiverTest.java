@@ -174,6 +174,7 @@ public class PackageChangedReceiverTest {
 
     private void doNothingForConsent(PackageChangedReceiver receiver) {
         doNothing().when(receiver).consentOnPackageFullyRemoved(any(), any(), anyInt());
+        doNothing().when(receiver).consentOnPackageAdded(any(), any());
     }
 
     // This intent is sent from the AdServices system service.
@@ -366,6 +367,46 @@ public class PackageChangedReceiverTest {
         runPackageAddedMsmtKillSwitchOff(intent);
     }
 
+    @Test
+    public void testReceivePackageAdded_consent() throws Exception {
+        // Start a mockitoSession to mock static method
+        // Lenient added to allow easy disabling of other APIs' methods
+        MockitoSession session =
+                ExtendedMockito.mockitoSession()
+                        .mockStatic(ConsentManager.class)
+                        .strictness(Strictness.LENIENT)
+                        .initMocks(this)
+                        .startMocking();
+        try {
+            // Mock static method ConsentManager.getInstance() executed on a separate thread
+            doReturn(mConsentManager).when(() -> ConsentManager.getInstance(any()));
+
+            CountDownLatch completionLatch = new CountDownLatch(1);
+            doAnswer(
+                            unusedInvocation -> {
+                                completionLatch.countDown();
+                                return null;
+                            })
+                    .when(mConsentManager)
+                    .handleAppInstallation(any());
+
+            // Initialize package receiver meant for Consent
+            PackageChangedReceiver spyReceiver = createSpyPackageReceiverForConsent();
+            spyReceiver.onReceive(
+                    sContext,
+                    createIntentSentByAdServiceSystemService(
+                            PackageChangedReceiver.PACKAGE_ADDED));
+
+            verify(spyReceiver).consentOnPackageAdded(any(), any());
+
+            // Verify method inside background thread executes
+            assertThat(completionLatch.await(500, TimeUnit.MILLISECONDS)).isTrue();
+            verify(mConsentManager).handleAppInstallation(SAMPLE_PACKAGE);
+        } finally {
+            session.finishMocking();
+        }
+    }
+
     @Test
     public void testReceivePackageAdded_measurementKillSwitchOn() throws Exception {
         Intent intent =
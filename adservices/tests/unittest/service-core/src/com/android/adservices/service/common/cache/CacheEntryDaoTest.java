@@ -19,6 +19,7 @@ package com.android.adservices.service.common.cache;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import android.content.Context;
 
@@ -26,6 +27,9 @@ import androidx.room.Room;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.filters.SmallTest;
 
+import com.android.adservices.data.common.TextCompression;
+
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -107,6 +111,42 @@ public class CacheEntryDaoTest {
                 mCacheEntry.getResponseHeaders());
     }
 
+    @Test
+    public void test_CacheEntryLargeBody_StoredCompressed() {
+        String largeBody = Strings.repeat("var bid = 1;\n", 1000);
+        DBCacheEntry cacheEntry =
+                DBCacheEntry.builder()
+                        .setUrl(URL)
+                        .setResponseBody(largeBody)
+                        .setCreationTimestamp(Instant.now())
+                        .setResponseHeaders(RESPONSE_HEADERS)
+                        .setMaxAgeSeconds(MAX_AGE_SECONDS)
+                        .build();
+        mCacheEntryDao.persistCacheEntry(cacheEntry);
+
+        DBCacheEntry storedEntry = mCacheEntryDao.getStoredCacheEntry(URL, Instant.now());
+        assertTrue(
+                "Stored body should have been compressed",
+                TextCompression.isCompressed(storedEntry.getResponseBody()));
+        assertTrue(storedEntry.getResponseBody().length() < largeBody.length());
+        assertEquals(largeBody, mCacheEntryDao.getCacheEntry(URL, Instant.now()).getResponseBody());
+    }
+
+    @Test
+    public void test_CacheEntryInvalidCompressedBody_ReturnsNull() {
+        DBCacheEntry cacheEntry =
+                DBCacheEntry.builder()
+                        .setUrl(URL)
+                        .setResponseBody("~znot compressed")
+                        .setCreationTimestamp(Instant.now())
+                        .setResponseHeaders(RESPONSE_HEADERS)
+                        .setMaxAgeSeconds(MAX_AGE_SECONDS)
+                        .build();
+        mCacheEntryDao.insertCacheEntry(cacheEntry);
+
+        assertNull(mCacheEntryDao.getCacheEntry(URL, Instant.now()));
+    }
+
     @Test
     public void test_CacheEntryGetStaleEntry_Failure() throws InterruptedException {
         assertEquals(
@@ -163,6 +203,58 @@ public class CacheEntryDaoTest {
                 "Persistence layer should have been empty", 0, mCacheEntryDao.getDBEntriesCount());
     }
 
+    @Test
+    public void test_CacheEntryDeleteStaleQueries_RevalidatableEntryKeptUntilDefaultMaxAge() {
+        Instant fewMinutesAgo = Instant.now().minus(Duration.ofMinutes(5));
+        DBCacheEntry cacheEntry =
+                DBCacheEntry.builder()
+                        .setUrl(URL)
+                        .setResponseBody(BODY)
+                        .setCreationTimestamp(fewMinutesAgo)
+                        .setMaxAgeSeconds(1)
+                        .setResponseHeaders(RESPONSE_HEADERS)
+                        .setEtag("\"etag\"")
+                        .build();
+        mCacheEntryDao.persistCacheEntry(cacheEntry);
+
+        mCacheEntryDao.deleteStaleRows(Duration.ofHours(1).getSeconds(), Instant.now());
+        assertNull(mCacheEntryDao.getCacheEntry(URL, Instant.now()));
+        assertEquals("\"etag\"", mCacheEntryDao.getRevalidatableCacheEntry(URL).getEtag());
+
+        mCacheEntryDao.deleteStaleRows(Duration.ofMinutes(1).getSeconds(), Instant.now());
+        assertEquals(
+                "Persistence layer should have been empty", 0, mCacheEntryDao.getDBEntriesCount());
+    }
+
+    @Test
+    public void test_CacheEntryWithoutValidators_NotRevalidatable() {
+        mCacheEntryDao.persistCacheEntry(mCacheEntry);
+
+        assertNull(mCacheEntryDao.getRevalidatableCacheEntry(URL));
+    }
+
+    @Test
+    public void test_CacheEntryUpdateFreshness_MakesEntryFresh() {
+        DBCacheEntry cacheEntry =
+                DBCacheEntry.builder()
+                        .setUrl(URL)
+                        .setResponseBody(BODY)
+                        .setCreationTimestamp(Instant.now().minus(Duration.ofMinutes(5)))
+                        .setMaxAgeSeconds(1)
+                        .setResponseHeaders(RESPONSE_HEADERS)
+                        .setLastModified("Wed, 21 Oct 2015 07:28:00 GMT")
+                        .build();
+        mCacheEntryDao.persistCacheEntry(cacheEntry);
+
+        assertEquals(
+                1,
+                mCacheEntryDao.updateCacheEntryFreshness(URL, Instant.now(), MAX_AGE_SECONDS));
+        DBCacheEntry fetchedEntry = mCacheEntryDao.getCacheEntry(URL, Instant.now());
+        assertNotNull(fetchedEntry);
+        assertEquals(BODY, fetchedEntry.getResponseBody());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", fetchedEntry.getLastModified());
+    }
+
     @Test
     public void test_CachePrunedToDesiredSizeAndFIFO_Success() throws InterruptedException {
         int fakeEntriesCount = 100;
@@ -187,6 +279,11 @@ public class CacheEntryDaoTest {
 
         // Prune to a desired size
         int maxCacheEntries = 10;
+        assertEquals(
+                "The oldest entries should be prunable",
+                fakeEntriesCount - maxCacheEntries,
+                mCacheEntryDao.getPrunableUrls(maxCacheEntries).size());
+        assertTrue(mCacheEntryDao.getPrunableUrls(maxCacheEntries).contains(URL + 0));
         mCacheEntryDao.prune(maxCacheEntries);
         // Some wait time for pruning to complete
         Thread.sleep(200);
@@ -24,6 +24,7 @@ import static com.android.adservices.service.common.cache.FledgeHttpCache.PROPER
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
@@ -197,6 +198,164 @@ public class FledgeHttpCacheTest {
         verify(mObserver).update(HttpCache.CacheEventType.DELETE);
     }
 
+    @Test
+    public void test_MemoryTierGetAfterPut_SkipsDatabase() {
+        FledgeHttpCache cache = createCacheWithMemoryTier(/* maxMemoryBytes= */ 10_000);
+
+        cache.put(mUrl, mBody, mCachingPropertiesMap, mResponseHeadersMap);
+        DBCacheEntry entry = cache.get(mUrl);
+
+        assertEquals(mBody, entry.getResponseBody());
+        assertEquals(mResponseHeadersMap, entry.getResponseHeaders());
+        verify(mCacheEntryDaoMock).persistCacheEntry(any(DBCacheEntry.class));
+        verify(mCacheEntryDaoMock, never()).getCacheEntry(any(), any());
+        assertEquals(1, cache.getMemoryHitCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getRequestCount());
+        verify(mObserver).update(HttpCache.CacheEventType.MEMORY_HIT);
+    }
+
+    @Test
+    public void test_MemoryTierDatabaseHit_ServesNextGetFromMemory() {
+        doReturn(mCacheEntry)
+                .when(mCacheEntryDaoMock)
+                .getCacheEntry(eq(mUrl.toString()), any(Instant.class));
+        FledgeHttpCache cache = createCacheWithMemoryTier(/* maxMemoryBytes= */ 10_000);
+
+        cache.get(mUrl);
+        cache.get(mUrl);
+
+        verify(mCacheEntryDaoMock, times(1)).getCacheEntry(any(), any());
+        assertEquals(1, cache.getDbHitCount());
+        assertEquals(1, cache.getMemoryHitCount());
+        verify(mObserver).update(HttpCache.CacheEventType.DB_HIT);
+        verify(mObserver).update(HttpCache.CacheEventType.MEMORY_HIT);
+        verify(mObserver, times(2)).update(HttpCache.CacheEventType.GET);
+    }
+
+    @Test
+    public void test_MemoryTierStaleEntry_ReadsDatabase() {
+        DBCacheEntry staleEntry =
+                DBCacheEntry.builder()
+                        .setUrl(mUrl.toString())
+                        .setResponseBody(mBody)
+                        .setResponseHeaders(mResponseHeadersMap)
+                        .setCreationTimestamp(Instant.now().minusSeconds(mMaxAgeSeconds + 1))
+                        .setMaxAgeSeconds(mMaxAgeSeconds)
+                        .build();
+        doReturn(staleEntry, (DBCacheEntry) null)
+                .when(mCacheEntryDaoMock)
+                .getCacheEntry(eq(mUrl.toString()), any(Instant.class));
+        FledgeHttpCache cache = createCacheWithMemoryTier(/* maxMemoryBytes= */ 10_000);
+
+        cache.get(mUrl);
+
+        assertNull(cache.get(mUrl));
+        verify(mCacheEntryDaoMock, times(2)).getCacheEntry(any(), any());
+    }
+
+    @Test
+    public void test_MemoryTierDelete_EvictsEntries() {
+        FledgeHttpCache cache = createCacheWithMemoryTier(/* maxMemoryBytes= */ 10_000);
+
+        cache.put(mUrl, mBody, mCachingPropertiesMap, mResponseHeadersMap);
+        cache.delete();
+        assertNull(cache.get(mUrl));
+        assertEquals(0, cache.getMemoryHitCount());
+        verify(mCacheEntryDaoMock).getCacheEntry(any(), any());
+    }
+
+    @Test
+    public void test_MemoryTierCleanUp_KeepsFreshEntries() {
+        FledgeHttpCache cache = createCacheWithMemoryTier(/* maxMemoryBytes= */ 10_000);
+
+        cache.put(mUrl, mBody, mCachingPropertiesMap, mResponseHeadersMap);
+        cache.cleanUp();
+
+        assertEquals(mBody, cache.get(mUrl).getResponseBody());
+        assertEquals(1, cache.getMemoryHitCount());
+        verify(mCacheEntryDaoMock, never()).getCacheEntry(any(), any());
+    }
+
+    @Test
+    public void test_MemoryTierCleanUp_EvictsPrunedEntries() {
+        doReturn(ImmutableList.of(mUrl.toString()))
+                .when(mCacheEntryDaoMock)
+                .getPrunableUrls(MAX_ENTRIES);
+        FledgeHttpCache cache = createCacheWithMemoryTier(/* maxMemoryBytes= */ 10_000);
+
+        cache.put(mUrl, mBody, mCachingPropertiesMap, mResponseHeadersMap);
+        cache.cleanUp();
+
+        assertNull(cache.get(mUrl));
+        assertEquals(0, cache.getMemoryHitCount());
+        verify(mCacheEntryDaoMock).getCacheEntry(any(), any());
+    }
+
+    @Test
+    public void test_MemoryTierEntryLargerThanTier_NotKeptInMemory() {
+        FledgeHttpCache cache = createCacheWithMemoryTier(/* maxMemoryBytes= */ 10);
+
+        cache.put(mUrl, mBody, mCachingPropertiesMap, mResponseHeadersMap);
+        cache.get(mUrl);
+
+        verify(mCacheEntryDaoMock).getCacheEntry(eq(mUrl.toString()), any(Instant.class));
+        assertEquals(0, cache.getMemoryHitCount());
+    }
+
+    @Test
+    public void test_RevalidationEnabledPut_KeepsValidators() {
+        FledgeHttpCache cache = createCacheWithRevalidation(/* revalidationEnabled= */ true);
+
+        cache.put(mUrl, mBody, mCachingPropertiesMap, mResponseHeadersMap, "\"etag\"", "date");
+
+        verify(mCacheEntryDaoMock).persistCacheEntry(mCacheEntryArgumentCaptor.capture());
+        assertEquals("\"etag\"", mCacheEntryArgumentCaptor.getValue().getEtag());
+        assertEquals("date", mCacheEntryArgumentCaptor.getValue().getLastModified());
+    }
+
+    @Test
+    public void test_RevalidationDisabled_DropsValidators() {
+        FledgeHttpCache cache = createCacheWithRevalidation(/* revalidationEnabled= */ false);
+
+        cache.put(mUrl, mBody, mCachingPropertiesMap, mResponseHeadersMap, "\"etag\"", "date");
+
+        verify(mCacheEntryDaoMock).persistCacheEntry(mCacheEntryArgumentCaptor.capture());
+        assertNull(mCacheEntryArgumentCaptor.getValue().getEtag());
+        assertNull(mCacheEntryArgumentCaptor.getValue().getLastModified());
+        assertNull(cache.getForRevalidation(mUrl));
+        verify(mCacheEntryDaoMock, never()).getRevalidatableCacheEntry(any());
+    }
+
+    @Test
+    public void test_Refresh_ExtendsFreshnessWithResponseMaxAge() {
+        FledgeHttpCache cache = createCacheWithRevalidation(/* revalidationEnabled= */ true);
+        long responseMaxAge = 60;
+        Map<String, List<String>> responseHeaders =
+                ImmutableMap.of(
+                        HttpHeaders.CACHE_CONTROL,
+                        ImmutableList.of(
+                                PROPERTY_MAX_AGE + PROPERTY_MAX_AGE_SEPARATOR + responseMaxAge));
+
+        cache.refresh(mCacheEntry, mCachingPropertiesMap, responseHeaders);
+
+        verify(mCacheEntryDaoMock)
+                .updateCacheEntryFreshness(
+                        eq(mUrl.toString()), any(Instant.class), eq(responseMaxAge));
+        verify(mObserver).update(HttpCache.CacheEventType.PUT);
+    }
+
+    @Test
+    public void test_RefreshNoStore_DoesNotExtendFreshness() {
+        FledgeHttpCache cache = createCacheWithRevalidation(/* revalidationEnabled= */ true);
+        Map<String, List<String>> responseHeaders =
+                ImmutableMap.of(HttpHeaders.CACHE_CONTROL, ImmutableList.of(PROPERTY_NO_STORE));
+
+        cache.refresh(mCacheEntry, mCachingPropertiesMap, responseHeaders);
+
+        verify(mCacheEntryDaoMock, never()).updateCacheEntryFreshness(any(), any(), anyLong());
+    }
+
     @Test
     public void test_GetCacheRequestMaxAge_Success() {
         long expectedAgeSeconds = 60;
@@ -293,4 +452,30 @@ public class FledgeHttpCacheTest {
         assertEquals("Cache should have persisted one entry", 1, cache.getCachedEntriesCount());
         assertNull("Entries past their max-age should not be fetched", cache.get(mUrl));
     }
+
+    private FledgeHttpCache createCacheWithRevalidation(boolean revalidationEnabled) {
+        FledgeHttpCache cache =
+                new FledgeHttpCache(
+                        mCacheEntryDaoMock,
+                        mExecutorService,
+                        MAX_AGE_SECONDS,
+                        MAX_ENTRIES,
+                        /* maxMemoryBytes= */ 0,
+                        revalidationEnabled);
+        cache.addObserver(mObserver);
+        return cache;
+    }
+
+    private FledgeHttpCache createCacheWithMemoryTier(long maxMemoryBytes) {
+        FledgeHttpCache cache =
+                new FledgeHttpCache(
+                        mCacheEntryDaoMock,
+                        mExecutorService,
+                        MAX_AGE_SECONDS,
+                        MAX_ENTRIES,
+                        maxMemoryBytes,
+                        /* revalidationEnabled= */ false);
+        cache.addObserver(mObserver);
+        return cache;
+    }
 }
@@ -27,6 +27,7 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import android.adservices.http.MockWebServerRule;
@@ -343,6 +344,74 @@ public class AdServicesHttpsClientTest {
                 futureResponse.isDone());
     }
 
+    @Test
+    public void testFetchPayloadCoalescesConcurrentIdenticalRequests() throws Exception {
+        int delayMs = 1000;
+        mClient = createCoalescingClientWithMockConnection(delayMs);
+        AdServicesHttpClientRequest request =
+                AdServicesHttpClientRequest.builder().setUri(Uri.parse(mFakeUrl)).build();
+
+        ListenableFuture<AdServicesHttpClientResponse> firstResponse =
+                mClient.fetchPayload(request);
+        ListenableFuture<AdServicesHttpClientResponse> secondResponse =
+                mClient.fetchPayload(request);
+
+        assertEquals(
+                firstResponse.get(delayMs * 4L, TimeUnit.MILLISECONDS),
+                secondResponse.get(delayMs * 4L, TimeUnit.MILLISECONDS));
+        verify(mUrlMock, times(1)).openConnection();
+        assertEquals(1, mClient.getCoalescedFetchCount());
+    }
+
+    @Test
+    public void testFetchPayloadDoesNotCoalesceRequestsWithDifferentProperties()
+            throws Exception {
+        int delayMs = 1000;
+        mClient = createCoalescingClientWithMockConnection(delayMs);
+
+        ListenableFuture<AdServicesHttpClientResponse> firstResponse =
+                mClient.fetchPayload(
+                        AdServicesHttpClientRequest.builder()
+                                .setUri(Uri.parse(mFakeUrl))
+                                .setRequestProperties(
+                                        ImmutableMap.of(
+                                                REQUEST_PROPERTY_KEY, REQUEST_PROPERTY_VALUE))
+                                .build());
+        ListenableFuture<AdServicesHttpClientResponse> secondResponse =
+                mClient.fetchPayload(Uri.parse(mFakeUrl));
+
+        firstResponse.get(delayMs * 4L, TimeUnit.MILLISECONDS);
+        secondResponse.get(delayMs * 4L, TimeUnit.MILLISECONDS);
+        verify(mUrlMock, times(2)).openConnection();
+        assertEquals(0, mClient.getCoalescedFetchCount());
+    }
+
+    @Test
+    public void testFetchPayloadDoesNotCoalesceCompletedRequests() throws Exception {
+        mClient = createCoalescingClientWithMockConnection(/* delayMs= */ 0);
+
+        mClient.fetchPayload(Uri.parse(mFakeUrl)).get();
+        mClient.fetchPayload(Uri.parse(mFakeUrl)).get();
+
+        verify(mUrlMock, times(2)).openConnection();
+        assertEquals(0, mClient.getCoalescedFetchCount());
+    }
+
+    @Test
+    public void testFetchPayloadCancellingCoalescedRequestDoesNotCancelSharedRequest()
+            throws Exception {
+        int delayMs = 1000;
+        mClient = createCoalescingClientWithMockConnection(delayMs);
+
+        ListenableFuture<AdServicesHttpClientResponse> firstResponse =
+                mClient.fetchPayload(Uri.parse(mFakeUrl));
+        ListenableFuture<AdServicesHttpClientResponse> secondResponse =
+                mClient.fetchPayload(Uri.parse(mFakeUrl));
+        assertTrue(secondResponse.cancel(true));
+
+        assertEquals("", firstResponse.get(delayMs * 4L, TimeUnit.MILLISECONDS).getResponseBody());
+    }
+
     @Test
     public void testFetchPayloadResponsesSkipsHeaderIfAbsent() throws Exception {
         MockWebServer server =
@@ -497,6 +566,52 @@ public class AdServicesHttpsClientTest {
         assertEquals("This call should have been cached", 1, server.getRequestCount());
     }
 
+    @Test
+    public void testFetchPayloadRevalidatesExpiredCacheEntry() throws Exception {
+        String etag = "\"v1\"";
+        MockWebServer server =
+                mMockWebServerRule.startMockWebServer(
+                        new Dispatcher() {
+                            @Override
+                            public MockResponse dispatch(RecordedRequest request) {
+                                if (etag.equals(request.getHeader("If-None-Match"))) {
+                                    return new MockResponse().setResponseCode(304);
+                                }
+                                return new MockResponse()
+                                        .setBody(mJsScript)
+                                        .addHeader("Cache-Control: max-age=0")
+                                        .addHeader("ETag", etag);
+                            }
+                        });
+        URL url = server.getUrl(mFetchPayloadPath);
+        AdServicesHttpClientRequest request =
+                AdServicesHttpClientRequest.builder()
+                        .setUri(Uri.parse(url.toString()))
+                        .setUseCache(true)
+                        .setResponseHeaderKeys(ImmutableSet.of("Cache-Control"))
+                        .build();
+        mClient =
+                new AdServicesHttpsClient(
+                        mExecutorService,
+                        new FledgeHttpCache(
+                                mCacheEntryDao,
+                                MAX_AGE_SECONDS,
+                                MAX_ENTRIES,
+                                /* maxMemoryBytes= */ 0,
+                                /* revalidationEnabled= */ true));
+
+        mClient.fetchPayload(request).get();
+        // Lets the entry, cached with a max age of 0, expire
+        Thread.sleep(10);
+        AdServicesHttpClientResponse response = mClient.fetchPayload(request).get();
+
+        assertEquals(mJsScript, response.getResponseBody());
+        assertEquals(2, server.getRequestCount());
+        server.takeRequest();
+        assertEquals(etag, server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(1, mClient.getRevalidatedFetchCount());
+    }
+
     @Test
     public void testFetchPayloadResponsesDefaultSkipsCache() throws Exception {
         MockWebServer server =
@@ -662,6 +777,24 @@ public class AdServicesHttpsClientTest {
                 .isInstanceOf(IllegalArgumentException.class);
     }
 
+    private AdServicesHttpsClient createCoalescingClientWithMockConnection(int delayMs)
+            throws Exception {
+        doReturn(mUrlMock).when(mUriConverterMock).toUrl(any(Uri.class));
+        doReturn(mURLConnectionMock).when(mUrlMock).openConnection();
+        doReturn(mInputStreamMock).when(mURLConnectionMock).getInputStream();
+        doAnswer(new AnswersWithDelay(delayMs, new Returns(200)))
+                .when(mURLConnectionMock)
+                .getResponseCode();
+        return new AdServicesHttpsClient(
+                AdServicesExecutors.getBackgroundExecutor(),
+                /* connectTimeoutMs= */ 5000,
+                /* readTimeoutMs= */ 5000,
+                /* maxBytes= */ 5000,
+                mUriConverterMock,
+                mCache,
+                /* coalesceFetches= */ true);
+    }
+
     private AdServicesHttpClientResponse fetchPayload(Uri uri) throws Exception {
         return mClient.fetchPayload(uri).get();
     }
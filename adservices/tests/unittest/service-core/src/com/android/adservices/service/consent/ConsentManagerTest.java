@@ -723,6 +723,71 @@ public class ConsentManagerTest {
                         AppConsentDaoFixture.APP30_PACKAGE_NAME));
     }
 
+    @Test
+    public void testGetConsent_consentSnapshotEnabled_readsSourceOfTruthOncePerWrite()
+            throws RemoteException {
+        doReturn(true).when(mMockFlags).getConsentManagerEnableConsentSnapshot();
+        mConsentManager = getConsentManagerByConsentSourceOfTruth(Flags.SYSTEM_SERVER_ONLY);
+        ExtendedMockito.doNothing()
+                .when(() -> ConsentManager.setConsentToSystemServer(any(), anyBoolean()));
+        doReturn(ConsentParcel.createGivenConsent(ConsentParcel.ALL_API))
+                .when(mMockIAdServicesManager)
+                .getConsent(ConsentParcel.ALL_API);
+
+        assertTrue(mConsentManager.getConsent().isGiven());
+        assertTrue(mConsentManager.getConsent().isGiven());
+        verify(mMockIAdServicesManager, times(1)).getConsent(ConsentParcel.ALL_API);
+
+        // Writing the consent drops the snapshot.
+        doReturn(ConsentParcel.createRevokedConsent(ConsentParcel.ALL_API))
+                .when(mMockIAdServicesManager)
+                .getConsent(ConsentParcel.ALL_API);
+        mConsentManager.setConsentToSourceOfTruth(/* isGiven */ false);
+
+        assertFalse(mConsentManager.getConsent().isGiven());
+        verify(mMockIAdServicesManager, times(2)).getConsent(ConsentParcel.ALL_API);
+    }
+
+    @Test
+    public void testIsFledgeConsentRevokedForApp_consentSnapshotEnabled_systemServerOnly()
+            throws PackageManager.NameNotFoundException, RemoteException, IOException {
+        when(mMockFlags.getGaUxFeatureEnabled()).thenReturn(false);
+        doReturn(true).when(mMockFlags).getConsentManagerEnableConsentSnapshot();
+        mConsentManager = getConsentManagerByConsentSourceOfTruth(Flags.SYSTEM_SERVER_ONLY);
+        doReturn(ConsentParcel.createGivenConsent(ConsentParcel.ALL_API))
+                .when(mMockIAdServicesManager)
+                .getConsent(ConsentParcel.ALL_API);
+        mockGetPackageUid(AppConsentDaoFixture.APP10_PACKAGE_NAME, AppConsentDaoFixture.APP10_UID);
+        doReturn(false)
+                .when(mMockIAdServicesManager)
+                .isConsentRevokedForApp(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME, AppConsentDaoFixture.APP10_UID);
+
+        assertFalse(
+                mConsentManager.isFledgeConsentRevokedForApp(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME));
+        assertFalse(
+                mConsentManager.isFledgeConsentRevokedForApp(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME));
+        verify(mMockIAdServicesManager, times(1))
+                .isConsentRevokedForApp(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME, AppConsentDaoFixture.APP10_UID);
+
+        // Revoking the consent for the app drops the snapshot.
+        doReturn(true)
+                .when(mMockIAdServicesManager)
+                .isConsentRevokedForApp(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME, AppConsentDaoFixture.APP10_UID);
+        mConsentManager.revokeConsentForApp(App.create(AppConsentDaoFixture.APP10_PACKAGE_NAME));
+
+        assertTrue(
+                mConsentManager.isFledgeConsentRevokedForApp(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME));
+        verify(mMockIAdServicesManager, times(2))
+                .isConsentRevokedForApp(
+                        AppConsentDaoFixture.APP10_PACKAGE_NAME, AppConsentDaoFixture.APP10_UID);
+    }
+
     @Test
     public void
             testIsFledgeConsentRevokedForAppWithFullApiConsentGaUxDisabled_ppApiAndSystemServer()
@@ -94,6 +94,47 @@ public class JSScriptArgumentTest {
                                 + "\n\"value2\"\n]\n};");
     }
 
+    @Test
+    public void testRecordArgIsJsonCompatible() throws JSONException {
+        JSScriptArgument arg =
+                recordArg(
+                        "recordArg",
+                        numericArg("intField", 123),
+                        jsonArg("jsonField", "{\"signals\":1}"),
+                        arrayArg(
+                                "arrayField",
+                                stringArg("ignored", "value1"),
+                                stringArg("ignored", "value2")));
+        assertThat(arg.isJsonCompatible()).isTrue();
+    }
+
+    @Test
+    public void testJsonValueOfLenientJsonArgIsStrictJson() throws JSONException {
+        JSScriptArgument arg =
+                recordArg(
+                        "recordArg",
+                        jsonArg("jsonField", "{signals: 'value'}"),
+                        arrayArg("arrayField", jsonArg("ignored", "{'key': 1}")));
+        assertThat(arg.isJsonCompatible()).isTrue();
+        assertThat(arg.jsonValue())
+                .isEqualTo(
+                        "{\n\"jsonField\": {\"signals\":\"value\"},"
+                                + "\n\"arrayField\": [\n{\"key\":1}\n]\n}");
+    }
+
+    @Test
+    public void testArgsWithJsOnlyValuesAreNotJsonCompatible() {
+        assertThat(numericArg("numericArg", Double.NaN).isJsonCompatible()).isFalse();
+        assertThat(stringArg("stringArg", "\\x41").isJsonCompatible()).isFalse();
+        assertThat(
+                        arrayArg(
+                                        "arrayArg",
+                                        stringArg("ignored", "value"),
+                                        numericArg("ignored", Double.POSITIVE_INFINITY))
+                                .isJsonCompatible())
+                .isFalse();
+    }
+
     @Test
     public void testStringMapToRecordArg() throws JSONException {
         Map<String, String> signals =
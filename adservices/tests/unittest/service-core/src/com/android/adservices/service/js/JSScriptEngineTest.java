@@ -17,6 +17,7 @@
 package com.android.adservices.service.js;
 
 import static com.android.adservices.service.js.JSScriptArgument.arrayArg;
+import static com.android.adservices.service.js.JSScriptArgument.jsonArg;
 import static com.android.adservices.service.js.JSScriptArgument.numericArg;
 import static com.android.adservices.service.js.JSScriptArgument.recordArg;
 import static com.android.adservices.service.js.JSScriptArgument.stringArg;
@@ -28,12 +29,16 @@ import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeFalse;
 import static org.junit.Assume.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -70,6 +75,7 @@ import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.function.ThrowingRunnable;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -78,6 +84,7 @@ import org.mockito.quality.Strictness;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -750,6 +757,237 @@ public class JSScriptEngineTest {
         verify(mMockSandboxProvider).destroyCurrentInstance();
     }
 
+    @Test
+    public void testIsolateIsCreatedAheadOfTimeWhenIsolatePoolIsEnabled() throws Exception {
+        when(sMockProfiler.start(JSScriptEngineLogConstants.ISOLATE_POOL_HIT))
+                .thenReturn(mock(StopWatch.class));
+        when(sMockProfiler.start(JSScriptEngineLogConstants.ISOLATE_POOL_MISS))
+                .thenReturn(mock(StopWatch.class));
+        when(mMockedSandbox.createIsolate()).thenReturn(mMockedIsolate);
+        when(mMockedIsolate.evaluateJavaScriptAsync(anyString()))
+                .thenReturn(Futures.immediateFuture("hello world"));
+
+        ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        JSIsolatePool isolatePool = new JSIsolatePool(1, sMockProfiler, executorService);
+        JSScriptEngine engine =
+                new JSScriptEngine(
+                        sContext,
+                        mMockSandboxProvider,
+                        sMockProfiler,
+                        executorService,
+                        isolatePool);
+
+        for (int i = 0; i < 2; i++) {
+            assertThat(
+                            callJSEngine(
+                                    engine,
+                                    "function test() { return \"hello world\"; }",
+                                    ImmutableList.of(),
+                                    "test",
+                                    mDefaultIsolateSettings))
+                    .isEqualTo("hello world");
+        }
+
+        // One isolate for the first evaluation and one created ahead of time after every lease
+        verify(mMockedSandbox, times(3)).createIsolate();
+        verify(mMockedIsolate, times(2)).close();
+        assertThat(isolatePool.getMissCount()).isEqualTo(1);
+        assertThat(isolatePool.getHitCount()).isEqualTo(1);
+        assertThat(isolatePool.getIdleIsolateCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPooledIsolateIsUsedForASingleEvaluation() throws Exception {
+        when(sMockProfiler.start(JSScriptEngineLogConstants.ISOLATE_POOL_HIT))
+                .thenReturn(mock(StopWatch.class));
+        when(sMockProfiler.start(JSScriptEngineLogConstants.ISOLATE_POOL_MISS))
+                .thenReturn(mock(StopWatch.class));
+        JavaScriptIsolate firstIsolate = mock(JavaScriptIsolate.class);
+        JavaScriptIsolate secondIsolate = mock(JavaScriptIsolate.class);
+        JavaScriptIsolate thirdIsolate = mock(JavaScriptIsolate.class);
+        when(mMockedSandbox.createIsolate()).thenReturn(firstIsolate, secondIsolate, thirdIsolate);
+        for (JavaScriptIsolate isolate : ImmutableList.of(firstIsolate, secondIsolate)) {
+            when(isolate.evaluateJavaScriptAsync(anyString()))
+                    .thenReturn(Futures.immediateFuture("hello world"));
+        }
+
+        ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        JSIsolatePool isolatePool = new JSIsolatePool(1, sMockProfiler, executorService);
+        JSScriptEngine engine =
+                new JSScriptEngine(
+                        sContext,
+                        mMockSandboxProvider,
+                        sMockProfiler,
+                        executorService,
+                        isolatePool);
+
+        String script = "function test() { return \"hello world\"; }";
+        for (int i = 0; i < 2; i++) {
+            assertThat(
+                            callJSEngine(
+                                    engine,
+                                    script,
+                                    ImmutableList.of(),
+                                    "test",
+                                    mDefaultIsolateSettings))
+                    .isEqualTo("hello world");
+        }
+
+        verify(firstIsolate).evaluateJavaScriptAsync(contains(script));
+        verify(firstIsolate).close();
+        verify(secondIsolate).evaluateJavaScriptAsync(contains(script));
+        verify(secondIsolate).close();
+        verify(thirdIsolate, never()).evaluateJavaScriptAsync(anyString());
+        verify(thirdIsolate, never()).close();
+    }
+
+    @Test
+    public void testLeasedIsolateIsClosedWhenEvaluationFails() throws Exception {
+        when(sMockProfiler.start(JSScriptEngineLogConstants.ISOLATE_POOL_MISS))
+                .thenReturn(mock(StopWatch.class));
+        when(mMockedSandbox.createIsolate()).thenReturn(mMockedIsolate);
+        when(mMockedIsolate.evaluateJavaScriptAsync(anyString()))
+                .thenReturn(
+                        Futures.immediateFailedFuture(new RuntimeException("JS execution failed")));
+
+        ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        JSIsolatePool isolatePool = new JSIsolatePool(1, sMockProfiler, executorService);
+        JSScriptEngine engine =
+                new JSScriptEngine(
+                        sContext,
+                        mMockSandboxProvider,
+                        sMockProfiler,
+                        executorService,
+                        isolatePool);
+
+        assertThrows(
+                ExecutionException.class,
+                () ->
+                        callJSEngine(
+                                engine,
+                                "function test() { return \"hello world\"; }",
+                                ImmutableList.of(),
+                                "test",
+                                mDefaultIsolateSettings));
+
+        verify(mMockedSandbox, times(2)).createIsolate();
+        verify(mMockedIsolate, times(1)).close();
+        assertThat(isolatePool.getIdleIsolateCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testShutdownClosesPooledIsolates() throws Exception {
+        when(sMockProfiler.start(JSScriptEngineLogConstants.ISOLATE_POOL_MISS))
+                .thenReturn(mock(StopWatch.class));
+        when(mMockedSandbox.createIsolate()).thenReturn(mMockedIsolate);
+        when(mMockedIsolate.evaluateJavaScriptAsync(anyString()))
+                .thenReturn(Futures.immediateFuture("hello world"));
+        when(mMockSandboxProvider.destroyCurrentInstance())
+                .thenReturn(Futures.immediateVoidFuture());
+
+        ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        JSIsolatePool isolatePool = new JSIsolatePool(1, sMockProfiler, executorService);
+        JSScriptEngine engine =
+                new JSScriptEngine(
+                        sContext,
+                        mMockSandboxProvider,
+                        sMockProfiler,
+                        executorService,
+                        isolatePool);
+
+        callJSEngine(
+                engine,
+                "function test() { return \"hello world\"; }",
+                ImmutableList.of(),
+                "test",
+                mDefaultIsolateSettings);
+        assertThat(isolatePool.getIdleIsolateCount()).isEqualTo(1);
+
+        engine.shutdown().get();
+
+        // The isolate used by the evaluation and the one created ahead of time
+        verify(mMockedIsolate, times(2)).close();
+        assertThat(isolatePool.getEvictionCount()).isEqualTo(1);
+        assertThat(isolatePool.getIdleIsolateCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLargeJsonArgumentIsPassedAsArrayBuffer() throws Exception {
+        when(mMockedSandbox.createIsolate()).thenReturn(mMockedIsolate);
+        when(mMockedSandbox.isFeatureSupported(
+                        JavaScriptSandbox.JS_FEATURE_PROVIDE_CONSUME_ARRAY_BUFFER))
+                .thenReturn(true);
+        when(mMockedSandbox.isFeatureSupported(JavaScriptSandbox.JS_FEATURE_PROMISE_RETURN))
+                .thenReturn(true);
+        when(mMockedIsolate.provideNamedData(anyString(), any(byte[].class))).thenReturn(true);
+        when(mMockedIsolate.evaluateJavaScriptAsync(anyString()))
+                .thenReturn(Futures.immediateFuture("hello world"));
+
+        ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        JSScriptEngine engine =
+                new JSScriptEngine(
+                        sContext,
+                        mMockSandboxProvider,
+                        sMockProfiler,
+                        executorService,
+                        JSIsolatePool.createDisabledInstance(sMockProfiler, executorService),
+                        /* arrayBufferArgumentsMinSizeChars */ 20);
+
+        String largeJson = "{\"field\": \"a value longer than the threshold\"}";
+        assertThat(
+                        callJSEngine(
+                                engine,
+                                "function test(large, small) { return \"hello world\"; }",
+                                ImmutableList.of(
+                                        jsonArg("large", largeJson), numericArg("small", 1)),
+                                "test",
+                                mDefaultIsolateSettings))
+                .isEqualTo("hello world");
+
+        ArgumentCaptor<String> idCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mMockedIsolate).provideNamedData(idCaptor.capture(), dataCaptor.capture());
+        assertThat(idCaptor.getValue()).startsWith(JSScriptEngine.ARRAY_BUFFER_ARGUMENT_ID_PREFIX);
+        assertThat(new String(dataCaptor.getValue(), StandardCharsets.UTF_16LE))
+                .isEqualTo(largeJson);
+        verify(mMockedIsolate)
+                .evaluateJavaScriptAsync(contains("android.consumeNamedDataAsArrayBuffer"));
+        verify(mMockedIsolate).evaluateJavaScriptAsync(contains("const small = 1;"));
+        verify(mMockedIsolate, never()).evaluateJavaScriptAsync(contains(largeJson));
+    }
+
+    @Test
+    public void testArgumentsAreInlinedIfArrayBuffersAreNotSupported() throws Exception {
+        when(mMockedSandbox.createIsolate()).thenReturn(mMockedIsolate);
+        when(mMockedSandbox.isFeatureSupported(
+                        JavaScriptSandbox.JS_FEATURE_PROVIDE_CONSUME_ARRAY_BUFFER))
+                .thenReturn(false);
+        when(mMockedIsolate.evaluateJavaScriptAsync(anyString()))
+                .thenReturn(Futures.immediateFuture("hello world"));
+
+        ListeningExecutorService executorService = MoreExecutors.newDirectExecutorService();
+        JSScriptEngine engine =
+                new JSScriptEngine(
+                        sContext,
+                        mMockSandboxProvider,
+                        sMockProfiler,
+                        executorService,
+                        JSIsolatePool.createDisabledInstance(sMockProfiler, executorService),
+                        /* arrayBufferArgumentsMinSizeChars */ 20);
+
+        String largeJson = "{\"field\": \"a value longer than the threshold\"}";
+        callJSEngine(
+                engine,
+                "function test(large) { return \"hello world\"; }",
+                ImmutableList.of(jsonArg("large", largeJson)),
+                "test",
+                mDefaultIsolateSettings);
+
+        verify(mMockedIsolate, never()).provideNamedData(anyString(), any(byte[].class));
+        verify(mMockedIsolate)
+                .evaluateJavaScriptAsync(contains(String.format("const large = %s;", largeJson)));
+    }
+
     @Test
     public void testCanUseWasmModuleInScript() throws Exception {
         assumeTrue(sJSScriptEngine.isWasmSupported().get(4, TimeUnit.SECONDS));
@@ -17,7 +17,9 @@
 package com.android.adservices.service.measurement;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import androidx.test.filters.SmallTest;
 
@@ -94,6 +96,17 @@ public final class FilterMapTest {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void containsAnyValue_matchesValuesOfKey() {
+        FilterMap filterMap = createExample();
+
+        assertTrue(filterMap.containsAnyValue("type", Arrays.asList("5", "3")));
+        assertTrue(filterMap.containsAnyValue("ctid", Collections.singletonList("id")));
+        assertFalse(filterMap.containsAnyValue("type", Arrays.asList("5", "id")));
+        assertFalse(filterMap.containsAnyValue("type", Collections.emptyList()));
+        assertFalse(filterMap.containsAnyValue("unknown", Collections.singletonList("1")));
+    }
+
     private FilterMap createExample() {
         Map<String, List<String>> attributionFilterMap = new HashMap<>();
         attributionFilterMap.put("type", Arrays.asList("1", "2", "3", "4"));
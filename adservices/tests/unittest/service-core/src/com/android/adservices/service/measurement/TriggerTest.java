@@ -20,6 +20,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
@@ -838,6 +839,34 @@ public class TriggerTest {
         assertEquals(adtechMapping.get("AdTechB-enrollment_id"), adtechBit2);
     }
 
+    @Test
+    public void parseEventTriggers_parsedOnce() throws JSONException {
+        Trigger trigger = TriggerFixture.getValidTrigger();
+
+        List<EventTrigger> eventTriggers = trigger.parseEventTriggers();
+
+        assertSame(eventTriggers, trigger.parseEventTriggers());
+        assertThrows(UnsupportedOperationException.class, () -> eventTriggers.add(null));
+    }
+
+    @Test
+    public void parseFilters_parsesTopLevelFilterSets() throws JSONException {
+        Trigger trigger =
+                TriggerFixture.getValidTriggerBuilder()
+                        .setFilters("[{\"key_1\": [\"value_1\", \"value_2\"]}]")
+                        .setNotFilters(null)
+                        .build();
+        Map<String, List<String>> filterMap = Map.of("key_1", List.of("value_1", "value_2"));
+
+        List<FilterMap> filters = trigger.parseFilters();
+
+        assertEquals(
+                List.of(new FilterMap.Builder().setAttributionFilterMap(filterMap).build()),
+                filters);
+        assertSame(filters, trigger.parseFilters());
+        assertTrue(trigger.parseNotFilters().isEmpty());
+    }
+
     private void assertInvalidTriggerArguments(
             Uri attributionDestination,
             String enrollmentId,
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.service.measurement.attribution;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.net.Uri;
+import android.util.Pair;
+
+import com.android.adservices.data.measurement.DatastoreException;
+import com.android.adservices.data.measurement.IMeasurementDao;
+import com.android.adservices.service.measurement.Attribution;
+import com.android.adservices.service.measurement.PrivacyParams;
+import com.android.adservices.service.measurement.Source;
+import com.android.adservices.service.measurement.SourceFixture;
+import com.android.adservices.service.measurement.Trigger;
+import com.android.adservices.service.measurement.TriggerFixture;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/** Unit tests for {@link AttributionBatchMemo} */
+@RunWith(MockitoJUnitRunner.class)
+public class AttributionBatchMemoTest {
+    private static final Uri SOURCE_SITE = Uri.parse("android-app://com.publisher");
+    private static final Uri DESTINATION_SITE = Uri.parse("android-app://com.destination");
+    private static final long TRIGGER_TIME = 1_000_000_000L;
+
+    @Mock private IMeasurementDao mMeasurementDao;
+
+    @Test
+    public void getMatchingActiveSources_readsSourcesOfAllTriggersOnce()
+            throws DatastoreException {
+        Trigger trigger1 = createTrigger("trigger1", TRIGGER_TIME);
+        Trigger trigger2 = createTrigger("trigger2", TRIGGER_TIME + 1);
+        List<Source> sources1 = new ArrayList<>(Collections.singletonList(createSource("source1")));
+        List<Source> sources2 = new ArrayList<>(Collections.singletonList(createSource("source2")));
+        Map<String, Pair<List<Source>, Optional<Source>>> sourcesByTriggerId = new HashMap<>();
+        sourcesByTriggerId.put(trigger1.getId(), Pair.create(sources1, Optional.empty()));
+        sourcesByTriggerId.put(trigger2.getId(), Pair.create(sources2, Optional.empty()));
+        when(mMeasurementDao.getMatchingAndDelayedActiveSourcesForTriggers(
+                        eq(Arrays.asList(trigger1, trigger2))))
+                .thenReturn(sourcesByTriggerId);
+        AttributionBatchMemo memo =
+                new AttributionBatchMemo(mMeasurementDao, Arrays.asList(trigger1, trigger2));
+
+        assertEquals(sources1, memo.getMatchingActiveSources(trigger1));
+        assertEquals(Optional.empty(), memo.getNearestDelayedMatchingActiveSource(trigger1));
+        assertEquals(sources2, memo.getMatchingActiveSources(trigger2));
+        verify(mMeasurementDao, times(1)).getMatchingAndDelayedActiveSourcesForTriggers(any());
+        verify(mMeasurementDao, never()).getMatchingActiveSources(any());
+        verify(mMeasurementDao, never()).getNearestDelayedMatchingActiveSource(any());
+    }
+
+    @Test
+    public void getMatchingActiveSources_afterUpdate_readsUpdatedSourcesOnly()
+            throws DatastoreException {
+        Trigger trigger1 = createTrigger("trigger1", TRIGGER_TIME);
+        Trigger trigger2 = createTrigger("trigger2", TRIGGER_TIME + 1);
+        Source selectedSource = createSource("source1");
+        Source competingSource = createSource("source2");
+        Source otherSource = createSource("source3");
+        Map<String, Pair<List<Source>, Optional<Source>>> sourcesByTriggerId = new HashMap<>();
+        sourcesByTriggerId.put(
+                trigger1.getId(),
+                Pair.create(
+                        new ArrayList<>(Arrays.asList(selectedSource, competingSource)),
+                        Optional.empty()));
+        sourcesByTriggerId.put(
+                trigger2.getId(),
+                Pair.create(
+                        new ArrayList<>(
+                                Arrays.asList(selectedSource, competingSource, otherSource)),
+                        Optional.of(competingSource)));
+        when(mMeasurementDao.getMatchingAndDelayedActiveSourcesForTriggers(any()))
+                .thenReturn(sourcesByTriggerId);
+        Source updatedSelectedSource =
+                SourceFixture.getValidSourceBuilder()
+                        .setId(selectedSource.getId())
+                        .setAggregateContributions(100)
+                        .build();
+        when(mMeasurementDao.getSource(selectedSource.getId())).thenReturn(updatedSelectedSource);
+        when(mMeasurementDao.getSource(competingSource.getId()))
+                .thenReturn(
+                        SourceFixture.getValidSourceBuilder()
+                                .setId(competingSource.getId())
+                                .setStatus(Source.Status.IGNORED)
+                                .build());
+        when(mMeasurementDao.getNearestDelayedMatchingActiveSource(trigger2))
+                .thenReturn(Optional.empty());
+        AttributionBatchMemo memo =
+                new AttributionBatchMemo(mMeasurementDao, Arrays.asList(trigger1, trigger2));
+
+        memo.getMatchingActiveSources(trigger1);
+        memo.getNearestDelayedMatchingActiveSource(trigger1);
+        memo.updateSources(Arrays.asList(selectedSource.getId(), competingSource.getId()));
+
+        // The ignored source is dropped, and the delayed source it was is read again
+        assertEquals(
+                Arrays.asList(updatedSelectedSource, otherSource),
+                memo.getMatchingActiveSources(trigger2));
+        assertEquals(Optional.empty(), memo.getNearestDelayedMatchingActiveSource(trigger2));
+        verify(mMeasurementDao, times(1)).getMatchingAndDelayedActiveSourcesForTriggers(any());
+        verify(mMeasurementDao, never()).getSource(otherSource.getId());
+        verify(mMeasurementDao, never()).getMatchingActiveSources(any());
+    }
+
+    @Test
+    public void getNearestDelayedMatchingActiveSource_unknownTrigger_readsDatastore()
+            throws DatastoreException {
+        Trigger trigger = createTrigger("trigger1", TRIGGER_TIME);
+        Trigger otherTrigger = createTrigger("trigger2", TRIGGER_TIME);
+        Source source = createSource("source1");
+        when(mMeasurementDao.getNearestDelayedMatchingActiveSource(otherTrigger))
+                .thenReturn(Optional.of(source));
+        AttributionBatchMemo memo =
+                new AttributionBatchMemo(mMeasurementDao, Collections.singletonList(trigger));
+
+        assertEquals(Optional.of(source), memo.getNearestDelayedMatchingActiveSource(otherTrigger));
+    }
+
+    @Test
+    public void getAttributionsPerRateLimitWindow_countsWindowOfEachTrigger()
+            throws DatastoreException {
+        long window = PrivacyParams.RATE_LIMIT_WINDOW_MILLISECONDS;
+        Trigger trigger1 = createTrigger("trigger1", TRIGGER_TIME);
+        Trigger trigger2 = createTrigger("trigger2", TRIGGER_TIME + 100);
+        when(mMeasurementDao.getEnrollmentIdsAndTimesPerPublisherXDestinationInAttribution(
+                        SOURCE_SITE, DESTINATION_SITE, TRIGGER_TIME - window, TRIGGER_TIME + 100))
+                .thenReturn(
+                        Arrays.asList(
+                                Pair.create("enrollment1", TRIGGER_TIME - window + 50),
+                                Pair.create("enrollment1", TRIGGER_TIME),
+                                Pair.create("enrollment2", TRIGGER_TIME + 50)));
+        AttributionBatchMemo memo =
+                new AttributionBatchMemo(mMeasurementDao, Arrays.asList(trigger1, trigger2));
+
+        assertEquals(
+                2,
+                memo.getAttributionsPerRateLimitWindow(
+                        SOURCE_SITE, DESTINATION_SITE, "enrollment1", TRIGGER_TIME));
+        // The first attribution is out of the window of the second trigger
+        assertEquals(
+                1,
+                memo.getAttributionsPerRateLimitWindow(
+                        SOURCE_SITE, DESTINATION_SITE, "enrollment1", TRIGGER_TIME + 100));
+        assertEquals(
+                1,
+                memo.countDistinctEnrollmentsInAttribution(
+                        SOURCE_SITE, DESTINATION_SITE, "enrollment2", TRIGGER_TIME + 100));
+        verify(mMeasurementDao, times(1))
+                .getEnrollmentIdsAndTimesPerPublisherXDestinationInAttribution(
+                        any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void addAttribution_countedByFollowingTriggers() throws DatastoreException {
+        Trigger trigger1 = createTrigger("trigger1", TRIGGER_TIME);
+        Trigger trigger2 = createTrigger("trigger2", TRIGGER_TIME + 100);
+        when(mMeasurementDao.getEnrollmentIdsAndTimesPerPublisherXDestinationInAttribution(
+                        any(), any(), anyLong(), anyLong()))
+                .thenReturn(Collections.emptyList());
+        AttributionBatchMemo memo =
+                new AttributionBatchMemo(mMeasurementDao, Arrays.asList(trigger1, trigger2));
+
+        assertEquals(
+                0,
+                memo.countDistinctEnrollmentsInAttribution(
+                        SOURCE_SITE, DESTINATION_SITE, "enrollment1", TRIGGER_TIME));
+        memo.addAttribution(
+                new Attribution.Builder()
+                        .setSourceSite(SOURCE_SITE.toString())
+                        .setSourceOrigin(SOURCE_SITE.toString())
+                        .setDestinationSite(DESTINATION_SITE.toString())
+                        .setDestinationOrigin(DESTINATION_SITE.toString())
+                        .setEnrollmentId("enrollment2")
+                        .setTriggerTime(TRIGGER_TIME - 10)
+                        .setRegistrant("android-app://com.registrant")
+                        .build());
+
+        assertEquals(
+                1,
+                memo.countDistinctEnrollmentsInAttribution(
+                        SOURCE_SITE, DESTINATION_SITE, "enrollment1", TRIGGER_TIME + 100));
+        assertEquals(
+                1,
+                memo.getAttributionsPerRateLimitWindow(
+                        SOURCE_SITE, DESTINATION_SITE, "enrollment2", TRIGGER_TIME + 100));
+    }
+
+    private static Trigger createTrigger(String id, long triggerTime) {
+        return TriggerFixture.getValidTriggerBuilder()
+                .setId(id)
+                .setStatus(Trigger.Status.PENDING)
+                .setTriggerTime(triggerTime)
+                .build();
+    }
+
+    private static Source createSource(String id) {
+        return SourceFixture.getValidSourceBuilder().setId(id).build();
+    }
+}
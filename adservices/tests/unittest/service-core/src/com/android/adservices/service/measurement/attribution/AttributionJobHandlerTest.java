@@ -79,6 +79,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Unit test for {@link AttributionJobHandler}
@@ -204,6 +205,191 @@ public class AttributionJobHandlerTest {
         verify(mTransaction, times(2)).end();
     }
 
+    @Test
+    public void performPendingAttributions_batched_attributesTriggersInOneTransaction()
+            throws DatastoreException {
+        Trigger appTrigger1 =
+                TriggerFixture.getValidTriggerBuilder()
+                        .setId("triggerId1")
+                        .setStatus(Trigger.Status.PENDING)
+                        .setAttributionDestination(APP_DESTINATION)
+                        .setDestinationType(EventSurfaceType.APP)
+                        .build();
+        Trigger webTrigger =
+                TriggerFixture.getValidTriggerBuilder()
+                        .setId("triggerId2")
+                        .setStatus(Trigger.Status.PENDING)
+                        .setAttributionDestination(WEB_DESTINATION)
+                        .setDestinationType(EventSurfaceType.WEB)
+                        .build();
+        Trigger appTrigger2 =
+                TriggerFixture.getValidTriggerBuilder()
+                        .setId("triggerId3")
+                        .setStatus(Trigger.Status.PENDING)
+                        .setAttributionDestination(APP_DESTINATION)
+                        .setDestinationType(EventSurfaceType.APP)
+                        .build();
+        when(mMeasurementDao.getPendingTriggerIds())
+                .thenReturn(
+                        Arrays.asList(
+                                appTrigger1.getId(), webTrigger.getId(), appTrigger2.getId()));
+        stubGetTriggers(Arrays.asList(appTrigger1, webTrigger, appTrigger2));
+        when(mFlags.getMeasurementEnableBatchedAttribution()).thenReturn(true);
+        when(mFlags.getMeasurementAttributionTriggersPerTransaction()).thenReturn(10);
+        AttributionJobHandler handler =
+                new AttributionJobHandler(
+                        mDatastoreManager,
+                        mFlags,
+                        new DebugReportApi(sContext, mFlags),
+                        mEventReportWindowCalcDelegate,
+                        mSourceNoiseHandler);
+
+        assertTrue(handler.performPendingAttributions());
+
+        // No sources match, so every trigger is ignored
+        verify(mMeasurementDao)
+                .updateTriggerStatus(
+                        eq(Collections.singletonList(appTrigger1.getId())),
+                        eq(Trigger.Status.IGNORED));
+        verify(mMeasurementDao)
+                .updateTriggerStatus(
+                        eq(Collections.singletonList(webTrigger.getId())),
+                        eq(Trigger.Status.IGNORED));
+        verify(mMeasurementDao)
+                .updateTriggerStatus(
+                        eq(Collections.singletonList(appTrigger2.getId())),
+                        eq(Trigger.Status.IGNORED));
+        // One transaction to read the pending triggers and one for the whole batch
+        verify(mTransaction, times(2)).begin();
+        verify(mTransaction, times(2)).end();
+        // The sources are read once for all the triggers of the batch
+        verify(mMeasurementDao)
+                .getMatchingAndDelayedActiveSourcesForTriggers(
+                        eq(Arrays.asList(appTrigger1, webTrigger, appTrigger2)));
+        verify(mMeasurementDao, never()).getTrigger(anyString());
+    }
+
+    @Test
+    public void performPendingAttributions_batched_skipsAttributedTrigger()
+            throws DatastoreException {
+        Trigger attributedTrigger =
+                TriggerFixture.getValidTriggerBuilder()
+                        .setId("triggerId1")
+                        .setStatus(Trigger.Status.ATTRIBUTED)
+                        .build();
+        Trigger pendingTrigger =
+                TriggerFixture.getValidTriggerBuilder()
+                        .setId("triggerId2")
+                        .setStatus(Trigger.Status.PENDING)
+                        .build();
+        when(mMeasurementDao.getPendingTriggerIds())
+                .thenReturn(Arrays.asList(attributedTrigger.getId(), pendingTrigger.getId()));
+        stubGetTriggers(Arrays.asList(attributedTrigger, pendingTrigger));
+        when(mFlags.getMeasurementEnableBatchedAttribution()).thenReturn(true);
+        when(mFlags.getMeasurementAttributionTriggersPerTransaction()).thenReturn(10);
+        AttributionJobHandler handler =
+                new AttributionJobHandler(
+                        mDatastoreManager,
+                        mFlags,
+                        new DebugReportApi(sContext, mFlags),
+                        mEventReportWindowCalcDelegate,
+                        mSourceNoiseHandler);
+
+        assertTrue(handler.performPendingAttributions());
+
+        // Only the pending trigger is matched against sources
+        verify(mMeasurementDao)
+                .getMatchingAndDelayedActiveSourcesForTriggers(
+                        eq(Collections.singletonList(pendingTrigger)));
+        verify(mMeasurementDao, never())
+                .updateTriggerStatus(
+                        eq(Collections.singletonList(attributedTrigger.getId())), any());
+        verify(mMeasurementDao)
+                .updateTriggerStatus(
+                        eq(Collections.singletonList(pendingTrigger.getId())),
+                        eq(Trigger.Status.IGNORED));
+    }
+
+    @Test
+    public void performPendingAttributions_batched_splitsTriggersIntoTransactions()
+            throws DatastoreException {
+        List<String> triggerIds = new ArrayList<>();
+        List<Trigger> triggers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Trigger trigger =
+                    TriggerFixture.getValidTriggerBuilder()
+                            .setId("triggerId" + i)
+                            .setStatus(Trigger.Status.PENDING)
+                            .build();
+            triggerIds.add(trigger.getId());
+            triggers.add(trigger);
+        }
+        stubGetTriggers(triggers);
+        when(mMeasurementDao.getPendingTriggerIds()).thenReturn(triggerIds);
+        when(mFlags.getMeasurementEnableBatchedAttribution()).thenReturn(true);
+        when(mFlags.getMeasurementAttributionTriggersPerTransaction()).thenReturn(2);
+        AttributionJobHandler handler =
+                new AttributionJobHandler(
+                        mDatastoreManager,
+                        mFlags,
+                        new DebugReportApi(sContext, mFlags),
+                        mEventReportWindowCalcDelegate,
+                        mSourceNoiseHandler);
+
+        assertTrue(handler.performPendingAttributions());
+
+        for (String triggerId : triggerIds) {
+            verify(mMeasurementDao)
+                    .updateTriggerStatus(
+                            eq(Collections.singletonList(triggerId)), eq(Trigger.Status.IGNORED));
+        }
+        // One transaction to read the pending triggers and one per batch
+        verify(mTransaction, times(3)).begin();
+        verify(mTransaction, times(3)).end();
+    }
+
+    @Test
+    public void performPendingAttributions_batched_failedBatch_attributesTriggersOneByOne()
+            throws DatastoreException {
+        List<String> triggerIds = new ArrayList<>();
+        List<Trigger> triggers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Trigger trigger =
+                    TriggerFixture.getValidTriggerBuilder()
+                            .setId("triggerId" + i)
+                            .setStatus(Trigger.Status.PENDING)
+                            .build();
+            triggerIds.add(trigger.getId());
+            triggers.add(trigger);
+            when(mMeasurementDao.getTrigger(trigger.getId())).thenReturn(trigger);
+        }
+        stubGetTriggers(triggers);
+        when(mMeasurementDao.getPendingTriggerIds()).thenReturn(triggerIds);
+        when(mMeasurementDao.getMatchingAndDelayedActiveSourcesForTriggers(any()))
+                .thenThrow(new DatastoreException("Simulating failure"));
+        when(mFlags.getMeasurementEnableBatchedAttribution()).thenReturn(true);
+        when(mFlags.getMeasurementAttributionTriggersPerTransaction()).thenReturn(10);
+        AttributionJobHandler handler =
+                new AttributionJobHandler(
+                        mDatastoreManager,
+                        mFlags,
+                        new DebugReportApi(sContext, mFlags),
+                        mEventReportWindowCalcDelegate,
+                        mSourceNoiseHandler);
+
+        assertTrue(handler.performPendingAttributions());
+
+        for (String triggerId : triggerIds) {
+            verify(mMeasurementDao)
+                    .updateTriggerStatus(
+                            eq(Collections.singletonList(triggerId)), eq(Trigger.Status.IGNORED));
+        }
+        // The failed batch is rolled back and each trigger is attributed in its own transaction
+        verify(mTransaction).rollback();
+        verify(mTransaction, times(4)).begin();
+        verify(mTransaction, times(4)).end();
+    }
+
     @Test
     public void shouldRejectBasedOnDedupKey() throws DatastoreException {
         Trigger trigger =
@@ -3476,6 +3662,17 @@ public class AttributionJobHandlerTest {
                 .setRegistrationOrigin(TriggerFixture.ValidTriggerParams.REGISTRATION_ORIGIN);
     }
 
+    private void stubGetTriggers(List<Trigger> triggers) throws DatastoreException {
+        when(mMeasurementDao.getTriggers(any()))
+                .thenAnswer(
+                        invocation -> {
+                            List<String> triggerIds = invocation.getArgument(0);
+                            return triggers.stream()
+                                    .filter(trigger -> triggerIds.contains(trigger.getId()))
+                                    .collect(Collectors.toList());
+                        });
+    }
+
     private Source.Builder createXnaSourceBuilder() {
         return new Source.Builder()
                 .setId(UUID.randomUUID().toString())
@@ -31,10 +31,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -246,6 +244,25 @@ public class CombinatoricsTest {
                                                 testCase[0][2])));
     }
 
+    @Test
+    public void getNumStatesFlexAPI_totalCapAboveSumOfCaps_sameNumStates() {
+        int[] perTypeNumWindows = {2, 3, 1};
+        int[] perTypeCap = {2, 1, 3};
+
+        assertEquals(96, Combinatorics.getNumStatesFlexAPI(6, perTypeNumWindows, perTypeCap));
+        assertEquals(96, Combinatorics.getNumStatesFlexAPI(100, perTypeNumWindows, perTypeCap));
+    }
+
+    @Test
+    public void getNumStatesFlexAPI_modifiedInput_notServedFromCache() {
+        int[] perTypeNumWindows = {2, 3, 1};
+        int[] perTypeCap = {2, 1, 3};
+
+        assertEquals(96, Combinatorics.getNumStatesFlexAPI(100, perTypeNumWindows, perTypeCap));
+        perTypeNumWindows[0] = 1;
+        assertEquals(48, Combinatorics.getNumStatesFlexAPI(100, perTypeNumWindows, perTypeCap));
+    }
+
     @Test
     public void testFlipProbability() {
         // Test Case: {number of states}, {expected flip probability multiply 100}
@@ -301,7 +318,6 @@ public class CombinatoricsTest {
         Arrays.stream(testCases)
                 .forEach(
                         (testCase) -> {
-                            Map<List<Integer>, Integer> dp = new HashMap<>();
                             ArrayList<List<Combinatorics.AtomReportState>> allReportSets =
                                     new ArrayList<>();
                             int numberStates =
@@ -310,7 +326,7 @@ public class CombinatoricsTest {
                             for (int i = 0; i < numberStates; i++) {
                                 List<Combinatorics.AtomReportState> ithSet =
                                         Combinatorics.getReportSetBasedOnRank(
-                                                testCase[0][0], testCase[1], testCase[2], i, dp);
+                                                testCase[0][0], testCase[1], testCase[2], i);
                                 Collections.sort(ithSet, new AtomReportStateComparator());
                                 allReportSets.add(ithSet);
                             }
@@ -327,14 +343,13 @@ public class CombinatoricsTest {
         Arrays.stream(testCases)
                 .forEach(
                         (testCase) -> {
-                            Map<List<Integer>, Integer> dp = new HashMap<>();
                             int numberStates =
                                     Combinatorics.getNumStatesFlexAPI(
                                             testCase[0][0], testCase[1], testCase[2]);
                             for (int i = 0; i < numberStates; i++) {
                                 List<Combinatorics.AtomReportState> ithSet =
                                         Combinatorics.getReportSetBasedOnRank(
-                                                testCase[0][0], testCase[1], testCase[2], i, dp);
+                                                testCase[0][0], testCase[1], testCase[2], i);
                                 assertTrue(
                                         atomReportStateSetMeetRequirement(
                                                 testCase[0][0], testCase[1], testCase[2], ithSet));
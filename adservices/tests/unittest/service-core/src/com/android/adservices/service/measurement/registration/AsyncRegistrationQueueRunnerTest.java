@@ -25,6 +25,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -74,6 +75,7 @@ import com.android.adservices.service.stats.AdServicesLogger;
 import com.android.dx.mockito.inline.extended.ExtendedMockito;
 
 import com.google.common.truth.Truth;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -88,6 +90,7 @@ import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -1158,6 +1161,146 @@ public class AsyncRegistrationQueueRunnerTest {
         verify(mMeasurementDao, never()).deleteAsyncRegistration(any(String.class));
     }
 
+    @Test
+    public void runAsyncRegistrationQueueWorker_concurrent_storesBatchInOneTransaction()
+            throws DatastoreException {
+        // Setup
+        AsyncRegistrationQueueRunner asyncRegistrationQueueRunner =
+                getConcurrentAsyncRegistrationQueueRunner();
+        List<AsyncRegistration> asyncRegistrations =
+                Arrays.asList(
+                        createAsyncRegistrationForAppTrigger(),
+                        createAsyncRegistrationForAppTrigger(
+                                WebUtil.validUri("https://other.test/bar")));
+
+        Answer<?> answerAsyncTriggerFetcher =
+                invocation -> {
+                    AsyncFetchStatus asyncFetchStatus = invocation.getArgument(1);
+                    asyncFetchStatus.setResponseStatus(AsyncFetchStatus.ResponseStatus.SUCCESS);
+                    return Optional.of(mMockedTrigger);
+                };
+        doAnswer(answerAsyncTriggerFetcher)
+                .when(mAsyncTriggerFetcher)
+                .fetchTrigger(any(), any(), any());
+
+        when(mMeasurementDao.fetchNextQueuedAsyncRegistrations(anyInt(), any(), anyInt()))
+                .thenReturn(asyncRegistrations, Collections.emptyList());
+
+        // Execution
+        asyncRegistrationQueueRunner.runAsyncRegistrationQueueWorker();
+
+        // Assertions
+        verify(mMeasurementDao, never()).fetchNextQueuedAsyncRegistration(anyInt(), any());
+        verify(mAsyncTriggerFetcher, times(2))
+                .fetchTrigger(any(AsyncRegistration.class), any(), any());
+        verify(mMeasurementDao, times(2)).insertTrigger(any(Trigger.class));
+        verify(mMeasurementDao, times(2)).deleteAsyncRegistration(any(String.class));
+        // Two leases and a single transaction storing the batch
+        verify(mTransaction, times(3)).begin();
+        verify(mTransaction, times(3)).end();
+    }
+
+    @Test
+    public void runAsyncRegistrationQueueWorker_concurrent_failedBatch_storesEachRegistration()
+            throws DatastoreException {
+        // Setup
+        AsyncRegistrationQueueRunner asyncRegistrationQueueRunner =
+                getConcurrentAsyncRegistrationQueueRunner();
+        List<AsyncRegistration> asyncRegistrations =
+                Arrays.asList(
+                        createAsyncRegistrationForAppTrigger(),
+                        createAsyncRegistrationForAppTrigger(
+                                WebUtil.validUri("https://other.test/bar")));
+
+        Answer<?> answerAsyncTriggerFetcher =
+                invocation -> {
+                    AsyncFetchStatus asyncFetchStatus = invocation.getArgument(1);
+                    asyncFetchStatus.setResponseStatus(AsyncFetchStatus.ResponseStatus.SUCCESS);
+                    return Optional.of(mMockedTrigger);
+                };
+        doAnswer(answerAsyncTriggerFetcher)
+                .when(mAsyncTriggerFetcher)
+                .fetchTrigger(any(), any(), any());
+
+        when(mMeasurementDao.fetchNextQueuedAsyncRegistrations(anyInt(), any(), anyInt()))
+                .thenReturn(asyncRegistrations, Collections.emptyList());
+        // The first registration cannot be stored, in the batch nor on its own
+        doThrow(new DatastoreException("Simulating failure"))
+                .doThrow(new DatastoreException("Simulating failure"))
+                .doNothing()
+                .when(mMeasurementDao)
+                .insertTrigger(any(Trigger.class));
+
+        // Execution
+        asyncRegistrationQueueRunner.runAsyncRegistrationQueueWorker();
+
+        // Assertions
+        ArgumentCaptor<AsyncRegistration> asyncRegistrationArgumentCaptor =
+                ArgumentCaptor.forClass(AsyncRegistration.class);
+        verify(mMeasurementDao, times(1))
+                .updateRetryCount(asyncRegistrationArgumentCaptor.capture());
+        assertEquals(
+                asyncRegistrations.get(0).getId(),
+                asyncRegistrationArgumentCaptor.getValue().getId());
+        assertEquals(1, asyncRegistrationArgumentCaptor.getValue().getRetryCount());
+        verify(mMeasurementDao, times(1))
+                .deleteAsyncRegistration(asyncRegistrations.get(1).getId());
+        verify(mMeasurementDao, never())
+                .deleteAsyncRegistration(asyncRegistrations.get(0).getId());
+        // Two leases, the failed batch, one transaction per registration and the retry update
+        verify(mTransaction, times(6)).begin();
+        verify(mTransaction, times(6)).end();
+    }
+
+    @Test
+    public void runAsyncRegistrationQueueWorker_concurrent_networkError_leavesOriginQueued()
+            throws DatastoreException {
+        // Setup
+        AsyncRegistrationQueueRunner asyncRegistrationQueueRunner =
+                getConcurrentAsyncRegistrationQueueRunner();
+        Uri otherRegistrationUri = WebUtil.validUri("https://other.test/bar");
+        List<AsyncRegistration> asyncRegistrations =
+                Arrays.asList(
+                        createAsyncRegistrationForAppTrigger(),
+                        createAsyncRegistrationForAppTrigger(),
+                        createAsyncRegistrationForAppTrigger(otherRegistrationUri));
+
+        Answer<?> answerAsyncTriggerFetcher =
+                invocation -> {
+                    AsyncRegistration asyncRegistration = invocation.getArgument(0);
+                    AsyncFetchStatus asyncFetchStatus = invocation.getArgument(1);
+                    asyncFetchStatus.setResponseStatus(
+                            asyncRegistration.getRegistrationUri().equals(otherRegistrationUri)
+                                    ? AsyncFetchStatus.ResponseStatus.SUCCESS
+                                    : AsyncFetchStatus.ResponseStatus.NETWORK_ERROR);
+                    return Optional.of(mMockedTrigger);
+                };
+        doAnswer(answerAsyncTriggerFetcher)
+                .when(mAsyncTriggerFetcher)
+                .fetchTrigger(any(), any(), any());
+
+        when(mMeasurementDao.fetchNextQueuedAsyncRegistrations(anyInt(), any(), anyInt()))
+                .thenReturn(asyncRegistrations, Collections.emptyList());
+
+        // Execution
+        asyncRegistrationQueueRunner.runAsyncRegistrationQueueWorker();
+
+        // Assertions
+        // The second registration of the failing origin is not fetched
+        verify(mAsyncTriggerFetcher, times(2))
+                .fetchTrigger(any(AsyncRegistration.class), any(), any());
+        ArgumentCaptor<AsyncRegistration> asyncRegistrationArgumentCaptor =
+                ArgumentCaptor.forClass(AsyncRegistration.class);
+        verify(mMeasurementDao, times(1))
+                .updateRetryCount(asyncRegistrationArgumentCaptor.capture());
+        assertEquals(
+                asyncRegistrations.get(0).getId(),
+                asyncRegistrationArgumentCaptor.getValue().getId());
+        verify(mMeasurementDao, times(1)).insertTrigger(any(Trigger.class));
+        verify(mMeasurementDao, times(1))
+                .deleteAsyncRegistration(asyncRegistrations.get(2).getId());
+    }
+
     @Test
     public void test_runAsyncRegistrationQueueWorker_appTrigger_parsingError_withRedirects()
             throws DatastoreException {
@@ -2252,9 +2395,13 @@ public class AsyncRegistrationQueueRunnerTest {
     }
 
     private static AsyncRegistration createAsyncRegistrationForAppTrigger() {
+        return createAsyncRegistrationForAppTrigger(REGISTRATION_URI);
+    }
+
+    private static AsyncRegistration createAsyncRegistrationForAppTrigger(Uri registrationUri) {
         return new AsyncRegistration.Builder()
                 .setId(UUID.randomUUID().toString())
-                .setRegistrationUri(REGISTRATION_URI)
+                .setRegistrationUri(registrationUri)
                 // null .setWebDestination(webDestination)
                 // null .setOsDestination(osDestination)
                 .setRegistrant(DEFAULT_REGISTRANT)
@@ -2319,6 +2466,22 @@ public class AsyncRegistrationQueueRunnerTest {
                         mSourceNoiseHandler));
     }
 
+    private AsyncRegistrationQueueRunner getConcurrentAsyncRegistrationQueueRunner() {
+        when(mFlags.getMeasurementEnableConcurrentAsyncRegistrationFetch()).thenReturn(true);
+        when(mFlags.getMeasurementMaxRegistrationsPerJobInvocation()).thenReturn(10);
+        when(mFlags.getMeasurementAsyncRegistrationFetchBatchSize()).thenReturn(10);
+        when(mFlags.getMeasurementAsyncRegistrationFetchParallelism()).thenReturn(4);
+        when(mFlags.getMeasurementAsyncRegistrationFetchPerOriginParallelism()).thenReturn(1);
+        return new AsyncRegistrationQueueRunner(
+                mContentResolver,
+                mAsyncSourceFetcher,
+                mAsyncTriggerFetcher,
+                new FakeDatastoreManager(),
+                mDebugReportApi,
+                mSourceNoiseHandler,
+                MoreExecutors.newDirectExecutorService());
+    }
+
     private static void emptyTables(SQLiteDatabase db) {
         db.delete("msmt_source", null, null);
         db.delete("msmt_trigger", null, null);
@@ -36,12 +36,15 @@ import com.android.adservices.data.measurement.DatastoreException;
 import com.android.adservices.data.measurement.DatastoreManager;
 import com.android.adservices.data.measurement.IMeasurementDao;
 import com.android.adservices.data.measurement.ITransaction;
+import com.android.adservices.service.Flags;
 import com.android.adservices.service.enrollment.EnrollmentData;
 import com.android.adservices.service.measurement.EventReport;
 import com.android.adservices.service.measurement.WebUtil;
 import com.android.adservices.service.measurement.aggregation.AggregateReport;
 import com.android.adservices.service.measurement.util.UnsignedLong;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Assert;
@@ -453,4 +456,60 @@ public class EventReportingJobHandlerTest {
         verify(mTransaction, times(5)).begin();
         verify(mTransaction, times(5)).end();
     }
+
+    @Test
+    public void testPerformScheduledPendingReports_concurrentUpload_batchesTransactions()
+            throws DatastoreException, IOException, JSONException {
+        EventReport eventReport1 =
+                new EventReport.Builder()
+                        .setId("eventReport1")
+                        .setSourceEventId(new UnsignedLong(1234L))
+                        .setAttributionDestinations(ATTRIBUTION_DESTINATIONS)
+                        .setStatus(EventReport.Status.PENDING)
+                        .setReportTime(1000L)
+                        .setRegistrationOrigin(REPORTING_ORIGIN)
+                        .build();
+        EventReport eventReport2 =
+                new EventReport.Builder()
+                        .setId("eventReport2")
+                        .setSourceEventId(new UnsignedLong(12345L))
+                        .setAttributionDestinations(ATTRIBUTION_DESTINATIONS)
+                        .setStatus(EventReport.Status.PENDING)
+                        .setReportTime(1100L)
+                        .setRegistrationOrigin(REPORTING_ORIGIN)
+                        .build();
+        Flags flags =
+                new Flags() {
+                    @Override
+                    public boolean getMeasurementEnableConcurrentReportUpload() {
+                        return true;
+                    }
+                };
+        EventReportingJobHandler spyEventReportingJobHandler =
+                Mockito.spy(
+                        new EventReportingJobHandler(
+                                mEnrollmentDao,
+                                mDatastoreManager,
+                                flags,
+                                MoreExecutors.newDirectExecutorService()));
+
+        when(mMeasurementDao.getPendingEventReportIdsInWindow(1000, 1100))
+                .thenReturn(List.of(eventReport1.getId(), eventReport2.getId()));
+        when(mMeasurementDao.getEventReport(eventReport1.getId())).thenReturn(eventReport1);
+        when(mMeasurementDao.getEventReport(eventReport2.getId())).thenReturn(eventReport2);
+        doReturn(HttpURLConnection.HTTP_OK)
+                .when(spyEventReportingJobHandler)
+                .makeHttpPostRequest(Mockito.eq(REPORTING_ORIGIN), any());
+
+        Assert.assertTrue(
+                spyEventReportingJobHandler.performScheduledPendingReportsInWindow(1000, 1100));
+
+        verify(mMeasurementDao, times(2)).markEventReportStatus(any(), anyInt());
+        verify(spyEventReportingJobHandler, times(2))
+                .makeHttpPostRequest(Mockito.eq(REPORTING_ORIGIN), Mockito.any());
+        // One transaction to read the report ids, one to read the reports and one to mark them
+        // delivered
+        verify(mTransaction, times(3)).begin();
+        verify(mTransaction, times(3)).end();
+    }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.service.measurement.reporting;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.net.Uri;
+
+import com.android.adservices.data.measurement.DatastoreException;
+import com.android.adservices.data.measurement.DatastoreManager;
+import com.android.adservices.data.measurement.IMeasurementDao;
+import com.android.adservices.data.measurement.ITransaction;
+import com.android.adservices.service.Flags;
+import com.android.adservices.service.measurement.WebUtil;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Unit test for {@link ReportUploadPipeline} */
+@RunWith(MockitoJUnitRunner.class)
+public class ReportUploadPipelineTest {
+    private static final Uri ORIGIN_1 = WebUtil.validUri("https://subdomain1.example.test");
+    private static final Uri ORIGIN_2 = WebUtil.validUri("https://subdomain2.example.test");
+
+    @Mock IMeasurementDao mMeasurementDao;
+
+    @Mock ITransaction mTransaction;
+
+    class FakeDatasoreManager extends DatastoreManager {
+
+        @Override
+        public ITransaction createNewTransaction() {
+            return mTransaction;
+        }
+
+        @Override
+        public IMeasurementDao getMeasurementDao() {
+            return mMeasurementDao;
+        }
+
+        @Override
+        protected int getDataStoreVersion() {
+            return 0;
+        }
+    }
+
+    /** Uploads reports named by their id, keeping track of the calls. */
+    private class FakeReportUploader implements ReportUploadPipeline.ReportUploader<String> {
+        private final Map<String, Uri> mOrigins = new HashMap<>();
+        private final Set<Uri> mFailingOrigins = new HashSet<>();
+        private final Set<String> mNotPendingReports = new HashSet<>();
+        private final List<String> mUploadedReports = new ArrayList<>();
+        private final Map<String, ReportingStatus> mStatuses = new HashMap<>();
+
+        @Override
+        public String readReport(
+                IMeasurementDao dao, String reportId, ReportingStatus reportingStatus) {
+            if (mNotPendingReports.contains(reportId)) {
+                reportingStatus.setFailureStatus(ReportingStatus.FailureStatus.REPORT_NOT_PENDING);
+                return null;
+            }
+            return reportId;
+        }
+
+        @Override
+        public Uri getReportingOrigin(String report) {
+            return mOrigins.get(report);
+        }
+
+        @Override
+        public synchronized int uploadReport(String report) {
+            mUploadedReports.add(report);
+            return mFailingOrigins.contains(mOrigins.get(report))
+                    ? HttpURLConnection.HTTP_INTERNAL_ERROR
+                    : HttpURLConnection.HTTP_OK;
+        }
+
+        @Override
+        public void markReportDelivered(IMeasurementDao dao, String report)
+                throws DatastoreException {
+            dao.markEventReportStatus(report, 1);
+        }
+
+        @Override
+        public void onReportProcessed(String report, ReportingStatus reportingStatus) {
+            mStatuses.put(report, reportingStatus);
+        }
+    }
+
+    @Test
+    public void uploadReports_groupsByOriginAndMarksDeliveredInOneTransaction()
+            throws DatastoreException {
+        FakeReportUploader uploader = new FakeReportUploader();
+        uploader.mOrigins.put("report1", ORIGIN_1);
+        uploader.mOrigins.put("report2", ORIGIN_2);
+        uploader.mOrigins.put("report3", ORIGIN_1);
+
+        createPipeline(uploader, /* batchSize= */ 10)
+                .uploadReports(Arrays.asList("report1", "report2", "report3"));
+
+        // The reports of an origin are uploaded together
+        assertEquals(Arrays.asList("report1", "report3", "report2"), uploader.mUploadedReports);
+        for (String report : uploader.mOrigins.keySet()) {
+            assertEquals(
+                    ReportingStatus.UploadStatus.SUCCESS,
+                    uploader.mStatuses.get(report).getUploadStatus());
+        }
+        verify(mMeasurementDao, times(3)).markEventReportStatus(anyString(), anyInt());
+        // One transaction to read the reports and one to mark them delivered
+        verify(mTransaction, times(2)).begin();
+        verify(mTransaction, times(2)).end();
+    }
+
+    @Test
+    public void uploadReports_splitsReportsIntoBatches() throws DatastoreException {
+        FakeReportUploader uploader = new FakeReportUploader();
+        uploader.mOrigins.put("report1", ORIGIN_1);
+        uploader.mOrigins.put("report2", ORIGIN_1);
+        uploader.mOrigins.put("report3", ORIGIN_1);
+
+        createPipeline(uploader, /* batchSize= */ 2)
+                .uploadReports(Arrays.asList("report1", "report2", "report3"));
+
+        assertEquals(3, uploader.mUploadedReports.size());
+        verify(mTransaction, times(4)).begin();
+        verify(mTransaction, times(4)).end();
+    }
+
+    @Test
+    public void uploadReports_failingOrigin_backsOffFromOrigin() {
+        FakeReportUploader uploader = new FakeReportUploader();
+        List<String> reportIds = new ArrayList<>();
+        for (int i = 0; i < ReportUploadPipeline.MAX_CONSECUTIVE_ORIGIN_FAILURES + 2; i++) {
+            reportIds.add("failing" + i);
+            uploader.mOrigins.put("failing" + i, ORIGIN_1);
+        }
+        reportIds.add("report");
+        uploader.mOrigins.put("report", ORIGIN_2);
+        uploader.mFailingOrigins.add(ORIGIN_1);
+
+        createPipeline(uploader, /* batchSize= */ 10).uploadReports(reportIds);
+
+        assertEquals(
+                ReportUploadPipeline.MAX_CONSECUTIVE_ORIGIN_FAILURES + 1,
+                uploader.mUploadedReports.size());
+        for (String reportId : reportIds) {
+            ReportingStatus reportingStatus = uploader.mStatuses.get(reportId);
+            if (uploader.mOrigins.get(reportId).equals(ORIGIN_1)) {
+                assertEquals(
+                        ReportingStatus.UploadStatus.FAILURE, reportingStatus.getUploadStatus());
+                assertEquals(
+                        ReportingStatus.FailureStatus.NETWORK, reportingStatus.getFailureStatus());
+            } else {
+                assertEquals(
+                        ReportingStatus.UploadStatus.SUCCESS, reportingStatus.getUploadStatus());
+            }
+        }
+    }
+
+    @Test
+    public void uploadReports_notPendingReport_isNotUploaded() {
+        FakeReportUploader uploader = new FakeReportUploader();
+        uploader.mOrigins.put("report1", ORIGIN_1);
+        uploader.mNotPendingReports.add("report2");
+
+        createPipeline(uploader, /* batchSize= */ 10)
+                .uploadReports(Arrays.asList("report1", "report2"));
+
+        assertEquals(Collections.singletonList("report1"), uploader.mUploadedReports);
+        assertEquals(
+                ReportingStatus.FailureStatus.REPORT_NOT_PENDING,
+                uploader.mStatuses.get(null).getFailureStatus());
+    }
+
+    @Test
+    public void uploadReports_markingDeliveredFails_marksReportsOneByOne()
+            throws DatastoreException {
+        FakeReportUploader uploader = new FakeReportUploader();
+        uploader.mOrigins.put("report1", ORIGIN_1);
+        uploader.mOrigins.put("report2", ORIGIN_2);
+        doThrow(new DatastoreException("Update failed"))
+                .when(mMeasurementDao)
+                .markEventReportStatus("report2", 1);
+
+        createPipeline(uploader, /* batchSize= */ 10)
+                .uploadReports(Arrays.asList("report1", "report2"));
+
+        // The failed batch is marked again one report per transaction, so only report2 fails
+        assertEquals(
+                ReportingStatus.UploadStatus.SUCCESS,
+                uploader.mStatuses.get("report1").getUploadStatus());
+        ReportingStatus reportingStatus = uploader.mStatuses.get("report2");
+        assertEquals(ReportingStatus.UploadStatus.FAILURE, reportingStatus.getUploadStatus());
+        assertEquals(ReportingStatus.FailureStatus.DATASTORE, reportingStatus.getFailureStatus());
+        verify(mMeasurementDao, times(2)).markEventReportStatus("report1", 1);
+        verify(mTransaction, times(4)).begin();
+        verify(mTransaction, times(4)).end();
+    }
+
+    private ReportUploadPipeline<String> createPipeline(
+            FakeReportUploader uploader, int batchSize) {
+        Flags flags =
+                new Flags() {
+                    @Override
+                    public int getMeasurementReportUploadBatchSize() {
+                        return batchSize;
+                    }
+
+                    @Override
+                    public int getMeasurementReportUploadPerOriginParallelism() {
+                        return 1;
+                    }
+                };
+        return new ReportUploadPipeline<>(
+                new FakeDatasoreManager(),
+                flags,
+                MoreExecutors.newDirectExecutorService(),
+                uploader);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.adservices.service.measurement.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class OriginWorkersTest {
+    @Test
+    public void run_interleavesOriginsAndBoundsWorkersPerOrigin() throws Exception {
+        Map<String, Integer> queueSizes = Map.of("origin1", 3, "origin2", 1);
+        List<String> startedWorkers = new ArrayList<>();
+
+        OriginWorkers.run(
+                Arrays.asList("origin1", "origin2"),
+                queueSizes::get,
+                /* perOriginParallelism= */ 2,
+                /* parallelism= */ 10,
+                MoreExecutors.newDirectExecutorService(),
+                startedWorkers::add);
+
+        // origin1 gets only 2 workers, origin2 no more workers than queued items
+        assertEquals(Arrays.asList("origin1", "origin2", "origin1"), startedWorkers);
+    }
+
+    @Test
+    public void run_noQueuedItems_startsNoWorker() throws Exception {
+        List<String> startedWorkers = new ArrayList<>();
+
+        OriginWorkers.run(
+                Collections.singletonList("origin1"),
+                origin -> 0,
+                /* perOriginParallelism= */ 2,
+                /* parallelism= */ 10,
+                MoreExecutors.newDirectExecutorService(),
+                startedWorkers::add);
+
+        assertEquals(Collections.emptyList(), startedWorkers);
+    }
+}
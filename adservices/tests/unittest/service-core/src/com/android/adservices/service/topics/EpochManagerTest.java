@@ -20,9 +20,12 @@ import static com.android.adservices.service.topics.EpochManager.PADDED_TOP_TOPI
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -62,6 +65,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /** Unit tests for {@link com.android.adservices.service.topics.EpochManager} */
@@ -74,6 +79,7 @@ public final class EpochManagerTest {
     // TODO: (b/232807776) Replace below hardcoded taxonomy version and model version
     private static final long TAXONOMY_VERSION = 1L;
     private static final long MODEL_VERSION = 1L;
+    private static final long TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS = 5_000L;
 
     @SuppressWarnings({"unused"})
     private final Context mContext = ApplicationProvider.getApplicationContext();
@@ -378,6 +384,98 @@ public final class EpochManagerTest {
         assertThat(appSdksUsageMapFromDb).isEqualTo(expectedAppSdksUsageMap);
     }
 
+    @Test
+    public void testRecordUsage_buffered_deduplicatesAndWritesOnFlush() {
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        EpochManager epochManager =
+                createEpochManagerWithUsageHistoryBuffer(/* maxEntries= */ 10, executor);
+
+        epochManager.recordUsageHistory("app1", /* sdk = */ "");
+        epochManager.recordUsageHistory("app1", "sdk1");
+        epochManager.recordUsageHistory("app1", "sdk1");
+        epochManager.recordUsageHistory("app2", "sdk1");
+
+        // Nothing is written before the flush, which is scheduled once.
+        long epochId = epochManager.getCurrentEpochId();
+        assertThat(mTopicsDao.retrieveAppSdksUsageMap(epochId)).isEmpty();
+        verify(executor)
+                .schedule(
+                        any(Runnable.class),
+                        eq(TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS),
+                        eq(TimeUnit.MILLISECONDS));
+        verify(executor, never()).execute(any());
+
+        epochManager.flushUsageHistory();
+
+        Map<String, List<String>> expectedAppSdksUsageMap = new HashMap<>();
+        expectedAppSdksUsageMap.put("app1", Arrays.asList("", "sdk1"));
+        expectedAppSdksUsageMap.put("app2", Collections.singletonList("sdk1"));
+        assertThat(mTopicsDao.retrieveAppSdksUsageMap(epochId))
+                .isEqualTo(expectedAppSdksUsageMap);
+        Map<String, Integer> expectedAppUsageMap = new HashMap<>();
+        expectedAppUsageMap.put("app1", 1);
+        expectedAppUsageMap.put("app2", 1);
+        assertThat(mTopicsDao.retrieveAppUsageMap(epochId)).isEqualTo(expectedAppUsageMap);
+    }
+
+    @Test
+    public void testRecordUsage_buffered_fullBufferIsFlushedImmediately() {
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        EpochManager epochManager =
+                createEpochManagerWithUsageHistoryBuffer(/* maxEntries= */ 2, executor);
+
+        epochManager.recordUsageHistory("app1", "sdk1");
+        verify(executor, never()).execute(any());
+
+        epochManager.recordUsageHistory("app1", "sdk2");
+        verify(executor).execute(any());
+        verify(executor, times(1)).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    public void testRecordUsage_buffered_flushedByProcessEpoch() {
+        EpochManager epochManager =
+                createEpochManagerWithUsageHistoryBuffer(
+                        /* maxEntries= */ 10, mock(ScheduledExecutorService.class));
+
+        epochManager.recordUsageHistory("app1", "sdk1");
+        epochManager.processEpoch();
+
+        // The buffered usage is part of the usage map of the epoch.
+        verify(mMockClassifier).classify(eq(Set.of("app1")));
+        assertThat(mTopicsDao.retrieveAppSdksUsageMap(epochManager.getCurrentEpochId()))
+                .isEqualTo(Map.of("app1", Collections.singletonList("sdk1")));
+    }
+
+    private EpochManager createEpochManagerWithUsageHistoryBuffer(
+            int maxEntries, ScheduledExecutorService executor) {
+        Flags flags =
+                new Flags() {
+                    @Override
+                    public boolean getTopicsEnableUsageHistoryBuffer() {
+                        return true;
+                    }
+
+                    @Override
+                    public int getTopicsUsageHistoryBufferMaxEntries() {
+                        return maxEntries;
+                    }
+
+                    @Override
+                    public long getTopicsUsageHistoryBufferFlushDelayMs() {
+                        return TOPICS_USAGE_HISTORY_BUFFER_FLUSH_DELAY_MS;
+                    }
+                };
+        return new EpochManager(
+                mTopicsDao,
+                mDbHelper,
+                new Random(),
+                mMockClassifier,
+                flags,
+                mMockClock,
+                executor);
+    }
+
     @Test
     public void testGarbageCollectOutdatedEpochData() {
         final long currentEpoch = 7L;
@@ -21,7 +21,10 @@ import android.annotation.Nullable;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.ArrayMap;
 import android.util.ArraySet;
@@ -31,7 +34,7 @@ import com.android.internal.annotations.GuardedBy;
 import com.android.internal.annotations.VisibleForTesting;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -41,16 +44,25 @@ import java.util.Set;
  * <p>This class is a singleton since we want to maintain sync between app process and sandbox
  * process.
  *
+ * <p>Changes to the synced keys are coalesced for {@link #SYNC_DELAY_MS} and sent to the sandbox
+ * in a single update, so that apps writing preferences in bursts do not make a binder call per
+ * key.
+ *
  * @hide
  */
 public class SharedPreferencesSyncManager {
 
     private static final String TAG = "SdkSandboxSyncManager";
+
+    /** How long changes to the synced keys are coalesced before being sent to the sandbox. */
+    @VisibleForTesting static final long SYNC_DELAY_MS = 100;
+
     private static ArrayMap<String, SharedPreferencesSyncManager> sInstanceMap = new ArrayMap<>();
     private final ISdkSandboxManager mService;
     private final Context mContext;
     private final Object mLock = new Object();
     private final ISharedPreferencesSyncCallback mCallback = new SharedPreferencesSyncCallback();
+    private final Handler mHandler;
 
     @GuardedBy("mLock")
     private boolean mWaitingForSandbox = false;
@@ -63,11 +75,30 @@ public class SharedPreferencesSyncManager {
     @GuardedBy("mLock")
     private ArraySet<String> mKeysToSync = new ArraySet<>();
 
+    // Keys changed since the last update was sent
+    @GuardedBy("mLock")
+    private final ArraySet<String> mChangedKeys = new ArraySet<>();
+
+    // Set when all keys have been cleared since the last update was sent
+    @GuardedBy("mLock")
+    private boolean mAllKeysChanged = false;
+
+    // Uptime of the first change not sent yet, or 0 if there is none
+    @GuardedBy("mLock")
+    private long mFirstChangeUptimeMs = 0;
+
+    @GuardedBy("mLock")
+    private int mLastSyncBatchSize = 0;
+
+    @GuardedBy("mLock")
+    private long mLastSyncLatencyMs = 0;
+
     @VisibleForTesting(visibility = VisibleForTesting.Visibility.PRIVATE)
     public SharedPreferencesSyncManager(
             @NonNull Context context, @NonNull ISdkSandboxManager service) {
         mContext = context.getApplicationContext();
         mService = service;
+        mHandler = new Handler(Looper.getMainLooper());
     }
 
     /**
@@ -110,6 +141,7 @@ public class SharedPreferencesSyncManager {
     public void removeSharedPreferencesSyncKeys(@NonNull Set<String> keys) {
         synchronized (mLock) {
             mKeysToSync.removeAll(keys);
+            mChangedKeys.removeAll(keys);
 
             final ArrayList<SharedPreferencesKey> keysWithTypeBeingRemoved = new ArrayList<>();
 
@@ -154,6 +186,25 @@ public class SharedPreferencesSyncManager {
         }
     }
 
+    /** Returns the number of keys in the last update sent for changed keys. */
+    @VisibleForTesting(visibility = VisibleForTesting.Visibility.PRIVATE)
+    public int getLastSyncBatchSize() {
+        synchronized (mLock) {
+            return mLastSyncBatchSize;
+        }
+    }
+
+    /**
+     * Returns the time between the first change in the last update sent for changed keys and the
+     * update being sent.
+     */
+    @VisibleForTesting(visibility = VisibleForTesting.Visibility.PRIVATE)
+    public long getLastSyncLatencyMs() {
+        synchronized (mLock) {
+            return mLastSyncLatencyMs;
+        }
+    }
+
     /**
      * Syncs data to SdkSandbox.
      *
@@ -176,14 +227,19 @@ public class SharedPreferencesSyncManager {
 
     @GuardedBy("mLock")
     private void bulkSyncData() {
+        syncKeys(mKeysToSync);
+    }
+
+    /** Sends the current values of the given keys to SdkSandbox in a single update. */
+    @GuardedBy("mLock")
+    private void syncKeys(Collection<String> keys) {
         // Collect data in a bundle
         final Bundle data = new Bundle();
         final SharedPreferences pref = getDefaultSharedPreferences();
         final Map<String, ?> allData = pref.getAll();
         final ArrayList<SharedPreferencesKey> keysWithTypeBeingSynced = new ArrayList<>();
 
-        for (int i = 0; i < mKeysToSync.size(); i++) {
-            final String key = mKeysToSync.valueAt(i);
+        for (final String key : keys) {
             final Object value = allData.get(key);
             if (value == null) {
                 // Keep the key missing from the bundle; that means key has been removed.
@@ -214,6 +270,47 @@ public class SharedPreferencesSyncManager {
         return PreferenceManager.getDefaultSharedPreferences(appContext);
     }
 
+    /** Sends the changes collected since the last update in a single update. */
+    private void syncChangedKeys() {
+        synchronized (mLock) {
+            final long firstChangeUptimeMs = mFirstChangeUptimeMs;
+            final boolean allKeysChanged = mAllKeysChanged;
+            final ArraySet<String> changedKeys = new ArraySet<>(mChangedKeys);
+            mFirstChangeUptimeMs = 0;
+            mAllKeysChanged = false;
+            mChangedKeys.clear();
+
+            // Changes made while waiting are synced by the bulk sync once the sandbox starts
+            if (mWaitingForSandbox) {
+                return;
+            }
+
+            if (allKeysChanged) {
+                // All keys have been cleared. Bulk sync so that we send null for every key.
+                changedKeys.clear();
+                changedKeys.addAll(mKeysToSync);
+            } else {
+                changedKeys.retainAll(mKeysToSync);
+            }
+            if (changedKeys.isEmpty()) {
+                return;
+            }
+
+            syncKeys(changedKeys);
+            mLastSyncBatchSize = changedKeys.size();
+            mLastSyncLatencyMs = SystemClock.uptimeMillis() - firstChangeUptimeMs;
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(
+                        TAG,
+                        "Synced "
+                                + mLastSyncBatchSize
+                                + " changed keys after "
+                                + mLastSyncLatencyMs
+                                + " ms");
+            }
+        }
+    }
+
     private class ChangeListener implements SharedPreferences.OnSharedPreferenceChangeListener {
         @Override
         public void onSharedPreferenceChanged(SharedPreferences pref, @Nullable String key) {
@@ -225,35 +322,18 @@ public class SharedPreferencesSyncManager {
                 }
 
                 if (key == null) {
-                    // All keys have been cleared. Bulk sync so that we send null for every key.
-                    bulkSyncData();
-                    return;
-                }
-
-                if (!mKeysToSync.contains(key)) {
-                    return;
-                }
-
-                final Bundle data = new Bundle();
-                SharedPreferencesKey keyWithType;
-                final Object value = pref.getAll().get(key);
-                if (value != null) {
-                    keyWithType = updateBundle(data, key, value);
+                    mAllKeysChanged = true;
+                } else if (mKeysToSync.contains(key)) {
+                    mChangedKeys.add(key);
                 } else {
-                    keyWithType =
-                            new SharedPreferencesKey(key, SharedPreferencesKey.KEY_TYPE_STRING);
+                    return;
                 }
 
-                final SharedPreferencesUpdate update =
-                        new SharedPreferencesUpdate(List.of(keyWithType), data);
-                try {
-                    mService.syncDataFromClient(
-                            mContext.getPackageName(),
-                            /*timeAppCalledSystemServer=*/ System.currentTimeMillis(),
-                            update,
-                            mCallback);
-                } catch (RemoteException e) {
-                    Log.e(TAG, "Couldn't connect to SdkSandboxManagerService: " + e.getMessage());
+                // Values are read when the update is sent, once for all keys changed until then
+                if (mFirstChangeUptimeMs == 0) {
+                    mFirstChangeUptimeMs = SystemClock.uptimeMillis();
+                    mHandler.postDelayed(
+                            SharedPreferencesSyncManager.this::syncChangedKeys, SYNC_DELAY_MS);
                 }
             }
         }
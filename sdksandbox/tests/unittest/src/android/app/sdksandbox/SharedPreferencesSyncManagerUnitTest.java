@@ -274,15 +274,14 @@ public class SharedPreferencesSyncManagerUnitTest {
         editor.putStringSet("set", Set.of("value"));
         editor.commit();
 
-        // Verify that sync manager receives one bundle for each key update
-        mSdkSandboxManagerService.blockForReceivingUpdates(6);
+        // Verify that sync manager receives a single bundle with all the updated keys
+        mSdkSandboxManagerService.blockForReceivingUpdates(1);
         final ArrayList<SharedPreferencesUpdate> allUpdates =
                 mSdkSandboxManagerService.getAllUpdates();
-        assertThat(allUpdates).hasSize(6);
-        for (SharedPreferencesUpdate update : allUpdates) {
-            final Bundle data = update.getData();
-            assertThat(data.keySet()).hasSize(1);
-            final String key = data.keySet().toArray()[0].toString();
+        assertThat(allUpdates).hasSize(1);
+        final Bundle data = allUpdates.get(0).getData();
+        assertThat(data.keySet()).hasSize(6);
+        for (String key : data.keySet()) {
             if (key.equals("string")) {
                 assertThat(data.getString(key)).isEqualTo(pref.getString(key, ""));
             } else if (key.equals("boolean")) {
@@ -302,6 +301,35 @@ public class SharedPreferencesSyncManagerUnitTest {
         }
     }
 
+    @Test
+    public void test_updateListener_coalescesSeparateCommits() throws Exception {
+        // Set keys to sync and then sync data to register listener
+        final Set<String> keysToSync = Set.of("string", "int", "long");
+        mSyncManager.addSharedPreferencesSyncKeys(keysToSync);
+
+        // Clear the bulk update for ease of reasoning
+        mSdkSandboxManagerService.clearUpdates();
+
+        // Update the shared preference with separate commits, including one key twice
+        final SharedPreferences pref = getDefaultSharedPreferences();
+        pref.edit().putString("string", "value").commit();
+        pref.edit().putInt("int", 1).commit();
+        pref.edit().putString("string", "latest").commit();
+        pref.edit().putString("unspecified", "value").commit();
+
+        // Verify that the changes are sent in a single update with the latest values
+        mSdkSandboxManagerService.blockForReceivingUpdates(1);
+        final ArrayList<SharedPreferencesUpdate> allUpdates =
+                mSdkSandboxManagerService.getAllUpdates();
+        assertThat(allUpdates).hasSize(1);
+        final Bundle data = allUpdates.get(0).getData();
+        assertThat(data.keySet()).containsExactly("string", "int");
+        assertThat(data.getString("string")).isEqualTo("latest");
+        assertThat(data.getInt("int")).isEqualTo(1);
+        assertThat(mSyncManager.getLastSyncBatchSize()).isEqualTo(2);
+        assertThat(mSyncManager.getLastSyncLatencyMs()).isAtLeast(0L);
+    }
+
     /** Test that we can handle removal of keys */
     @Test
     public void test_updateListener_removeKey() throws Exception {